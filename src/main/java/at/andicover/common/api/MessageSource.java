@@ -0,0 +1,145 @@
+package at.andicover.common.api;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.digest.api.CustomMessageDigest;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Message that is fed into an incremental digest instead of being held as one byte array. Allows to sign and verify
+ * messages that are larger than the heap.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@FunctionalInterface
+public interface MessageSource {
+
+    /**
+     * Size of the regions a file is mapped with. Smaller than the 2 GiB limit of a mapped buffer.
+     */
+    long MAPPED_REGION_SIZE = 1L << 30;
+
+    /**
+     * Adds all bytes of the message to the given digest. Does not complete the digest.
+     *
+     * @param messageDigest The digest to update.
+     * @throws IOException if the message cannot be read.
+     */
+    void update(@Nonnull CustomMessageDigest messageDigest) throws IOException;
+
+    /**
+     * Returns a source for the given bytes.
+     *
+     * @param message The message.
+     * @return the message source.
+     */
+    @Nonnull
+    static MessageSource of(@Nonnull final byte[] message) {
+        requireNonNull(message);
+
+        return messageDigest -> messageDigest.update(message, 0, message.length);
+    }
+
+    /**
+     * Returns a source for the remaining bytes of the given buffer. The position of the buffer is not changed, so the
+     * source can be read several times.
+     *
+     * @param message The message, either a heap buffer, a direct buffer or a memory mapped file.
+     * @return the message source.
+     */
+    @Nonnull
+    static MessageSource of(@Nonnull final ByteBuffer message) {
+        requireNonNull(message);
+
+        return messageDigest -> messageDigest.update(message.duplicate());
+    }
+
+    /**
+     * Returns a source that reads the given stream until its end. The stream is not closed and can only be read once.
+     * It is read in chunks of {@link TuningConfig#getIoBufferSize()} bytes.
+     *
+     * @param message The message stream.
+     * @return the message source.
+     */
+    @Nonnull
+    static MessageSource of(@Nonnull final InputStream message) {
+        requireNonNull(message);
+
+        return messageDigest -> {
+            final byte[] buffer = new byte[TuningConfig.getDefault().getIoBufferSize()];
+            int length = message.read(buffer);
+            while (length != -1) {
+                messageDigest.update(buffer, 0, length);
+                length = message.read(buffer);
+            }
+        };
+    }
+
+    /**
+     * Returns a source that reads the given channel until its end. The channel is not closed and can only be read
+     * once. It is read in chunks of {@link TuningConfig#getIoBufferSize()} bytes, at most the remaining size of a
+     * {@link SeekableByteChannel}.
+     *
+     * @param message The message channel.
+     * @return the message source.
+     */
+    @Nonnull
+    static MessageSource of(@Nonnull final ReadableByteChannel message) {
+        requireNonNull(message);
+
+        return messageDigest -> {
+            final ByteBuffer buffer = ByteBuffer.allocate(getBufferSize(message));
+            while (message.read(buffer) != -1) {
+                messageDigest.update(buffer.flip());
+                buffer.clear();
+            }
+        };
+    }
+
+    /**
+     * Returns a source for the content of the given file. The file is memory mapped region by region, so it is never
+     * copied to the heap.
+     *
+     * @param message The path of the message file.
+     * @return the message source.
+     */
+    @Nonnull
+    static MessageSource of(@Nonnull final Path message) {
+        requireNonNull(message);
+
+        return messageDigest -> {
+            try (FileChannel channel = FileChannel.open(message, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                    final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(MAPPED_REGION_SIZE, size - position));
+                    messageDigest.update(region);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the size of the buffer for reading the given channel. Small messages get a buffer of their size.
+     */
+    private static int getBufferSize(@Nonnull final ReadableByteChannel channel) throws IOException {
+        final int bufferSize = TuningConfig.getDefault().getIoBufferSize();
+        if (channel instanceof SeekableByteChannel) {
+            final SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            return (int) Math.max(1, Math.min(bufferSize, seekable.size() - seekable.position()));
+        }
+        return bufferSize;
+    }
+}
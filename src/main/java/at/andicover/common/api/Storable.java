@@ -3,6 +3,9 @@ package at.andicover.common.api;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Interface for storable key objects.
@@ -23,11 +26,82 @@ public interface Storable {
     @Nonnull
     byte[] getBytes();
 
+    /**
+     * Returns the number of bytes written by {@link #writeTo(ByteBuffer)} and {@link #writeTo(WritableByteChannel)}.
+     *
+     * @return the size of the encoded object in byte.
+     */
+    long encodedSize();
+
+    /**
+     * Writes the key to the given buffer, starting at its current position. The position of the buffer is moved behind
+     * the key. The buffer can be a heap buffer, a direct buffer or a memory mapped file.
+     *
+     * @param buffer The buffer to write to. Must have at least {@link #encodedSize()} bytes remaining.
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough bytes remaining.
+     */
+    void writeTo(@Nonnull ByteBuffer buffer);
+
+    /**
+     * Writes the key into the given buffer, starting at the given index. The position of the buffer is not changed.
+     *
+     * @param buffer The buffer to write to.
+     * @param offset The index of the first byte.
+     * @return the number of written bytes, which is {@link #encodedSize()}.
+     * @throws IndexOutOfBoundsException if the buffer does not have enough room behind the offset.
+     */
+    default int encodeInto(@Nonnull ByteBuffer buffer, int offset) {
+        checkRoom(buffer.limit(), offset);
+        final ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        writeTo(target);
+        return target.position() - offset;
+    }
+
+    /**
+     * Writes the key into the given byte array, starting at the given index. Signatures override this method and write
+     * every field straight to the destination.
+     *
+     * @param destination The byte array to write to.
+     * @param offset      The index of the first byte.
+     * @return the number of written bytes, which is {@link #encodedSize()}.
+     * @throws IndexOutOfBoundsException if the byte array does not have enough room behind the offset.
+     */
+    default int encodeInto(@Nonnull byte[] destination, int offset) {
+        return encodeInto(ByteBuffer.wrap(destination), offset);
+    }
+
+    private void checkRoom(final int length, final int offset) {
+        if (offset < 0 || offset > length || encodedSize() > length - offset) {
+            throw new IndexOutOfBoundsException("Not enough room for " + encodedSize() + " bytes at offset " + offset);
+        }
+    }
+
     /**
      * Writes the key to the given PipedOutputStream.
      *
      * @param outputStream The piped outputstream.
      * @throws IOException any possible IO exceptions.
+     * @deprecated Use {@link #writeTo(WritableByteChannel)} which works with any channel and does not need a helper
+     * thread.
+     */
+    @Deprecated
+    default void writeToPipedOutputStream(@Nonnull PipedOutputStream outputStream) throws IOException {
+        writeTo(Channels.newChannel(outputStream));
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the key to the given channel. Large keys should override this method and write their content piece by
+     * piece instead of creating one big byte array.
+     *
+     * @param channel The channel to write to.
+     * @throws IOException any possible IO exceptions.
      */
-    void writeToPipedOutputStream(@Nonnull PipedOutputStream outputStream) throws IOException;
+    default void writeTo(@Nonnull WritableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(getBytes());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
 }
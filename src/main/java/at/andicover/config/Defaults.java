@@ -1,7 +1,8 @@
 package at.andicover.config;
 
 /**
- * Class with some predefined defaults that are used in the application.
+ * Class with some predefined defaults that are used in the application. Parameters that depend on the machine are
+ * set by the {@link TuningConfig}.
  *
  * @author andreas.schoengruber
  * @version %I%
@@ -11,7 +12,10 @@ public final class Defaults {
     /**
      * How many keys should be reserved by default. The consumer still needs to make sure that always enough keys are
      * reserved!
+     *
+     * @deprecated Replaced by {@link TuningConfig#getKeyReserveCount()}.
      */
+    @Deprecated
     public static final int DEFAULT_KEY_RESERVE_COUNT = 20;
 
     /**
@@ -22,7 +26,10 @@ public final class Defaults {
 
     /**
      * The timeout of message digest instances in the cache in milliseconds.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getDigestCacheTimeout()}.
      */
+    @Deprecated
     public static final int CACHE_TIMEOUT = 60_000;
 
     /**
@@ -33,24 +40,52 @@ public final class Defaults {
      * This is most likely faster than looping through the cache and removing all outdated elements.
      * In case the max entries are set too low this will make the cache useless and decrease performance!
      * </p>
+     *
+     * @deprecated Replaced by {@link TuningConfig#getDigestCacheEntries()}.
      */
+    @Deprecated
     public static final int MAX_CACHE_ENTRIES = 200;
 
     /**
      * Size of asynchronous buffer in byte. One thread writes to it another thread reads from it.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getIoBufferSize()}.
      */
+    @Deprecated
     public static final int DEFAULT_OUTPUT_BUFFER = 16_384;
 
+    /**
+     * Size of the direct buffer in byte that is used when writing keys to a file.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getIoBufferSize()}.
+     */
+    @Deprecated
+    public static final int DEFAULT_FILE_BUFFER = 1_048_576;
+
+    /**
+     * Number of records in the state journal of a private key before it is compacted. Every record has 28 byte.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getJournalRecords()}.
+     */
+    @Deprecated
+    public static final int MAX_JOURNAL_RECORDS = 1_024;
+
     /**
      * Number of top level nodes of the LMS tree we store in memory.
      * Does not include the root node. Current number are the first 15 levels of the tree which result
      * in about 2 MB additional space.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getStoredTopLevelNodes()}.
      */
+    @Deprecated
     public static final int STORED_TOP_LEVEL_NODES = 65_535;
 
     /**
      * Number of threads in the thread pool.
+     *
+     * @deprecated Replaced by {@link TuningConfig#getParallelism()}.
      */
+    @Deprecated
     public static final int THREAD_COUNT = 16;
 
     private Defaults() {
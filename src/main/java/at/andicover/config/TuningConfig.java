@@ -0,0 +1,409 @@
+package at.andicover.config;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tuning parameters of the library that trade memory for time. Instances are immutable, the {@code with} methods
+ * return a modified copy.
+ *
+ * <p>
+ * The library uses {@link #getDefault()} unless a config is passed to an entry point. The default config is read once
+ * from the system properties with the prefix {@value #PROPERTY_PREFIX}, e.g.
+ * {@code -Dat.andicover.lms.parallelism=4}. Parameters that are not set are sized from the available processors and
+ * the max heap of the JVM, see {@link #autoSized(int, long)}, so the same artifact fits small and large machines.
+ * If a property has an invalid value, a warning is logged and the auto sized config is used.
+ * </p>
+ * <p>
+ * Note: The node cache budget, the digest backend, the I/O buffer size, the journal size and the digest cache are
+ * process wide and always taken from the default config. A config passed to an entry point sets the reservation
+ * batch size and the parallelism of that call, its other parameters must match the default config, see
+ * {@link #checkCallParameters()}. Derive it with the {@code with} methods of {@link #getDefault()}.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@Immutable
+public final class TuningConfig {
+
+    /**
+     * Prefix of the system properties read by {@link #fromSystemProperties()}.
+     */
+    public static final String PROPERTY_PREFIX = "at.andicover.lms.";
+
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private static final String PARALLELISM = "parallelism";
+    private static final String STORED_TOP_LEVEL_NODES = "storedTopLevelNodes";
+    private static final String DIGEST_PROVIDER = "digestProvider";
+    private static final String KEY_RESERVE_COUNT = "keyReserveCount";
+    private static final String IO_BUFFER_SIZE = "ioBufferSize";
+    private static final String DIGEST_CACHE_ENTRIES = "digestCacheEntries";
+    private static final String DIGEST_CACHE_TIMEOUT = "digestCacheTimeout";
+    private static final String JOURNAL_RECORDS = "journalRecords";
+
+    private static final int NODE_SIZE = 32;
+    private static final int NODE_HEAP_FRACTION = 512;
+    private static final int MIN_NODE_LEVELS = 10;
+    private static final int MAX_NODE_LEVELS = 20;
+    private static final long LARGE_HEAP = 1L << 30;
+    private static final int SMALL_IO_BUFFER = 16_384;
+    private static final int LARGE_IO_BUFFER = 65_536;
+    private static final int MIN_DIGEST_CACHE_ENTRIES = 200;
+    private static final int DIGEST_CACHE_ENTRIES_PER_PROCESSOR = 16;
+    private static final int KEY_RESERVE = 20;
+    private static final int DIGEST_TIMEOUT = 60_000;
+    private static final int MAX_JOURNAL_RECORDS = 1_024;
+
+    private final int parallelism;
+    private final int storedTopLevelNodes;
+    @CheckForNull
+    private final String digestProvider;
+    private final int keyReserveCount;
+    private final int ioBufferSize;
+    private final int digestCacheEntries;
+    private final int digestCacheTimeout;
+    private final int journalRecords;
+
+    private static final class Holder {
+        private static final TuningConfig DEFAULT = defaultConfig(System.getProperties());
+    }
+
+    private TuningConfig(final int parallelism,
+                         final int storedTopLevelNodes,
+                         @CheckForNull final String digestProvider,
+                         final int keyReserveCount,
+                         final int ioBufferSize,
+                         final int digestCacheEntries,
+                         final int digestCacheTimeout,
+                         final int journalRecords) {
+        this.parallelism = checkPositive(parallelism, PARALLELISM);
+        if (storedTopLevelNodes < 0) {
+            throw new IllegalArgumentException("Stored top level nodes must not be negative");
+        }
+        this.storedTopLevelNodes = storedTopLevelNodes;
+        this.digestProvider = digestProvider;
+        this.keyReserveCount = checkPositive(keyReserveCount, KEY_RESERVE_COUNT);
+        this.ioBufferSize = checkPositive(ioBufferSize, IO_BUFFER_SIZE);
+        this.digestCacheEntries = checkPositive(digestCacheEntries, DIGEST_CACHE_ENTRIES);
+        this.digestCacheTimeout = checkPositive(digestCacheTimeout, DIGEST_CACHE_TIMEOUT);
+        this.journalRecords = checkPositive(journalRecords, JOURNAL_RECORDS);
+    }
+
+    /**
+     * @return the config used by the whole library, read once from the system properties. The auto sized config if
+     * a property is invalid.
+     */
+    @Nonnull
+    public static TuningConfig getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * Reads the default config from the given properties. An invalid property must not fail the class initialization,
+     * every later use of the library would fail with a {@link NoClassDefFoundError}. So it is logged and the auto sized
+     * config is used instead.
+     */
+    @Nonnull
+    static TuningConfig defaultConfig(@Nonnull final Properties properties) {
+        try {
+            return fromProperties(properties);
+        } catch (IllegalArgumentException ex) {
+            LOGGER.log(Level.WARNING, "Invalid tuning property, the auto sized config is used.", ex);
+            return autoSized();
+        }
+    }
+
+    /**
+     * @return a config sized for the available processors and the max heap of this JVM.
+     */
+    @Nonnull
+    public static TuningConfig autoSized() {
+        return autoSized(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory());
+    }
+
+    /**
+     * Creates a config sized for the given machine. One worker per processor, 1/512 of the heap for the stored top
+     * level nodes of a tree, rounded down to complete levels, and larger I/O buffers from 1 GB heap on. The digest
+     * cache holds enough entries for many threads per processor.
+     *
+     * @param processors The number of available processors.
+     * @param maxHeap    The max heap in byte.
+     * @return the new config.
+     */
+    @Nonnull
+    public static TuningConfig autoSized(final int processors, final long maxHeap) {
+        checkPositive(processors, "processors");
+        if (maxHeap <= 0) {
+            throw new IllegalArgumentException("Max heap must be positive");
+        }
+
+        final int nodeLevels = Math.max(MIN_NODE_LEVELS, Math.min(MAX_NODE_LEVELS,
+                63 - Long.numberOfLeadingZeros(maxHeap / NODE_HEAP_FRACTION / NODE_SIZE + 2)));
+        final int ioBuffer;
+        if (maxHeap < LARGE_HEAP) {
+            ioBuffer = SMALL_IO_BUFFER;
+        } else {
+            ioBuffer = LARGE_IO_BUFFER;
+        }
+        return new TuningConfig(processors, (1 << nodeLevels) - 2, null, KEY_RESERVE, ioBuffer,
+                Math.max(MIN_DIGEST_CACHE_ENTRIES, processors * DIGEST_CACHE_ENTRIES_PER_PROCESSOR), DIGEST_TIMEOUT,
+                MAX_JOURNAL_RECORDS);
+    }
+
+    /**
+     * @return the auto sized config overridden by the system properties, see {@link #fromProperties(Properties)}.
+     * @throws IllegalArgumentException if a property has an invalid value.
+     */
+    @Nonnull
+    public static TuningConfig fromSystemProperties() {
+        return fromProperties(System.getProperties());
+    }
+
+    /**
+     * Creates the auto sized config and overrides the parameters set in the given properties. The keys are
+     * {@value #PROPERTY_PREFIX} followed by parallelism, storedTopLevelNodes, digestProvider, keyReserveCount,
+     * ioBufferSize, digestCacheEntries, digestCacheTimeout or journalRecords.
+     *
+     * @param properties The properties.
+     * @return the new config.
+     * @throws IllegalArgumentException if a property has an invalid value.
+     */
+    @Nonnull
+    public static TuningConfig fromProperties(@Nonnull final Properties properties) {
+        requireNonNull(properties);
+
+        final TuningConfig config = autoSized();
+        String digestProvider = properties.getProperty(PROPERTY_PREFIX + DIGEST_PROVIDER);
+        if (digestProvider == null || digestProvider.isBlank()) {
+            digestProvider = config.digestProvider;
+        }
+        return new TuningConfig(
+                getInt(properties, PARALLELISM, config.parallelism),
+                getInt(properties, STORED_TOP_LEVEL_NODES, config.storedTopLevelNodes),
+                digestProvider,
+                getInt(properties, KEY_RESERVE_COUNT, config.keyReserveCount),
+                getInt(properties, IO_BUFFER_SIZE, config.ioBufferSize),
+                getInt(properties, DIGEST_CACHE_ENTRIES, config.digestCacheEntries),
+                getInt(properties, DIGEST_CACHE_TIMEOUT, config.digestCacheTimeout),
+                getInt(properties, JOURNAL_RECORDS, config.journalRecords));
+    }
+
+    /**
+     * @return the number of workers for tree generation.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return how many nodes below the root of a LMS tree are kept in memory. Nodes that are not stored are
+     * calculated again from the leaves for every signature.
+     */
+    public int getStoredTopLevelNodes() {
+        return storedTopLevelNodes;
+    }
+
+    /**
+     * @return the name of the security provider for SHA-256 or null for the first provider that supports it.
+     */
+    @CheckForNull
+    public String getDigestProvider() {
+        return digestProvider;
+    }
+
+    /**
+     * @return how many keys are reserved and stored at once.
+     */
+    public int getKeyReserveCount() {
+        return keyReserveCount;
+    }
+
+    /**
+     * @return the size of the buffers used when reading, writing or hashing in chunks in byte.
+     */
+    public int getIoBufferSize() {
+        return ioBufferSize;
+    }
+
+    /**
+     * @return how many message digests are held by the digest cache before it is cleared.
+     */
+    public int getDigestCacheEntries() {
+        return digestCacheEntries;
+    }
+
+    /**
+     * @return after how many milliseconds an unused message digest of the cache is created again.
+     */
+    public int getDigestCacheTimeout() {
+        return digestCacheTimeout;
+    }
+
+    /**
+     * @return how many records the state journal of a private key holds before it is compacted.
+     */
+    public int getJournalRecords() {
+        return journalRecords;
+    }
+
+    /**
+     * Checks that this config can be passed to a single call. Only the reservation batch size and the parallelism
+     * apply to a call, so a different process wide parameter would be ignored without notice.
+     *
+     * @throws IllegalArgumentException if a process wide parameter differs from the default config.
+     */
+    public void checkCallParameters() {
+        final TuningConfig defaults = getDefault();
+        checkProcessWide(storedTopLevelNodes == defaults.storedTopLevelNodes, STORED_TOP_LEVEL_NODES);
+        checkProcessWide(Objects.equals(digestProvider, defaults.digestProvider), DIGEST_PROVIDER);
+        checkProcessWide(ioBufferSize == defaults.ioBufferSize, IO_BUFFER_SIZE);
+        checkProcessWide(digestCacheEntries == defaults.digestCacheEntries, DIGEST_CACHE_ENTRIES);
+        checkProcessWide(digestCacheTimeout == defaults.digestCacheTimeout, DIGEST_CACHE_TIMEOUT);
+        checkProcessWide(journalRecords == defaults.journalRecords, JOURNAL_RECORDS);
+    }
+
+    /**
+     * @param value The number of workers for tree generation.
+     * @return a copy of this config with the given parallelism.
+     */
+    @Nonnull
+    public TuningConfig withParallelism(final int value) {
+        return new TuningConfig(value, storedTopLevelNodes, digestProvider, keyReserveCount, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value How many nodes below the root of a LMS tree are kept in memory.
+     * @return a copy of this config with the given node cache budget.
+     */
+    @Nonnull
+    public TuningConfig withStoredTopLevelNodes(final int value) {
+        return new TuningConfig(parallelism, value, digestProvider, keyReserveCount, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value The name of the security provider for SHA-256 or null for the first provider that supports it.
+     * @return a copy of this config with the given digest backend.
+     */
+    @Nonnull
+    public TuningConfig withDigestProvider(@CheckForNull final String value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, value, keyReserveCount, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value How many keys are reserved and stored at once.
+     * @return a copy of this config with the given reservation batch size.
+     */
+    @Nonnull
+    public TuningConfig withKeyReserveCount(final int value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, digestProvider, value, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value The size of the I/O buffers in byte.
+     * @return a copy of this config with the given I/O buffer size.
+     */
+    @Nonnull
+    public TuningConfig withIoBufferSize(final int value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, digestProvider, keyReserveCount, value,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value How many message digests are held by the digest cache.
+     * @return a copy of this config with the given digest cache size.
+     */
+    @Nonnull
+    public TuningConfig withDigestCacheEntries(final int value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, digestProvider, keyReserveCount, ioBufferSize,
+                value, digestCacheTimeout, journalRecords);
+    }
+
+    /**
+     * @param value The timeout of unused message digests of the cache in milliseconds.
+     * @return a copy of this config with the given digest cache timeout.
+     */
+    @Nonnull
+    public TuningConfig withDigestCacheTimeout(final int value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, digestProvider, keyReserveCount, ioBufferSize,
+                digestCacheEntries, value, journalRecords);
+    }
+
+    /**
+     * @param value How many records the state journal of a private key holds before it is compacted.
+     * @return a copy of this config with the given journal size.
+     */
+    @Nonnull
+    public TuningConfig withJournalRecords(final int value) {
+        return new TuningConfig(parallelism, storedTopLevelNodes, digestProvider, keyReserveCount, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, value);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TuningConfig that = (TuningConfig) o;
+        return parallelism == that.parallelism && storedTopLevelNodes == that.storedTopLevelNodes
+                && keyReserveCount == that.keyReserveCount && ioBufferSize == that.ioBufferSize
+                && digestCacheEntries == that.digestCacheEntries && digestCacheTimeout == that.digestCacheTimeout
+                && journalRecords == that.journalRecords && Objects.equals(digestProvider, that.digestProvider);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(parallelism, storedTopLevelNodes, digestProvider, keyReserveCount, ioBufferSize,
+                digestCacheEntries, digestCacheTimeout, journalRecords);
+    }
+
+    @Override
+    @Nonnull
+    public String toString() {
+        return "TuningConfig{parallelism=" + parallelism + ", storedTopLevelNodes=" + storedTopLevelNodes
+                + ", digestProvider=" + digestProvider + ", keyReserveCount=" + keyReserveCount
+                + ", ioBufferSize=" + ioBufferSize + ", digestCacheEntries=" + digestCacheEntries
+                + ", digestCacheTimeout=" + digestCacheTimeout + ", journalRecords=" + journalRecords + '}';
+    }
+
+    private static int getInt(@Nonnull final Properties properties, @Nonnull final String name, final int fallback) {
+        final String value = properties.getProperty(PROPERTY_PREFIX + name);
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid value of property " + PROPERTY_PREFIX + name, ex);
+        }
+    }
+
+    private static void checkProcessWide(final boolean matchesDefault, @Nonnull final String name) {
+        if (!matchesDefault) {
+            throw new IllegalArgumentException("Parameter " + name
+                    + " is process wide and must match the default config");
+        }
+    }
+
+    private static int checkPositive(final int value, @Nonnull final String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Parameter " + name + " must be positive");
+        }
+        return value;
+    }
+}
@@ -1,6 +1,7 @@
 package at.andicover.digest.api;
 
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
 
 /**
  * Custom message digest. Implementations are supposed to create one MessageDigest instance once.
@@ -38,4 +39,43 @@ public interface CustomMessageDigest {
      */
     @Nonnull
     byte[] digest(@Nonnull byte[] message);
+
+    /**
+     * Adds the given bytes to an incremental digest computation, which is completed by {@link #digest()}.
+     *
+     * @param input  the bytes to add.
+     * @param offset the index of the first byte.
+     * @param length the number of bytes.
+     */
+    void update(@Nonnull byte[] input, int offset, int length);
+
+    /**
+     * Adds the remaining bytes of the given buffer to an incremental digest computation. The position of the buffer is
+     * moved to its limit.
+     *
+     * @param input the buffer, either a heap or a direct buffer.
+     */
+    void update(@Nonnull ByteBuffer input);
+
+    /**
+     * Completes the incremental digest computation and resets the digest.
+     *
+     * @return the hash of all added bytes.
+     */
+    @Nonnull
+    byte[] digest();
+
+    /**
+     * Completes the incremental digest computation, writes the hash into the given array and resets the digest. Does
+     * not allocate, so it can be used for hash chains that reuse one buffer.
+     *
+     * @param output the array to write the hash to.
+     * @param offset the index the hash is written to. {@link #getDigestLength()} bytes must be available.
+     */
+    void digest(@Nonnull byte[] output, int offset);
+
+    /**
+     * @return the length of the hash in byte.
+     */
+    int getDigestLength();
 }
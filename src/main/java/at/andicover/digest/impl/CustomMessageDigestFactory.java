@@ -7,12 +7,14 @@ import java.security.NoSuchAlgorithmException;
 
 /**
  * Factory to create the correct {@link CustomMessageDigest} according to the given algorithm.
- * Keeping the same instance for several iterations is a big performance improvement.
+ * Keeping the same instance for several iterations is a big performance improvement. Objects that are used for many
+ * operations, like {@link at.andicover.lmots.impl.LMOTSContext}, create their own instance here instead of using the
+ * {@link MessageDigestCache}.
  *
  * @author andreas.schoengruber
  * @version %I%
  */
-final class CustomMessageDigestFactory {
+public final class CustomMessageDigestFactory {
 
     private CustomMessageDigestFactory() {
     }
@@ -1,15 +1,22 @@
 package at.andicover.digest.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.digest.api.CustomMessageDigest;
 import org.apache.commons.lang3.ArrayUtils;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Objects;
 
 /**
- * SHA-256 implementation with customized output length. Internally uses {@link MessageDigest} and trims
- * the output to the defined length.
+ * SHA-256 implementation with customized output length. Internally uses {@link MessageDigest} of the security provider
+ * set by {@link TuningConfig#getDigestProvider()} and trims the output to the defined length.
  *
  * @author andreas.schoengruber
  * @version %I%
@@ -21,19 +28,73 @@ final class CustomSha256Digest implements CustomMessageDigest {
     private static final int DEFAULT_LENGTH = 32;
     private final int outputLength;
     private final MessageDigest messageDigest;
+    private final byte[] fullHash = new byte[DEFAULT_LENGTH];
 
     CustomSha256Digest(final int outputLength) throws NoSuchAlgorithmException {
         this.outputLength = outputLength;
-        this.messageDigest = MessageDigest.getInstance(SHA_256);
+        this.messageDigest = getMessageDigest(TuningConfig.getDefault().getDigestProvider());
+    }
+
+    @Nonnull
+    private static MessageDigest getMessageDigest(@CheckForNull final String providerName)
+            throws NoSuchAlgorithmException {
+        if (providerName == null) {
+            return MessageDigest.getInstance(SHA_256);
+        }
+        final Provider provider = Security.getProvider(providerName);
+        if (provider == null) {
+            throw new NoSuchAlgorithmException(String.format("Provider '%s' not installed", providerName));
+        }
+        return MessageDigest.getInstance(SHA_256, provider);
     }
 
     @Override
     @Nonnull
     public byte[] digest(@Nonnull final byte[] message) {
-        final byte[] hash = messageDigest.digest(message);
+        messageDigest.update(message);
+        return digest();
+    }
+
+    @Override
+    public void update(@Nonnull final byte[] input, final int offset, final int length) {
+        messageDigest.update(input, offset, length);
+    }
+
+    @Override
+    public void update(@Nonnull final ByteBuffer input) {
+        messageDigest.update(input);
+    }
+
+    @Override
+    @Nonnull
+    public byte[] digest() {
+        final byte[] hash = messageDigest.digest();
         if (outputLength == DEFAULT_LENGTH) {
             return hash;
         }
         return ArrayUtils.subarray(hash, 0, outputLength);
     }
+
+    /**
+     * The full hash is written to a scratch array first if the output is trimmed.
+     */
+    @Override
+    public void digest(@Nonnull final byte[] output, final int offset) {
+        Objects.checkFromIndexSize(offset, outputLength, output.length);
+        try {
+            if (outputLength == DEFAULT_LENGTH) {
+                messageDigest.digest(output, offset, DEFAULT_LENGTH);
+            } else {
+                messageDigest.digest(fullHash, 0, DEFAULT_LENGTH);
+                System.arraycopy(fullHash, 0, output, offset, outputLength);
+            }
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int getDigestLength() {
+        return outputLength;
+    }
 }
@@ -1,9 +1,12 @@
 package at.andicover.digest.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.digest.api.CustomMessageDigest;
 import com.github.aelstad.keccakj.fips202.Shake256;
 
 import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,12 +31,55 @@ final class CustomShakeDigest implements CustomMessageDigest {
     @Override
     @Nonnull
     public byte[] digest(@Nonnull final byte[] message) {
-        final byte[] digest = new byte[this.outputLength];
         sponge.getAbsorbStream().write(message);
+        return digest();
+    }
+
+    @Override
+    public void update(@Nonnull final byte[] input, final int offset, final int length) {
+        sponge.getAbsorbStream().write(input, offset, length);
+    }
+
+    /**
+     * The sponge only absorbs byte arrays, so direct buffers are copied in chunks.
+     */
+    @Override
+    public void update(@Nonnull final ByteBuffer input) {
+        if (input.hasArray()) {
+            update(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+            return;
+        }
+        final byte[] chunk = new byte[Math.min(input.remaining(), TuningConfig.getDefault().getIoBufferSize())];
+        while (input.hasRemaining()) {
+            final int length = Math.min(input.remaining(), chunk.length);
+            input.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    @Override
+    @Nonnull
+    public byte[] digest() {
+        final byte[] digest = new byte[this.outputLength];
         if (-1 == sponge.getSqueezeStream().read(digest)) {
             LOGGER.log(Level.SEVERE, "SHAKE-256: Error reading data");
         }
         sponge.reset();
         return digest;
     }
+
+    @Override
+    public void digest(@Nonnull final byte[] output, final int offset) {
+        Objects.checkFromIndexSize(offset, outputLength, output.length);
+        if (-1 == sponge.getSqueezeStream().read(output, offset, outputLength)) {
+            LOGGER.log(Level.SEVERE, "SHAKE-256: Error reading data");
+        }
+        sponge.reset();
+    }
+
+    @Override
+    public int getDigestLength() {
+        return outputLength;
+    }
 }
@@ -1,5 +1,6 @@
 package at.andicover.digest.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.digest.api.CustomMessageDigest;
 
 import javax.annotation.Nonnull;
@@ -7,9 +8,6 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import static at.andicover.config.Defaults.CACHE_TIMEOUT;
-import static at.andicover.config.Defaults.MAX_CACHE_ENTRIES;
-
 /**
  * Simple cache that holds one {@link CustomMessageDigest} instance per thread and algorithm.
  * It aims to drastically reduce instance creations. Because most of the time each thread uses always the same
@@ -18,7 +16,7 @@ import static at.andicover.config.Defaults.MAX_CACHE_ENTRIES;
  * <p>
  * Everytime an instance is fetched from the cache its timeout is reset. With this we make sure to not timeout an
  * instance that is constantly being used. If the cache is full it will be cleared and all instances need to be created
- * again. Make sure that the max cache size is set high enough {@link at.andicover.config.Defaults#MAX_CACHE_ENTRIES}.
+ * again. Make sure that the max cache size is set high enough {@link TuningConfig#getDigestCacheEntries()}.
  *
  * <p>
  * Note: Does not improve anything if the algorithm changes for each call!
@@ -30,6 +28,8 @@ import static at.andicover.config.Defaults.MAX_CACHE_ENTRIES;
 public final class MessageDigestCache {
 
     private final Map<Long, CacheValue> data = new ConcurrentHashMap<>();
+    private final int maxEntries = TuningConfig.getDefault().getDigestCacheEntries();
+    private final int timeout = TuningConfig.getDefault().getDigestCacheTimeout();
 
     private static class InstanceHolder {
         public static final MessageDigestCache INSTANCE = new MessageDigestCache();
@@ -66,12 +66,12 @@ public final class MessageDigestCache {
     @Nonnull
     private CacheValue addToCache(@Nonnull final String algorithm, final long threadId)
             throws NoSuchAlgorithmException {
-        if (data.size() >= MAX_CACHE_ENTRIES) {
+        if (data.size() >= maxEntries) {
             cleanUp();
         }
 
         final CustomMessageDigest customMessageDigest = CustomMessageDigestFactory.getDigest(algorithm);
-        final CacheValue cacheValue = new CacheValue(customMessageDigest, algorithm, CACHE_TIMEOUT);
+        final CacheValue cacheValue = new CacheValue(customMessageDigest, algorithm, timeout);
         data.put(threadId, cacheValue);
         return cacheValue;
     }
@@ -10,6 +10,7 @@ import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Interface for the HSS private key.
@@ -51,9 +52,28 @@ public interface HSSPrivateKey extends Storable, KeySize {
     @CheckForNull
     String getFilename();
 
+    /**
+     * Keys with a state file use the two-file layout. The file returned by {@link #getFilename()} then only holds the
+     * key material of the top level tree and is never written again. All changes of the state go to the state file.
+     *
+     * @return where to store the state of the private key or null if the whole key is stored in one file.
+     */
+    @CheckForNull
+    String getStateFilename();
+
+    /**
+     * Shared keys use the two-file layout and are used by several processes at the same time. Every process claims
+     * ranges of leaves from the state file, see {@link at.andicover.util.KeyStateFile#claim(HSSPrivateKey, int)}, and
+     * signs from its own range only. The state is never written apart from claiming leaves.
+     *
+     * @return if the key is shared by several processes.
+     */
+    boolean isShared();
+
     /**
      * Allows reserving several keys. The future state is saved on disk. If the application crashes all
-     * reserved keys that weren't used are lost.
+     * reserved keys that weren't used are lost. Shared keys claim a new range of leaves instead, the reserved keys
+     * that were not used yet are lost as well.
      *
      * @param numberOfKeys how many keys should be reserved.
      * @throws NoSuchAlgorithmException if the given hashing algorithm does not exist.
@@ -65,4 +85,23 @@ public interface HSSPrivateKey extends Storable, KeySize {
      * @return number of reserved keys that were not used.
      */
     int getReservedKeys();
+
+    /**
+     * The lock that guards the state of the key: claiming leaves, reserving keys, rolling over trees and storing the
+     * key. A lock is used instead of the monitor of the key, so threads that wait for it or do file I/O while holding
+     * it do not pin the carrier threads of virtual threads.
+     *
+     * <p>
+     * The LMS private keys, public keys and signatures of the chain are replaced in place while the lock is held.
+     * Callers that read several of them must hold the lock as well, otherwise they can see trees of two different
+     * chains.
+     * </p>
+     * <p>
+     * Note: Implementations must return the same lock on every call.
+     * </p>
+     *
+     * @return the lock of the key.
+     */
+    @Nonnull
+    Lock getLock();
 }
@@ -1,27 +1,50 @@
 package at.andicover.hss.impl;
 
+import at.andicover.common.api.MessageSource;
+import at.andicover.config.TuningConfig;
+import at.andicover.digest.api.CustomMessageDigest;
+import at.andicover.digest.impl.MessageDigestCache;
 import at.andicover.hss.api.HSSKeyPair;
 import at.andicover.hss.api.HSSPrivateKey;
 import at.andicover.hss.api.HSSPublicKey;
 import at.andicover.hss.api.HSSSignature;
+import at.andicover.lmots.api.LMOTSPrivateKey;
 import at.andicover.lmots.api.LMOTSType;
 import at.andicover.lms.api.LMSKeyPair;
 import at.andicover.lms.api.LMSPrivateKey;
 import at.andicover.lms.api.LMSPublicKey;
 import at.andicover.lms.api.LMSSignature;
 import at.andicover.lms.api.LMSType;
+import at.andicover.lms.impl.LMSContext;
 import at.andicover.lms.impl.LMS;
 import at.andicover.util.MathUtil;
 import at.andicover.util.PersistenceUtil;
+import at.andicover.util.PreallocatedKeyFile;
+import at.andicover.util.TaskScheduler;
+import at.andicover.util.ThreadUtil;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
 
-import static at.andicover.config.Defaults.DEFAULT_KEY_RESERVE_COUNT;
+import static at.andicover.util.ByteUtil.intTo1ByteArray;
+import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.merge;
+import static at.andicover.util.SecurityString.getdChildRand;
+import static at.andicover.util.SecurityString.getdChildSeed;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
@@ -30,8 +53,10 @@ import static java.util.Objects.requireNonNull;
  * signatures using the Hierarchical Signature Schema.
  *
  * <p>
- * Note: This class is thread-safe if you make sure that no private key file is accessed by more than one thread.
- * Using the same file for different private keys does not make sense anyway.
+ * Note: This class is thread-safe. Several threads may sign with the same private key. Only the leaf allocation and
+ * tree rollovers are done while holding the lock of the private key, the signature itself is computed in parallel.
+ * Use {@link HSSConcurrentSigner} if one key has to serve many threads. Make sure that no private key file is accessed
+ * by more than one private key instance. Using the same file for different private keys does not make sense anyway.
  * </p>
  * <p>
  * To improve the performance of the large parameter sets on the first run you can perform a few warmup runs with a
@@ -47,7 +72,7 @@ import static java.util.Objects.requireNonNull;
  * Hash-Based Signature Schemes</a>
  */
 @ThreadSafe
-@SuppressWarnings("PMD.ShortClassName")
+@SuppressWarnings({"PMD.TooManyMethods", "PMD.ShortClassName"})
 public final class HSS {
 
     private HSS() {
@@ -172,6 +197,98 @@ public final class HSS {
                                           @Nonnull final LMOTSType lmotsType,
                                           final byte[] seed,
                                           final String filename) throws NoSuchAlgorithmException, IOException {
+        return generateKeys(levels, lmsTypeFirstLevel, lmsTypeOtherLevels, lmotsType, seed, filename,
+                TuningConfig.getDefault());
+    }
+
+    /**
+     * Generates the HSS private/public key pair with the given tuning parameters, see
+     * {@link #generateKeys(int, LMSType, LMSType, LMOTSType, byte[], String)}. The config sets how many keys are
+     * reserved and how many workers of the {@link TaskScheduler} generate the trees.
+     *
+     * @param levels             The tree levels.
+     * @param lmsTypeFirstLevel  The LMS parameters for the first level.
+     * @param lmsTypeOtherLevels The LMS parameters for all other levels.
+     * @param lmotsType          The LMOTS parameters.
+     * @param seed               The seed for the RNG.
+     * @param filename           Where to store the private key on disk.
+     * @param config             The tuning parameters.
+     * @return The HSS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     * @throws IllegalArgumentException if a process wide parameter of the config differs from the default config.
+     */
+    @Nonnull
+    public static HSSKeyPair generateKeys(final int levels,
+                                          @Nonnull final LMSType lmsTypeFirstLevel,
+                                          @Nonnull final LMSType lmsTypeOtherLevels,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          @CheckForNull final byte[] seed,
+                                          @CheckForNull final String filename,
+                                          @Nonnull final TuningConfig config)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(config).checkCallParameters();
+
+        return generateKeys(levels, lmsTypeFirstLevel, lmsTypeOtherLevels, lmotsType, seed, filename, null, config);
+    }
+
+    /**
+     * Generates the HSS private/public key pair on the given executor, see
+     * {@link #generateKeys(int, LMSType, LMSType, LMOTSType, byte[], String)}. The trees of all levels are generated
+     * and the key is stored by a task of the executor, no other threads are used.
+     *
+     * @param levels    The tree levels.
+     * @param lmsType   The LMS parameters for all levels.
+     * @param lmotsType The LMOTS parameters.
+     * @param executor  The executor that runs the key generation.
+     * @return The future of the HSS keypair.
+     */
+    @Nonnull
+    public static CompletableFuture<HSSKeyPair> generateKeysAsync(final int levels,
+                                                                  @Nonnull final LMSType lmsType,
+                                                                  @Nonnull final LMOTSType lmotsType,
+                                                                  @Nonnull final Executor executor) {
+        return generateKeysAsync(levels, lmsType, lmsType, lmotsType, null, null, executor);
+    }
+
+    /**
+     * Generates the HSS private/public key pair on the given executor, see
+     * {@link #generateKeys(int, LMSType, LMSType, LMOTSType, byte[], String)}. The trees of all levels are generated
+     * and the key is stored by a task of the executor, no other threads are used.
+     *
+     * @param levels             The tree levels.
+     * @param lmsTypeFirstLevel  The LMS parameters for the first level.
+     * @param lmsTypeOtherLevels The LMS parameters for all other levels.
+     * @param lmotsType          The LMOTS parameters.
+     * @param seed               The seed for the RNG.
+     * @param filename           Where to store the private key on disk.
+     * @param executor           The executor that runs the key generation.
+     * @return The future of the HSS keypair.
+     */
+    @Nonnull
+    public static CompletableFuture<HSSKeyPair> generateKeysAsync(final int levels,
+                                                                  @Nonnull final LMSType lmsTypeFirstLevel,
+                                                                  @Nonnull final LMSType lmsTypeOtherLevels,
+                                                                  @Nonnull final LMOTSType lmotsType,
+                                                                  @CheckForNull final byte[] seed,
+                                                                  @CheckForNull final String filename,
+                                                                  @Nonnull final Executor executor) {
+        requireNonNull(executor);
+
+        return ThreadUtil.supplyAsync(() -> generateKeys(levels, lmsTypeFirstLevel, lmsTypeOtherLevels, lmotsType,
+                seed, filename, executor, TuningConfig.getDefault()), executor);
+    }
+
+    @Nonnull
+    private static HSSKeyPair generateKeys(final int levels,
+                                           @Nonnull final LMSType lmsTypeFirstLevel,
+                                           @Nonnull final LMSType lmsTypeOtherLevels,
+                                           @Nonnull final LMOTSType lmotsType,
+                                           @CheckForNull final byte[] seed,
+                                           @CheckForNull final String filename,
+                                           @CheckForNull final Executor executor,
+                                           @Nonnull final TuningConfig config)
+            throws NoSuchAlgorithmException, IOException {
         requireNonNull(lmsTypeFirstLevel);
         requireNonNull(lmsTypeOtherLevels);
         requireNonNull(lmotsType);
@@ -184,39 +301,64 @@ public final class HSS {
         final LMSPublicKey[] publicKeys = new LMSPublicKey[levels];
         final LMSSignature[] signatures = new LMSSignature[levels];
 
-        LMSKeyPair lmsKeyPair = LMS.generateKeys(lmsTypeFirstLevel, lmotsType, seed);
-        privateKeys[0] = lmsKeyPair.getPrivateKey();
-        publicKeys[0] = lmsKeyPair.getPublicKey();
-
-        //If we have more than one level we need to reserve just one key in the top level.
-        if (levels > 1) {
-            privateKeys[0].reserveKeys(1);
-        } else {
-            privateKeys[0].reserveKeys(DEFAULT_KEY_RESERVE_COUNT);
+        // With a file the key material is written into the mapped sections of the key file while it is generated.
+        PreallocatedKeyFile keyFile = null;
+        if (filename != null) {
+            keyFile = PreallocatedKeyFile.create(filename, levels, lmsTypeFirstLevel, lmsTypeOtherLevels, lmotsType);
         }
+        try {
+            final LMSKeyPair lmsKeyPair =
+                    generateTree(lmsTypeFirstLevel, lmotsType, seed, keyFile, 0, executor, config);
+            privateKeys[0] = lmsKeyPair.getPrivateKey();
+            publicKeys[0] = lmsKeyPair.getPublicKey();
 
-        for (int i = 1; i < levels; i++) {
-            lmsKeyPair = LMS.generateKeys(lmsTypeOtherLevels, lmotsType,
-                    SecureRandom.getInstanceStrong().generateSeed(lmotsType.getN()));
-            privateKeys[i] = lmsKeyPair.getPrivateKey();
-            publicKeys[i] = lmsKeyPair.getPublicKey();
-
-            final LMSPrivateKey lmsPrivateKey = privateKeys[i - 1];
-            if (!lmsPrivateKey.hasReservedKey()) {
-                lmsPrivateKey.reserveKeys(DEFAULT_KEY_RESERVE_COUNT);
+            // Upper levels reserve exactly one key per child tree. With that the reserved keys of an upper level
+            // always point to the leaf that signed the current child and the whole chain can be derived again from
+            // them.
+            for (int i = 1; i < levels; i++) {
+                privateKeys[i - 1].reserveKeys(1);
+                final LMOTSPrivateKey parentLeaf = privateKeys[i - 1].getNextLmotsKey();
+                buildChildTree(privateKeys, publicKeys, signatures, i, lmsTypeOtherLevels, parentLeaf, keyFile,
+                        executor, TaskScheduler.Priority.BULK, config);
             }
-            signatures[i - 1] = LMS.generateSignature(publicKeys[i].getKey(), lmsPrivateKey);
+            privateKeys[levels - 1].reserveKeys(config.getKeyReserveCount());
 
-            if (i == levels - 1 && !privateKeys[i].hasReservedKey()) {
-                privateKeys[i].reserveKeys(DEFAULT_KEY_RESERVE_COUNT);
+            final HSSPublicKey hssPublicKey = new HSSPublicKeyImpl(levels, publicKeys[0]);
+            final HSSPrivateKey hssPrivateKey =
+                    new HSSPrivateKeyImpl(levels, privateKeys, publicKeys, signatures, filename);
+            if (keyFile != null) {
+                keyFile.complete(hssPrivateKey, executor);
+            }
+            return new HSSKeyPairImpl(hssPrivateKey, hssPublicKey);
+        } finally {
+            if (keyFile != null) {
+                keyFile.close();
             }
         }
+    }
 
-        final HSSPublicKey hssPublicKey = new HSSPublicKeyImpl(levels, publicKeys[0]);
-        final HSSPrivateKey hssPrivateKey =
-                new HSSPrivateKeyImpl(levels, privateKeys, publicKeys, signatures, filename);
-        PersistenceUtil.storeKey(hssPrivateKey);
-        return new HSSKeyPairImpl(hssPrivateKey, hssPublicKey);
+    /**
+     * Generates the LMS tree of the given level. With a key file the key material is written into its sections, the
+     * lower levels only store the seed they are generated from. Without executor the LMS tree is generated by bulk
+     * tasks of the {@link TaskScheduler}. The config limits the number of workers.
+     */
+    @Nonnull
+    private static LMSKeyPair generateTree(@Nonnull final LMSType lmsType,
+                                           @Nonnull final LMOTSType lmotsType,
+                                           final byte[] seed,
+                                           @CheckForNull final PreallocatedKeyFile keyFile,
+                                           final int level,
+                                           @CheckForNull final Executor executor,
+                                           @Nonnull final TuningConfig config) throws NoSuchAlgorithmException {
+        if (keyFile == null) {
+            return LMS.generateKeys(lmsType, lmotsType, seed, executor, config);
+        }
+        if (level > 0) {
+            // The key generation overwrites the seed, lower levels only store it in the file.
+            keyFile.setGenerationSeed(level, requireNonNull(seed));
+        }
+        return LMS.generateKeys(lmsType, lmotsType, seed, keyFile.getSeeds(level), keyFile.getLeafNodes(level),
+                executor, config);
     }
 
     /**
@@ -251,9 +393,283 @@ public final class HSS {
                                                  @Nonnull final HSSPrivateKey privateKey)
             throws NoSuchAlgorithmException, IOException {
         requireNonNull(message);
+
+        return generateSignature(MessageSource.of(message), privateKey);
+    }
+
+    /**
+     * Generates a HSS signature for the message read from the given stream. The stream is read until its end but not
+     * closed.
+     *
+     * @param message    The stream of the original message.
+     * @param privateKey The HSS private key.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final InputStream message,
+                                                 @Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(MessageSource.of(message), privateKey);
+    }
+
+    /**
+     * Generates a HSS signature for the message read from the given channel. The channel is read until its end but not
+     * closed.
+     *
+     * @param message    The channel of the original message.
+     * @param privateKey The HSS private key.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final ReadableByteChannel message,
+                                                 @Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(MessageSource.of(message), privateKey);
+    }
+
+    /**
+     * Generates a HSS signature for the remaining bytes of the given buffer. The position of the buffer is not changed.
+     *
+     * @param message    The original message, either a heap buffer, a direct buffer or a memory mapped file.
+     * @param privateKey The HSS private key.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final ByteBuffer message,
+                                                 @Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(MessageSource.of(message), privateKey);
+    }
+
+    /**
+     * Generates a HSS signature for the content of the given file. The file is memory mapped instead of read to the
+     * heap.
+     *
+     * @param message    The path of the original message.
+     * @param privateKey The HSS private key.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final Path message,
+                                                 @Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(MessageSource.of(message), privateKey);
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source. The message is hashed incrementally and never
+     * held in memory as a whole.
+     *
+     * <p>
+     * Note: The leaf is claimed before the message is read. If the message cannot be read the leaf is lost, it is
+     * never used for a second message.
+     * </p>
+     *
+     * @param message    The source of the original message.
+     * @param privateKey The HSS private key.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final MessageSource message,
+                                                 @Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(message, privateKey, TuningConfig.getDefault());
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source with the given tuning parameters, see
+     * {@link #generateSignature(MessageSource, HSSPrivateKey)}. The config sets how many keys are reserved when the
+     * reserved keys are used up and how many workers generate the child trees of a rollover.
+     *
+     * @param message    The source of the original message.
+     * @param privateKey The HSS private key.
+     * @param config     The tuning parameters.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     * @throws IllegalArgumentException if a process wide parameter of the config differs from the default config.
+     */
+    @Nonnull
+    public static HSSSignature generateSignature(@Nonnull final MessageSource message,
+                                                 @Nonnull final HSSPrivateKey privateKey,
+                                                 @Nonnull final TuningConfig config)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(config).checkCallParameters();
+
+        return generateSignature(message, privateKey, null, null, config);
+    }
+
+    /**
+     * Generates a HSS signature for the given message as interactive task of the {@link TaskScheduler}, see
+     * {@link #generateSignature(byte[], HSSPrivateKey)}. Child trees that replace exhausted trees are generated by
+     * background tasks of the scheduler.
+     *
+     * @param message    The original message.
+     * @param privateKey The HSS private key.
+     * @return The future of the HSS signature.
+     */
+    @Nonnull
+    public static CompletableFuture<HSSSignature> generateSignatureAsync(@Nonnull final byte[] message,
+                                                                         @Nonnull final HSSPrivateKey privateKey) {
+        requireNonNull(message);
+
+        return ThreadUtil.supplyAsync(() -> generateSignature(MessageSource.of(message), privateKey, null, null,
+                TuningConfig.getDefault()), TaskScheduler.getInstance().executor(TaskScheduler.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Generates a HSS signature for the given message on the given executor, see
+     * {@link #generateSignature(byte[], HSSPrivateKey)}. Child trees that replace exhausted trees are generated and
+     * the key is stored by tasks of the executor, no other threads are used.
+     *
+     * @param message    The original message.
+     * @param privateKey The HSS private key.
+     * @param executor   The executor that runs the signature generation.
+     * @return The future of the HSS signature.
+     */
+    @Nonnull
+    public static CompletableFuture<HSSSignature> generateSignatureAsync(@Nonnull final byte[] message,
+                                                                         @Nonnull final HSSPrivateKey privateKey,
+                                                                         @Nonnull final Executor executor) {
+        requireNonNull(message);
+
+        return generateSignatureAsync(MessageSource.of(message), privateKey, executor);
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source on the given executor, see
+     * {@link #generateSignature(MessageSource, HSSPrivateKey)}. Child trees that replace exhausted trees are generated
+     * and the key is stored by tasks of the executor, no other threads are used.
+     *
+     * @param message    The source of the original message.
+     * @param privateKey The HSS private key.
+     * @param executor   The executor that runs the signature generation.
+     * @return The future of the HSS signature.
+     */
+    @Nonnull
+    public static CompletableFuture<HSSSignature> generateSignatureAsync(@Nonnull final MessageSource message,
+                                                                         @Nonnull final HSSPrivateKey privateKey,
+                                                                         @Nonnull final Executor executor) {
+        requireNonNull(executor);
+
+        return ThreadUtil.supplyAsync(() -> generateSignature(message, privateKey, null, executor,
+                TuningConfig.getDefault()), executor);
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source. Uses the given context to sign the message or the
+     * static LMS methods if no context is given. Child trees are generated on the given executor, keys are reserved as
+     * set by the config.
+     *
+     * @see HSSSigner
+     */
+    @Nonnull
+    static HSSSignature generateSignature(@Nonnull final MessageSource message,
+                                          @Nonnull final HSSPrivateKey privateKey,
+                                          @CheckForNull final LMSContext context,
+                                          @CheckForNull final Executor executor,
+                                          @Nonnull final TuningConfig config)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
         requireNonNull(privateKey);
 
+        // The signer is interactive load, background and bulk work of the scheduler leaves room for it.
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return sign(message, privateKey, context, executor, config);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    @Nonnull
+    private static HSSSignature sign(@Nonnull final MessageSource message,
+                                     @Nonnull final HSSPrivateKey privateKey,
+                                     @CheckForNull final LMSContext context,
+                                     @CheckForNull final Executor executor,
+                                     @Nonnull final TuningConfig config) throws NoSuchAlgorithmException, IOException {
         final int level = privateKey.getLevels();
+        final LMSSignature[] signatures = new LMSSignature[level];
+        final LMSPublicKey[] publicKeys = new LMSPublicKey[level];
+        final LMSPrivateKey lmsPrivateKey;
+        final LMOTSPrivateKey lmotsPrivateKey;
+
+        // Only the leaf allocation and the snapshot of the signature chain need the lock. Computing the LM-OTS
+        // signature and the path is done afterwards so several threads can sign with the same key in parallel.
+        privateKey.getLock().lock();
+        try {
+            prepareSigningKey(privateKey, executor, config);
+            lmsPrivateKey = privateKey.getLmsPrivateKeys()[level - 1];
+            lmotsPrivateKey = lmsPrivateKey.getNextLmotsKey();
+            for (int i = 0; i < level - 1; i++) {
+                signatures[i] = privateKey.getSignatures()[i];
+                publicKeys[i] = privateKey.getLmsPublicKeys()[i + 1];
+            }
+        } finally {
+            privateKey.getLock().unlock();
+        }
+
+        final LMSSignature messageSignature;
+        if (context == null) {
+            messageSignature = LMS.generateSignature(message, lmsPrivateKey, lmotsPrivateKey);
+        } else {
+            messageSignature = context.generateSignature(message, lmsPrivateKey, lmotsPrivateKey);
+        }
+        privateKey.getLock().lock();
+        try {
+            privateKey.getSignatures()[level - 1] = messageSignature;
+        } finally {
+            privateKey.getLock().unlock();
+        }
+        signatures[level - 1] = messageSignature;
+        return new HSSSignatureImpl(level - 1, signatures, publicKeys);
+    }
+
+    /**
+     * Makes sure the lowest LMS private key of the given HSS private key has a reserved key available. Replaces all
+     * exhausted LMS trees by child trees derived from the next key of the parent tree. Stores the private key if trees
+     * were replaced, otherwise only the new state is written, see
+     * {@link PersistenceUtil#storeState(HSSPrivateKey, int)}.
+     *
+     * <p>
+     * Note: This is the single writer of the signature chain. Callers must hold the lock of the private key.
+     * </p>
+     *
+     * @param privateKey The HSS private key.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    static void prepareSigningKey(@Nonnull final HSSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        prepareSigningKey(privateKey, null, TuningConfig.getDefault());
+    }
+
+    /**
+     * Makes sure the lowest LMS private key of the given HSS private key has a reserved key available, see
+     * {@link #prepareSigningKey(HSSPrivateKey)}. Child trees are generated on the given executor, keys are reserved
+     * as set by the config.
+     */
+    static void prepareSigningKey(@Nonnull final HSSPrivateKey privateKey,
+                                  @CheckForNull final Executor executor,
+                                  @Nonnull final TuningConfig config) throws NoSuchAlgorithmException, IOException {
+        final int level = privateKey.getLevels();
+        // Shared keys never roll over on their own, the next claim moves them to the next tree.
+        if (privateKey.isShared()) {
+            if (!privateKey.getLmsPrivateKeys()[level - 1].hasReservedKey()) {
+                privateKey.reserveKeys(config.getKeyReserveCount());
+            }
+            return;
+        }
         int d = level;
         while (privateKey.getLmsPrivateKeys()[d - 1].getQIdentifier() == MathUtil
                 .pow(privateKey.getLmsPrivateKeys()[d - 1].getLmsType().getH())) {
@@ -262,39 +678,120 @@ public final class HSS {
                 throw new IllegalStateException("Keys exceeded");
             }
         }
+        final boolean rolledOver = d < level;
         while (d < level) {
-            final LMSKeyPair lmsKeyPair = LMS.generateKeys(privateKey.getLmsPrivateKeys()[0].getLmsType(),
-                    privateKey.getLmsPrivateKeys()[0].getLmotsType());
-            privateKey.getLmsPrivateKeys()[d] = lmsKeyPair.getPrivateKey();
-            privateKey.getLmsPublicKeys()[d] = lmsKeyPair.getPublicKey();
-
-            final LMSPrivateKey lmsPrivateKey = privateKey.getLmsPrivateKeys()[d - 1];
-            if (!lmsPrivateKey.hasReservedKey() && !lmsPrivateKey.isExhausted()) {
-                lmsPrivateKey.reserveKeys(DEFAULT_KEY_RESERVE_COUNT);
-                PersistenceUtil.storeKey(privateKey);
+            final LMSPrivateKey parentKey = privateKey.getLmsPrivateKeys()[d - 1];
+            if (!parentKey.hasReservedKey()) {
+                parentKey.prepareReservedKeys(1);
+                PersistenceUtil.storeState(privateKey, d - 1);
+                parentKey.publishReservedKeys();
             }
-            privateKey.getSignatures()[d - 1] =
-                    LMS.generateSignature(privateKey.getLmsPublicKeys()[d].getKey(), lmsPrivateKey);
+            generateChildTree(privateKey.getLmsPrivateKeys(), privateKey.getLmsPublicKeys(), privateKey.getSignatures(),
+                    d, privateKey.getLmsPrivateKeys()[d].getLmsType(), executor, config);
             d++;
         }
 
+        // New trees must be stored completely. If only the reserved keys changed a journal record is enough.
+        // Lock-free signers take leaves as soon as they are published, so the new mark is stored first.
         final LMSPrivateKey lmsPrivateKey = privateKey.getLmsPrivateKeys()[level - 1];
         if (!lmsPrivateKey.hasReservedKey()) {
-            lmsPrivateKey.reserveKeys(DEFAULT_KEY_RESERVE_COUNT);
-            PersistenceUtil.storeKey(privateKey);
+            lmsPrivateKey.prepareReservedKeys(config.getKeyReserveCount());
+            if (rolledOver) {
+                PersistenceUtil.storeKey(privateKey);
+            } else {
+                PersistenceUtil.storeState(privateKey, level - 1);
+            }
+            lmsPrivateKey.publishReservedKeys();
         }
-        final LMSSignature messageSignature = LMS.generateSignature(message, lmsPrivateKey);
-        privateKey.getSignatures()[level - 1] = messageSignature;
+    }
 
-        final LMSSignature[] signatures = new LMSSignature[level];
-        final LMSPublicKey[] publicKeys = new LMSPublicKey[level];
+    /**
+     * Generates the LMS tree of level d and signs its public key with the next reserved key of the parent tree.
+     *
+     * <p>
+     * The seed of the new tree (and with it its identifier I) as well as the randomizer C of the signature are
+     * derived from the parent leaf. So the whole hierarchy is defined by the top level tree and the leaf counters of
+     * all levels, see {@link #buildPrivateKey(LMSPrivateKey, LMSPublicKey, LMSType, int[], String)}.
+     * </p>
+     *
+     * @param privateKeys The LMS private keys of all levels.
+     * @param publicKeys  The LMS public keys of all levels.
+     * @param signatures  The signatures of the chain.
+     * @param d           The level of the new tree, must be greater than 0.
+     * @param lmsType     The LMS parameters of the new tree.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalStateException    if the parent tree has no reserved key.
+     */
+    static void generateChildTree(@Nonnull final LMSPrivateKey[] privateKeys,
+                                  @Nonnull final LMSPublicKey[] publicKeys,
+                                  @Nonnull final LMSSignature[] signatures,
+                                  final int d,
+                                  @Nonnull final LMSType lmsType) throws NoSuchAlgorithmException {
+        generateChildTree(privateKeys, publicKeys, signatures, d, lmsType, null, TuningConfig.getDefault());
+    }
+
+    /**
+     * Generates the LMS tree of level d on the given executor with the workers set by the config. Without executor it
+     * is generated by interactive tasks of the {@link TaskScheduler}, the caller waits for it. See
+     * {@link #generateChildTree(LMSPrivateKey[], LMSPublicKey[], LMSSignature[], int, LMSType)}.
+     */
+    static void generateChildTree(@Nonnull final LMSPrivateKey[] privateKeys,
+                                  @Nonnull final LMSPublicKey[] publicKeys,
+                                  @Nonnull final LMSSignature[] signatures,
+                                  final int d,
+                                  @Nonnull final LMSType lmsType,
+                                  @CheckForNull final Executor executor,
+                                  @Nonnull final TuningConfig config) throws NoSuchAlgorithmException {
+        final LMOTSPrivateKey parentLeaf = privateKeys[d - 1].getNextLmotsKey();
+        buildChildTree(privateKeys, publicKeys, signatures, d, lmsType, parentLeaf, null, executor,
+                TaskScheduler.Priority.INTERACTIVE, config);
+    }
 
-        for (int i = 0; i < level - 1; i++) {
-            signatures[i] = privateKey.getSignatures()[i];
-            publicKeys[i] = privateKey.getLmsPublicKeys()[i + 1];
+    /**
+     * Generates the LMS tree of level d from the given parent leaf. Without executor the tree is generated by tasks
+     * of the given priority class of the {@link TaskScheduler}.
+     *
+     * <p>
+     * Note: A tree that replaces an exhausted one is generated while the signer holds the lock of the key and waits
+     * for it. It must be generated by interactive tasks, background tasks could queue behind bulk key generation and
+     * hold up all signers of the key.
+     * </p>
+     */
+    static void buildChildTree(@Nonnull final LMSPrivateKey[] privateKeys,
+                               @Nonnull final LMSPublicKey[] publicKeys,
+                               @Nonnull final LMSSignature[] signatures,
+                               final int d,
+                               @Nonnull final LMSType lmsType,
+                               @Nonnull final LMOTSPrivateKey parentLeaf,
+                               @CheckForNull final PreallocatedKeyFile keyFile,
+                               @CheckForNull final Executor executor,
+                               @Nonnull final TaskScheduler.Priority priority,
+                               @Nonnull final TuningConfig config) throws NoSuchAlgorithmException {
+        final Executor treeExecutor;
+        if (executor == null) {
+            treeExecutor = TaskScheduler.getInstance().executor(priority);
+        } else {
+            treeExecutor = executor;
         }
-        signatures[level - 1] = messageSignature;
-        return new HSSSignatureImpl(level - 1, signatures, publicKeys);
+        final LMSKeyPair lmsKeyPair = generateTree(lmsType, parentLeaf.getLmotsType(),
+                deriveFromLeaf(parentLeaf, getdChildSeed()), keyFile, d, treeExecutor, config);
+        privateKeys[d] = lmsKeyPair.getPrivateKey();
+        publicKeys[d] = lmsKeyPair.getPublicKey();
+        signatures[d - 1] = LMS.generateSignature(publicKeys[d].getKey(), privateKeys[d - 1], parentLeaf,
+                deriveFromLeaf(parentLeaf, getdChildRand()));
+    }
+
+    /**
+     * Derives n bytes from the seed of the given leaf in the same way the chain keys are derived:
+     * H(I || u32str(q) || u16str(i) || u8str(0xff) || SEED) with i out of the range of valid chain indices.
+     */
+    @Nonnull
+    private static byte[] deriveFromLeaf(@Nonnull final LMOTSPrivateKey leaf, @Nonnull final byte[] index)
+            throws NoSuchAlgorithmException {
+        final CustomMessageDigest messageDigest =
+                MessageDigestCache.getInstance().getMessageDigest(leaf.getLmotsType().getHashAlgorithm());
+        return messageDigest.digest(merge(leaf.getIdentifier(), intTo4ByteArray(leaf.getQIdentifier()), index,
+                intTo1ByteArray(0xff), leaf.getSeed()));
     }
 
     /**
@@ -328,20 +825,427 @@ public final class HSS {
                                           @Nonnull final HSSSignature signature,
                                           @Nonnull final HSSPublicKey publicKey)
             throws NoSuchAlgorithmException {
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return verify(message, signature, publicKey);
+        } finally {
+            slot.leave();
+        }
+    }
 
-        if (signature.getNumberOfSignedPublicKeys() + 1 != publicKey.getLevels() || publicKey.getLevels() <= 0) {
+    private static boolean verify(@Nonnull final byte[] message,
+                                  @Nonnull final HSSSignature signature,
+                                  @Nonnull final HSSPublicKey publicKey) throws NoSuchAlgorithmException {
+        validateLevels(signature, publicKey);
+
+        final LMSSignature[] signatures = signature.getSignatures();
+        final LMSPublicKey[] lmsPublicKeys = signature.getLmsPublicKeys();
+        final int signedPublicKeys = signature.getNumberOfSignedPublicKeys();
+        LMSPublicKey pub = publicKey.getPublicKey();
+        for (int i = 0; i < signedPublicKeys; i++) {
+            if (!LMS.verifySignature(lmsPublicKeys[i].getKey(), signatures[i], pub)) {
+                return false;
+            }
+            pub = lmsPublicKeys[i];
+        }
+
+        return LMS.verifySignature(message, signatures[signedPublicKeys], pub);
+    }
+
+    /**
+     * Verifies the given HSS signature as interactive task of the {@link TaskScheduler}, see
+     * {@link #verifySignature(byte[], HSSSignature, HSSPublicKey)}.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return The future of the verification result.
+     */
+    @Nonnull
+    public static CompletableFuture<Boolean> verifySignatureAsync(@Nonnull final byte[] message,
+                                                                  @Nonnull final HSSSignature signature,
+                                                                  @Nonnull final HSSPublicKey publicKey) {
+        return verifySignatureAsync(message, signature, publicKey,
+                TaskScheduler.getInstance().executor(TaskScheduler.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Verifies the given HSS signature on the given executor, see
+     * {@link #verifySignature(byte[], HSSSignature, HSSPublicKey)}.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @param executor  The executor that runs the verification.
+     * @return The future of the verification result.
+     */
+    @Nonnull
+    public static CompletableFuture<Boolean> verifySignatureAsync(@Nonnull final byte[] message,
+                                                                  @Nonnull final HSSSignature signature,
+                                                                  @Nonnull final HSSPublicKey publicKey,
+                                                                  @Nonnull final Executor executor) {
+        requireNonNull(executor);
+
+        return ThreadUtil.supplyAsync(() -> verifySignature(message, signature, publicKey), executor);
+    }
+
+    /**
+     * Verifies the given HSS signature for the message read from the given stream. The stream is read until its end
+     * but not closed.
+     *
+     * @param message   The stream of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final InputStream message,
+                                          @Nonnull final HSSSignature signature,
+                                          @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        return verifySignature(MessageSource.of(message), signature, publicKey);
+    }
+
+    /**
+     * Verifies the given HSS signature for the message read from the given channel. The channel is read until its end
+     * but not closed.
+     *
+     * @param message   The channel of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final ReadableByteChannel message,
+                                          @Nonnull final HSSSignature signature,
+                                          @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        return verifySignature(MessageSource.of(message), signature, publicKey);
+    }
+
+    /**
+     * Verifies the given HSS signature for the remaining bytes of the given buffer. The position of the buffer is not
+     * changed.
+     *
+     * @param message   The original message, either a heap buffer, a direct buffer or a memory mapped file.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final ByteBuffer message,
+                                          @Nonnull final HSSSignature signature,
+                                          @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        return verifySignature(MessageSource.of(message), signature, publicKey);
+    }
+
+    /**
+     * Verifies the given HSS signature for the content of the given file. The file is memory mapped instead of read to
+     * the heap.
+     *
+     * @param message   The path of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final Path message,
+                                          @Nonnull final HSSSignature signature,
+                                          @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        return verifySignature(MessageSource.of(message), signature, publicKey);
+    }
+
+    /**
+     * Verifies the given HSS signature for the message of the given source. The signature chain is verified first, so
+     * the message is not read if the chain is already invalid.
+     *
+     * @param message   The source of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final MessageSource message,
+                                          @Nonnull final HSSSignature signature,
+                                          @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return verify(message, signature, publicKey);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    private static boolean verify(@Nonnull final MessageSource message,
+                                  @Nonnull final HSSSignature signature,
+                                  @Nonnull final HSSPublicKey publicKey) throws NoSuchAlgorithmException, IOException {
+        validateLevels(signature, publicKey);
+
+        final LMSSignature[] signatures = signature.getSignatures();
+        final LMSPublicKey[] lmsPublicKeys = signature.getLmsPublicKeys();
+        final int signedPublicKeys = signature.getNumberOfSignedPublicKeys();
+        LMSPublicKey pub = publicKey.getPublicKey();
+        for (int i = 0; i < signedPublicKeys; i++) {
+            if (!LMS.verifySignature(lmsPublicKeys[i].getKey(), signatures[i], pub)) {
+                return false;
+            }
+            pub = lmsPublicKeys[i];
+        }
+
+        return LMS.verifySignature(message, signatures[signedPublicKeys], pub);
+    }
+
+    /**
+     * Verifies the encoded HSS signature read from the given stream without building the whole signature first.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The stream that provides the bytes of the signature.
+     * @param publicKey The HSS public key.
+     * @return true/false if the signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the signature cannot be read.
+     * @see #verifySignatureStream(MessageSource, InputStream, HSSPublicKey)
+     */
+    public static boolean verifySignatureStream(@Nonnull final byte[] message,
+                                                @Nonnull final InputStream signature,
+                                                @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        return verifySignatureStream(MessageSource.of(message), signature, publicKey);
+    }
+
+    /**
+     * Verifies the encoded HSS signature read from the given channel without building the whole signature first.
+     *
+     * @param message   The source of the original message.
+     * @param signature The channel that provides the bytes of the signature.
+     * @param publicKey The HSS public key.
+     * @return true/false if the signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the signature or the message cannot be read.
+     * @see #verifySignatureStream(MessageSource, InputStream, HSSPublicKey)
+     */
+    public static boolean verifySignatureStream(@Nonnull final MessageSource message,
+                                                @Nonnull final ReadableByteChannel signature,
+                                                @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(signature);
+
+        return verifySignatureStream(message, Channels.newInputStream(signature), publicKey);
+    }
+
+    /**
+     * Verifies the encoded HSS signature read from the given stream without building the whole signature first. Each
+     * link of the signature chain is verified as soon as its LMS signature and the signed LMS public key were read, so
+     * only one level of the signature is held in memory. Reading stops at the first invalid link. The message is only
+     * read if the whole chain is valid.
+     *
+     * <p>
+     * Note: The stream is not closed. If the signature is valid it is positioned behind the signature, so the message
+     * may follow the signature in the same stream.
+     * </p>
+     *
+     * @param message   The source of the original message.
+     * @param signature The stream that provides the bytes of the signature.
+     * @param publicKey The HSS public key.
+     * @return true/false if the signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the signature or the message cannot be read.
+     * @throws IllegalArgumentException if the number of levels or a typecode does not match the public key.
+     */
+    public static boolean verifySignatureStream(@Nonnull final MessageSource message,
+                                                @Nonnull final InputStream signature,
+                                                @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(signature);
+        requireNonNull(publicKey);
+
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return verifyStream(message, signature, publicKey);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    private static boolean verifyStream(@Nonnull final MessageSource message,
+                                        @Nonnull final InputStream signature,
+                                        @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        final DataInputStream inputStream = new DataInputStream(signature);
+        final int signedPublicKeys = inputStream.readInt();
+        if (signedPublicKeys + 1 != publicKey.getLevels() || publicKey.getLevels() <= 0) {
             throw new IllegalArgumentException("Incorrect number of signed private keys in signature");
         }
 
         LMSPublicKey pub = publicKey.getPublicKey();
-        for (int i = 0; i < signature.getNumberOfSignedPublicKeys(); i++) {
-            if (!LMS.verifySignature(signature.getLmsPublicKeys()[i].getKey(), signature.getSignatures()[i], pub)) {
+        for (int i = 0; i < signedPublicKeys; i++) {
+            final LMSSignature lmsSignature = LMS.buildSignature(inputStream, pub);
+            final LMSPublicKey lmsPublicKey = LMS.buildPublicKey(inputStream);
+            if (!LMS.verifySignature(lmsPublicKey.getKey(), lmsSignature, pub)) {
                 return false;
             }
-            pub = signature.getLmsPublicKeys()[i];
+            pub = lmsPublicKey;
         }
 
-        return LMS.verifySignature(message, signature.getSignatures()[signature.getNumberOfSignedPublicKeys()], pub);
+        return LMS.verifySignature(message, LMS.buildSignature(inputStream, pub), pub);
+    }
+
+    /**
+     * Verifies the given HSS signature. All LMS signatures of the chain are verified at the same time by interactive
+     * tasks of the {@link TaskScheduler} and the calling thread.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @see #verifySignatureParallel(byte[], HSSSignature, HSSPublicKey, Executor)
+     */
+    public static boolean verifySignatureParallel(@Nonnull final byte[] message,
+                                                  @Nonnull final HSSSignature signature,
+                                                  @Nonnull final HSSPublicKey publicKey)
+            throws NoSuchAlgorithmException {
+        return verifyLevels(message, signature, publicKey, null);
+    }
+
+    /**
+     * Verifies the given HSS signature. All public keys of the chain are part of the signature, so the LMS signatures
+     * of all levels can be verified independently of each other. The levels are verified by tasks of the given
+     * executor and the calling thread, so the call completes even if the executor is saturated. As soon as one level
+     * fails, levels that did not start yet are skipped.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     * @param executor  The executor that runs the verification of the levels.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    public static boolean verifySignatureParallel(@Nonnull final byte[] message,
+                                                  @Nonnull final HSSSignature signature,
+                                                  @Nonnull final HSSPublicKey publicKey,
+                                                  @Nonnull final Executor executor)
+            throws NoSuchAlgorithmException {
+        requireNonNull(executor);
+
+        return verifyLevels(message, signature, publicKey, executor);
+    }
+
+    /**
+     * Verifies the levels of the given HSS signature in parallel, on the given executor or by interactive tasks of
+     * the scheduler without executor.
+     */
+    private static boolean verifyLevels(@Nonnull final byte[] message,
+                                        @Nonnull final HSSSignature signature,
+                                        @Nonnull final HSSPublicKey publicKey,
+                                        @CheckForNull final Executor executor) throws NoSuchAlgorithmException {
+        requireNonNull(message);
+        validateLevels(signature, publicKey);
+
+        final int levels = publicKey.getLevels();
+        final LMSSignature[] signatures = signature.getSignatures();
+        final LMSPublicKey[] lmsPublicKeys = signature.getLmsPublicKeys();
+        final byte[][] levelMessages = new byte[levels][];
+        final LMSPublicKey[] levelPublicKeys = new LMSPublicKey[levels];
+        levelPublicKeys[0] = publicKey.getPublicKey();
+        for (int i = 0; i < levels - 1; i++) {
+            levelMessages[i] = lmsPublicKeys[i].getKey();
+            levelPublicKeys[i + 1] = lmsPublicKeys[i];
+        }
+        levelMessages[levels - 1] = message;
+
+        final AtomicBoolean valid = new AtomicBoolean(true);
+        final IntConsumer action = i -> {
+            if (valid.get() && !verifyLevel(levelMessages[i], signatures[i], levelPublicKeys[i])) {
+                valid.set(false);
+            }
+        };
+        final TaskScheduler scheduler = TaskScheduler.getInstance();
+        try {
+            if (executor == null) {
+                scheduler.forEachIndex(levels, action, TaskScheduler.Priority.INTERACTIVE, levels);
+            } else {
+                final TaskScheduler.Slot slot = scheduler.enter(TaskScheduler.Priority.INTERACTIVE);
+                try {
+                    ThreadUtil.forEachIndex(levels, action, executor, levels);
+                } finally {
+                    slot.leave();
+                }
+            }
+        } catch (IllegalStateException ex) {
+            if (ex.getCause() instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) ex.getCause();
+            }
+            throw ex;
+        }
+        return valid.get();
+    }
+
+    /**
+     * Verifies many HSS signatures at once with interactive tasks of the {@link TaskScheduler} and the calling thread.
+     *
+     * @param signedMessages The messages with their signatures and public keys.
+     * @return the result for every signed message in the same order.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @see #verifySignatures(List, Executor)
+     */
+    @Nonnull
+    public static boolean[] verifySignatures(@Nonnull final List<HSSSignedMessage> signedMessages)
+            throws NoSuchAlgorithmException {
+        requireNonNull(signedMessages);
+
+        return HSSBatchVerifier.verifySignatures(signedMessages, null);
+    }
+
+    /**
+     * Verifies many HSS signatures at once. Signatures of the same HSS key share the upper links of their signature
+     * chain. Every distinct link is verified only once, afterwards the message signatures are verified in parallel.
+     * In contrast to {@link #verifySignature(byte[], HSSSignature, HSSPublicKey)} a signature whose levels do not match
+     * its public key does not throw, it is just invalid.
+     *
+     * @param signedMessages The messages with their signatures and public keys.
+     * @param executor       The executor that runs the verification tasks besides the calling thread.
+     * @return the result for every signed message in the same order.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    @Nonnull
+    public static boolean[] verifySignatures(@Nonnull final List<HSSSignedMessage> signedMessages,
+                                             @Nonnull final Executor executor) throws NoSuchAlgorithmException {
+        requireNonNull(signedMessages);
+        requireNonNull(executor);
+
+        return HSSBatchVerifier.verifySignatures(signedMessages, executor);
+    }
+
+    /**
+     * Verifies one level of a HSS signature.
+     *
+     * @throws IllegalStateException if the hashing algorithm does not exist, with the original exception as cause.
+     */
+    private static boolean verifyLevel(@Nonnull final byte[] message,
+                                       @Nonnull final LMSSignature signature,
+                                       @Nonnull final LMSPublicKey publicKey) {
+        try {
+            return LMS.verifySignature(message, signature, publicKey);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static void validateLevels(@Nonnull final HSSSignature signature, @Nonnull final HSSPublicKey publicKey) {
+        if (signature.getNumberOfSignedPublicKeys() + 1 != publicKey.getLevels() || publicKey.getLevels() <= 0) {
+            throw new IllegalArgumentException("Incorrect number of signed private keys in signature");
+        }
     }
 
     /**
@@ -361,6 +1265,159 @@ public final class HSS {
         return new HSSPrivateKeyImpl(inputStream, filename);
     }
 
+    /**
+     * Builds an HSS private key from the given buffer. Reads the key at the current position of the buffer and
+     * advances the position to its end. The LM-OTS private keys are not copied, they are decoded from the buffer when
+     * they are used.
+     *
+     * @param buffer   The buffer that holds the key up to its limit. Must not be modified afterwards.
+     * @param filename The filename that contains the private key. After using the key it will be stored in this
+     *                 file again.
+     * @return the recreated HSSPrivateKey instance.
+     * @throws NoSuchAlgorithmException          if the secure random algorithm does not exist.
+     * @throws IOException                       if the state journal or tree cache of the key cannot be read.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static HSSPrivateKey buildPrivateKey(@Nonnull final ByteBuffer buffer, final String filename)
+            throws NoSuchAlgorithmException, IOException {
+        return new HSSPrivateKeyImpl(buffer, filename);
+    }
+
+    /**
+     * Builds an HSS private key from the keys and signatures of all its levels.
+     *
+     * @param privateKeys The LMS private keys of all levels with their restored state.
+     * @param publicKeys  The LMS public keys of all levels.
+     * @param signatures  The LMS signatures of the public keys of all lower levels. Index 0 belongs to the second
+     *                    level.
+     * @param filename    The filename that contains the private key. After using the key it will be stored in this
+     *                    file again.
+     * @return the recreated HSSPrivateKey instance.
+     */
+    @Nonnull
+    public static HSSPrivateKey buildPrivateKey(@Nonnull final LMSPrivateKey[] privateKeys,
+                                                @Nonnull final LMSPublicKey[] publicKeys,
+                                                @Nonnull final LMSSignature[] signatures,
+                                                final String filename) {
+        requireNonNull(privateKeys);
+        requireNonNull(publicKeys);
+        requireNonNull(signatures);
+
+        final int levels = privateKeys.length;
+        if (levels < 1 || levels > 8 || publicKeys.length != levels || signatures.length != levels) {
+            throw new IllegalArgumentException("Incorrect number of levels");
+        }
+        return new HSSPrivateKeyImpl(levels, privateKeys, publicKeys, signatures, filename);
+    }
+
+    /**
+     * Rebuilds an HSS private key from its top level LMS key pair and the leaf counters of all lower levels. The lower
+     * trees, their public keys and the signatures of the chain are derived again from the top level tree, so only
+     * the top level key and the counters have to be persisted. The recreated chain is identical to the original one,
+     * no one-time key is used for a second message.
+     *
+     * <p>
+     * Note: The q identifier of every upper level must be the number of child trees it signed. This is always the
+     * case for keys generated by this class. Keys whose lower trees were not derived from their parent leaf cannot be
+     * rebuilt this way.
+     * </p>
+     *
+     * @param topLevelPrivateKey The LMS private key of the top level with its restored state.
+     * @param topLevelPublicKey  The LMS public key of the top level.
+     * @param lmsTypeOtherLevels The LMS parameters for all other levels.
+     * @param qIdentifiers       The q identifiers of all lower levels. Index 0 belongs to the second level.
+     * @param filename           Where to store the private key on disk.
+     * @return the recreated HSSPrivateKey instance.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     */
+    @Nonnull
+    public static HSSPrivateKey buildPrivateKey(@Nonnull final LMSPrivateKey topLevelPrivateKey,
+                                                @Nonnull final LMSPublicKey topLevelPublicKey,
+                                                @Nonnull final LMSType lmsTypeOtherLevels,
+                                                @Nonnull final int[] qIdentifiers,
+                                                final String filename) throws NoSuchAlgorithmException {
+        return buildPrivateKey(topLevelPrivateKey, topLevelPublicKey, lmsTypeOtherLevels, qIdentifiers, filename,
+                null);
+    }
+
+    /**
+     * Same as {@link #buildPrivateKey(LMSPrivateKey, LMSPublicKey, LMSType, int[], String)} for a key that uses the
+     * two-file layout.
+     *
+     * @param topLevelPrivateKey The LMS private key of the top level with its restored state.
+     * @param topLevelPublicKey  The LMS public key of the top level.
+     * @param lmsTypeOtherLevels The LMS parameters for all other levels.
+     * @param qIdentifiers       The q identifiers of all lower levels. Index 0 belongs to the second level.
+     * @param filename           The file with the key material.
+     * @param stateFilename      Where to store the state of the private key.
+     * @return the recreated HSSPrivateKey instance.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @see HSSPrivateKey#getStateFilename()
+     */
+    @Nonnull
+    public static HSSPrivateKey buildPrivateKey(@Nonnull final LMSPrivateKey topLevelPrivateKey,
+                                                @Nonnull final LMSPublicKey topLevelPublicKey,
+                                                @Nonnull final LMSType lmsTypeOtherLevels,
+                                                @Nonnull final int[] qIdentifiers,
+                                                final String filename,
+                                                final String stateFilename) throws NoSuchAlgorithmException {
+        return buildPrivateKey(topLevelPrivateKey, topLevelPublicKey, lmsTypeOtherLevels, qIdentifiers, filename,
+                stateFilename, false);
+    }
+
+    /**
+     * Same as {@link #buildPrivateKey(LMSPrivateKey, LMSPublicKey, LMSType, int[], String, String)} for a key that
+     * might be shared by several processes.
+     *
+     * @param topLevelPrivateKey The LMS private key of the top level with its restored state.
+     * @param topLevelPublicKey  The LMS public key of the top level.
+     * @param lmsTypeOtherLevels The LMS parameters for all other levels.
+     * @param qIdentifiers       The q identifiers of all lower levels. Index 0 belongs to the second level.
+     * @param filename           The file with the key material.
+     * @param stateFilename      Where to store the state of the private key.
+     * @param shared             If the key is shared by several processes.
+     * @return the recreated HSSPrivateKey instance.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @see HSSPrivateKey#isShared()
+     */
+    @Nonnull
+    public static HSSPrivateKey buildPrivateKey(@Nonnull final LMSPrivateKey topLevelPrivateKey,
+                                                @Nonnull final LMSPublicKey topLevelPublicKey,
+                                                @Nonnull final LMSType lmsTypeOtherLevels,
+                                                @Nonnull final int[] qIdentifiers,
+                                                final String filename,
+                                                final String stateFilename,
+                                                final boolean shared) throws NoSuchAlgorithmException {
+        requireNonNull(topLevelPrivateKey);
+        requireNonNull(topLevelPublicKey);
+        requireNonNull(lmsTypeOtherLevels);
+        requireNonNull(qIdentifiers);
+
+        final int levels = qIdentifiers.length + 1;
+        if (levels > 8) {
+            throw new IllegalArgumentException("Incorrect number of levels");
+        }
+
+        final LMSPrivateKey[] privateKeys = new LMSPrivateKey[levels];
+        final LMSPublicKey[] publicKeys = new LMSPublicKey[levels];
+        final LMSSignature[] signatures = new LMSSignature[levels];
+        privateKeys[0] = topLevelPrivateKey;
+        publicKeys[0] = topLevelPublicKey;
+
+        for (int d = 1; d < levels; d++) {
+            final int parentQ = privateKeys[d - 1].getQIdentifier();
+            if (parentQ == 0) {
+                throw new IllegalArgumentException("Level " + (d - 1) + " did not sign a child tree");
+            }
+            buildChildTree(privateKeys, publicKeys, signatures, d, lmsTypeOtherLevels,
+                    privateKeys[d - 1].getLmotsKey(parentQ - 1), null, null, TaskScheduler.Priority.INTERACTIVE,
+                    TuningConfig.getDefault());
+            privateKeys[d].advanceQIdentifier(qIdentifiers[d - 1]);
+        }
+        return new HSSPrivateKeyImpl(levels, privateKeys, publicKeys, signatures, filename, stateFilename, shared);
+    }
+
     /**
      * Builds an HSS public key from a given byte array.
      *
@@ -373,6 +1430,19 @@ public final class HSS {
         return new HSSPublicKeyImpl(inputStream);
     }
 
+    /**
+     * Builds an HSS public key from the given buffer. Reads the key at the current position of the buffer and advances
+     * the position by the size of the key.
+     *
+     * @param buffer The buffer that provides the bytes of the key.
+     * @return the recreated HSSPublicKey instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static HSSPublicKey buildPublicKey(@Nonnull final ByteBuffer buffer) {
+        return new HSSPublicKeyImpl(buffer);
+    }
+
     /**
      * Builds an HSS signature from a given byte array.
      *
@@ -384,4 +1454,33 @@ public final class HSS {
     public static HSSSignature buildSignature(@Nonnull final DataInputStream inputStream) throws IOException {
         return new HSSSignatureImpl(inputStream);
     }
+
+    /**
+     * Builds an HSS signature from the given buffer. Reads the signature at the current position of the buffer and
+     * advances the position by the size of the signature.
+     *
+     * @param buffer The buffer that provides the bytes of the signature.
+     * @return the recreated HSSSignature instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete signature.
+     * @throws IllegalArgumentException          if the number of signed public keys is invalid.
+     */
+    @Nonnull
+    public static HSSSignature buildSignature(@Nonnull final ByteBuffer buffer) {
+        return new HSSSignatureImpl(buffer);
+    }
+
+    /**
+     * Wraps the HSS signature at the current position of the buffer without decoding it and advances the position by
+     * the size of the signature. The returned signature reads its fields from the buffer, so signatures received from
+     * the network can be verified without copying them into objects. The buffer must not be changed while the
+     * signature is used.
+     *
+     * @param buffer The buffer that holds the bytes of the signature, either a heap or a direct buffer.
+     * @return the HSSSignature view of the bytes.
+     * @throws IllegalArgumentException if the buffer does not hold a complete signature.
+     */
+    @Nonnull
+    public static HSSSignature wrapSignature(@Nonnull final ByteBuffer buffer) {
+        return new HSSSignatureView(buffer);
+    }
 }
\ No newline at end of file
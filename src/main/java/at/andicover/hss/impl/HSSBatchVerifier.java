@@ -0,0 +1,210 @@
+package at.andicover.hss.impl;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.impl.LMS;
+import at.andicover.util.TaskScheduler;
+import at.andicover.util.ThreadUtil;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+/**
+ * Verifies many HSS signatures at once.
+ *
+ * <p>
+ * Signatures created with the same HSS private key mostly share the upper part of their signature chain. Every
+ * distinct link of a chain (parent public key, signature, signed child public key) is verified exactly once, no
+ * matter how many signatures contain it. Afterwards the message signatures are verified, a message signature is
+ * skipped if one link of its chain is invalid.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-6.3">RFC 8554 - Signature Verification</a>
+ */
+final class HSSBatchVerifier {
+
+    private HSSBatchVerifier() {
+    }
+
+    /**
+     * One verified step of a signature chain. Two links are equal if they sign the same child public key with the same
+     * signature under the same parent public key.
+     */
+    private static final class Link {
+        private final LMSPublicKey parent;
+        private final LMSSignature signature;
+        private final LMSPublicKey child;
+
+        private Link(@Nonnull final LMSPublicKey parent,
+                     @Nonnull final LMSSignature signature,
+                     @Nonnull final LMSPublicKey child) {
+            this.parent = parent;
+            this.signature = signature;
+            this.child = child;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Link that = (Link) o;
+            return Objects.equals(parent, that.parent) && Objects.equals(signature, that.signature)
+                    && Objects.equals(child, that.child);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parent, signature, child);
+        }
+    }
+
+    /**
+     * Verifies all given signatures. First every distinct link is verified, afterwards the message signatures of all
+     * chains without an invalid link. Both phases run on the given executor and the calling thread, without executor
+     * on interactive tasks of the {@link TaskScheduler}.
+     *
+     * @param signedMessages The messages with their signatures and public keys.
+     * @param executor       The executor that runs the verification tasks or null for the scheduler.
+     * @return the result for every signed message in the same order. Signatures that do not match the levels of their
+     * public key are invalid.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     */
+    @Nonnull
+    static boolean[] verifySignatures(@Nonnull final List<HSSSignedMessage> signedMessages,
+                                      @CheckForNull final Executor executor) throws NoSuchAlgorithmException {
+        return verifySignatures(signedMessages, executor, HSSBatchVerifier::verify);
+    }
+
+    /**
+     * Verifies all given signatures with the given LMS verification, see {@link #verifySignatures(List, Executor)}.
+     */
+    @Nonnull
+    static boolean[] verifySignatures(@Nonnull final List<HSSSignedMessage> signedMessages,
+                                      @CheckForNull final Executor executor,
+                                      @Nonnull final LMSVerification verification) throws NoSuchAlgorithmException {
+        final Map<Link, Integer> linkIndices = new HashMap<>();
+        final List<Link> links = new ArrayList<>();
+        final int[][] chains = new int[signedMessages.size()][];
+
+        for (int m = 0; m < chains.length; m++) {
+            final HSSSignedMessage signedMessage = signedMessages.get(m);
+            if (!hasValidLevels(signedMessage)) {
+                continue;
+            }
+
+            final HSSSignature signature = signedMessage.getSignature();
+            final int[] chain = new int[signature.getNumberOfSignedPublicKeys()];
+            LMSPublicKey pub = signedMessage.getPublicKey().getPublicKey();
+            for (int i = 0; i < chain.length; i++) {
+                final Link link = new Link(pub, signature.getSignatures()[i], signature.getLmsPublicKeys()[i]);
+                chain[i] = linkIndices.computeIfAbsent(link, l -> {
+                    links.add(l);
+                    return links.size() - 1;
+                });
+                pub = signature.getLmsPublicKeys()[i];
+            }
+            chains[m] = chain;
+        }
+
+        final boolean[] validLinks = new boolean[links.size()];
+        final boolean[] verified = new boolean[chains.length];
+        try {
+            forEachIndex(validLinks.length, i -> {
+                final Link link = links.get(i);
+                validLinks[i] = verification.verify(link.child.getKey(), link.signature, link.parent);
+            }, executor);
+            forEachIndex(verified.length, m -> {
+                if (chains[m] == null) {
+                    return;
+                }
+                for (final int link : chains[m]) {
+                    if (!validLinks[link]) {
+                        return;
+                    }
+                }
+                final HSSSignedMessage signedMessage = signedMessages.get(m);
+                final HSSSignature signature = signedMessage.getSignature();
+                final int signedPublicKeys = signature.getNumberOfSignedPublicKeys();
+                final LMSPublicKey bottomPublicKey;
+                if (signedPublicKeys == 0) {
+                    bottomPublicKey = signedMessage.getPublicKey().getPublicKey();
+                } else {
+                    bottomPublicKey = signature.getLmsPublicKeys()[signedPublicKeys - 1];
+                }
+                verified[m] = verification.verify(signedMessage.getMessage(),
+                        signature.getSignatures()[signedPublicKeys], bottomPublicKey);
+            }, executor);
+        } catch (IllegalStateException ex) {
+            if (ex.getCause() instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) ex.getCause();
+            }
+            throw ex;
+        }
+        return verified;
+    }
+
+    /**
+     * Runs the action for every index on the given executor and the calling thread or on the scheduler.
+     */
+    private static void forEachIndex(final int count,
+                                     @Nonnull final IntConsumer action,
+                                     @CheckForNull final Executor executor) {
+        final int parallelism = TuningConfig.getDefault().getParallelism();
+        if (executor == null) {
+            TaskScheduler.getInstance().forEachIndex(count, action, TaskScheduler.Priority.INTERACTIVE, parallelism);
+            return;
+        }
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            ThreadUtil.forEachIndex(count, action, executor, parallelism);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    private static boolean hasValidLevels(@Nonnull final HSSSignedMessage signedMessage) {
+        final HSSSignature signature = signedMessage.getSignature();
+        final int levels = signedMessage.getPublicKey().getLevels();
+        return levels > 0 && signature.getNumberOfSignedPublicKeys() + 1 == levels
+                && signature.getSignatures().length >= levels
+                && signature.getLmsPublicKeys().length >= levels - 1;
+    }
+
+    /**
+     * Verifies one LMS signature. Malformed signatures are invalid instead of failing the whole batch.
+     */
+    private static boolean verify(@Nonnull final byte[] message,
+                                  @Nonnull final LMSSignature signature,
+                                  @Nonnull final LMSPublicKey publicKey) {
+        try {
+            return LMS.verifySignature(message, signature, publicKey);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Verifies one LMS signature of a message or of a signed public key. Must be thread safe.
+     */
+    interface LMSVerification {
+        boolean verify(@Nonnull byte[] message, @Nonnull LMSSignature signature, @Nonnull LMSPublicKey publicKey);
+    }
+}
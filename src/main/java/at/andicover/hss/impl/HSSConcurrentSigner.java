@@ -0,0 +1,164 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lmots.api.LMOTSPrivateKey;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.impl.LMS;
+import at.andicover.util.TaskScheduler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Signs messages with one HSS private key from many threads at once.
+ *
+ * <p>
+ * Leaves are handed out from the reserved window of the lowest LMS tree with an atomic counter, so the hot path does
+ * not take any lock. Every thread then computes its LM-OTS signature and its path on its own. Only if the reserved
+ * window runs dry a single writer reserves new keys, rolls over exhausted trees and publishes a new snapshot of the
+ * signature chain. The writer uses the lock of the private key, the same lock that
+ * {@link HSS#generateSignature(byte[], HSSPrivateKey)} and {@link HSSPrivateKey#reserveKeys(int)} use.
+ * </p>
+ * <p>
+ * Note: In contrast to {@link HSS#generateSignature(byte[], HSSPrivateKey)} the signature of the message is not
+ * written back to the private key.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@ThreadSafe
+public final class HSSConcurrentSigner {
+
+    private final HSSPrivateKey privateKey;
+    private volatile Chain chain;
+
+    /**
+     * Immutable snapshot of the signature chain that belongs to one lowest level LMS tree. It stays valid as long as
+     * leaves of this tree are available because a rollover always replaces the lowest tree.
+     */
+    private static final class Chain {
+        private final LMSPrivateKey signingKey;
+        private final LMSSignature[] signatures;
+        private final LMSPublicKey[] publicKeys;
+
+        private Chain(@Nonnull final HSSPrivateKey privateKey) {
+            final int level = privateKey.getLevels();
+            this.signingKey = privateKey.getLmsPrivateKeys()[level - 1];
+            this.signatures = new LMSSignature[level - 1];
+            this.publicKeys = new LMSPublicKey[level - 1];
+            for (int i = 0; i < level - 1; i++) {
+                signatures[i] = privateKey.getSignatures()[i];
+                publicKeys[i] = privateKey.getLmsPublicKeys()[i + 1];
+            }
+        }
+    }
+
+    /**
+     * Creates a new concurrent signer for the given private key.
+     *
+     * @param privateKey the HSS private key. Should not be used by other signers at the same time.
+     */
+    public HSSConcurrentSigner(@Nonnull final HSSPrivateKey privateKey) {
+        requireNonNull(privateKey);
+
+        this.privateKey = privateKey;
+        privateKey.getLock().lock();
+        try {
+            this.chain = new Chain(privateKey);
+        } finally {
+            privateKey.getLock().unlock();
+        }
+    }
+
+    /**
+     * @return the HSS private key used by this signer.
+     */
+    @Nonnull
+    public HSSPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * Generates a HSS signature for the given message.
+     *
+     * @param message The original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final String message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        return generateSignature(message.getBytes(UTF_8));
+    }
+
+    /**
+     * Generates a HSS signature for the given message.
+     *
+     * @param message The bytes of the original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     * @throws IllegalStateException    if all keys were used.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final byte[] message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return sign(message);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    @Nonnull
+    private HSSSignature sign(@Nonnull final byte[] message) throws NoSuchAlgorithmException, IOException {
+        Chain current = this.chain;
+        LMOTSPrivateKey lmotsPrivateKey = current.signingKey.pollNextLmotsKey();
+        while (lmotsPrivateKey == null) {
+            current = refreshChain(current);
+            lmotsPrivateKey = current.signingKey.pollNextLmotsKey();
+        }
+
+        final int level = current.signatures.length + 1;
+        final LMSSignature[] signatures = new LMSSignature[level];
+        final LMSPublicKey[] publicKeys = new LMSPublicKey[level];
+        System.arraycopy(current.signatures, 0, signatures, 0, level - 1);
+        System.arraycopy(current.publicKeys, 0, publicKeys, 0, level - 1);
+        signatures[level - 1] = LMS.generateSignature(message, current.signingKey, lmotsPrivateKey);
+
+        return new HSSSignatureImpl(level - 1, signatures, publicKeys);
+    }
+
+    /**
+     * Single writer path. Reserves new keys or rolls over exhausted trees and publishes the new chain. If another
+     * thread already published a newer chain in the meantime this one is returned instead.
+     */
+    @Nonnull
+    private Chain refreshChain(@Nonnull final Chain stale) throws NoSuchAlgorithmException, IOException {
+        privateKey.getLock().lock();
+        try {
+            if (this.chain != stale) {
+                return this.chain;
+            }
+            HSS.prepareSigningKey(privateKey);
+            final Chain refreshed = new Chain(privateKey);
+            this.chain = refreshed;
+            return refreshed;
+        } finally {
+            privateKey.getLock().unlock();
+        }
+    }
+}
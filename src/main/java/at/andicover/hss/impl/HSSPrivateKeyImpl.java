@@ -1,24 +1,30 @@
 package at.andicover.hss.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.hss.api.HSSPrivateKey;
-import at.andicover.lms.api.LMSKeyPair;
 import at.andicover.lms.api.LMSPrivateKey;
 import at.andicover.lms.api.LMSPublicKey;
 import at.andicover.lms.api.LMSSignature;
 import at.andicover.lms.impl.LMS;
+import at.andicover.util.KeyStateFile;
 import at.andicover.util.PersistenceUtil;
+import at.andicover.util.StateJournal;
+import at.andicover.util.TaskScheduler;
+import at.andicover.util.TreeCache;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -38,6 +44,9 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
     private final LMSPublicKey[] lmsPublicKeys;
     private final LMSSignature[] lmsSignatures;
     private final String filename;
+    private final String stateFilename;
+    private final boolean shared;
+    private final ReentrantLock lock = new ReentrantLock();
 
     HSSPrivateKeyImpl(final int levels,
                       @Nonnull final LMSPrivateKey[] privateKeys,
@@ -51,11 +60,35 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
                       @Nonnull final LMSPublicKey[] publicKeys,
                       @Nonnull final LMSSignature[] lmsSignatures,
                       final String filename) {
+        this(levels, privateKeys, publicKeys, lmsSignatures, filename, null);
+    }
+
+    HSSPrivateKeyImpl(final int levels,
+                      @Nonnull final LMSPrivateKey[] privateKeys,
+                      @Nonnull final LMSPublicKey[] publicKeys,
+                      @Nonnull final LMSSignature[] lmsSignatures,
+                      final String filename,
+                      final String stateFilename) {
+        this(levels, privateKeys, publicKeys, lmsSignatures, filename, stateFilename, false);
+    }
+
+    HSSPrivateKeyImpl(final int levels,
+                      @Nonnull final LMSPrivateKey[] privateKeys,
+                      @Nonnull final LMSPublicKey[] publicKeys,
+                      @Nonnull final LMSSignature[] lmsSignatures,
+                      final String filename,
+                      final String stateFilename,
+                      final boolean shared) {
+        if (shared && stateFilename == null) {
+            throw new IllegalArgumentException("Shared keys require a state file");
+        }
         this.levels = levels;
         this.lmsPrivateKeys = privateKeys;
         this.lmsPublicKeys = publicKeys;
         this.lmsSignatures = lmsSignatures;
         this.filename = filename;
+        this.stateFilename = stateFilename;
+        this.shared = shared;
     }
 
     HSSPrivateKeyImpl(@Nonnull final DataInputStream inputStream, @Nonnull final String filename)
@@ -87,6 +120,40 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
             }
         }
         this.filename = filename;
+        this.stateFilename = null;
+        this.shared = false;
+        if (filename != null) {
+            StateJournal.replay(filename, lmsPrivateKeys);
+            TreeCache.restore(filename, lmsPrivateKeys, lmsPublicKeys);
+        }
+    }
+
+    HSSPrivateKeyImpl(@Nonnull final ByteBuffer buffer, final String filename)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(buffer);
+
+        this.levels = buffer.getInt();
+        this.lmsPrivateKeys = new LMSPrivateKey[levels];
+        for (int i = 0; i < levels; i++) {
+            lmsPrivateKeys[i] = LMS.buildPrivateKey(buffer);
+        }
+
+        this.lmsPublicKeys = new LMSPublicKey[levels];
+        for (int i = 0; i < levels; i++) {
+            lmsPublicKeys[i] = LMS.buildPublicKey(buffer);
+        }
+
+        this.lmsSignatures = new LMSSignature[levels];
+        for (int i = 0; i < levels && buffer.hasRemaining(); i++) {
+            lmsSignatures[i] = LMS.buildSignature(buffer);
+        }
+        this.filename = filename;
+        this.stateFilename = null;
+        this.shared = false;
+        if (filename != null) {
+            StateJournal.replay(filename, lmsPrivateKeys);
+            TreeCache.restore(filename, lmsPrivateKeys, lmsPublicKeys);
+        }
     }
 
     @Override
@@ -118,21 +185,83 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
         return filename;
     }
 
+    @Override
+    @CheckForNull
+    public String getStateFilename() {
+        return stateFilename;
+    }
+
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
     @Override
     public void reserveKeys(final int numberOfKeys) throws NoSuchAlgorithmException, IOException {
-        final int d = levels - 1;
-        LMSPrivateKey lmsPrivateKey = this.lmsPrivateKeys[d];
-        if (lmsPrivateKey.isExhausted() && d > 0) {
-            final LMSKeyPair lmsKeyPair = LMS.generateKeys(this.lmsPrivateKeys[0].getLmsType(),
-                    this.lmsPrivateKeys[0].getLmotsType());
-            this.lmsPrivateKeys[d] = lmsKeyPair.getPrivateKey();
-            this.lmsPublicKeys[d] = lmsKeyPair.getPublicKey();
-            lmsPrivateKey = this.lmsPrivateKeys[d];
-            this.lmsPrivateKeys[d - 1].reserveKeys(1);
-            lmsSignatures[d - 1] = LMS.generateSignature(lmsPublicKeys[d].getKey(), this.lmsPrivateKeys[d - 1]);
+        lock.lock();
+        try {
+            if (shared) {
+                claimKeys(numberOfKeys);
+                return;
+            }
+            final int d = levels - 1;
+            final LMSPrivateKey lmsPrivateKey = this.lmsPrivateKeys[d];
+            // The new mark is stored before the keys are published, lock-free signers could use them right away.
+            if (lmsPrivateKey.isExhausted() && d > 0) {
+                this.lmsPrivateKeys[d - 1].prepareReservedKeys(1);
+                PersistenceUtil.storeState(this, d - 1);
+                this.lmsPrivateKeys[d - 1].publishReservedKeys();
+                HSS.generateChildTree(lmsPrivateKeys, lmsPublicKeys, lmsSignatures, d, lmsPrivateKey.getLmsType());
+                this.lmsPrivateKeys[d].prepareReservedKeys(numberOfKeys);
+                PersistenceUtil.storeKey(this);
+                this.lmsPrivateKeys[d].publishReservedKeys();
+            } else {
+                lmsPrivateKey.prepareReservedKeys(numberOfKeys);
+                PersistenceUtil.storeState(this, d);
+                lmsPrivateKey.publishReservedKeys();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Claims a range of leaves from the state file. If other processes moved on to other trees meanwhile, the trees
+     * of the claimed range are derived again from the top level tree. The leaves of the previous range that were not
+     * used are skipped.
+     *
+     * <p>
+     * The new chain is built in copies of the arrays and copied into the key after all trees were derived, so if
+     * deriving a tree fails the previous chain stays in place. The parent keys are advanced to the claimed marks
+     * beforehand, a failed claim never hands out the same parent key twice. Copying the chain is not atomic, readers
+     * of the chain must hold the lock of the key like every signer does.
+     * </p>
+     */
+    private void claimKeys(final int numberOfKeys) throws NoSuchAlgorithmException, IOException {
+        final int[] highWaterMarks = KeyStateFile.claim(this, numberOfKeys);
+        final LMSPrivateKey[] newPrivateKeys = lmsPrivateKeys.clone();
+        final LMSPublicKey[] newPublicKeys = lmsPublicKeys.clone();
+        final LMSSignature[] newSignatures = lmsSignatures.clone();
+        boolean derived = false;
+        for (int d = 1; d < levels; d++) {
+            final LMSPrivateKey parentKey = newPrivateKeys[d - 1];
+            if (derived || parentKey.getQIdentifier() != highWaterMarks[d - 1]) {
+                parentKey.advanceQIdentifier(highWaterMarks[d - 1]);
+                HSS.buildChildTree(newPrivateKeys, newPublicKeys, newSignatures, d, newPrivateKeys[d].getLmsType(),
+                        parentKey.getLmotsKey(highWaterMarks[d - 1] - 1), null, null,
+                        TaskScheduler.Priority.INTERACTIVE, TuningConfig.getDefault());
+                derived = true;
+            }
+        }
+        final LMSPrivateKey lmsPrivateKey = newPrivateKeys[levels - 1];
+        lmsPrivateKey.advanceQIdentifier(highWaterMarks[levels]);
+        lmsPrivateKey.reserveKeys(highWaterMarks[levels - 1] - highWaterMarks[levels]);
+
+        if (derived) {
+            System.arraycopy(newSignatures, 0, lmsSignatures, 0, levels);
+            System.arraycopy(newPublicKeys, 0, lmsPublicKeys, 0, levels);
+            System.arraycopy(newPrivateKeys, 0, lmsPrivateKeys, 0, levels);
         }
-        lmsPrivateKey.reserveKeys(numberOfKeys);
-        PersistenceUtil.storeKey(this);
     }
 
     @Override
@@ -140,6 +269,12 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
         return lmsPrivateKeys[levels - 1].getReservedKeys();
     }
 
+    @Override
+    @Nonnull
+    public Lock getLock() {
+        return lock;
+    }
+
     /**
      * Returns the private key as byte array. Might throw an OutOfMemory exception!
      *
@@ -149,48 +284,58 @@ final class HSSPrivateKeyImpl implements HSSPrivateKey {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
+        final ByteBuffer buffer = ByteBuffer.allocate(calculateSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
 
-        System.arraycopy(intTo4ByteArray(this.levels), 0, result, 0, 4);
-        int destPos = 4;
+    @Override
+    public long encodedSize() {
+        long size = Integer.BYTES;
         for (int i = 0; i < levels; i++) {
-            final byte[] lmsPrivateKeyBytes = this.lmsPrivateKeys[i].getBytes();
-            System.arraycopy(lmsPrivateKeyBytes, 0, result, destPos, lmsPrivateKeyBytes.length);
-            destPos += lmsPrivateKeyBytes.length;
+            size += lmsPrivateKeys[i].encodedSize() + lmsPublicKeys[i].encodedSize();
+            if (lmsSignatures[i] != null) {
+                size += lmsSignatures[i].encodedSize();
+            }
         }
+        return size;
+    }
+
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(levels);
         for (int i = 0; i < levels; i++) {
-            final byte[] lmsPublicKeyBytes = this.lmsPublicKeys[i].getBytes();
-            System.arraycopy(lmsPublicKeyBytes, 0, result, destPos, lmsPublicKeyBytes.length);
-            destPos += lmsPublicKeyBytes.length;
+            lmsPrivateKeys[i].writeTo(buffer);
+        }
+        for (int i = 0; i < levels; i++) {
+            lmsPublicKeys[i].writeTo(buffer);
         }
         for (int i = 0; i < levels; i++) {
             final LMSSignature lmsSignature = this.lmsSignatures[i];
             if (lmsSignature != null) {
-                final byte[] signatureBytes = lmsSignature.getBytes();
-                System.arraycopy(signatureBytes, 0, result, destPos, signatureBytes.length);
-                destPos += signatureBytes.length;
+                lmsSignature.writeTo(buffer);
             }
         }
-        return result;
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(intTo4ByteArray(levels));
-        outputStream.flush();
+    public void writeTo(@Nonnull final WritableByteChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(levels).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
         for (int i = 0; i < levels; i++) {
-            lmsPrivateKeys[i].writeToPipedOutputStream(outputStream);
+            lmsPrivateKeys[i].writeTo(channel);
         }
         for (int i = 0; i < levels; i++) {
-            lmsPublicKeys[i].writeToPipedOutputStream(outputStream);
+            lmsPublicKeys[i].writeTo(channel);
         }
         for (int i = 0; i < levels; i++) {
             final LMSSignature lmsSignature = this.lmsSignatures[i];
             if (lmsSignature != null) {
-                lmsSignature.writeToPipedOutputStream(outputStream);
+                lmsSignature.writeTo(channel);
             }
         }
-        outputStream.flush();
     }
 
     @Override
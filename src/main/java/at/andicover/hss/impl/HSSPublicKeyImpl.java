@@ -7,11 +7,10 @@ import at.andicover.lms.impl.LMS;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -43,6 +42,13 @@ final class HSSPublicKeyImpl implements HSSPublicKey {
         this.rootPublicKey = LMS.buildPublicKey(inputStream);
     }
 
+    HSSPublicKeyImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.levels = buffer.getInt();
+        this.rootPublicKey = LMS.buildPublicKey(buffer);
+    }
+
     @Override
     public int getLevels() {
         return this.levels;
@@ -62,18 +68,20 @@ final class HSSPublicKeyImpl implements HSSPublicKey {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.levels), 0, result, 0, 4);
-        final byte[] rootPublicKeyBytes = this.rootPublicKey.getBytes();
-        System.arraycopy(rootPublicKeyBytes, 0, result, 4, rootPublicKeyBytes.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(calculateSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
 
-        return result;
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(this.getBytes());
-        outputStream.flush();
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.levels);
+        this.rootPublicKey.writeTo(buffer);
     }
 
     @Override
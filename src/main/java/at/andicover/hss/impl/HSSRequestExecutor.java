@@ -0,0 +1,166 @@
+package at.andicover.hss.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.util.ThreadUtil;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs the signature and verification requests in threads created by the given thread factory. With a
+ * factory for virtual threads a request that waits for the lock of the private key or for storing the key does not
+ * hold a platform thread, so many thousand requests can be in progress without sizing a thread pool.
+ *
+ * <p>
+ * At most {@code maxThreads} threads run at the same time, further requests are queued until a thread is free, see
+ * {@link ThreadUtil#newThreadPerTaskExecutor(ThreadFactory, int)}. The default limit of
+ * {@value #DEFAULT_MAX_THREADS} keeps the number of platform threads in check on runtimes without virtual threads
+ * such as Java 15. With a factory for virtual threads pass a higher limit.
+ * </p>
+ *
+ * <p>
+ * The message digests and buffers are not bound to threads. Idle {@link HSSSigner} and {@link HSSVerifier} instances
+ * are kept in a pool and handed to the next request, so short-lived threads do not create new contexts.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@ThreadSafe
+public final class HSSRequestExecutor {
+
+    /**
+     * The maximum number of threads that run requests at the same time if no limit is given.
+     */
+    public static final int DEFAULT_MAX_THREADS = 256;
+
+    @CheckForNull
+    private final HSSPrivateKey privateKey;
+    private final HSSPublicKey publicKey;
+    private final Executor executor;
+    private final Queue<HSSSigner> signers = new ConcurrentLinkedQueue<>();
+    private final Queue<HSSVerifier> verifiers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new request executor that only verifies signatures.
+     *
+     * @param publicKey     The HSS public key.
+     * @param threadFactory The factory for the threads of the requests.
+     */
+    public HSSRequestExecutor(@Nonnull final HSSPublicKey publicKey, @Nonnull final ThreadFactory threadFactory) {
+        this(null, publicKey, threadFactory, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Creates a new request executor that only verifies signatures with at most the given number of threads.
+     *
+     * @param publicKey     The HSS public key.
+     * @param threadFactory The factory for the threads of the requests.
+     * @param maxThreads    The maximum number of threads that run at the same time.
+     * @throws IllegalArgumentException if maxThreads is less than 1.
+     */
+    public HSSRequestExecutor(@Nonnull final HSSPublicKey publicKey,
+                              @Nonnull final ThreadFactory threadFactory,
+                              final int maxThreads) {
+        this(null, publicKey, threadFactory, maxThreads);
+    }
+
+    /**
+     * Creates a new request executor that signs messages and verifies signatures.
+     *
+     * @param keyPair       The HSS key pair.
+     * @param threadFactory The factory for the threads of the requests.
+     */
+    public HSSRequestExecutor(@Nonnull final HSSKeyPair keyPair, @Nonnull final ThreadFactory threadFactory) {
+        this(keyPair, threadFactory, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Creates a new request executor that signs messages and verifies signatures with at most the given number of
+     * threads.
+     *
+     * @param keyPair       The HSS key pair.
+     * @param threadFactory The factory for the threads of the requests.
+     * @param maxThreads    The maximum number of threads that run at the same time.
+     * @throws IllegalArgumentException if maxThreads is less than 1.
+     */
+    public HSSRequestExecutor(@Nonnull final HSSKeyPair keyPair,
+                              @Nonnull final ThreadFactory threadFactory,
+                              final int maxThreads) {
+        this(requireNonNull(keyPair).getPrivateKey(), keyPair.getPublicKey(), threadFactory, maxThreads);
+    }
+
+    private HSSRequestExecutor(@CheckForNull final HSSPrivateKey privateKey,
+                               @Nonnull final HSSPublicKey publicKey,
+                               @Nonnull final ThreadFactory threadFactory,
+                               final int maxThreads) {
+        this.privateKey = privateKey;
+        this.publicKey = requireNonNull(publicKey);
+        this.executor = ThreadUtil.newThreadPerTaskExecutor(threadFactory, maxThreads);
+    }
+
+    /**
+     * Generates a HSS signature for the given message in a thread of the factory. The key is stored by the same thread.
+     * The signature counts as interactive load of the {@link at.andicover.util.TaskScheduler}, child trees that
+     * replace exhausted trees are generated by background tasks of it.
+     *
+     * @param message The bytes of the original message.
+     * @return The future of the HSS signature.
+     * @throws IllegalStateException if the request executor has no private key.
+     */
+    @Nonnull
+    public CompletableFuture<HSSSignature> generateSignature(@Nonnull final byte[] message) {
+        requireNonNull(message);
+        final HSSPrivateKey signingKey = privateKey;
+        if (signingKey == null) {
+            throw new IllegalStateException("No private key available");
+        }
+
+        return ThreadUtil.supplyAsync(() -> {
+            HSSSigner signer = signers.poll();
+            if (signer == null) {
+                signer = new HSSSigner(signingKey);
+            }
+            final HSSSignature signature = signer.generateSignature(MessageSource.of(message), null);
+            signers.offer(signer);
+            return signature;
+        }, executor);
+    }
+
+    /**
+     * Verifies the given HSS signature in a thread of the factory. The verification counts as interactive load of the
+     * {@link at.andicover.util.TaskScheduler}.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @return The future of the verification result.
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> verifySignature(@Nonnull final byte[] message,
+                                                      @Nonnull final HSSSignature signature) {
+        requireNonNull(message);
+        requireNonNull(signature);
+
+        return ThreadUtil.supplyAsync(() -> {
+            HSSVerifier verifier = verifiers.poll();
+            if (verifier == null) {
+                verifier = new HSSVerifier(publicKey);
+            }
+            final boolean valid = verifier.verifySignature(message, signature);
+            verifiers.offer(verifier);
+            return valid;
+        }, executor);
+    }
+}
@@ -8,15 +8,13 @@ import at.andicover.lms.impl.LMS;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
-import static at.andicover.config.Defaults.DEFAULT_OUTPUT_BUFFER;
-import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.putInt;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -46,10 +44,7 @@ final class HSSSignatureImpl implements HSSSignature {
     HSSSignatureImpl(@Nonnull final DataInputStream inputStream) throws IOException {
         requireNonNull(inputStream);
 
-        final byte[] data = new byte[DEFAULT_OUTPUT_BUFFER];
-        inputStream.readFully(data, 0, 4);
-
-        this.numberOfSignedPublicKeys = byteArrayToInt(data, 0, 4);
+        this.numberOfSignedPublicKeys = inputStream.readInt();
         final List<LMSSignature> lmsSignatures = new ArrayList<>();
         final List<LMSPublicKey> lmsPublicKeys = new ArrayList<>();
 
@@ -67,6 +62,23 @@ final class HSSSignatureImpl implements HSSSignature {
         this.lmsPublicKeys = lmsPublicKeys.toArray(LMSPublicKey[]::new);
     }
 
+    HSSSignatureImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.numberOfSignedPublicKeys = buffer.getInt();
+        if (numberOfSignedPublicKeys < 0 || numberOfSignedPublicKeys > 7) {
+            throw new IllegalArgumentException("Invalid number of signed public keys");
+        }
+        this.lmsSignatures = new LMSSignature[numberOfSignedPublicKeys + 1];
+        this.lmsPublicKeys = new LMSPublicKey[numberOfSignedPublicKeys + 1];
+
+        lmsSignatures[0] = LMS.buildSignature(buffer);
+        for (int i = 0; i < this.numberOfSignedPublicKeys; i++) {
+            lmsPublicKeys[i] = LMS.buildPublicKey(buffer);
+            lmsSignatures[i + 1] = LMS.buildSignature(buffer);
+        }
+    }
+
     @Override
     public int getNumberOfSignedPublicKeys() {
         return this.numberOfSignedPublicKeys;
@@ -93,36 +105,41 @@ final class HSSSignatureImpl implements HSSSignature {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.numberOfSignedPublicKeys), 0, result, 0, 4);
-        final byte[] rootSig = this.lmsSignatures[0].getBytes();
-        System.arraycopy(rootSig, 0, result, 4, rootSig.length);
+        final byte[] bytes = new byte[calculateSize()];
+        encodeInto(bytes, 0);
+        return bytes;
+    }
 
-        int destPos = 4 + rootSig.length;
+    /**
+     * Writes all fields of the signature chain straight into the destination. The size of the signatures of a key is
+     * known in advance from {@link at.andicover.util.KeySizeUtil#getHssSignatureSize(at.andicover.lmots.api.LMOTSType,
+     * at.andicover.lms.api.LMSType, at.andicover.lms.api.LMSType, int)}.
+     */
+    @Override
+    public int encodeInto(@Nonnull final byte[] destination, final int offset) {
+        Objects.checkFromIndexSize(offset, calculateSize(), destination.length);
+        int position = putInt(destination, offset, this.numberOfSignedPublicKeys);
+        position += this.lmsSignatures[0].encodeInto(destination, position);
         for (int i = 0; i < numberOfSignedPublicKeys; i++) {
-            final byte[] pub = this.lmsPublicKeys[i].getBytes();
-            System.arraycopy(pub, 0, result, destPos, pub.length);
-            destPos += pub.length;
-
-            final byte[] sig = this.lmsSignatures[i + 1].getBytes();
-            System.arraycopy(sig, 0, result, destPos, sig.length);
-            destPos += sig.length;
+            position += this.lmsPublicKeys[i].encodeInto(destination, position);
+            position += this.lmsSignatures[i + 1].encodeInto(destination, position);
         }
-
-        return result;
+        return position - offset;
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(intTo4ByteArray(this.numberOfSignedPublicKeys));
-        outputStream.flush();
-        lmsSignatures[0].writeToPipedOutputStream(outputStream);
+    public long encodedSize() {
+        return calculateSize();
+    }
 
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.numberOfSignedPublicKeys);
+        this.lmsSignatures[0].writeTo(buffer);
         for (int i = 0; i < numberOfSignedPublicKeys; i++) {
-            lmsPublicKeys[i].writeToPipedOutputStream(outputStream);
-            lmsSignatures[i + 1].writeToPipedOutputStream(outputStream);
+            this.lmsPublicKeys[i].writeTo(buffer);
+            this.lmsSignatures[i + 1].writeTo(buffer);
         }
-        outputStream.flush();
     }
 
     @Override
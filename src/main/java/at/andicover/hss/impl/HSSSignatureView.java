@@ -0,0 +1,113 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.impl.LMS;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * HSS signature that reads its fields in place from the bytes of an encoded signature. The LMS signatures and public
+ * keys of the chain are views over the same bytes, nothing is copied when the view is created. The bytes must not be
+ * changed while the view is used.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-6.2">RFC 8554 - HSS Signature Generation</a>
+ */
+@SuppressWarnings("PMD.MethodReturnsInternalArray")
+final class HSSSignatureView implements HSSSignature {
+
+    private final ByteBuffer buffer;
+    private final LMSSignature[] lmsSignatures;
+    private final LMSPublicKey[] lmsPublicKeys;
+
+    /**
+     * Wraps the signature at the current position of the buffer and advances the position by the size of the
+     * signature.
+     */
+    HSSSignatureView(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid signature length");
+        }
+        final int numberOfSignedPublicKeys = buffer.getInt(buffer.position());
+        if (numberOfSignedPublicKeys < 0 || numberOfSignedPublicKeys > 7) {
+            throw new IllegalArgumentException("Invalid number of signed public keys");
+        }
+        this.lmsSignatures = new LMSSignature[numberOfSignedPublicKeys + 1];
+        this.lmsPublicKeys = new LMSPublicKey[numberOfSignedPublicKeys + 1];
+
+        final ByteBuffer chain = buffer.duplicate();
+        chain.position(buffer.position() + Integer.BYTES);
+        lmsSignatures[0] = LMS.wrapSignature(chain);
+        for (int i = 0; i < numberOfSignedPublicKeys; i++) {
+            lmsPublicKeys[i] = LMS.wrapPublicKey(chain);
+            lmsSignatures[i + 1] = LMS.wrapSignature(chain);
+        }
+        this.buffer = buffer.slice().limit(chain.position() - buffer.position());
+        buffer.position(chain.position());
+    }
+
+    @Override
+    public int getNumberOfSignedPublicKeys() {
+        return lmsSignatures.length - 1;
+    }
+
+    @Override
+    @Nonnull
+    public LMSSignature[] getSignatures() {
+        return Arrays.copyOf(this.lmsSignatures, this.lmsSignatures.length);
+    }
+
+    @Override
+    @Nonnull
+    public LMSPublicKey[] getLmsPublicKeys() {
+        return Arrays.copyOf(this.lmsPublicKeys, this.lmsPublicKeys.length);
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    @Override
+    public long encodedSize() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer target) {
+        target.put(buffer.duplicate().rewind());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return buffer.equals(((HSSSignatureView) o).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return buffer.hashCode();
+    }
+
+    @Override
+    public int calculateSize() {
+        return buffer.limit();
+    }
+}
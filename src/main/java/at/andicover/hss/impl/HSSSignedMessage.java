@@ -0,0 +1,60 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.api.HSSSignature;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A message together with its HSS signature and the HSS public key to verify it with. Input of the batch
+ * verification {@link HSS#verifySignatures(java.util.List)}.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@SuppressWarnings({"PMD.ArrayIsStoredDirectly", "PMD.MethodReturnsInternalArray"})
+public final class HSSSignedMessage {
+
+    private final byte[] message;
+    private final HSSSignature signature;
+    private final HSSPublicKey publicKey;
+
+    /**
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @param publicKey The HSS public key.
+     */
+    public HSSSignedMessage(@Nonnull final byte[] message,
+                            @Nonnull final HSSSignature signature,
+                            @Nonnull final HSSPublicKey publicKey) {
+        this.message = requireNonNull(message);
+        this.signature = requireNonNull(signature);
+        this.publicKey = requireNonNull(publicKey);
+    }
+
+    /**
+     * @return the bytes of the original message.
+     */
+    @Nonnull
+    public byte[] getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the HSS signature of the message.
+     */
+    @Nonnull
+    public HSSSignature getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return the HSS public key.
+     */
+    @Nonnull
+    public HSSPublicKey getPublicKey() {
+        return publicKey;
+    }
+}
@@ -0,0 +1,122 @@
+package at.andicover.hss.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.impl.LMSContext;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Long-lived signing context bound to one HSS private key. Keeps the message digests, the random source and the hash
+ * chain buffers of the lowest level between signatures, see {@link LMSContext}.
+ *
+ * <p>
+ * Leaves are claimed under the lock of the private key like {@link HSS#generateSignature(byte[], HSSPrivateKey)}
+ * does, so several signers of the same key can be used by different threads at the same time.
+ * </p>
+ * <p>
+ * Note: A signer must not be used by several threads at the same time. Request handlers can pool them.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@NotThreadSafe
+public final class HSSSigner {
+
+    private final HSSPrivateKey privateKey;
+    private final LMSContext context;
+
+    /**
+     * Creates a new signer for the given private key.
+     *
+     * @param privateKey the HSS private key.
+     * @throws NoSuchAlgorithmException if a hash algorithm or the secure random algorithm does not exist.
+     */
+    public HSSSigner(@Nonnull final HSSPrivateKey privateKey) throws NoSuchAlgorithmException {
+        requireNonNull(privateKey);
+
+        this.privateKey = privateKey;
+        final LMSPrivateKey signingKey;
+        privateKey.getLock().lock();
+        try {
+            signingKey = privateKey.getLmsPrivateKeys()[privateKey.getLevels() - 1];
+        } finally {
+            privateKey.getLock().unlock();
+        }
+        // The parameters of a level never change, the lowest tree is always replaced by a tree of the same type.
+        this.context = new LMSContext(signingKey.getLmsType(), signingKey.getLmotsType());
+    }
+
+    /**
+     * @return the HSS private key used by this signer.
+     */
+    @Nonnull
+    public HSSPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    /**
+     * Generates a HSS signature for the given message.
+     *
+     * @param message The original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final String message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        return generateSignature(message.getBytes(UTF_8));
+    }
+
+    /**
+     * Generates a HSS signature for the given message.
+     *
+     * @param message The bytes of the original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final byte[] message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        return generateSignature(MessageSource.of(message));
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source.
+     *
+     * @param message The source of the original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read or storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final MessageSource message)
+            throws NoSuchAlgorithmException, IOException {
+        return generateSignature(message, null);
+    }
+
+    /**
+     * Generates a HSS signature for the message of the given source. Child trees are generated on the given executor.
+     */
+    @Nonnull
+    HSSSignature generateSignature(@Nonnull final MessageSource message, @CheckForNull final Executor executor)
+            throws NoSuchAlgorithmException, IOException {
+        return HSS.generateSignature(message, privateKey, context, executor, TuningConfig.getDefault());
+    }
+}
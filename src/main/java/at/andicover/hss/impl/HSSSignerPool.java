@@ -0,0 +1,203 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.util.MathUtil;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Signs messages with several independent HSS private keys.
+ *
+ * <p>
+ * Every key is a stripe with its own {@link HSSConcurrentSigner}, its own lock and its own reserved window. Reserving
+ * keys, storing the state and rolling over trees of one key never blocks the other keys. Each request is routed to
+ * the key with the fewest signatures in progress. Keys that have reserved leaves left are preferred over keys that
+ * would have to reserve new ones first. On a tie the key with fewer leaves left in its lowest tree is chosen, so the
+ * lowest trees of the keys are used up one after the other and the rollovers do not happen all at once.
+ * </p>
+ * <p>
+ * Note: Every key has its own HSS public key. Verifiers need to know all of them.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@ThreadSafe
+public final class HSSSignerPool {
+
+    private final Stripe[] stripes;
+
+    /**
+     * One key of the pool with the number of signatures in progress.
+     */
+    private static final class Stripe {
+        private final HSSConcurrentSigner signer;
+        private final AtomicInteger inProgress = new AtomicInteger();
+        private volatile boolean exhausted;
+
+        private Stripe(@Nonnull final HSSPrivateKey privateKey) {
+            this.signer = new HSSConcurrentSigner(privateKey);
+            this.exhausted = remainingSignatures(privateKey) == 0;
+        }
+    }
+
+    /**
+     * Creates a new signer pool for the given private keys.
+     *
+     * @param privateKeys the HSS private keys. Should not be used by other signers at the same time.
+     */
+    public HSSSignerPool(@Nonnull final List<HSSPrivateKey> privateKeys) {
+        requireNonNull(privateKeys);
+        if (privateKeys.isEmpty()) {
+            throw new IllegalArgumentException("At least one private key is required");
+        }
+
+        this.stripes = new Stripe[privateKeys.size()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(requireNonNull(privateKeys.get(i)));
+        }
+    }
+
+    /**
+     * @return the number of keys in this pool.
+     */
+    public int getSize() {
+        return stripes.length;
+    }
+
+    /**
+     * @param index the index of the key in this pool.
+     * @return the HSS private key.
+     */
+    @Nonnull
+    public HSSPrivateKey getPrivateKey(final int index) {
+        return stripes[index].signer.getPrivateKey();
+    }
+
+    /**
+     * @param index the index of the key in this pool.
+     * @return if all leaves of the key were used.
+     */
+    public boolean isExhausted(final int index) {
+        return stripes[index].exhausted;
+    }
+
+    /**
+     * @param index the index of the key in this pool.
+     * @return the number of signatures the key can still generate. {@link Long#MAX_VALUE} if there are more.
+     */
+    public long getRemainingSignatures(final int index) {
+        return remainingSignatures(stripes[index].signer.getPrivateKey());
+    }
+
+    /**
+     * Generates a HSS signature for the given message.
+     *
+     * @param message The original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final String message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        return generateSignature(message.getBytes(UTF_8));
+    }
+
+    /**
+     * Generates a HSS signature for the given message with the least loaded key of the pool. Keys that turn out to be
+     * exhausted are skipped.
+     *
+     * @param message The bytes of the original message.
+     * @return The HSS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if storing the key to disk encountered a problem.
+     * @throws IllegalStateException    if all keys of the pool were used or the selected key failed for another
+     *                                  reason. Such a key stays in the pool.
+     */
+    @Nonnull
+    public HSSSignature generateSignature(@Nonnull final byte[] message) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        Stripe stripe = selectStripe();
+        while (stripe != null) {
+            stripe.inProgress.incrementAndGet();
+            try {
+                return stripe.signer.generateSignature(message);
+            } catch (IllegalStateException ex) {
+                // Only a key without any signature left is retired, every other failure is the caller's business.
+                if (remainingSignatures(stripe.signer.getPrivateKey()) != 0) {
+                    throw ex;
+                }
+                stripe.exhausted = true;
+            } finally {
+                stripe.inProgress.decrementAndGet();
+            }
+            stripe = selectStripe();
+        }
+        throw new IllegalStateException("Keys exceeded");
+    }
+
+    @CheckForNull
+    private Stripe selectStripe() {
+        Stripe selected = null;
+        for (final Stripe stripe : stripes) {
+            if (!stripe.exhausted && (selected == null || isPreferred(stripe, selected))) {
+                selected = stripe;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean isPreferred(@Nonnull final Stripe stripe, @Nonnull final Stripe other) {
+        final int inProgress = stripe.inProgress.get();
+        final int otherInProgress = other.inProgress.get();
+        if (inProgress != otherInProgress) {
+            return inProgress < otherInProgress;
+        }
+
+        final LMSPrivateKey signingKey = getSigningKey(stripe);
+        final LMSPrivateKey otherSigningKey = getSigningKey(other);
+        if (signingKey.hasReservedKey() != otherSigningKey.hasReservedKey()) {
+            return signingKey.hasReservedKey();
+        }
+        return getRemainingLeaves(signingKey) < getRemainingLeaves(otherSigningKey);
+    }
+
+    @Nonnull
+    private static LMSPrivateKey getSigningKey(@Nonnull final Stripe stripe) {
+        final HSSPrivateKey privateKey = stripe.signer.getPrivateKey();
+        return privateKey.getLmsPrivateKeys()[privateKey.getLevels() - 1];
+    }
+
+    private static long getRemainingLeaves(@Nonnull final LMSPrivateKey lmsPrivateKey) {
+        return MathUtil.pow(lmsPrivateKey.getLmsType().getH()) - (long) lmsPrivateKey.getQIdentifier();
+    }
+
+    /**
+     * Every unused leaf of an upper level stands for a complete tree of the level below.
+     */
+    private static long remainingSignatures(@Nonnull final HSSPrivateKey privateKey) {
+        long remaining = 0;
+        for (final LMSPrivateKey lmsPrivateKey : privateKey.getLmsPrivateKeys()) {
+            final long leaves = MathUtil.pow(lmsPrivateKey.getLmsType().getH());
+            if (remaining > (Long.MAX_VALUE - leaves) / leaves) {
+                return Long.MAX_VALUE;
+            }
+            remaining = remaining * leaves + getRemainingLeaves(lmsPrivateKey);
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,348 @@
+package at.andicover.hss.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.impl.LMSContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Signs a stream of messages with one HSS private key and emits the signatures in the order of the messages.
+ *
+ * <p>
+ * Messages are requested from the upstream publisher only as far as the downstream subscriber requested signatures
+ * and reserved keys are available. If the reserved window falls to half of the reserve count the next keys are
+ * reserved and stored by a task of the executor while the messages of the current window are still signed. A slow
+ * disk or an exhausted tree therefore throttles the publisher instead of failing with "No reserved keys available".
+ * </p>
+ * <p>
+ * All work, signing, reserving keys, rolling over to new trees and storing the key, is done by tasks of the given
+ * executor. Messages are signed one after the other.
+ * </p>
+ * <p>
+ * Note: The processor accepts one subscriber and one upstream subscription. The private key should not be used by
+ * other signers at the same time, otherwise the window only reflects the keys reserved by this processor.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@ThreadSafe
+public final class HSSSigningProcessor implements Flow.Processor<byte[], HSSSignature> {
+
+    private final HSSPrivateKey privateKey;
+    private final Executor executor;
+    private final int reserveCount;
+    private final int lowWatermark;
+    private final LMSContext context;
+
+    private final Queue<byte[]> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong upstreamPending = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicBoolean reserving = new AtomicBoolean();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super HSSSignature> downstream;
+    private volatile boolean done;
+    // Error of the publisher, delivered after the queued messages were signed.
+    private volatile Throwable upstreamError;
+    // Error of this processor, delivered at once.
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+    private volatile long fruitlessReservation = -1;
+    // Only accessed by the drain loop.
+    private long emitted;
+
+    /**
+     * Creates a new processor that reserves {@link TuningConfig#getKeyReserveCount()} keys of the default config at
+     * once.
+     *
+     * @param privateKey The HSS private key.
+     * @param executor   The executor that signs the messages and reserves keys.
+     * @throws NoSuchAlgorithmException if a hash algorithm does not exist.
+     */
+    public HSSSigningProcessor(@Nonnull final HSSPrivateKey privateKey, @Nonnull final Executor executor)
+            throws NoSuchAlgorithmException {
+        this(privateKey, executor, TuningConfig.getDefault().getKeyReserveCount());
+    }
+
+    /**
+     * Creates a new processor.
+     *
+     * @param privateKey   The HSS private key.
+     * @param executor     The executor that signs the messages and reserves keys.
+     * @param reserveCount How many keys are reserved at once.
+     * @throws NoSuchAlgorithmException if a hash algorithm does not exist.
+     */
+    public HSSSigningProcessor(@Nonnull final HSSPrivateKey privateKey,
+                               @Nonnull final Executor executor,
+                               final int reserveCount) throws NoSuchAlgorithmException {
+        requireNonNull(privateKey);
+        requireNonNull(executor);
+        if (reserveCount <= 0) {
+            throw new IllegalArgumentException("Reserve count must be positive");
+        }
+
+        this.privateKey = privateKey;
+        this.executor = executor;
+        this.reserveCount = reserveCount;
+        this.lowWatermark = reserveCount / 2;
+        final LMSPrivateKey signingKey;
+        privateKey.getLock().lock();
+        try {
+            signingKey = privateKey.getLmsPrivateKeys()[privateKey.getLevels() - 1];
+            available.set(privateKey.getReservedKeys());
+        } finally {
+            privateKey.getLock().unlock();
+        }
+        // The parameters of a level never change, the lowest tree is always replaced by a tree of the same type.
+        this.context = new LMSContext(signingKey.getLmsType(), signingKey.getLmotsType());
+    }
+
+    /**
+     * @return the HSS private key used by this processor.
+     */
+    @Nonnull
+    public HSSPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    @Override
+    public void subscribe(@Nonnull final Flow.Subscriber<? super HSSSignature> subscriber) {
+        requireNonNull(subscriber);
+
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                    // Rejected subscribers never get signatures.
+                }
+
+                @Override
+                public void cancel() {
+                    // Nothing to release.
+                }
+            });
+            subscriber.onError(new IllegalStateException("Processor already has a subscriber"));
+            return;
+        }
+        downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                if (n <= 0) {
+                    failure = new IllegalArgumentException("Requested signatures must be positive");
+                } else {
+                    requested.accumulateAndGet(n, (current, add) -> {
+                        final long sum = current + add;
+                        if (sum < 0) {
+                            return Long.MAX_VALUE;
+                        }
+                        return sum;
+                    });
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                terminate();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(@Nonnull final Flow.Subscription subscription) {
+        requireNonNull(subscription);
+
+        if (upstream != null || cancelled) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(@Nonnull final byte[] message) {
+        requireNonNull(message);
+
+        messages.add(message);
+        upstreamPending.decrementAndGet();
+        drain();
+    }
+
+    @Override
+    public void onError(@Nonnull final Throwable throwable) {
+        requireNonNull(throwable);
+
+        upstreamError = throwable;
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    private void terminate() {
+        cancelled = true;
+        final Flow.Subscription subscription = upstream;
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        messages.clear();
+    }
+
+    /**
+     * Schedules the drain loop unless it is already running. Signals that arrive while it runs let it loop again.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() == 0) {
+            executor.execute(this::drainLoop);
+        }
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            if (!cancelled) {
+                emitSignatures();
+            }
+            if (!cancelled) {
+                requestMessages();
+                reserveAhead();
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Signs queued messages as long as signatures are requested. Completes the subscriber after the last message.
+     */
+    private void emitSignatures() {
+        final Flow.Subscriber<? super HSSSignature> subscriber = downstream;
+        if (subscriber == null) {
+            return;
+        }
+        while (!cancelled) {
+            if (failure != null) {
+                fail(subscriber, failure);
+                return;
+            }
+            final boolean terminated = done;
+            if (terminated && messages.isEmpty()) {
+                if (upstreamError == null) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                } else {
+                    fail(subscriber, upstreamError);
+                }
+                return;
+            }
+            if (emitted == requested.get()) {
+                return;
+            }
+            final byte[] message = messages.poll();
+            if (message == null) {
+                return;
+            }
+            final HSSSignature signature;
+            try {
+                signature = HSS.generateSignature(MessageSource.of(message), privateKey, context, executor,
+                        TuningConfig.getDefault());
+            } catch (NoSuchAlgorithmException | IOException | RuntimeException ex) {
+                fail(subscriber, ex);
+                return;
+            }
+            available.decrementAndGet();
+            emitted++;
+            subscriber.onNext(signature);
+        }
+    }
+
+    /**
+     * Requests as many messages as signatures were requested and reserved keys are available, minus the messages
+     * that are already on their way.
+     */
+    private void requestMessages() {
+        final Flow.Subscription subscription = upstream;
+        if (subscription == null || done) {
+            return;
+        }
+        final long outstanding = messages.size() + upstreamPending.get();
+        final long demand = Math.min(requested.get() - emitted, available.get()) - outstanding;
+        if (demand > 0) {
+            upstreamPending.addAndGet(demand);
+            subscription.request(demand);
+        }
+    }
+
+    /**
+     * Reserves the next keys in the background if the window falls to the low watermark. If a reservation did not
+     * add keys, because all leaves of the lowest tree are reserved already, the next one waits until a key was used.
+     */
+    private void reserveAhead() {
+        if (available.get() > lowWatermark || emitted == fruitlessReservation) {
+            return;
+        }
+        if (!reserving.compareAndSet(false, true)) {
+            return;
+        }
+        final long mark = emitted;
+        executor.execute(() -> {
+            try {
+                final int before;
+                final int added;
+                privateKey.getLock().lock();
+                try {
+                    before = privateKey.getReservedKeys();
+                    privateKey.reserveKeys(reserveCount);
+                    added = privateKey.getReservedKeys() - before;
+                } finally {
+                    privateKey.getLock().unlock();
+                }
+                if (added > 0) {
+                    available.addAndGet(added);
+                } else if (before == 0) {
+                    // Nothing reserved and nothing to reserve: the last tree is used up.
+                    throw new IllegalStateException("Keys exceeded");
+                } else {
+                    fruitlessReservation = mark;
+                }
+            } catch (NoSuchAlgorithmException | IOException | RuntimeException ex) {
+                failure = ex;
+            } finally {
+                reserving.set(false);
+                drain();
+            }
+        });
+    }
+
+    private void fail(@Nonnull final Flow.Subscriber<? super HSSSignature> subscriber,
+                      @Nonnull final Throwable throwable) {
+        terminate();
+        subscriber.onError(throwable);
+    }
+}
@@ -0,0 +1,169 @@
+package at.andicover.hss.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.impl.LMSContext;
+import at.andicover.util.TaskScheduler;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Long-lived verification context bound to one HSS public key. Keeps one {@link LMSContext} per level, so the message
+ * digests and hash chain buffers are reused for every signature. The contexts of the lower levels are created with the
+ * parameters of the first signature and replaced only if a signature uses other parameters.
+ *
+ * <p>
+ * Note: A verifier must not be used by several threads at the same time. Request handlers can pool them.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@NotThreadSafe
+public final class HSSVerifier {
+
+    private final HSSPublicKey publicKey;
+    private final LMSContext[] contexts;
+
+    /**
+     * Creates a new verifier for the given public key.
+     *
+     * @param publicKey the HSS public key.
+     * @throws NoSuchAlgorithmException if a hash algorithm does not exist.
+     */
+    public HSSVerifier(@Nonnull final HSSPublicKey publicKey) throws NoSuchAlgorithmException {
+        requireNonNull(publicKey);
+
+        this.publicKey = publicKey;
+        this.contexts = new LMSContext[publicKey.getLevels()];
+        getContext(0, publicKey.getPublicKey());
+    }
+
+    /**
+     * @return the HSS public key used by this verifier.
+     */
+    @Nonnull
+    public HSSPublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * Verifies the given HSS signature. Verifies all signatures in the signature chain.
+     *
+     * @param message   The original message.
+     * @param signature The HSS signature of the message.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    public boolean verifySignature(@Nonnull final String message, @Nonnull final HSSSignature signature)
+            throws NoSuchAlgorithmException {
+        requireNonNull(message);
+
+        return verifySignature(message.getBytes(UTF_8), signature);
+    }
+
+    /**
+     * Verifies the given HSS signature. Verifies all signatures in the signature chain.
+     *
+     * @param message   The bytes of the original message.
+     * @param signature The HSS signature of the message.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    public boolean verifySignature(@Nonnull final byte[] message, @Nonnull final HSSSignature signature)
+            throws NoSuchAlgorithmException {
+        requireNonNull(message);
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return verify(message, signature);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    private boolean verify(@Nonnull final byte[] message, @Nonnull final HSSSignature signature)
+            throws NoSuchAlgorithmException {
+        HSS.validateLevels(signature, publicKey);
+
+        final LMSSignature[] signatures = signature.getSignatures();
+        final LMSPublicKey pub = verifyChain(signatures, signature.getLmsPublicKeys());
+        if (pub == null) {
+            return false;
+        }
+        final int level = signatures.length - 1;
+        return getContext(level, pub).verifySignature(message, signatures[level], pub);
+    }
+
+    /**
+     * Verifies the given HSS signature for the message of the given source. The signature chain is verified first, so
+     * the message is not read if the chain is already invalid.
+     *
+     * @param message   The source of the original message.
+     * @param signature The HSS signature of the message.
+     * @return true/false if the given signature is valid.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public boolean verifySignature(@Nonnull final MessageSource message, @Nonnull final HSSSignature signature)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        final TaskScheduler.Slot slot = TaskScheduler.getInstance().enter(TaskScheduler.Priority.INTERACTIVE);
+        try {
+            return verify(message, signature);
+        } finally {
+            slot.leave();
+        }
+    }
+
+    private boolean verify(@Nonnull final MessageSource message, @Nonnull final HSSSignature signature)
+            throws NoSuchAlgorithmException, IOException {
+        HSS.validateLevels(signature, publicKey);
+
+        final LMSSignature[] signatures = signature.getSignatures();
+        final LMSPublicKey pub = verifyChain(signatures, signature.getLmsPublicKeys());
+        if (pub == null) {
+            return false;
+        }
+        final int level = signatures.length - 1;
+        return getContext(level, pub).verifySignature(message, signatures[level], pub);
+    }
+
+    /**
+     * Verifies the signed public keys of the chain.
+     *
+     * @return the LMS public key of the lowest level or null if a link of the chain is invalid.
+     */
+    @CheckForNull
+    private LMSPublicKey verifyChain(@Nonnull final LMSSignature[] signatures,
+                                     @Nonnull final LMSPublicKey[] lmsPublicKeys) throws NoSuchAlgorithmException {
+        LMSPublicKey pub = publicKey.getPublicKey();
+        for (int i = 0; i < signatures.length - 1; i++) {
+            if (!getContext(i, pub).verifySignature(lmsPublicKeys[i].getKey(), signatures[i], pub)) {
+                return null;
+            }
+            pub = lmsPublicKeys[i];
+        }
+        return pub;
+    }
+
+    @Nonnull
+    private LMSContext getContext(final int level, @Nonnull final LMSPublicKey pub) throws NoSuchAlgorithmException {
+        LMSContext context = contexts[level];
+        if (context == null || context.getLmsType() != pub.getLmsType()
+                || context.getLmotsType() != pub.getLmotsType()) {
+            context = new LMSContext(pub.getLmsType(), pub.getLmotsType());
+            contexts[level] = context;
+        }
+        return context;
+    }
+}
@@ -36,10 +36,19 @@ public interface LMOTSPrivateKey extends Storable, KeySize {
     int getQIdentifier();
 
     /**
-     * @return the seed for the RNG.
+     * @return the seed for the RNG. For derived keys the SEED of the pseudorandom key generation.
      */
     byte[] getSeed();
 
+    /**
+     * Derived keys compute their private keys with the pseudorandom key generation of RFC 8554, Appendix A from a
+     * SEED that is shared by all LM-OTS private keys of the LMS tree. This makes keys of other implementations usable.
+     *
+     * @return if the key is derived with the pseudorandom key generation of RFC 8554.
+     * @see <a href="https://tools.ietf.org/html/rfc8554#appendix-A">RFC 8554 - Pseudorandom Key Generation</a>
+     */
+    boolean isDerived();
+
     /**
      * @return the typecode of the used LMOTS parameter set.
      */
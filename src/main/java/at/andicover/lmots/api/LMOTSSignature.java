@@ -22,6 +22,19 @@ public interface LMOTSSignature extends Storable, KeySize {
     @Nonnull
     byte[][] getKeys();
 
+    /**
+     * Returns one key of the signature without copying all keys, verification reads every key once.
+     *
+     * <p>
+     * Note: The returned array may be the one held by the signature. It is read-only, callers must not modify it.
+     * </p>
+     *
+     * @param index the index of the key, from 0 to p - 1.
+     * @return the key y[index] of the signature.
+     */
+    @Nonnull
+    byte[] getKey(int index);
+
     /**
      * @return an n-byte randomizer that is included with the message whenever it is being hashed to improve security.
      */
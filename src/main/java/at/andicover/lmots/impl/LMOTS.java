@@ -1,5 +1,6 @@
 package at.andicover.lmots.impl;
 
+import at.andicover.common.api.MessageSource;
 import at.andicover.digest.api.CustomMessageDigest;
 import at.andicover.digest.impl.MessageDigestCache;
 import at.andicover.lmots.api.LMOTSPrivateKey;
@@ -12,6 +13,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -21,7 +23,7 @@ import static at.andicover.util.ByteUtil.intTo1ByteArray;
 import static at.andicover.util.ByteUtil.intTo2ByteArray;
 import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static at.andicover.util.ByteUtil.merge;
-import static at.andicover.util.SecurityString.getdMesg;
+import static at.andicover.util.KeySizeUtil.getOtsSignatureSize;
 import static at.andicover.util.SecurityString.getdPblc;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
@@ -40,9 +42,29 @@ import static java.util.Objects.requireNonNull;
 @ThreadSafe
 public final class LMOTS {
 
+    // Looked up once. The lookup and the first seeding may block, SecureRandom itself is thread-safe.
+    private static volatile SecureRandom strongRandom;
+
     private LMOTS() {
     }
 
+    /**
+     * Returns the strong random source shared by the whole library for seeds and the randomizers C. It is looked up
+     * once, the lookup and the first seeding may block.
+     *
+     * @return the shared strong random source.
+     * @throws NoSuchAlgorithmException if no strong secure random algorithm is available.
+     */
+    @Nonnull
+    public static SecureRandom getStrongRandom() throws NoSuchAlgorithmException {
+        SecureRandom secureRandom = strongRandom;
+        if (secureRandom == null) {
+            secureRandom = SecureRandom.getInstanceStrong();
+            strongRandom = secureRandom;
+        }
+        return secureRandom;
+    }
+
     /**
      * Generates the LMOTS private key based on the given LMOTS parameters.
      * Creates P random N-byte strings.
@@ -101,13 +123,39 @@ public final class LMOTS {
         if (seed != null) {
             finalSeed = seed;
         } else {
-            final SecureRandom secureRandom = SecureRandom.getInstanceStrong();
-            finalSeed = secureRandom.generateSeed(parameters.getN());
+            finalSeed = getStrongRandom().generateSeed(parameters.getN());
         }
 
         return new LMOTSPrivateKeyImpl(parameters, identifier, qIdentifier, finalSeed);
     }
 
+    /**
+     * Creates the LMOTS private key with the given q identifier whose private keys are derived from the SEED of its
+     * LMS tree with the pseudorandom key generation of RFC 8554. Keys of other implementations, for example the
+     * reference implementation, use this method.
+     *
+     * @param parameters  the LMOTS parameters.
+     * @param identifier  the identifier I of the LMS tree.
+     * @param qIdentifier the qIdentifier.
+     * @param seed        the SEED of the LMS tree.
+     * @return the derived LMOTS private key.
+     * @see <a href="https://tools.ietf.org/html/rfc8554#appendix-A">RFC 8554 - Pseudorandom Key Generation</a>
+     */
+    @Nonnull
+    public static LMOTSPrivateKey derivePrivateKey(@Nonnull final LMOTSType parameters,
+                                                   @Nonnull final byte[] identifier,
+                                                   final int qIdentifier,
+                                                   @Nonnull final byte[] seed) {
+        requireNonNull(parameters);
+        requireNonNull(identifier);
+        requireNonNull(seed);
+
+        if (seed.length != parameters.getN()) {
+            throw new IllegalArgumentException("Incorrect size of the seed");
+        }
+        return new LMOTSPrivateKeyImpl(parameters, identifier, qIdentifier, seed, true);
+    }
+
     /**
      * Generates the LMOTS public key for the given LMOTS private key.
      * Hashes each private key 2^w - 1 times to create the public key.
@@ -129,12 +177,10 @@ public final class LMOTS {
                 MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm());
         final byte[] y = new byte[lmotsType.getP() * lmotsType.getN()];
 
-        final SecureRandom secureRandom = SecureRandom.getInstance(RANDOM_NUMBER_ALGORITHM);
-        secureRandom.setSeed(privateKey.getSeed());
+        final byte[][] keys = privateKey.getKeys();
 
-        byte[] tmp = new byte[lmotsType.getN()];
         for (int i = 0; i < lmotsType.getP(); i++) {
-            secureRandom.nextBytes(tmp);
+            byte[] tmp = keys[i];
             for (int j = 0; j < hashIterations; j++) {
                 tmp = messageDigest
                         .digest(merge(identifier, intTo4ByteArray(qIdentifier), intTo2ByteArray(i), intTo1ByteArray(j),
@@ -182,32 +228,54 @@ public final class LMOTS {
         requireNonNull(message);
         requireNonNull(privateKey);
 
-        final byte[] identifier = privateKey.getIdentifier();
-        final int qIdentifier = privateKey.getQIdentifier();
+        final byte[] c = new byte[privateKey.getLmotsType().getN()];
+        getStrongRandom().nextBytes(c);
+        return generateSignature(message, privateKey, c);
+    }
 
-        final LMOTSType lmotsType = privateKey.getLmotsType();
-        final byte[] c = new byte[lmotsType.getN()];
-        final CustomMessageDigest messageDigest =
-                MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm());
-        SecureRandom.getInstanceStrong().nextBytes(c);
+    /**
+     * Generates a LMOTS signature for the given message with the given randomizer C instead of a random one.
+     * Signing the same message with the same key and the same C results in the same signature. This allows to
+     * recreate a signature without using the one-time key for a second message.
+     *
+     * @param message    The message to sign.
+     * @param privateKey The private key.
+     * @param c          The n byte randomizer.
+     * @return The LMOTS signature.
+     * @throws NoSuchAlgorithmException if the selected hash algorithm does not exist.
+     */
+    @Nonnull
+    public static LMOTSSignature generateSignature(@Nonnull final byte[] message,
+                                                   @Nonnull final LMOTSPrivateKey privateKey,
+                                                   @Nonnull final byte[] c)
+            throws NoSuchAlgorithmException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+        requireNonNull(c);
 
-        final byte[] q = messageDigest.digest(merge(identifier, intTo4ByteArray(qIdentifier), getdMesg(), c, message));
-        final byte[] hashedMessageWithChecksum = merge(q, checksum(q, lmotsType));
-        final byte[][] keys = new byte[lmotsType.getP()][lmotsType.getN()];
+        return newContext(privateKey.getLmotsType()).generateSignature(message, privateKey, c);
+    }
 
-        final byte[][] privateKeys = privateKey.getKeys();
-        final int hashIterations = getHashIterations(lmotsType.getW());
-        for (int i = 0; i < lmotsType.getP(); i++) {
-            final int a = coef(hashedMessageWithChecksum, i, lmotsType.getW(), hashIterations);
-            byte[] tempKey = privateKeys[i];
-            for (int j = 0; j < a; j++) {
-                tempKey = messageDigest
-                        .digest(merge(identifier, intTo4ByteArray(qIdentifier), intTo2ByteArray(i), intTo1ByteArray(j),
-                                tempKey));
-            }
-            keys[i] = tempKey;
-        }
-        return new LMOTSSignatureImpl(privateKey.getLmotsType(), c, keys);
+    /**
+     * Generates a LMOTS signature for the message of the given source. The message is hashed incrementally and never
+     * held in memory as a whole.
+     *
+     * @param message    The source of the message to sign.
+     * @param privateKey The private key.
+     * @return The LMOTS signature.
+     * @throws NoSuchAlgorithmException if the selected hash algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    @Nonnull
+    public static LMOTSSignature generateSignature(@Nonnull final MessageSource message,
+                                                   @Nonnull final LMOTSPrivateKey privateKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+
+        final byte[] c = new byte[privateKey.getLmotsType().getN()];
+        getStrongRandom().nextBytes(c);
+        return newContext(privateKey.getLmotsType()).generateSignature(message, privateKey, c);
     }
 
     /**
@@ -302,53 +370,56 @@ public final class LMOTS {
         requireNonNull(message);
         requireNonNull(lmotsSignature);
         requireNonNull(identifier);
-        validateSignature(lmotsSignature);
 
         final LMOTSType lmotsType = lmotsSignature.getLmotsType();
-        final byte[] c = lmotsSignature.getC();
-        final long iterations = getHashIterations(lmotsType.getW());
-        final CustomMessageDigest messageDigest =
-                MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm());
-        byte[] z = new byte[0];
-
-        final byte[] q = messageDigest.digest(merge(identifier, intTo4ByteArray(qIdentifier), getdMesg(), c, message));
-        final byte[] hashedMessageWithChecksum = merge(q, checksum(q, lmotsType));
+        return new LMOTSPublicKeyImpl(lmotsType, identifier, qIdentifier,
+                newContext(lmotsType).calculatePublicKey(message, lmotsSignature, qIdentifier, identifier));
+    }
 
-        final int hashIterations = getHashIterations(lmotsType.getW());
-        for (int i = 0; i < lmotsType.getP(); i++) {
-            final int a = coef(hashedMessageWithChecksum, i, lmotsType.getW(), hashIterations);
-            byte[] tempKey = lmotsSignature.getKeys()[i];
-            for (int j = a; j < iterations; j++) {
-                tempKey = messageDigest
-                        .digest(merge(identifier, intTo4ByteArray(qIdentifier), intTo2ByteArray(i), intTo1ByteArray(j),
-                                tempKey));
-            }
-            z = merge(z, tempKey);
-        }
+    /**
+     * Generates an LMOTS public key candidate from the message of the given source and signature for signature
+     * verification. The message is hashed incrementally and never held in memory as a whole.
+     *
+     * @param message        The source of the original message.
+     * @param lmotsSignature The provided message signature.
+     * @param qIdentifier    The leaf number q of the hash tree
+     * @param identifier     The 16 byte identifier of the LMS public/private key pair.
+     * @return the calculated LMOTS public key.
+     * @throws NoSuchAlgorithmException if the selected hash algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    @Nonnull
+    public static LMOTSPublicKey generatePublicKey(@Nonnull final MessageSource message,
+                                                   @Nonnull final LMOTSSignature lmotsSignature,
+                                                   final int qIdentifier,
+                                                   @Nonnull final byte[] identifier)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(lmotsSignature);
+        requireNonNull(identifier);
 
+        final LMOTSType lmotsType = lmotsSignature.getLmotsType();
         return new LMOTSPublicKeyImpl(lmotsType, identifier, qIdentifier,
-                messageDigest.digest(merge(identifier, intTo4ByteArray(qIdentifier), getdPblc(), z)));
+                newContext(lmotsType).calculatePublicKey(message, lmotsSignature, qIdentifier, identifier));
     }
 
+    /**
+     * Creates a context for a single operation. It uses the cached message digest of the current thread.
+     */
     @Nonnull
-    private static byte[] checksum(@Nonnull final byte[] hashedMessage, @Nonnull final LMOTSType parameters) {
-        int sum = 0;
-        final int hashIterations = getHashIterations(parameters.getW());
-        for (int i = 0; i < (parameters.getN() * 8 / parameters.getW()); i++) {
-            sum += hashIterations - coef(hashedMessage, i, parameters.getW(), hashIterations);
-        }
-        sum = sum << parameters.getLs();
-        return intTo2ByteArray(sum);
+    private static LMOTSContext newContext(@Nonnull final LMOTSType lmotsType) throws NoSuchAlgorithmException {
+        return new LMOTSContext(lmotsType,
+                MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm()));
     }
 
-    private static int coef(@Nonnull final byte[] hashedMessage, final int i, final int w, final int hashIterations) {
+    static int coef(@Nonnull final byte[] hashedMessage, final int i, final int w, final int hashIterations) {
         return hashIterations & (hashedMessage[(int) Math.floor(i * w / 8d)] >> (8 - (w * (i % (8 / w)) + w)));
     }
 
     /**
      * Calculates 2^w - 1.
      */
-    private static int getHashIterations(final int w) {
+    static int getHashIterations(final int w) {
         return MathUtil.pow(w) - 1;
     }
 
@@ -359,10 +430,11 @@ public final class LMOTS {
         }
     }
 
-    private static void validateSignature(@Nonnull final LMOTSSignature signature) {
+    static void validateSignature(@Nonnull final LMOTSSignature signature) {
         final LMOTSType lmotsType = signature.getLmotsType();
-        if (signature.getC().length != lmotsType.getN() || signature.getKeys().length != lmotsType.getP()
-                || signature.getKeys()[0].length != lmotsType.getN()) {
+        if (signature.getC().length != lmotsType.getN()
+                || signature.calculateSize() != getOtsSignatureSize(lmotsType)
+                || signature.getKey(0).length != lmotsType.getN()) {
             throw new IllegalArgumentException("Invalid signature length");
         }
     }
@@ -379,6 +451,19 @@ public final class LMOTS {
         return new LMOTSPrivateKeyImpl(inputStream);
     }
 
+    /**
+     * Builds an LMOTS private key from the given buffer. Reads the key at the current position of the buffer and
+     * advances the position by the size of the key.
+     *
+     * @param buffer The buffer that provides the bytes of the key.
+     * @return the recreated LMOTSPrivateKey instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static LMOTSPrivateKey buildPrivateKey(@Nonnull final ByteBuffer buffer) {
+        return new LMOTSPrivateKeyImpl(buffer);
+    }
+
     /**
      * Builds an LMOTS public key from a given byte array.
      *
@@ -391,6 +476,19 @@ public final class LMOTS {
         return new LMOTSPublicKeyImpl(inputStream);
     }
 
+    /**
+     * Builds an LMOTS public key from the given buffer. Reads the key at the current position of the buffer and
+     * advances the position by the size of the key.
+     *
+     * @param buffer The buffer that provides the bytes of the key.
+     * @return the recreated LMOTSPublicKey instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static LMOTSPublicKey buildPublicKey(@Nonnull final ByteBuffer buffer) {
+        return new LMOTSPublicKeyImpl(buffer);
+    }
+
     /**
      * Builds an LMOTS public key from a given byte array.
      *
@@ -402,4 +500,52 @@ public final class LMOTS {
     public static LMOTSSignature buildSignature(@Nonnull final DataInputStream inputStream) throws IOException {
         return new LMOTSSignatureImpl(inputStream);
     }
+
+    /**
+     * Builds an LMOTS signature of the expected type from the given stream. The typecode is checked before the rest
+     * of the signature is read, so a signature of another type is rejected without reading its body.
+     *
+     * @param inputStream The inputstream that provides the bytes of the signature.
+     * @param lmotsType   The expected LMOTS type.
+     * @return the recreated LMOTSSignature instance.
+     * @throws IOException              if stream cannot be read.
+     * @throws IllegalArgumentException if the typecode of the signature is not the expected one.
+     */
+    @Nonnull
+    public static LMOTSSignature buildSignature(@Nonnull final DataInputStream inputStream,
+                                                @Nonnull final LMOTSType lmotsType) throws IOException {
+        requireNonNull(lmotsType);
+
+        if (LMOTSSignatureImpl.readType(inputStream) != lmotsType) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+        return new LMOTSSignatureImpl(lmotsType, inputStream);
+    }
+
+    /**
+     * Builds an LMOTS signature from the given buffer. Reads the signature at the current position of the buffer and
+     * advances the position by the size of the signature.
+     *
+     * @param buffer The buffer that provides the bytes of the signature.
+     * @return the recreated LMOTSSignature instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete signature.
+     */
+    @Nonnull
+    public static LMOTSSignature buildSignature(@Nonnull final ByteBuffer buffer) {
+        return new LMOTSSignatureImpl(buffer);
+    }
+
+    /**
+     * Wraps the LMOTS signature at the current position of the buffer without decoding it and advances the position by
+     * the size of the signature. The returned signature reads its fields from the buffer, which must not be changed
+     * while the signature is used.
+     *
+     * @param buffer The buffer that holds the bytes of the signature, either a heap or a direct buffer.
+     * @return the LMOTSSignature view of the bytes.
+     * @throws IllegalArgumentException if the buffer does not hold a complete signature.
+     */
+    @Nonnull
+    public static LMOTSSignature wrapSignature(@Nonnull final ByteBuffer buffer) {
+        return new LMOTSSignatureView(buffer);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+package at.andicover.lmots.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.digest.api.CustomMessageDigest;
+import at.andicover.digest.impl.CustomMessageDigestFactory;
+import at.andicover.lmots.api.LMOTSPrivateKey;
+import at.andicover.lmots.api.LMOTSSignature;
+import at.andicover.lmots.api.LMOTSType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static at.andicover.util.ByteUtil.put;
+import static at.andicover.util.ByteUtil.putInt;
+import static at.andicover.util.SecurityString.getdMesg;
+import static at.andicover.util.SecurityString.getdPblc;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reusable state for LM-OTS signature generation and verification with one parameter set. Holds its own message digest
+ * and every buffer the hash chains need, so signing and verifying many messages does not allocate scratch memory. The
+ * hash inputs are assembled in place: I and q are written once per message, only the chain index, the iteration and
+ * the intermediate value change inside a chain.
+ *
+ * <p>
+ * Note: A context must not be used by several threads at the same time. Request handlers can pool them.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-4.5">RFC 8554 - Signature Generation</a>
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-4.6">RFC 8554 - Signature Verification</a>
+ */
+@NotThreadSafe
+public final class LMOTSContext {
+
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int Q_OFFSET = IDENTIFIER_SIZE;
+    private static final int INDEX_OFFSET = Q_OFFSET + Integer.BYTES;
+    private static final int ITERATION_OFFSET = INDEX_OFFSET + Short.BYTES;
+    private static final int CHAIN_VALUE_OFFSET = ITERATION_OFFSET + 1;
+    private static final int PREFIX_SIZE = INDEX_OFFSET + Short.BYTES;
+
+    private final LMOTSType lmotsType;
+    private final CustomMessageDigest messageDigest;
+    private final int hashIterations;
+
+    // I || u32str(q) || u16str(D_MESG) || C
+    private final byte[] messagePrefix;
+    // Q || Cksm(Q)
+    private final byte[] hashedMessage;
+    // I || u32str(q) || u16str(i) || u8str(j) || tmp
+    private final byte[] chainInput;
+    // I || u32str(q) || u16str(D_PBLC) || z[0] || z[1] || ... || z[p-1]
+    private final byte[] publicKeyInput;
+    private final byte[] publicKey;
+
+    /**
+     * Creates a new context with its own message digest.
+     *
+     * @param lmotsType The LM-OTS parameters of the keys and signatures the context is used for.
+     * @throws NoSuchAlgorithmException if the selected hash algorithm does not exist.
+     */
+    public LMOTSContext(@Nonnull final LMOTSType lmotsType) throws NoSuchAlgorithmException {
+        this(lmotsType, CustomMessageDigestFactory.getDigest(requireNonNull(lmotsType).getHashAlgorithm()));
+    }
+
+    LMOTSContext(@Nonnull final LMOTSType lmotsType, @Nonnull final CustomMessageDigest messageDigest) {
+        this.lmotsType = requireNonNull(lmotsType);
+        this.messageDigest = requireNonNull(messageDigest);
+        this.hashIterations = LMOTS.getHashIterations(lmotsType.getW());
+
+        final int n = lmotsType.getN();
+        this.messagePrefix = new byte[PREFIX_SIZE + n];
+        put(messagePrefix, INDEX_OFFSET, getdMesg());
+        this.hashedMessage = new byte[n + Short.BYTES];
+        this.chainInput = new byte[CHAIN_VALUE_OFFSET + n];
+        this.publicKeyInput = new byte[PREFIX_SIZE + lmotsType.getP() * n];
+        put(publicKeyInput, INDEX_OFFSET, getdPblc());
+        this.publicKey = new byte[n];
+    }
+
+    /**
+     * @return the LM-OTS parameters of this context.
+     */
+    @Nonnull
+    public LMOTSType getLmotsType() {
+        return lmotsType;
+    }
+
+    /**
+     * Generates a LM-OTS signature for the given message with the given randomizer C.
+     *
+     * @param message    The message to sign.
+     * @param privateKey The private key.
+     * @param c          The n byte randomizer.
+     * @return The LM-OTS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm of the private key does not exist.
+     */
+    @Nonnull
+    public LMOTSSignature generateSignature(@Nonnull final byte[] message,
+                                            @Nonnull final LMOTSPrivateKey privateKey,
+                                            @Nonnull final byte[] c) throws NoSuchAlgorithmException {
+        requireNonNull(message);
+
+        startSignature(privateKey, c);
+        messageDigest.update(message, 0, message.length);
+        return sign(privateKey, c);
+    }
+
+    /**
+     * Generates a LM-OTS signature for the message of the given source with the given randomizer C.
+     *
+     * @param message    The source of the message to sign.
+     * @param privateKey The private key.
+     * @param c          The n byte randomizer.
+     * @return The LM-OTS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm of the private key does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    @Nonnull
+    public LMOTSSignature generateSignature(@Nonnull final MessageSource message,
+                                            @Nonnull final LMOTSPrivateKey privateKey,
+                                            @Nonnull final byte[] c) throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+
+        startSignature(privateKey, c);
+        update(message);
+        return sign(privateKey, c);
+    }
+
+    /**
+     * Calculates the LM-OTS public key candidate K for the given message and signature.
+     *
+     * @param message     The original message.
+     * @param signature   The LM-OTS signature.
+     * @param qIdentifier The leaf number q of the hash tree.
+     * @param identifier  The 16 byte identifier of the LMS key pair.
+     * @return the n byte key. The array belongs to the context and is overwritten by the next call.
+     */
+    @Nonnull
+    public byte[] calculatePublicKey(@Nonnull final byte[] message,
+                                     @Nonnull final LMOTSSignature signature,
+                                     final int qIdentifier,
+                                     @Nonnull final byte[] identifier) {
+        requireNonNull(message);
+
+        startVerification(signature, qIdentifier, identifier);
+        messageDigest.update(message, 0, message.length);
+        return calculatePublicKey(signature);
+    }
+
+    /**
+     * Calculates the LM-OTS public key candidate K for the message of the given source and the given signature.
+     *
+     * @param message     The source of the original message.
+     * @param signature   The LM-OTS signature.
+     * @param qIdentifier The leaf number q of the hash tree.
+     * @param identifier  The 16 byte identifier of the LMS key pair.
+     * @return the n byte key. The array belongs to the context and is overwritten by the next call.
+     * @throws IOException if the message cannot be read.
+     */
+    @Nonnull
+    public byte[] calculatePublicKey(@Nonnull final MessageSource message,
+                                     @Nonnull final LMOTSSignature signature,
+                                     final int qIdentifier,
+                                     @Nonnull final byte[] identifier) throws IOException {
+        requireNonNull(message);
+
+        startVerification(signature, qIdentifier, identifier);
+        update(message);
+        return calculatePublicKey(signature);
+    }
+
+    private void startSignature(@Nonnull final LMOTSPrivateKey privateKey, @Nonnull final byte[] c) {
+        requireNonNull(privateKey);
+        requireNonNull(c);
+        if (privateKey.getLmotsType() != lmotsType) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+        if (c.length != lmotsType.getN()) {
+            throw new IllegalArgumentException("Invalid randomizer length");
+        }
+        startMessage(privateKey.getIdentifier(), privateKey.getQIdentifier(), c);
+    }
+
+    private void startVerification(@Nonnull final LMOTSSignature signature,
+                                   final int qIdentifier,
+                                   @Nonnull final byte[] identifier) {
+        requireNonNull(signature);
+        requireNonNull(identifier);
+        if (signature.getLmotsType() != lmotsType) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+        LMOTS.validateSignature(signature);
+        startMessage(identifier, qIdentifier, signature.getC());
+    }
+
+    /**
+     * Adds I || u32str(q) || u16str(D_MESG) || C to the digest and keeps I and q for the hash chains.
+     */
+    private void startMessage(@Nonnull final byte[] identifier, final int qIdentifier, @Nonnull final byte[] c) {
+        if (identifier.length != IDENTIFIER_SIZE) {
+            throw new IllegalArgumentException("Invalid identifier length");
+        }
+        put(messagePrefix, 0, identifier);
+        putInt(messagePrefix, Q_OFFSET, qIdentifier);
+        put(messagePrefix, PREFIX_SIZE, c);
+        System.arraycopy(messagePrefix, 0, chainInput, 0, INDEX_OFFSET);
+        System.arraycopy(messagePrefix, 0, publicKeyInput, 0, INDEX_OFFSET);
+        messageDigest.update(messagePrefix, 0, messagePrefix.length);
+    }
+
+    /**
+     * Adds the message to the digest. The digest is reset if the message cannot be read, so the context can be used
+     * again.
+     */
+    private void update(@Nonnull final MessageSource message) throws IOException {
+        try {
+            message.update(messageDigest);
+        } catch (IOException | RuntimeException e) {
+            messageDigest.digest();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes the message hash Q and appends its checksum.
+     */
+    private void finishMessage() {
+        messageDigest.digest(hashedMessage, 0);
+        final int w = lmotsType.getW();
+        int sum = 0;
+        for (int i = 0; i < (lmotsType.getN() * 8 / w); i++) {
+            sum += hashIterations - LMOTS.coef(hashedMessage, i, w, hashIterations);
+        }
+        sum = sum << lmotsType.getLs();
+        hashedMessage[lmotsType.getN()] = (byte) (sum >>> 8);
+        hashedMessage[lmotsType.getN() + 1] = (byte) sum;
+    }
+
+    @Nonnull
+    private LMOTSSignature sign(@Nonnull final LMOTSPrivateKey privateKey, @Nonnull final byte[] c)
+            throws NoSuchAlgorithmException {
+        finishMessage();
+        final byte[][] privateKeys = privateKey.getKeys();
+        final byte[][] keys = new byte[lmotsType.getP()][];
+        for (int i = 0; i < keys.length; i++) {
+            final int a = LMOTS.coef(hashedMessage, i, lmotsType.getW(), hashIterations);
+            hashChain(privateKeys[i], i, 0, a);
+            keys[i] = Arrays.copyOfRange(chainInput, CHAIN_VALUE_OFFSET, chainInput.length);
+        }
+        return new LMOTSSignatureImpl(lmotsType, c, keys);
+    }
+
+    @Nonnull
+    private byte[] calculatePublicKey(@Nonnull final LMOTSSignature signature) {
+        finishMessage();
+        final int n = lmotsType.getN();
+        for (int i = 0; i < lmotsType.getP(); i++) {
+            final int a = LMOTS.coef(hashedMessage, i, lmotsType.getW(), hashIterations);
+            hashChain(signature.getKey(i), i, a, hashIterations);
+            System.arraycopy(chainInput, CHAIN_VALUE_OFFSET, publicKeyInput, PREFIX_SIZE + i * n, n);
+        }
+        messageDigest.update(publicKeyInput, 0, publicKeyInput.length);
+        messageDigest.digest(publicKey, 0);
+        return publicKey;
+    }
+
+    /**
+     * Hashes the given value from iteration {@code from} to iteration {@code to} of chain i. The result is left at
+     * the end of the chain input.
+     */
+    private void hashChain(@Nonnull final byte[] value, final int i, final int from, final int to) {
+        System.arraycopy(value, 0, chainInput, CHAIN_VALUE_OFFSET, lmotsType.getN());
+        chainInput[INDEX_OFFSET] = (byte) (i >>> 8);
+        chainInput[INDEX_OFFSET + 1] = (byte) i;
+        for (int j = from; j < to; j++) {
+            chainInput[ITERATION_OFFSET] = (byte) j;
+            messageDigest.update(chainInput, 0, chainInput.length);
+            messageDigest.digest(chainInput, CHAIN_VALUE_OFFSET);
+        }
+    }
+}
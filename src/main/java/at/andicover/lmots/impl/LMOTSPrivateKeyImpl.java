@@ -1,5 +1,7 @@
 package at.andicover.lmots.impl;
 
+import at.andicover.digest.api.CustomMessageDigest;
+import at.andicover.digest.impl.MessageDigestCache;
 import at.andicover.lmots.api.LMOTSPrivateKey;
 import at.andicover.lmots.api.LMOTSType;
 import org.apache.commons.codec.binary.Hex;
@@ -7,7 +9,7 @@ import org.apache.commons.codec.binary.Hex;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -15,7 +17,10 @@ import java.util.Objects;
 
 import static at.andicover.config.Defaults.RANDOM_NUMBER_ALGORITHM;
 import static at.andicover.util.ByteUtil.byteArrayToInt;
+import static at.andicover.util.ByteUtil.intTo1ByteArray;
+import static at.andicover.util.ByteUtil.intTo2ByteArray;
 import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.merge;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -34,11 +39,20 @@ final class LMOTSPrivateKeyImpl implements LMOTSPrivateKey {
     private final byte[] identifier;
     private final int qIdentifier;
     private final byte[] seed;
+    private final boolean derived;
 
     LMOTSPrivateKeyImpl(@Nonnull final LMOTSType lmotsType,
                         @Nonnull final byte[] identifier,
                         final int qIdentifier,
                         @Nonnull final byte[] seed) {
+        this(lmotsType, identifier, qIdentifier, seed, false);
+    }
+
+    LMOTSPrivateKeyImpl(@Nonnull final LMOTSType lmotsType,
+                        @Nonnull final byte[] identifier,
+                        final int qIdentifier,
+                        @Nonnull final byte[] seed,
+                        final boolean derived) {
         requireNonNull(lmotsType);
         requireNonNull(identifier);
 
@@ -46,6 +60,7 @@ final class LMOTSPrivateKeyImpl implements LMOTSPrivateKey {
         this.identifier = identifier;
         this.qIdentifier = qIdentifier;
         this.seed = seed;
+        this.derived = derived;
     }
 
     LMOTSPrivateKeyImpl(@Nonnull final DataInputStream inputStream) throws IOException {
@@ -61,12 +76,35 @@ final class LMOTSPrivateKeyImpl implements LMOTSPrivateKey {
         this.qIdentifier = byteArrayToInt(data, 0, 4);
         this.seed = new byte[lmotsType.getN()];
         inputStream.readFully(seed, 0, lmotsType.getN());
+        this.derived = false;
+    }
+
+    LMOTSPrivateKeyImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt());
+        this.identifier = new byte[16];
+        buffer.get(identifier);
+        this.qIdentifier = buffer.getInt();
+        this.seed = new byte[lmotsType.getN()];
+        buffer.get(seed);
+        this.derived = false;
     }
 
     @Override
     @Nonnull
     public byte[][] getKeys() throws NoSuchAlgorithmException {
         final byte[][] keys = new byte[lmotsType.getP()][lmotsType.getN()];
+        if (derived) {
+            // x_q[i] = H(I || u32str(q) || u16str(i) || u8str(0xff) || SEED)
+            final CustomMessageDigest messageDigest =
+                    MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm());
+            for (int i = 0; i < lmotsType.getP(); i++) {
+                keys[i] = messageDigest.digest(merge(identifier, intTo4ByteArray(qIdentifier), intTo2ByteArray(i),
+                        intTo1ByteArray(0xff), seed));
+            }
+            return keys;
+        }
         final SecureRandom secureRandom = SecureRandom.getInstance(RANDOM_NUMBER_ALGORITHM);
         secureRandom.setSeed(this.seed);
         for (int i = 0; i < lmotsType.getP(); i++) {
@@ -99,23 +137,40 @@ final class LMOTSPrivateKeyImpl implements LMOTSPrivateKey {
         return seed;
     }
 
+    @Override
+    public boolean isDerived() {
+        return derived;
+    }
+
     /**
      * @return the bytes of the key object in the format: u32str(type) || I || u32str(q) || x[0] || x[1] || ... || x[p-1]
      */
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.lmotsType.getTypecode()), 0, result, 0, 4);
-        System.arraycopy(this.identifier, 0, result, 4, 16);
-        System.arraycopy(intTo4ByteArray(this.qIdentifier), 0, result, 20, 4);
-        System.arraycopy(this.seed, 0, result, 24, lmotsType.getN());
-        return result;
+        final ByteBuffer buffer = ByteBuffer.allocate(calculateSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
+    /**
+     * @throws IllegalStateException if the key is derived. Its format cannot express the derivation, derived keys are
+     *                               only stored as part of their LMS private key.
+     */
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(getBytes());
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        if (derived) {
+            throw new IllegalStateException("Derived LMOTS private keys cannot be encoded");
+        }
+        buffer.putInt(this.lmotsType.getTypecode());
+        buffer.put(this.identifier);
+        buffer.putInt(this.qIdentifier);
+        buffer.put(this.seed);
     }
 
     @Override
@@ -137,13 +192,13 @@ final class LMOTSPrivateKeyImpl implements LMOTSPrivateKey {
             return false;
         }
         final LMOTSPrivateKeyImpl that = (LMOTSPrivateKeyImpl) o;
-        return qIdentifier == that.qIdentifier && lmotsType == that.lmotsType
+        return qIdentifier == that.qIdentifier && lmotsType == that.lmotsType && derived == that.derived
                 && Arrays.equals(identifier, that.identifier) && Arrays.equals(seed, that.seed);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(lmotsType, qIdentifier);
+        int result = Objects.hash(lmotsType, qIdentifier, derived);
         result = 31 * result + Arrays.hashCode(identifier);
         result = 31 * result + Arrays.hashCode(seed);
         return result;
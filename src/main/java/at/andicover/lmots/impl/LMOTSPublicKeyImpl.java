@@ -8,12 +8,11 @@ import org.apache.commons.codec.binary.Hex;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -71,6 +70,17 @@ final class LMOTSPublicKeyImpl implements LMOTSPublicKey {
         inputStream.readFully(key, 0, lmotsType.getN());
     }
 
+    LMOTSPublicKeyImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt());
+        this.identifier = new byte[16];
+        buffer.get(identifier);
+        this.qIdentifier = buffer.getInt();
+        this.key = new byte[lmotsType.getN()];
+        buffer.get(key);
+    }
+
     @Override
     @Nonnull
     public byte[] getKey() {
@@ -100,18 +110,22 @@ final class LMOTSPublicKeyImpl implements LMOTSPublicKey {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.lmotsType.getTypecode()), 0, result, 0, 4);
-        System.arraycopy(this.identifier, 0, result, 4, 16);
-        System.arraycopy(intTo4ByteArray(this.qIdentifier), 0, result, 20, 4);
-        System.arraycopy(this.key, 0, result, 24, this.lmotsType.getN());
+        final ByteBuffer buffer = ByteBuffer.allocate(calculateSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
 
-        return result;
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(getBytes());
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.lmotsType.getTypecode());
+        buffer.put(this.identifier);
+        buffer.putInt(this.qIdentifier);
+        buffer.put(this.key);
     }
 
     @Override
@@ -7,12 +7,13 @@ import org.apache.commons.codec.binary.Hex;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.put;
+import static at.andicover.util.ByteUtil.putInt;
 import static at.andicover.util.KeySizeUtil.getByteArraySize;
 import static java.util.Objects.requireNonNull;
 
@@ -43,12 +44,18 @@ final class LMOTSSignatureImpl implements LMOTSSignature {
     }
 
     LMOTSSignatureImpl(@Nonnull final DataInputStream inputStream) throws IOException {
-        requireNonNull(inputStream);
+        this(readType(inputStream), inputStream);
+    }
 
-        final byte[] data = new byte[32];
-        inputStream.readFully(data, 0, 4);
+    /**
+     * Reads the rest of the signature after its typecode was already read by the caller.
+     */
+    LMOTSSignatureImpl(@Nonnull final LMOTSType lmotsType, @Nonnull final DataInputStream inputStream)
+            throws IOException {
+        requireNonNull(lmotsType);
+        requireNonNull(inputStream);
 
-        this.lmotsType = LMOTSType.lookUp(byteArrayToInt(data, 0, 4));
+        this.lmotsType = lmotsType;
         this.c = new byte[this.lmotsType.getN()];
         inputStream.readFully(c, 0, lmotsType.getN());
 
@@ -58,12 +65,41 @@ final class LMOTSSignatureImpl implements LMOTSSignature {
         }
     }
 
+    @Nonnull
+    static LMOTSType readType(@Nonnull final DataInputStream inputStream) throws IOException {
+        requireNonNull(inputStream);
+
+        final byte[] data = new byte[4];
+        inputStream.readFully(data, 0, 4);
+        return LMOTSType.lookUp(byteArrayToInt(data, 0, 4));
+    }
+
+    LMOTSSignatureImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt());
+        this.c = new byte[this.lmotsType.getN()];
+        buffer.get(c);
+
+        this.keys = new byte[this.lmotsType.getP()][this.lmotsType.getN()];
+        for (int i = 0; i < this.lmotsType.getP(); i++) {
+            buffer.get(this.keys[i]);
+        }
+    }
+
     @Override
     @Nonnull
     public byte[][] getKeys() {
         return Arrays.copyOf(this.keys, this.keys.length);
     }
 
+    @Override
+    @Nonnull
+    public byte[] getKey(final int index) {
+        // Not copied, the key is read-only, see LMOTSSignature#getKey(int).
+        return this.keys[index];
+    }
+
     @Override
     @Nonnull
     public LMOTSType getLmotsType() {
@@ -82,20 +118,34 @@ final class LMOTSSignatureImpl implements LMOTSSignature {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.lmotsType.getTypecode()), 0, result, 0, 4);
-        System.arraycopy(this.c, 0, result, 4, lmotsType.getN());
-        for (int i = 0; i < this.keys.length; i++) {
-            System.arraycopy(this.keys[i], 0, result, i * this.lmotsType.getN() + 4 + lmotsType.getN(),
-                    this.lmotsType.getN());
+        final byte[] bytes = new byte[calculateSize()];
+        encodeInto(bytes, 0);
+        return bytes;
+    }
+
+    @Override
+    public int encodeInto(@Nonnull final byte[] destination, final int offset) {
+        Objects.checkFromIndexSize(offset, calculateSize(), destination.length);
+        int position = putInt(destination, offset, this.lmotsType.getTypecode());
+        position = put(destination, position, this.c);
+        for (final byte[] key : this.keys) {
+            position = put(destination, position, key);
         }
+        return position - offset;
+    }
 
-        return result;
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(getBytes());
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.lmotsType.getTypecode());
+        buffer.put(this.c);
+        for (final byte[] key : this.keys) {
+            buffer.put(key);
+        }
     }
 
     @Override
@@ -0,0 +1,122 @@
+package at.andicover.lmots.impl;
+
+import at.andicover.lmots.api.LMOTSSignature;
+import at.andicover.lmots.api.LMOTSType;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+import static at.andicover.util.KeySizeUtil.getOtsSignatureSize;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * LMOTS signature that reads its fields in place from the bytes of an encoded signature. Nothing is decoded when the
+ * view is created, every getter copies only the requested field. The bytes must not be changed while the view is used.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-4">RFC 8554 - LM-OTS Signature</a>
+ */
+final class LMOTSSignatureView implements LMOTSSignature {
+
+    private static final int C_OFFSET = Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final LMOTSType lmotsType;
+
+    /**
+     * Wraps the signature at the current position of the buffer and advances the position by the size of the
+     * signature.
+     */
+    LMOTSSignatureView(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid signature length");
+        }
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt(buffer.position()));
+        final int size = (int) getOtsSignatureSize(lmotsType);
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("Invalid signature length");
+        }
+        this.buffer = buffer.slice().limit(size);
+        buffer.position(buffer.position() + size);
+    }
+
+    @Override
+    @Nonnull
+    public byte[][] getKeys() {
+        final byte[][] keys = new byte[lmotsType.getP()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getKey(i);
+        }
+        return keys;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getKey(final int index) {
+        if (index < 0 || index >= lmotsType.getP()) {
+            throw new IllegalArgumentException("Invalid key index");
+        }
+        return read(C_OFFSET + (index + 1) * lmotsType.getN());
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getC() {
+        return read(C_OFFSET);
+    }
+
+    @Override
+    @Nonnull
+    public LMOTSType getLmotsType() {
+        return lmotsType;
+    }
+
+    @Nonnull
+    private byte[] read(final int offset) {
+        final byte[] field = new byte[lmotsType.getN()];
+        buffer.get(offset, field);
+        return field;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    @Override
+    public long encodedSize() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer target) {
+        target.put(buffer.duplicate().rewind());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return buffer.equals(((LMOTSSignatureView) o).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return buffer.hashCode();
+    }
+
+    @Override
+    public int calculateSize() {
+        return buffer.limit();
+    }
+}
@@ -6,6 +6,7 @@ import at.andicover.lmots.api.LMOTSPrivateKey;
 import at.andicover.lmots.api.LMOTSPublicKey;
 import at.andicover.lmots.api.LMOTSType;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.security.NoSuchAlgorithmException;
 
@@ -44,12 +45,50 @@ public interface LMSPrivateKey extends Storable, KeySize {
      */
     int getQIdentifier();
 
+    /**
+     * Derived keys do not hold their LM-OTS private keys, all of them are derived from one SEED with the pseudorandom
+     * key generation of RFC 8554, Appendix A. {@link #getBytes()} and {@link #writeTo(java.nio.ByteBuffer)} throw an
+     * {@link IllegalStateException} for derived keys, their format cannot express them. Derived keys are only stored
+     * in the {@link at.andicover.util.CompactKeyFile} format.
+     *
+     * @return the SEED of a derived key or null if the LM-OTS private keys are held by the key.
+     * @see at.andicover.lmots.api.LMOTSPrivateKey#isDerived()
+     */
+    @CheckForNull
+    byte[] getSeed();
+
     /**
      * @return the next unused LMOTS private key.
      * @throws IllegalStateException if all keys were used.
      */
     LMOTSPrivateKey getNextLmotsKey() throws IllegalStateException;
 
+    /**
+     * Same as {@link #getNextLmotsKey()} but does not throw if the reserved keys are used up. Safe to call from many
+     * threads at once, every reserved leaf is handed out exactly once.
+     *
+     * @return the next unused and reserved LMOTS private key or null if no reserved key is left.
+     */
+    @CheckForNull
+    LMOTSPrivateKey pollNextLmotsKey();
+
+    /**
+     * Returns the LMOTS private key of the given leaf without marking it as used. Only meant to recreate data that
+     * was already signed with this leaf, never to sign new messages.
+     *
+     * @param qIdentifier the leaf number q.
+     * @return the LMOTS private key of the leaf.
+     */
+    @Nonnull
+    LMOTSPrivateKey getLmotsKey(int qIdentifier);
+
+    /**
+     * Restores a persisted state. Marks all leaves below the given q as used. The state is never moved backwards.
+     *
+     * @param qIdentifier the leaf number q of the next unused leaf.
+     */
+    void advanceQIdentifier(int qIdentifier);
+
     /**
      * Calculates the path for the LMS signature.
      *
@@ -73,11 +112,35 @@ public interface LMSPrivateKey extends Storable, KeySize {
      */
     void reserveKeys(int numberOfKeys);
 
+    /**
+     * First step of {@link #reserveKeys(int)}. Only moves the mark returned by {@link #getReservedMark()}, the keys
+     * are not handed out before {@link #publishReservedKeys()} is called. This allows persisting the new mark before
+     * any other thread can sign with the reserved keys.
+     *
+     * @param numberOfKeys how many keys should be reserved.
+     */
+    void prepareReservedKeys(int numberOfKeys);
+
+    /**
+     * Second step of {@link #reserveKeys(int)}. Hands out all keys up to the mark set by
+     * {@link #prepareReservedKeys(int)}.
+     */
+    void publishReservedKeys();
+
     /**
      * @return number of reserved keys that were not used.
      */
     int getReservedKeys();
 
+    /**
+     * Returns the leaf number up to which leaves are reserved, including keys that were prepared but not published
+     * yet. Unlike {@link #getQIdentifier()} plus {@link #getReservedKeys()} it is read in one step and never exceeds
+     * the number of leaves. This is the state that has to be persisted.
+     *
+     * @return the leaf number q of the first leaf that is not reserved.
+     */
+    int getReservedMark();
+
     /**
      * @return if there are reserved keys available.
      */
@@ -91,4 +154,28 @@ public interface LMSPrivateKey extends Storable, KeySize {
      * @throws NoSuchAlgorithmException if the hashing algorithm was not found.
      */
     byte[] calculateRoot(LMOTSPublicKey[] lmotsPublicKeys) throws NoSuchAlgorithmException;
+
+    /**
+     * @return the hashes of all leaf nodes or null if the tree was not built yet.
+     */
+    @CheckForNull
+    byte[][] getLeafNodes();
+
+    /**
+     * @return the stored top level nodes of the tree, index 0 is the root. Null if the tree was not built yet.
+     */
+    @CheckForNull
+    byte[][] getTopLevelNodes();
+
+    /**
+     * Restores the tree from persisted leaf nodes. All inner nodes are calculated again and the tree is only used if
+     * its root matches the given root. So corrupt or foreign nodes never end up in a signature.
+     *
+     * @param leafNodes the hashes of all leaf nodes.
+     * @param root      the root the tree must have, the key of the LMS public key.
+     * @return true if the tree was restored, false if the root does not match.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalArgumentException if the number or the size of the nodes does not match the LMS parameters.
+     */
+    boolean restoreLeafNodes(@Nonnull byte[][] leafNodes, @Nonnull byte[] root) throws NoSuchAlgorithmException;
 }
@@ -39,4 +39,17 @@ public interface LMSSignature extends Storable, KeySize {
      */
     @Nonnull
     byte[][] getPath();
+
+    /**
+     * Returns one node of the path without copying the whole path, verification reads every node once.
+     *
+     * <p>
+     * Note: The returned array may be the one held by the signature. It is read-only, callers must not modify it.
+     * </p>
+     *
+     * @param index the index of the node, from 0 to h - 1.
+     * @return the node path[index] of the path to the tree root.
+     */
+    @Nonnull
+    byte[] getPathNode(int index);
 }
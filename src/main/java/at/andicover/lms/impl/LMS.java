@@ -1,5 +1,7 @@
 package at.andicover.lms.impl;
 
+import at.andicover.common.api.MessageSource;
+import at.andicover.config.TuningConfig;
 import at.andicover.digest.api.CustomMessageDigest;
 import at.andicover.digest.impl.MessageDigestCache;
 import at.andicover.lmots.api.LMOTSPrivateKey;
@@ -13,24 +15,29 @@ import at.andicover.lms.api.LMSPublicKey;
 import at.andicover.lms.api.LMSSignature;
 import at.andicover.lms.api.LMSType;
 import at.andicover.util.MathUtil;
+import at.andicover.util.TaskScheduler;
 import at.andicover.util.ThreadUtil;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
 
 import static at.andicover.config.Defaults.RANDOM_NUMBER_ALGORITHM;
 import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static at.andicover.util.ByteUtil.merge;
+import static at.andicover.util.KeySizeUtil.getLmsSignatureSize;
 import static at.andicover.util.SecurityString.getdIntr;
 import static at.andicover.util.SecurityString.getdLeaf;
-import static at.andicover.util.ThreadUtil.shutdownThreadExecutor;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -83,16 +90,267 @@ public final class LMS {
     public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
                                           @Nonnull final LMOTSType lmotsType,
                                           final byte[] seed) throws NoSuchAlgorithmException {
+        return generateKeys(lmsType, lmotsType, seed, (Executor) null);
+    }
+
+    /**
+     * Generate an LMS private and public key pair. The LM-OTS key pairs are generated on the given executor, the
+     * calling thread takes part in the work. Without executor bulk tasks of the {@link TaskScheduler} are used.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG.
+     * @param executor  the executor that generates the LM-OTS key pairs.
+     * @return the LMS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    @Nonnull
+    public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          @CheckForNull final byte[] seed,
+                                          @CheckForNull final Executor executor) throws NoSuchAlgorithmException {
+        return generateKeys(lmsType, lmotsType, seed, executor, TuningConfig.getDefault());
+    }
+
+    /**
+     * Generate an LMS private and public key pair with the given tuning parameters, see
+     * {@link #generateKeys(LMSType, LMOTSType, byte[], Executor)}. The config sets how many workers generate the
+     * LM-OTS key pairs.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG.
+     * @param executor  the executor that generates the LM-OTS key pairs.
+     * @param config    the tuning parameters.
+     * @return the LMS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if a process wide parameter of the config differs from the default config.
+     */
+    @Nonnull
+    public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          @CheckForNull final byte[] seed,
+                                          @CheckForNull final Executor executor,
+                                          @Nonnull final TuningConfig config) throws NoSuchAlgorithmException {
         requireNonNull(lmsType);
         requireNonNull(lmotsType);
+        requireNonNull(config).checkCallParameters();
 
         final int keys = MathUtil.pow(lmsType.getH());
         final LMOTSPrivateKey[] lmotsPrivateKeys = new LMOTSPrivateKey[keys];
-        final LMOTSPublicKey[] lmotsPublicKeys = new LMOTSPublicKey[keys];
+        final byte[][] leaves = new byte[keys][];
+        final byte[] identifier = new byte[16];
+        final byte[] seedVolatile = initialize(lmotsType, seed, identifier);
+
+        generateLeaves(lmsType, lmotsType, identifier, seedVolatile, (q, lmotsPrivateKey, leafNode) -> {
+            lmotsPrivateKeys[q] = lmotsPrivateKey;
+            leaves[q] = leafNode;
+        }, executor, config);
+
+        final LMSPrivateKeyImpl privateKey = new LMSPrivateKeyImpl(lmsType, lmotsType, lmotsPrivateKeys, identifier);
+        return new LMSKeyPairImpl(privateKey, new LMSPublicKeyImpl(privateKey, privateKey.calculateRoot(leaves)));
+    }
+
+    /**
+     * Generates an LMS private and public key pair and writes the key material into the given buffers while it is
+     * generated. Every worker thread writes the seed of its LM-OTS private key and the leaf node of its tree into its
+     * own region of the buffers, so they can be regions of a memory mapped file. The private key does not hold its
+     * LM-OTS private keys, it is backed by the seeds buffer. The same seed results in the same key pair as
+     * {@link #generateKeys(LMSType, LMOTSType, byte[])}.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG.
+     * @param seeds     the buffer for the seeds of all LM-OTS private keys, n byte each. Must not be modified
+     *                  afterwards.
+     * @param leafNodes the buffer for all leaf nodes of the tree, m byte each.
+     * @return the LMS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the buffers do not have the size of the key material.
+     */
+    @Nonnull
+    public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          final byte[] seed,
+                                          @Nonnull final ByteBuffer seeds,
+                                          @Nonnull final ByteBuffer leafNodes) throws NoSuchAlgorithmException {
+        return generateKeys(lmsType, lmotsType, seed, seeds, leafNodes, null);
+    }
+
+    /**
+     * Generates an LMS private and public key pair and writes the key material into the given buffers while it is
+     * generated, see {@link #generateKeys(LMSType, LMOTSType, byte[], ByteBuffer, ByteBuffer)}. The key material is
+     * generated on the given executor, the calling thread takes part in the work. Without executor bulk tasks of the
+     * {@link TaskScheduler} are used.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG.
+     * @param seeds     the buffer for the seeds of all LM-OTS private keys, n byte each. Must not be modified
+     *                  afterwards.
+     * @param leafNodes the buffer for all leaf nodes of the tree, m byte each.
+     * @param executor  the executor that generates the key material.
+     * @return the LMS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the buffers do not have the size of the key material.
+     */
+    @Nonnull
+    public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          @CheckForNull final byte[] seed,
+                                          @Nonnull final ByteBuffer seeds,
+                                          @Nonnull final ByteBuffer leafNodes,
+                                          @CheckForNull final Executor executor) throws NoSuchAlgorithmException {
+        return generateKeys(lmsType, lmotsType, seed, seeds, leafNodes, executor, TuningConfig.getDefault());
+    }
+
+    /**
+     * Generates an LMS private and public key pair into the given buffers with the given tuning parameters, see
+     * {@link #generateKeys(LMSType, LMOTSType, byte[], ByteBuffer, ByteBuffer, Executor)}. The config sets how many
+     * workers generate the key material.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG.
+     * @param seeds     the buffer for the seeds of all LM-OTS private keys, n byte each. Must not be modified
+     *                  afterwards.
+     * @param leafNodes the buffer for all leaf nodes of the tree, m byte each.
+     * @param executor  the executor that generates the key material.
+     * @param config    the tuning parameters.
+     * @return the LMS keypair.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the buffers do not have the size of the key material or a process wide
+     *                                  parameter of the config differs from the default config.
+     */
+    @Nonnull
+    public static LMSKeyPair generateKeys(@Nonnull final LMSType lmsType,
+                                          @Nonnull final LMOTSType lmotsType,
+                                          @CheckForNull final byte[] seed,
+                                          @Nonnull final ByteBuffer seeds,
+                                          @Nonnull final ByteBuffer leafNodes,
+                                          @CheckForNull final Executor executor,
+                                          @Nonnull final TuningConfig config) throws NoSuchAlgorithmException {
+        requireNonNull(lmsType);
+        requireNonNull(lmotsType);
+        requireNonNull(seeds);
+        requireNonNull(leafNodes);
+        requireNonNull(config).checkCallParameters();
+
+        final int keys = MathUtil.pow(lmsType.getH());
+        final int n = lmotsType.getN();
+        final int m = lmsType.getM();
+        if (seeds.remaining() != (long) keys * n || leafNodes.remaining() != (long) keys * m) {
+            throw new IllegalArgumentException("Incorrect size of the key material buffers");
+        }
+
+        // The private key keeps the leaf nodes for signing, they are not read back from the buffer.
+        final byte[][] leaves = new byte[keys][];
+        final byte[] identifier = new byte[16];
+        final byte[] seedVolatile = initialize(lmotsType, seed, identifier);
+
+        generateLeaves(lmsType, lmotsType, identifier, seedVolatile, (q, lmotsPrivateKey, leafNode) -> {
+            seeds.duplicate().position(seeds.position() + q * n).put(lmotsPrivateKey.getSeed());
+            leafNodes.duplicate().position(leafNodes.position() + q * m).put(leafNode);
+            leaves[q] = leafNode;
+        }, executor, config);
+
+        final LMSPrivateKeyImpl privateKey =
+                new LMSPrivateKeyImpl(lmsType, lmotsType, identifier, 0, seeds);
+        return new LMSKeyPairImpl(privateKey, new LMSPublicKeyImpl(privateKey, privateKey.calculateRoot(leaves)));
+    }
+
+    /**
+     * Generates the LM-OTS key pair of every leaf on up to {@link TuningConfig#getParallelism()} workers and passes
+     * the private key and the leaf node to the given consumer. Exceptions of the workers are thrown by this method.
+     */
+    private static void generateLeaves(@Nonnull final LMSType lmsType,
+                                       @Nonnull final LMOTSType lmotsType,
+                                       @Nonnull final byte[] identifier,
+                                       @Nonnull final byte[] seedVolatile,
+                                       @Nonnull final LeafConsumer consumer,
+                                       @CheckForNull final Executor executor,
+                                       @Nonnull final TuningConfig config) {
+        final int keys = MathUtil.pow(lmsType.getH());
+
+        // Create all LM-OTS key pairs using threads.
+        forEachLeaf(keys, q -> {
+            try {
+                final byte[] leafSeed = generateLeafSeed(lmotsType, seedVolatile, q);
+                final LMOTSPrivateKey lmotsPrivateKey = LMOTS.generatePrivateKey(lmotsType, identifier, q, leafSeed);
+                final LMOTSPublicKey lmotsPublicKey = LMOTS.generatePublicKey(lmotsPrivateKey);
+                final byte[] leafNode = MessageDigestCache.getInstance().getMessageDigest(lmsType.getHashAlgorithm())
+                        .digest(merge(identifier, intTo4ByteArray(q + keys), getdLeaf(), lmotsPublicKey.getKey()));
+                consumer.accept(q, lmotsPrivateKey, leafNode);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, executor, TaskScheduler.Priority.BULK, config);
+    }
+
+    /**
+     * Builds the LMS private key that {@link #generateKeys(LMSType, LMOTSType, byte[], ByteBuffer, ByteBuffer)}
+     * generates for the given seed again. Only the identifier and the seeds of the LM-OTS private keys are generated,
+     * the tree is not built. The seeds are kept on the heap and generated by interactive tasks of the
+     * {@link TaskScheduler}.
+     *
+     * @param lmsType     The LMS parameters.
+     * @param lmotsType   The LMOTS parameters.
+     * @param seed        The seed the key was generated with. It is not modified.
+     * @param qIdentifier The leaf number q of the next unused leaf.
+     * @return the regenerated LMSPrivateKey instance.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the seed has an incorrect size.
+     */
+    @Nonnull
+    public static LMSPrivateKey regeneratePrivateKey(@Nonnull final LMSType lmsType,
+                                                     @Nonnull final LMOTSType lmotsType,
+                                                     @Nonnull final byte[] seed,
+                                                     final int qIdentifier) throws NoSuchAlgorithmException {
+        requireNonNull(lmsType);
+        requireNonNull(lmotsType);
+        requireNonNull(seed);
+        if (seed.length != lmotsType.getN()) {
+            throw new IllegalArgumentException("Incorrect size of the seed");
+        }
+
+        final int keys = MathUtil.pow(lmsType.getH());
+        final int n = lmotsType.getN();
         final byte[] identifier = new byte[16];
+        final byte[] seedVolatile = initialize(lmotsType, seed.clone(), identifier);
+        final ByteBuffer seeds = ByteBuffer.allocate(keys * n);
+        forEachLeaf(keys, q -> {
+            try {
+                seeds.duplicate().position(q * n).put(generateLeafSeed(lmotsType, seedVolatile, q));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, null, TaskScheduler.Priority.INTERACTIVE, TuningConfig.getDefault());
+        return new LMSPrivateKeyImpl(lmsType, lmotsType, identifier, qIdentifier, seeds);
+    }
+
+    /**
+     * Returns the seed of the LM-OTS private key with the given q identifier.
+     */
+    @Nonnull
+    private static byte[] generateLeafSeed(@Nonnull final LMOTSType lmotsType,
+                                           @Nonnull final byte[] seedVolatile,
+                                           final int q) throws NoSuchAlgorithmException {
+        // We append the Q identifier to the seed and hash it to get a seed with uniform length again.
+        // With this approach we have deterministic seeds for all keys and can fully utilize all cores
+        // because we do not need to calculate the next seed for each task.
+        return MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm())
+                .digest(merge(seedVolatile, intTo4ByteArray(q)));
+    }
+
+    /**
+     * Fills the identifier I and returns the seed all seeds of the LM-OTS private keys are derived from.
+     */
+    @Nonnull
+    private static byte[] initialize(@Nonnull final LMOTSType lmotsType,
+                                     final byte[] seed,
+                                     @Nonnull final byte[] identifier) throws NoSuchAlgorithmException {
         byte[] seedVolatile = seed;
         final SecureRandom secureRandom = SecureRandom.getInstance(RANDOM_NUMBER_ALGORITHM);
-        final ExecutorService executorService = ThreadUtil.createNewThreadExecutor();
 
         // If we got no seed we generate one.
         if (seedVolatile == null) {
@@ -104,34 +362,7 @@ public final class LMS {
 
         secureRandom.setSeed(seedVolatile);
         secureRandom.nextBytes(seedVolatile);
-        final CustomMessageDigest digest =
-                MessageDigestCache.getInstance().getMessageDigest(lmotsType.getHashAlgorithm());
-
-        // Create all LM-OTS key pairs using threads.
-        for (int q = 0; q < keys; q++) {
-            final int finalQ = q;
-            // We append the Q identifier to the seed and hash it to get a seed with uniform length again.
-            // With this approach we have deterministic seeds for all keys and can fully utilize all cores because
-            // we do not need to calculate the next seed for each task.
-            final byte[] finalSeed = digest.digest(merge(seedVolatile, intTo4ByteArray(q)));
-            executorService.execute(() -> {
-                if (!Thread.currentThread().isInterrupted()) {
-                    try {
-                        final LMOTSPrivateKey lmotsPrivateKey =
-                                LMOTS.generatePrivateKey(lmotsType, identifier, finalQ, finalSeed);
-                        lmotsPrivateKeys[finalQ] = lmotsPrivateKey;
-                        lmotsPublicKeys[finalQ] = LMOTS.generatePublicKey(lmotsPrivateKey);
-                    } catch (NoSuchAlgorithmException ex) {
-                        throw new IllegalStateException(ex);
-                    }
-                }
-            });
-        }
-        shutdownThreadExecutor(executorService);
-
-        final LMSPrivateKey privateKey = new LMSPrivateKeyImpl(lmsType, lmotsType, lmotsPrivateKeys, identifier);
-        return new LMSKeyPairImpl(privateKey,
-                new LMSPublicKeyImpl(privateKey, privateKey.calculateRoot(lmotsPublicKeys)));
+        return seedVolatile;
     }
 
     /**
@@ -141,35 +372,62 @@ public final class LMS {
      * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
      */
 
-    static void generatePublicKey(@Nonnull final LMSPrivateKey privateKey,
-                                  @Nonnull final LMOTSPrivateKey[] lmotsPrivateKeys)
-            throws NoSuchAlgorithmException {
+    static void generatePublicKey(@Nonnull final LMSPrivateKey privateKey) throws NoSuchAlgorithmException {
         requireNonNull(privateKey);
-        requireNonNull(lmotsPrivateKeys);
 
         final LMSType lmsType = privateKey.getLmsType();
         final int h = lmsType.getH();
         final int keys = MathUtil.pow(h);
         final LMOTSPublicKey[] lmotsPublicKeys = new LMOTSPublicKey[keys];
-        final ExecutorService executorService = ThreadUtil.createNewThreadExecutor();
 
         // Create all LM-OTS public keys using threads.
-        for (int i = 0; i < keys; i++) {
-            final int finalI = i;
-            executorService.execute(() -> {
-                if (!Thread.currentThread().isInterrupted()) {
-                    try {
-                        lmotsPublicKeys[finalI] = LMOTS.generatePublicKey(lmotsPrivateKeys[finalI]);
-                    } catch (NoSuchAlgorithmException ex) {
-                        throw new IllegalStateException(ex);
-                    }
-                }
-            });
-        }
-        shutdownThreadExecutor(executorService);
+        forEachLeaf(keys, q -> {
+            try {
+                lmotsPublicKeys[q] = LMOTS.generatePublicKey(privateKey.getLmotsKey(q));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, null, TaskScheduler.Priority.BACKGROUND, TuningConfig.getDefault());
         privateKey.calculateRoot(lmotsPublicKeys);
     }
 
+    /**
+     * Runs the given action for all leaves with up to {@link TuningConfig#getParallelism()} workers. Without executor
+     * tasks of the given priority class of the {@link TaskScheduler} are used and the calling thread counts towards
+     * the cap of the class, see {@link TaskScheduler#forEachIndex(int, IntConsumer, TaskScheduler.Priority, int)}.
+     */
+    private static void forEachLeaf(final int keys,
+                                    @Nonnull final IntConsumer action,
+                                    @CheckForNull final Executor executor,
+                                    @Nonnull final TaskScheduler.Priority priority,
+                                    @Nonnull final TuningConfig config) {
+        if (executor != null) {
+            ThreadUtil.forEachIndex(keys, action, executor, config.getParallelism());
+            return;
+        }
+        TaskScheduler.getInstance().forEachIndex(keys, action, priority, config.getParallelism());
+    }
+
+    /**
+     * Generates an LMS private and public key pair on the given executor. The LM-OTS key pairs are generated on the
+     * same executor.
+     *
+     * @param lmsType   the LMS parameter.
+     * @param lmotsType the LMOTS parameter.
+     * @param seed      the seed for the RNG or null for a random seed.
+     * @param executor  the executor that runs the key generation.
+     * @return the future of the LMS keypair.
+     */
+    @Nonnull
+    public static CompletableFuture<LMSKeyPair> generateKeysAsync(@Nonnull final LMSType lmsType,
+                                                                  @Nonnull final LMOTSType lmotsType,
+                                                                  @CheckForNull final byte[] seed,
+                                                                  @Nonnull final Executor executor) {
+        requireNonNull(executor);
+
+        return ThreadUtil.supplyAsync(() -> generateKeys(lmsType, lmotsType, seed, executor), executor);
+    }
+
     /**
      * Generates a LMS signature for the given message with the given LMS private key.
      * Uses the next unused LMOTS private key to build an LMOTS signature.
@@ -206,9 +464,89 @@ public final class LMS {
         requireNonNull(message);
         requireNonNull(privateKey);
 
-        final LMOTSPrivateKey lmotsPrivateKey = privateKey.getNextLmotsKey();
+        return generateSignature(message, privateKey, privateKey.getNextLmotsKey());
+    }
+
+    /**
+     * Generates a LMS signature for the given message with an LMOTS private key that was already taken from the
+     * given LMS private key. This allows to claim the leaf while holding a lock and to do the expensive hashing
+     * afterwards.
+     *
+     * @param message         The bytes of the original message.
+     * @param privateKey      The LMS private key the LMOTS private key belongs to.
+     * @param lmotsPrivateKey The LMOTS private key previously returned by {@link LMSPrivateKey#getNextLmotsKey()}.
+     * @return The LMS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    @Nonnull
+    public static LMSSignature generateSignature(@Nonnull final byte[] message,
+                                                 @Nonnull final LMSPrivateKey privateKey,
+                                                 @Nonnull final LMOTSPrivateKey lmotsPrivateKey)
+            throws NoSuchAlgorithmException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+        requireNonNull(lmotsPrivateKey);
+
+        final LMOTSSignature lmotsSignature = LMOTS.generateSignature(message, lmotsPrivateKey);
+        return generateSignature(privateKey, lmotsPrivateKey, lmotsSignature);
+    }
+
+    /**
+     * Generates a LMS signature for the given message with an LMOTS private key that was already taken from the
+     * given LMS private key and the given randomizer C. The result is reproducible, which is needed to recreate the
+     * signatures of a HSS signature chain.
+     *
+     * @param message         The bytes of the original message.
+     * @param privateKey      The LMS private key the LMOTS private key belongs to.
+     * @param lmotsPrivateKey The LMOTS private key of the leaf to sign with.
+     * @param c               The n byte randomizer of the LMOTS signature.
+     * @return The LMS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     */
+    @Nonnull
+    public static LMSSignature generateSignature(@Nonnull final byte[] message,
+                                                 @Nonnull final LMSPrivateKey privateKey,
+                                                 @Nonnull final LMOTSPrivateKey lmotsPrivateKey,
+                                                 @Nonnull final byte[] c)
+            throws NoSuchAlgorithmException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+        requireNonNull(lmotsPrivateKey);
+
+        final LMOTSSignature lmotsSignature = LMOTS.generateSignature(message, lmotsPrivateKey, c);
+        return generateSignature(privateKey, lmotsPrivateKey, lmotsSignature);
+    }
+
+    /**
+     * Generates a LMS signature for the message of the given source with an LMOTS private key that was already taken
+     * from the given LMS private key. The message is hashed incrementally and never held in memory as a whole. If the
+     * message cannot be read the leaf is lost, it is never used for a second message.
+     *
+     * @param message         The source of the original message.
+     * @param privateKey      The LMS private key the LMOTS private key belongs to.
+     * @param lmotsPrivateKey The LMOTS private key previously returned by {@link LMSPrivateKey#getNextLmotsKey()}.
+     * @return The LMS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    @Nonnull
+    public static LMSSignature generateSignature(@Nonnull final MessageSource message,
+                                                 @Nonnull final LMSPrivateKey privateKey,
+                                                 @Nonnull final LMOTSPrivateKey lmotsPrivateKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+        requireNonNull(lmotsPrivateKey);
+
         final LMOTSSignature lmotsSignature = LMOTS.generateSignature(message, lmotsPrivateKey);
+        return generateSignature(privateKey, lmotsPrivateKey, lmotsSignature);
+    }
 
+    @Nonnull
+    static LMSSignature generateSignature(@Nonnull final LMSPrivateKey privateKey,
+                                          @Nonnull final LMOTSPrivateKey lmotsPrivateKey,
+                                          @Nonnull final LMOTSSignature lmotsSignature)
+            throws NoSuchAlgorithmException {
         final int pathNumber = lmotsPrivateKey.getQIdentifier() + MathUtil.pow(privateKey.getLmsType().getH());
         return new LMSSignatureImpl(privateKey.getLmsType(), lmotsSignature, lmotsPrivateKey.getQIdentifier(),
                 privateKey.getPath(pathNumber));
@@ -223,6 +561,7 @@ public final class LMS {
      * @param generatedLmotsPublicKey The generated LMOTS public key candidate.
      * @return The generated LMS public key candidate.
      * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the leaf index of the signature is not a leaf of the tree.
      */
     @Nonnull
     public static LMSPublicKey generatePublicKey(@Nonnull final LMSSignature signature,
@@ -234,7 +573,22 @@ public final class LMS {
         requireNonNull(generatedLmotsPublicKey);
         validateSignature(signature);
 
+        return calculatePublicKey(signature, identifier, generatedLmotsPublicKey);
+    }
+
+    /**
+     * Calculates the LMS public key candidate of an already validated signature. The leaf index must be checked first,
+     * otherwise the node number overflows or the path loop reads past the path (RFC 8554 section 5.4.2).
+     */
+    @Nonnull
+    private static LMSPublicKey calculatePublicKey(@Nonnull final LMSSignature signature,
+                                                   @Nonnull final byte[] identifier,
+                                                   @Nonnull final LMOTSPublicKey generatedLmotsPublicKey)
+            throws NoSuchAlgorithmException {
         final LMSType lmsType = signature.getLmsType();
+        if (!isValidLeaf(signature)) {
+            throw new IllegalArgumentException("Invalid leaf index");
+        }
         final CustomMessageDigest messageDigest =
                 MessageDigestCache.getInstance().getMessageDigest(lmsType.getHashAlgorithm());
         int nodeNum = signature.getQIdentifier() + MathUtil.pow(lmsType.getH());
@@ -245,10 +599,10 @@ public final class LMS {
         while (nodeNum > 1) {
             if (nodeNum % 2 == 0) {
                 tmp = messageDigest.digest(merge(identifier, intTo4ByteArray(nodeNum / 2), getdIntr(), tmp,
-                        signature.getPath()[i]));
+                        signature.getPathNode(i)));
             } else {
                 tmp = messageDigest
-                        .digest(merge(identifier, intTo4ByteArray(nodeNum / 2), getdIntr(), signature.getPath()[i],
+                        .digest(merge(identifier, intTo4ByteArray(nodeNum / 2), getdIntr(), signature.getPathNode(i),
                                 tmp));
             }
             nodeNum /= 2;
@@ -304,17 +658,65 @@ public final class LMS {
                 || publicKey.getLmsType() != signature.getLmsType()) {
             throw new IllegalArgumentException("Incompatible typecodes");
         }
+        if (!isValidLeaf(signature)) {
+            return false;
+        }
 
         final int qIdentifier = signature.getQIdentifier();
         final byte[] identifier = publicKey.getIdentifier();
         final LMOTSPublicKey generatedLmotsPublicKey =
                 LMOTS.generatePublicKey(message, signature.getLmotsSignature(), qIdentifier, identifier);
-        final LMSPublicKey generatedLMSPublicKey =
-                generatePublicKey(signature, publicKey.getIdentifier(), generatedLmotsPublicKey);
+        final LMSPublicKey generatedLMSPublicKey = calculatePublicKey(signature, identifier, generatedLmotsPublicKey);
         return Arrays.equals(generatedLMSPublicKey.getKey(), publicKey.getKey());
     }
 
-    private static void validatePublicKey(@Nonnull final LMSPublicKey publicKey) {
+    /**
+     * Verifies the given signature for the message of the given source and the given public key. The message is hashed
+     * incrementally and never held in memory as a whole.
+     *
+     * @param message   The source of the original message.
+     * @param signature The message signature.
+     * @param publicKey The public key.
+     * @return true/false.
+     * @throws NoSuchAlgorithmException if the selected hash algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    public static boolean verifySignature(@Nonnull final MessageSource message,
+                                          @Nonnull final LMSSignature signature,
+                                          @Nonnull final LMSPublicKey publicKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(signature);
+        requireNonNull(publicKey);
+
+        validatePublicKey(publicKey);
+        validateSignature(signature);
+
+        if (publicKey.getLmotsType() != signature.getLmotsSignature().getLmotsType()
+                || publicKey.getLmsType() != signature.getLmsType()) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+        if (!isValidLeaf(signature)) {
+            return false;
+        }
+
+        final int qIdentifier = signature.getQIdentifier();
+        final byte[] identifier = publicKey.getIdentifier();
+        final LMOTSPublicKey generatedLmotsPublicKey =
+                LMOTS.generatePublicKey(message, signature.getLmotsSignature(), qIdentifier, identifier);
+        final LMSPublicKey generatedLMSPublicKey = calculatePublicKey(signature, identifier, generatedLmotsPublicKey);
+        return Arrays.equals(generatedLMSPublicKey.getKey(), publicKey.getKey());
+    }
+
+    /**
+     * A signature is only valid for a leaf index q &lt; 2^h of its tree (RFC 8554 section 5.4.2).
+     */
+    static boolean isValidLeaf(@Nonnull final LMSSignature signature) {
+        final int qIdentifier = signature.getQIdentifier();
+        return qIdentifier >= 0 && qIdentifier < MathUtil.pow(signature.getLmsType().getH());
+    }
+
+    static void validatePublicKey(@Nonnull final LMSPublicKey publicKey) {
         final LMSType lmsType = publicKey.getLmsType();
 
         if (publicKey.getKey().length != lmsType.getM() || publicKey.getIdentifier().length != 16) {
@@ -322,10 +724,11 @@ public final class LMS {
         }
     }
 
-    private static void validateSignature(@Nonnull final LMSSignature signature) {
+    static void validateSignature(@Nonnull final LMSSignature signature) {
         final LMSType lmsType = signature.getLmsType();
 
-        if (signature.getPath().length != lmsType.getH() || signature.getPath()[0].length != lmsType.getM()) {
+        if (signature.calculateSize() != getLmsSignatureSize(signature.getLmotsSignature().getLmotsType(), lmsType)
+                || signature.getPathNode(0).length != lmsType.getM()) {
             throw new IllegalArgumentException("Invalid signature length");
         }
     }
@@ -344,6 +747,64 @@ public final class LMS {
         return new LMSPrivateKeyImpl(inputStream);
     }
 
+    /**
+     * Builds an LMS private key on top of the given buffer, usually a memory mapped key file. The LM-OTS private keys
+     * are not copied, they are decoded from the buffer when they are used. The position of the buffer is moved behind
+     * the key.
+     *
+     * @param buffer The buffer that holds the key at its current position. Must not be modified afterwards.
+     * @return the recreated LMSPrivateKey instance.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IllegalArgumentException if the buffer does not hold a complete and valid key.
+     */
+    @Nonnull
+    public static LMSPrivateKey buildPrivateKey(@Nonnull final ByteBuffer buffer) throws NoSuchAlgorithmException {
+        return new LMSPrivateKeyImpl(buffer);
+    }
+
+    /**
+     * Builds an LMS private key on top of a buffer that only holds the seeds of its LM-OTS private keys. The seeds
+     * are not copied, the LM-OTS private keys are created from them when they are used.
+     *
+     * @param lmsType     The LMS parameters.
+     * @param lmotsType   The LMOTS parameters.
+     * @param identifier  The 16 byte identifier I.
+     * @param qIdentifier The leaf number q of the next unused leaf.
+     * @param seeds       The seeds of all leaves, n byte each. Must not be modified afterwards.
+     * @return the recreated LMSPrivateKey instance.
+     * @throws IllegalArgumentException if the buffer does not hold a seed for every leaf.
+     */
+    @Nonnull
+    public static LMSPrivateKey buildPrivateKey(@Nonnull final LMSType lmsType,
+                                                @Nonnull final LMOTSType lmotsType,
+                                                @Nonnull final byte[] identifier,
+                                                final int qIdentifier,
+                                                @Nonnull final ByteBuffer seeds) {
+        return new LMSPrivateKeyImpl(lmsType, lmotsType, identifier, qIdentifier, seeds);
+    }
+
+    /**
+     * Builds a derived LMS private key. All LM-OTS private keys are derived from the given SEED with the pseudorandom
+     * key generation of RFC 8554, as done by the reference implementation.
+     *
+     * @param lmsType     The LMS parameters.
+     * @param lmotsType   The LMOTS parameters.
+     * @param identifier  The 16 byte identifier I.
+     * @param qIdentifier The leaf number q of the next unused leaf.
+     * @param seed        The n byte SEED of the tree.
+     * @return the derived LMSPrivateKey instance.
+     * @throws IllegalArgumentException if the SEED or I has an incorrect size.
+     * @see <a href="https://tools.ietf.org/html/rfc8554#appendix-A">RFC 8554 - Pseudorandom Key Generation</a>
+     */
+    @Nonnull
+    public static LMSPrivateKey derivePrivateKey(@Nonnull final LMSType lmsType,
+                                                 @Nonnull final LMOTSType lmotsType,
+                                                 @Nonnull final byte[] identifier,
+                                                 final int qIdentifier,
+                                                 @Nonnull final byte[] seed) {
+        return new LMSPrivateKeyImpl(lmsType, lmotsType, identifier, qIdentifier, seed);
+    }
+
     /**
      * Builds an LMS public key from a given byte array.
      *
@@ -356,6 +817,33 @@ public final class LMS {
         return new LMSPublicKeyImpl(inputStream);
     }
 
+    /**
+     * Builds an LMS public key from the given buffer. Reads the key at the current position of the buffer and advances
+     * the position by the size of the key.
+     *
+     * @param buffer The buffer that provides the bytes of the key.
+     * @return the recreated LMSPublicKey instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static LMSPublicKey buildPublicKey(@Nonnull final ByteBuffer buffer) {
+        return new LMSPublicKeyImpl(buffer);
+    }
+
+    /**
+     * Wraps the LMS public key at the current position of the buffer without decoding it and advances the position by
+     * the size of the key. The returned key reads its fields from the buffer, which must not be changed while the key
+     * is used.
+     *
+     * @param buffer The buffer that holds the bytes of the key, either a heap or a direct buffer.
+     * @return the LMSPublicKey view of the bytes.
+     * @throws IllegalArgumentException if the buffer does not hold a complete key.
+     */
+    @Nonnull
+    public static LMSPublicKey wrapPublicKey(@Nonnull final ByteBuffer buffer) {
+        return new LMSPublicKeyView(buffer);
+    }
+
     /**
      * Builds an LMS signature from a given byte array.
      *
@@ -367,4 +855,55 @@ public final class LMS {
     public static LMSSignature buildSignature(@Nonnull final DataInputStream inputStream) throws IOException {
         return new LMSSignatureImpl(inputStream);
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds an LMS signature for the given public key from the stream. The LM-OTS and the LMS typecode are checked
+     * against the public key as soon as they were read, so a signature of another type is rejected before its body
+     * is read.
+     *
+     * @param inputStream The inputstream that provides the bytes of the signature.
+     * @param publicKey   The LMS public key the signature is verified with.
+     * @return the recreated LMSSignature instance.
+     * @throws IOException              if stream cannot be read.
+     * @throws IllegalArgumentException if a typecode of the signature does not match the public key.
+     */
+    @Nonnull
+    public static LMSSignature buildSignature(@Nonnull final DataInputStream inputStream,
+                                              @Nonnull final LMSPublicKey publicKey) throws IOException {
+        return new LMSSignatureImpl(inputStream, publicKey);
+    }
+
+    /**
+     * Builds an LMS signature from the given buffer. Reads the signature at the current position of the buffer and
+     * advances the position by the size of the signature.
+     *
+     * @param buffer The buffer that provides the bytes of the signature.
+     * @return the recreated LMSSignature instance.
+     * @throws java.nio.BufferUnderflowException if the buffer does not hold a complete signature.
+     */
+    @Nonnull
+    public static LMSSignature buildSignature(@Nonnull final ByteBuffer buffer) {
+        return new LMSSignatureImpl(buffer);
+    }
+
+    /**
+     * Wraps the LMS signature at the current position of the buffer without decoding it and advances the position by
+     * the size of the signature. The returned signature reads its fields from the buffer, which must not be changed
+     * while the signature is used.
+     *
+     * @param buffer The buffer that holds the bytes of the signature, either a heap or a direct buffer.
+     * @return the LMSSignature view of the bytes.
+     * @throws IllegalArgumentException if the buffer does not hold a complete signature.
+     */
+    @Nonnull
+    public static LMSSignature wrapSignature(@Nonnull final ByteBuffer buffer) {
+        return new LMSSignatureView(buffer);
+    }
+
+    /**
+     * Receives the generated key material of a leaf.
+     */
+    private interface LeafConsumer {
+        void accept(int q, @Nonnull LMOTSPrivateKey lmotsPrivateKey, @Nonnull byte[] leafNode);
+    }
+}
@@ -0,0 +1,208 @@
+package at.andicover.lms.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.digest.api.CustomMessageDigest;
+import at.andicover.digest.impl.CustomMessageDigestFactory;
+import at.andicover.lmots.api.LMOTSPrivateKey;
+import at.andicover.lmots.api.LMOTSSignature;
+import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lmots.impl.LMOTS;
+import at.andicover.lmots.impl.LMOTSContext;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.api.LMSType;
+import at.andicover.util.MathUtil;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static at.andicover.util.ByteUtil.put;
+import static at.andicover.util.ByteUtil.putInt;
+import static at.andicover.util.SecurityString.getdIntr;
+import static at.andicover.util.SecurityString.getdLeaf;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reusable state for LMS signature generation and verification with one parameter set. Holds its own message digest,
+ * an {@link LMOTSContext} and the buffers to hash the path to the root, so verifying many signatures does not allocate
+ * scratch memory. The randomizer C comes from the strong random source shared by all contexts, see
+ * {@link LMOTS#getStrongRandom()}.
+ *
+ * <p>
+ * Note: A context must not be used by several threads at the same time. Request handlers can pool them.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-5.4">RFC 8554 - LMS Signature</a>
+ */
+@NotThreadSafe
+public final class LMSContext {
+
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int NODE_NUMBER_OFFSET = IDENTIFIER_SIZE;
+    private static final int DOMAIN_OFFSET = NODE_NUMBER_OFFSET + Integer.BYTES;
+    private static final int VALUE_OFFSET = DOMAIN_OFFSET + Short.BYTES;
+
+    private final LMSType lmsType;
+    private final LMOTSContext lmotsContext;
+    private final CustomMessageDigest messageDigest;
+    private final byte[] dLeaf = getdLeaf();
+    private final byte[] dIntr = getdIntr();
+
+    // I || u32str(r) || u16str(D_LEAF) || OTS_PUB_HASH or I || u32str(r) || u16str(D_INTR) || left || right
+    private final byte[] nodeInput;
+    private final byte[] node;
+
+    /**
+     * Creates a new context with its own message digests.
+     *
+     * @param lmsType   The LMS parameters of the keys and signatures the context is used for.
+     * @param lmotsType The LM-OTS parameters of the keys and signatures the context is used for.
+     * @throws NoSuchAlgorithmException if a hash algorithm does not exist.
+     */
+    public LMSContext(@Nonnull final LMSType lmsType, @Nonnull final LMOTSType lmotsType)
+            throws NoSuchAlgorithmException {
+        this.lmsType = requireNonNull(lmsType);
+        this.lmotsContext = new LMOTSContext(lmotsType);
+        this.messageDigest = CustomMessageDigestFactory.getDigest(lmsType.getHashAlgorithm());
+        this.nodeInput = new byte[VALUE_OFFSET + Math.max(lmotsType.getN(), 2 * lmsType.getM())];
+        this.node = new byte[lmsType.getM()];
+    }
+
+    /**
+     * @return the LMS parameters of this context.
+     */
+    @Nonnull
+    public LMSType getLmsType() {
+        return lmsType;
+    }
+
+    /**
+     * @return the LM-OTS parameters of this context.
+     */
+    @Nonnull
+    public LMOTSType getLmotsType() {
+        return lmotsContext.getLmotsType();
+    }
+
+    /**
+     * Generates a LMS signature for the message of the given source with an LMOTS private key that was already taken
+     * from the given LMS private key.
+     *
+     * @param message         The source of the original message.
+     * @param privateKey      The LMS private key the LMOTS private key belongs to.
+     * @param lmotsPrivateKey The LMOTS private key previously returned by {@link LMSPrivateKey#getNextLmotsKey()}.
+     * @return The LMS signature.
+     * @throws NoSuchAlgorithmException if the secure random algorithm does not exist.
+     * @throws IOException              if the message cannot be read.
+     */
+    @Nonnull
+    public LMSSignature generateSignature(@Nonnull final MessageSource message,
+                                          @Nonnull final LMSPrivateKey privateKey,
+                                          @Nonnull final LMOTSPrivateKey lmotsPrivateKey)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(message);
+        requireNonNull(privateKey);
+        requireNonNull(lmotsPrivateKey);
+        if (privateKey.getLmsType() != lmsType) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+
+        final byte[] c = new byte[getLmotsType().getN()];
+        LMOTS.getStrongRandom().nextBytes(c);
+        final LMOTSSignature lmotsSignature = lmotsContext.generateSignature(message, lmotsPrivateKey, c);
+        return LMS.generateSignature(privateKey, lmotsPrivateKey, lmotsSignature);
+    }
+
+    /**
+     * Verifies the given LMS signature for the given message and public key.
+     *
+     * @param message   The original message.
+     * @param signature The LMS signature of the message.
+     * @param publicKey The LMS public key.
+     * @return true/false if the given signature is valid.
+     */
+    public boolean verifySignature(@Nonnull final byte[] message,
+                                   @Nonnull final LMSSignature signature,
+                                   @Nonnull final LMSPublicKey publicKey) {
+        requireNonNull(message);
+        validate(signature, publicKey);
+
+        return LMS.isValidLeaf(signature) && verifyPath(signature, publicKey, lmotsContext
+                .calculatePublicKey(message, signature.getLmotsSignature(), signature.getQIdentifier(),
+                        publicKey.getIdentifier()));
+    }
+
+    /**
+     * Verifies the given LMS signature for the message of the given source and the given public key.
+     *
+     * @param message   The source of the original message.
+     * @param signature The LMS signature of the message.
+     * @param publicKey The LMS public key.
+     * @return true/false if the given signature is valid.
+     * @throws IOException if the message cannot be read.
+     */
+    public boolean verifySignature(@Nonnull final MessageSource message,
+                                   @Nonnull final LMSSignature signature,
+                                   @Nonnull final LMSPublicKey publicKey) throws IOException {
+        requireNonNull(message);
+        validate(signature, publicKey);
+
+        return LMS.isValidLeaf(signature) && verifyPath(signature, publicKey, lmotsContext
+                .calculatePublicKey(message, signature.getLmotsSignature(), signature.getQIdentifier(),
+                        publicKey.getIdentifier()));
+    }
+
+    private void validate(@Nonnull final LMSSignature signature, @Nonnull final LMSPublicKey publicKey) {
+        requireNonNull(signature);
+        requireNonNull(publicKey);
+
+        LMS.validatePublicKey(publicKey);
+        LMS.validateSignature(signature);
+        if (publicKey.getLmsType() != lmsType || signature.getLmsType() != lmsType
+                || publicKey.getLmotsType() != getLmotsType()
+                || signature.getLmotsSignature().getLmotsType() != getLmotsType()) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+    }
+
+    /**
+     * Hashes the LM-OTS public key candidate to its leaf and along the authentication path to the root. The root
+     * candidate must be equal to the key of the LMS public key.
+     */
+    private boolean verifyPath(@Nonnull final LMSSignature signature,
+                               @Nonnull final LMSPublicKey publicKey,
+                               @Nonnull final byte[] lmotsPublicKey) {
+        final int m = lmsType.getM();
+        int nodeNum = signature.getQIdentifier() + MathUtil.pow(lmsType.getH());
+        put(nodeInput, 0, publicKey.getIdentifier());
+        putInt(nodeInput, NODE_NUMBER_OFFSET, nodeNum);
+        put(nodeInput, DOMAIN_OFFSET, dLeaf);
+        put(nodeInput, VALUE_OFFSET, lmotsPublicKey);
+        messageDigest.update(nodeInput, 0, VALUE_OFFSET + lmotsPublicKey.length);
+        messageDigest.digest(node, 0);
+
+        put(nodeInput, DOMAIN_OFFSET, dIntr);
+        int i = 0;
+        while (nodeNum > 1) {
+            putInt(nodeInput, NODE_NUMBER_OFFSET, nodeNum / 2);
+            if (nodeNum % 2 == 0) {
+                put(nodeInput, VALUE_OFFSET, node);
+                put(nodeInput, VALUE_OFFSET + m, signature.getPathNode(i));
+            } else {
+                put(nodeInput, VALUE_OFFSET, signature.getPathNode(i));
+                put(nodeInput, VALUE_OFFSET + m, node);
+            }
+            messageDigest.update(nodeInput, 0, VALUE_OFFSET + 2 * m);
+            messageDigest.digest(node, 0);
+            nodeNum /= 2;
+            i++;
+        }
+        return Arrays.equals(node, publicKey.getKey());
+    }
+}
@@ -1,5 +1,6 @@
 package at.andicover.lms.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.digest.api.CustomMessageDigest;
 import at.andicover.digest.impl.MessageDigestCache;
 import at.andicover.lmots.api.LMOTSPrivateKey;
@@ -11,17 +12,20 @@ import at.andicover.lms.api.LMSType;
 import at.andicover.util.MathUtil;
 import org.apache.commons.codec.binary.Hex;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-import static at.andicover.config.Defaults.STORED_TOP_LEVEL_NODES;
 import static at.andicover.util.ByteUtil.byteArrayToInt;
 import static at.andicover.util.ByteUtil.intTo4ByteArray;
 import static at.andicover.util.ByteUtil.merge;
@@ -41,14 +45,29 @@ import static java.util.Objects.requireNonNull;
 @SuppressWarnings({"PMD.ArrayIsStoredDirectly", "PMD.MethodReturnsInternalArray", "PMD.UseVarargs"})
 final class LMSPrivateKeyImpl implements LMSPrivateKey {
 
+    private static final int HEADER_SIZE = 28;
+
+    @CheckForNull
     private final LMOTSPrivateKey[] lmotsPrivateKeys;
+    @CheckForNull
+    private final ByteBuffer lmotsRecords;
+    private final int numberOfLeaves;
+    private final int recordSize;
+    private final boolean seedsOnly;
+    @CheckForNull
+    private final byte[] seed;
     private byte[][] leafNodes;
     private byte[][] topLevelNodes;
+    private volatile boolean treeBuilt;
     private final byte[] identifier;
-    private volatile int qIdentifier;
+    private final AtomicInteger qIdentifier;
     private volatile int reservedKeys;
+    // Reserved but not yet handed out until the new mark was persisted. Never below reservedKeys.
+    private volatile int reservedMark;
     private final LMOTSType lmotsType;
     private final LMSType lmsType;
+    // Guards the reserved window and the tree. Not a monitor so waiting threads do not pin virtual threads.
+    private final ReentrantLock lock = new ReentrantLock();
 
     LMSPrivateKeyImpl(@Nonnull final LMSType lmsType,
                       @Nonnull final LMOTSType lmotsType,
@@ -68,10 +87,15 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
         requireNonNull(identifier);
 
         this.lmotsPrivateKeys = privateKeys;
+        this.lmotsRecords = null;
+        this.numberOfLeaves = privateKeys.length;
+        this.recordSize = getRecordSize(lmotsType);
+        this.seedsOnly = false;
+        this.seed = null;
         this.identifier = identifier;
         this.lmotsType = lmotsType;
         this.lmsType = lmsType;
-        this.qIdentifier = qIdentifier;
+        this.qIdentifier = new AtomicInteger(qIdentifier);
     }
 
     LMSPrivateKeyImpl(@Nonnull final DataInputStream inputStream) throws NoSuchAlgorithmException, IOException {
@@ -82,17 +106,115 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
 
         this.lmsType = LMSType.lookUp(byteArrayToInt(data, 0, 4));
         this.lmotsType = LMOTSType.lookUp(byteArrayToInt(data, 4, 8));
-        this.qIdentifier = byteArrayToInt(data, 8, 12);
-        this.reservedKeys = this.qIdentifier;
+        this.qIdentifier = new AtomicInteger(byteArrayToInt(data, 8, 12));
+        this.reservedKeys = this.qIdentifier.get();
+        this.reservedMark = this.reservedKeys;
         this.identifier = new byte[16];
         inputStream.readFully(identifier, 0, 16);
 
-        this.lmotsPrivateKeys = new LMOTSPrivateKey[MathUtil.pow(lmsType.getH())];
+        this.lmotsRecords = null;
+        this.numberOfLeaves = MathUtil.pow(lmsType.getH());
+        this.recordSize = getRecordSize(lmotsType);
+        this.seedsOnly = false;
+        this.seed = null;
+        this.lmotsPrivateKeys = new LMOTSPrivateKey[numberOfLeaves];
         for (int i = 0; i < lmotsPrivateKeys.length; i++) {
             lmotsPrivateKeys[i] = LMOTS.buildPrivateKey(inputStream);
         }
+    }
+
+    /**
+     * Creates the private key on top of the given buffer, usually a memory mapped file. Only the header is read, the
+     * LM-OTS private keys stay in the buffer and are decoded by their offset when they are needed. The position of the
+     * buffer is moved behind the key.
+     */
+    LMSPrivateKeyImpl(@Nonnull final ByteBuffer buffer) throws NoSuchAlgorithmException {
+        requireNonNull(buffer);
+
+        this.lmsType = LMSType.lookUp(buffer.getInt());
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt());
+        this.qIdentifier = new AtomicInteger(buffer.getInt());
+        this.reservedKeys = this.qIdentifier.get();
+        this.reservedMark = this.reservedKeys;
+        this.identifier = new byte[16];
+        buffer.get(identifier);
+
+        this.lmotsPrivateKeys = null;
+        this.numberOfLeaves = MathUtil.pow(lmsType.getH());
+        this.recordSize = getRecordSize(lmotsType);
+        this.seedsOnly = false;
+        this.seed = null;
+        final long recordsSize = (long) numberOfLeaves * recordSize;
+        if (recordsSize > buffer.remaining()) {
+            throw new IllegalArgumentException("Incomplete private key");
+        }
+        this.lmotsRecords = buffer.slice().limit((int) recordsSize);
+        buffer.position(buffer.position() + (int) recordsSize);
+        if (!Arrays.equals(lmotsKey(0).getIdentifier(), identifier)) {
+            throw new IllegalArgumentException("Invalid LMOTS private key record");
+        }
+    }
+
+    /**
+     * Creates the private key on top of a buffer that only holds the n byte seeds of the LM-OTS private keys, one
+     * after the other. Type, I and q of the LM-OTS private keys are not repeated, they are known from this key.
+     */
+    LMSPrivateKeyImpl(@Nonnull final LMSType lmsType,
+                      @Nonnull final LMOTSType lmotsType,
+                      @Nonnull final byte[] identifier,
+                      final int qIdentifier,
+                      @Nonnull final ByteBuffer seeds) {
+        requireNonNull(lmsType);
+        requireNonNull(lmotsType);
+        requireNonNull(identifier);
+        requireNonNull(seeds);
+
+        this.lmsType = lmsType;
+        this.lmotsType = lmotsType;
+        this.identifier = Arrays.copyOf(identifier, identifier.length);
+        this.qIdentifier = new AtomicInteger(qIdentifier);
+        this.reservedKeys = qIdentifier;
+        this.reservedMark = qIdentifier;
+        this.lmotsPrivateKeys = null;
+        this.numberOfLeaves = MathUtil.pow(lmsType.getH());
+        this.recordSize = lmotsType.getN();
+        this.seedsOnly = true;
+        this.seed = null;
+        if ((long) numberOfLeaves * recordSize != seeds.remaining()) {
+            throw new IllegalArgumentException("Incorrect number of seeds");
+        }
+        this.lmotsRecords = seeds.slice();
+    }
 
-        LMS.generatePublicKey(this, lmotsPrivateKeys); //Recreate public key to generate the tree again.
+    /**
+     * Creates a derived private key. All LM-OTS private keys are derived from the given SEED with the pseudorandom key
+     * generation of RFC 8554, Appendix A, so the key does not hold any LM-OTS private key.
+     */
+    LMSPrivateKeyImpl(@Nonnull final LMSType lmsType,
+                      @Nonnull final LMOTSType lmotsType,
+                      @Nonnull final byte[] identifier,
+                      final int qIdentifier,
+                      @Nonnull final byte[] seed) {
+        requireNonNull(lmsType);
+        requireNonNull(lmotsType);
+        requireNonNull(identifier);
+        requireNonNull(seed);
+
+        if (seed.length != lmotsType.getN() || identifier.length != 16) {
+            throw new IllegalArgumentException("Incorrect size of the seed or identifier");
+        }
+        this.lmsType = lmsType;
+        this.lmotsType = lmotsType;
+        this.identifier = Arrays.copyOf(identifier, identifier.length);
+        this.qIdentifier = new AtomicInteger(qIdentifier);
+        this.reservedKeys = qIdentifier;
+        this.reservedMark = qIdentifier;
+        this.lmotsPrivateKeys = null;
+        this.lmotsRecords = null;
+        this.numberOfLeaves = MathUtil.pow(lmsType.getH());
+        this.recordSize = lmotsType.getN();
+        this.seedsOnly = false;
+        this.seed = Arrays.copyOf(seed, seed.length);
     }
 
     @Override
@@ -115,50 +237,179 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
 
     @Override
     public int getQIdentifier() {
-        return this.qIdentifier;
+        return this.qIdentifier.get();
+    }
+
+    @Override
+    @CheckForNull
+    public byte[] getSeed() {
+        if (seed == null) {
+            return null;
+        }
+        return Arrays.copyOf(seed, seed.length);
     }
 
     @Override
     @Nonnull
-    public synchronized LMOTSPrivateKey getNextLmotsKey() throws IllegalStateException {
+    public LMOTSPrivateKey getNextLmotsKey() throws IllegalStateException {
+        final LMOTSPrivateKey lmotsPrivateKey = pollNextLmotsKey();
+        if (lmotsPrivateKey != null) {
+            return lmotsPrivateKey;
+        }
         if (isExhausted()) {
             throw new IllegalStateException("No unused LMOTS private key available");
         }
-        if (!hasReservedKey()) {
-            throw new IllegalStateException("No reserved keys available");
+        throw new IllegalStateException("No reserved keys available");
+    }
+
+    /**
+     * Hands out the next reserved leaf without locking. The leaf index is claimed with a compare-and-set on q, so
+     * concurrent callers never receive the same LM-OTS private key. Reservations only ever grow, therefore reading
+     * the reserved window before the compare-and-set is safe.
+     */
+    @Override
+    @CheckForNull
+    public LMOTSPrivateKey pollNextLmotsKey() {
+        int q;
+        do {
+            q = this.qIdentifier.get();
+            if (q >= this.reservedKeys) {
+                return null;
+            }
+        } while (!this.qIdentifier.compareAndSet(q, q + 1));
+
+        return lmotsKey(q);
+    }
+
+    @Override
+    @Nonnull
+    public LMOTSPrivateKey getLmotsKey(final int qIdentifier) {
+        if (qIdentifier < 0 || qIdentifier >= this.numberOfLeaves) {
+            throw new IllegalArgumentException("Invalid q identifier");
+        }
+        return lmotsKey(qIdentifier);
+    }
+
+    /**
+     * Keys loaded from a buffer are decoded from their record at offset q * record size. Every call works on its own
+     * view of the buffer, so concurrent callers do not interfere.
+     */
+    @Nonnull
+    private LMOTSPrivateKey lmotsKey(final int q) {
+        if (this.lmotsPrivateKeys != null) {
+            return this.lmotsPrivateKeys[q];
+        }
+        if (this.seed != null) {
+            return LMOTS.derivePrivateKey(lmotsType, getIdentifier(), q, seed);
         }
 
-        return this.lmotsPrivateKeys[this.qIdentifier++];
+        final ByteBuffer record = requireNonNull(this.lmotsRecords).duplicate();
+        record.position(q * recordSize);
+        if (seedsOnly) {
+            final byte[] recordSeed = new byte[recordSize];
+            record.get(recordSeed);
+            try {
+                return LMOTS.generatePrivateKey(lmotsType, getIdentifier(), q, recordSeed);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        final LMOTSPrivateKey lmotsPrivateKey = LMOTS.buildPrivateKey(record);
+        if (lmotsPrivateKey.getQIdentifier() != q || lmotsPrivateKey.getLmotsType() != lmotsType) {
+            throw new IllegalStateException("Invalid LMOTS private key record");
+        }
+        return lmotsPrivateKey;
+    }
+
+    /**
+     * The reserved window is raised before q so concurrent callers of {@link #pollNextLmotsKey()} never see q above
+     * the reserved keys.
+     */
+    @Override
+    public void advanceQIdentifier(final int qIdentifier) {
+        if (qIdentifier < 0 || qIdentifier > this.numberOfLeaves) {
+            throw new IllegalArgumentException("Invalid q identifier");
+        }
+        lock.lock();
+        try {
+            if (this.reservedMark < qIdentifier) {
+                this.reservedMark = qIdentifier;
+            }
+            if (this.reservedKeys < qIdentifier) {
+                this.reservedKeys = qIdentifier;
+            }
+            this.qIdentifier.accumulateAndGet(qIdentifier, Math::max);
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean isExhausted() {
-        return this.qIdentifier >= this.lmotsPrivateKeys.length;
+        return this.qIdentifier.get() >= this.numberOfLeaves;
     }
 
     @Override
-    public synchronized void reserveKeys(final int numberOfKeys) {
-        if (this.reservedKeys + numberOfKeys <= this.lmotsPrivateKeys.length) {
-            this.reservedKeys += numberOfKeys;
-        } else {
-            this.reservedKeys = this.lmotsPrivateKeys.length;
+    public void reserveKeys(final int numberOfKeys) {
+        lock.lock();
+        try {
+            prepareReservedKeys(numberOfKeys);
+            publishReservedKeys();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void prepareReservedKeys(final int numberOfKeys) {
+        lock.lock();
+        try {
+            if (this.reservedMark + numberOfKeys <= this.numberOfLeaves) {
+                this.reservedMark += numberOfKeys;
+            } else {
+                this.reservedMark = this.numberOfLeaves;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Raises the reserved window to the prepared mark. Concurrent callers of {@link #pollNextLmotsKey()} see the new
+     * keys only from here on.
+     */
+    @Override
+    public void publishReservedKeys() {
+        lock.lock();
+        try {
+            this.reservedKeys = this.reservedMark;
+        } finally {
+            lock.unlock();
         }
     }
 
     @Override
     public int getReservedKeys() {
-        return this.reservedKeys - this.qIdentifier;
+        return this.reservedKeys - this.qIdentifier.get();
+    }
+
+    @Override
+    public int getReservedMark() {
+        return this.reservedMark;
     }
 
     @Override
     public boolean hasReservedKey() {
-        return this.qIdentifier < this.reservedKeys;
+        return this.qIdentifier.get() < this.reservedKeys;
     }
 
     @Override
     @Nonnull
     @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.CognitiveComplexity"})
     public byte[][] getPath(final int nodeNumber) throws NoSuchAlgorithmException {
+        if (!treeBuilt) {
+            buildTreeIfMissing();
+        }
         final int keys = MathUtil.pow(lmsType.getH());
         final byte[][] tree = buildTree(keys);
 
@@ -171,24 +422,14 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
         int nodeNum = nodeNumber;
         int i = 0;
         while (nodeNum > 1) {
-            if (nodeNum >= keys) {
-                if (nodeNum % 2 == 0) {
-                    path[i] = leafNodes[nodeNum + 1 - tree.length - topLevelNodes.length];
-                } else {
-                    path[i] = leafNodes[nodeNum - 1 - tree.length - topLevelNodes.length];
-                }
-            } else if (nodeNum < topLevelNodes.length) {
-                if (nodeNum % 2 == 0) {
-                    path[i] = topLevelNodes[nodeNum];
-                } else {
-                    path[i] = topLevelNodes[nodeNum - 2];
-                }
+            // Node r is stored in topLevelNodes[r - 1] up to the budget and in tree[r - topLevelNodes.length] below.
+            final int sibling = nodeNum ^ 1;
+            if (sibling >= keys) {
+                path[i] = leafNodes[sibling - keys];
+            } else if (sibling <= topLevelNodes.length) {
+                path[i] = topLevelNodes[sibling - 1];
             } else {
-                if (nodeNum % 2 == 0) {
-                    path[i] = tree[nodeNum + 1 - topLevelNodes.length];
-                } else {
-                    path[i] = tree[nodeNum - 1 - topLevelNodes.length];
-                }
+                path[i] = tree[sibling - topLevelNodes.length];
             }
             nodeNum /= 2;
             i++;
@@ -196,6 +437,99 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
         return path;
     }
 
+    /**
+     * Keys read from disk do not build their tree before it is needed. If it was not restored from a
+     * {@link at.andicover.util.TreeCache} it is recreated from all LM-OTS private keys here.
+     */
+    private void buildTreeIfMissing() throws NoSuchAlgorithmException {
+        lock.lock();
+        try {
+            if (!treeBuilt) {
+                LMS.generatePublicKey(this);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @CheckForNull
+    public byte[][] getLeafNodes() {
+        if (treeBuilt) {
+            return this.leafNodes;
+        }
+        return null;
+    }
+
+    @Override
+    @CheckForNull
+    public byte[][] getTopLevelNodes() {
+        if (treeBuilt) {
+            return this.topLevelNodes;
+        }
+        return null;
+    }
+
+    /**
+     * Sets the tree to the given nodes without checking the root. The number of top level nodes may differ from the
+     * node cache budget, so paths through any number of stored nodes can be tested.
+     */
+    void restoreTree(@Nonnull final byte[][] leafNodes, @Nonnull final byte[][] topLevelNodes) {
+        requireNonNull(leafNodes);
+        requireNonNull(topLevelNodes);
+        if (leafNodes.length != MathUtil.pow(lmsType.getH()) || topLevelNodes.length > leafNodes.length - 2) {
+            throw new IllegalArgumentException("Incorrect number of nodes");
+        }
+        for (final byte[] node : leafNodes) {
+            checkNodeSize(node);
+        }
+        for (final byte[] node : topLevelNodes) {
+            checkNodeSize(node);
+        }
+
+        lock.lock();
+        try {
+            this.leafNodes = leafNodes;
+            this.topLevelNodes = topLevelNodes;
+            this.treeBuilt = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean restoreLeafNodes(@Nonnull final byte[][] leafNodes, @Nonnull final byte[] root)
+            throws NoSuchAlgorithmException {
+        requireNonNull(leafNodes);
+        requireNonNull(root);
+        if (leafNodes.length != MathUtil.pow(lmsType.getH())) {
+            throw new IllegalArgumentException("Incorrect number of nodes");
+        }
+        for (final byte[] node : leafNodes) {
+            checkNodeSize(node);
+        }
+
+        final byte[][] calculatedTopLevelNodes = new byte[getNumberOfTopLevelNodesToStore()][lmsType.getM()];
+        if (!Arrays.equals(root, hashTree(leafNodes, calculatedTopLevelNodes))) {
+            return false;
+        }
+        lock.lock();
+        try {
+            this.leafNodes = leafNodes;
+            this.topLevelNodes = calculatedTopLevelNodes;
+            this.treeBuilt = true;
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private void checkNodeSize(final byte[] node) {
+        if (node == null || node.length != lmsType.getM()) {
+            throw new IllegalArgumentException("Incorrect node size");
+        }
+    }
+
     @Nonnull
     private byte[][] buildTree(final int keys) throws NoSuchAlgorithmException {
         final byte[][] tree = new byte[keys - topLevelNodes.length][lmsType.getM()];
@@ -218,7 +552,6 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
 
     @Override
     @Nonnull
-    @SuppressWarnings("PMD.CyclomaticComplexity")
     public byte[] calculateRoot(@Nonnull final LMOTSPublicKey[] lmotsPublicKeys) throws NoSuchAlgorithmException {
         final int keys = MathUtil.pow(lmsType.getH());
 
@@ -226,20 +559,56 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
             throw new IllegalArgumentException("Incorrect number of LMOTS public keys");
         }
 
+        final CustomMessageDigest messageDigest =
+                MessageDigestCache.getInstance().getMessageDigest(lmsType.getHashAlgorithm());
+        final byte[][] leaves = new byte[keys][];
+        for (int i = 0; i < keys; i++) {
+            leaves[i] = messageDigest
+                    .digest(merge(identifier, intTo4ByteArray(i + keys), getdLeaf(), lmotsPublicKeys[i].getKey()));
+        }
+        return calculateRoot(leaves);
+    }
+
+    /**
+     * Calculates the root of the tree from its leaf nodes, which were already hashed from the LM-OTS public keys.
+     *
+     * @param leaves the leaf nodes of the tree. Are stored directly.
+     * @return the root of the tree.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     */
+    @Nonnull
+    byte[] calculateRoot(@Nonnull final byte[][] leaves) throws NoSuchAlgorithmException {
+        if (leaves.length != MathUtil.pow(lmsType.getH())) {
+            throw new IllegalArgumentException("Incorrect number of leaf nodes");
+        }
+
+        final byte[][] calculatedTopLevelNodes = new byte[getNumberOfTopLevelNodesToStore()][lmsType.getM()];
+        final byte[] root = hashTree(leaves, calculatedTopLevelNodes);
+        this.leafNodes = leaves;
+        this.topLevelNodes = calculatedTopLevelNodes;
+        this.treeBuilt = true;
+        return root;
+    }
+
+    /**
+     * Hashes all inner nodes of the tree from its leaf nodes and keeps the top level nodes that fit into the given
+     * array.
+     *
+     * @return the root of the tree.
+     */
+    @Nonnull
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private byte[] hashTree(@Nonnull final byte[][] leaves, @Nonnull final byte[][] topLevelNodes)
+            throws NoSuchAlgorithmException {
+        final int keys = leaves.length;
         final Queue<byte[]> queue = new ArrayDeque<>(keys);
         final int nodes = keys * 2 - 1;
         final CustomMessageDigest messageDigest =
                 MessageDigestCache.getInstance().getMessageDigest(lmsType.getHashAlgorithm());
-        this.leafNodes = new byte[keys][lmsType.getM()];
-        this.topLevelNodes = new byte[getNumberOfTopLevelNodesToStore()][lmsType.getM()];
 
         for (int r = nodes; r >= 1; r--) {
-            final int keyIndex = r - keys;
             if (r >= keys) {
-                final byte[] hash = messageDigest
-                        .digest(merge(identifier, intTo4ByteArray(r), getdLeaf(), lmotsPublicKeys[keyIndex].getKey()));
-                this.leafNodes[keyIndex] = hash;
-                queue.add(hash);
+                queue.add(leaves[r - keys]);
             } else {
                 final byte[] right = queue.poll();
                 final byte[] left = queue.poll();
@@ -261,7 +630,7 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
     }
 
     private int getNumberOfTopLevelNodesToStore() {
-        return Math.min(MathUtil.pow(lmsType.getH()) - 2, STORED_TOP_LEVEL_NODES);
+        return Math.min(MathUtil.pow(lmsType.getH()) - 2, TuningConfig.getDefault().getStoredTopLevelNodes());
     }
 
     /**
@@ -273,32 +642,70 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
+        final ByteBuffer buffer = ByteBuffer.allocate(calculateSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
 
-        System.arraycopy(intTo4ByteArray(this.getLmsType().getTypecode()), 0, result, 0, 4);
-        System.arraycopy(intTo4ByteArray(this.getLmotsType().getTypecode()), 0, result, 4, 4);
-        System.arraycopy(intTo4ByteArray(this.reservedKeys), 0, result, 8, 4);
-        System.arraycopy(this.getIdentifier(), 0, result, 12, 16);
+    @Override
+    public long encodedSize() {
+        return HEADER_SIZE + (long) numberOfLeaves * getRecordSize(lmotsType);
+    }
 
-        for (int i = 0; i < this.lmotsPrivateKeys.length; i++) {
-            final byte[] privateKeyBytes = lmotsPrivateKeys[i].getBytes();
-            final int keyLength = privateKeyBytes.length;
-            System.arraycopy(privateKeyBytes, 0, result, 28 + keyLength * i, keyLength);
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        checkEncodable();
+        buffer.put(getHeader());
+        final ByteBuffer records = this.lmotsRecords;
+        if (records != null && !seedsOnly) {
+            buffer.put(records.duplicate());
+            return;
+        }
+        for (int i = 0; i < this.numberOfLeaves; i++) {
+            lmotsKey(i).writeTo(buffer);
         }
-
-        return result;
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(intTo4ByteArray(this.getLmsType().getTypecode()));
-        outputStream.write(intTo4ByteArray(this.getLmotsType().getTypecode()));
-        outputStream.write(intTo4ByteArray(this.reservedKeys));
-        outputStream.write(this.getIdentifier());
-        outputStream.flush();
-        for (final LMOTSPrivateKey lmotsPrivateKey : this.lmotsPrivateKeys) {
-            outputStream.write(lmotsPrivateKey.getBytes());
-            outputStream.flush();
+    public void writeTo(@Nonnull final WritableByteChannel channel) throws IOException {
+        checkEncodable();
+        writeFully(channel, getHeader());
+        final ByteBuffer records = this.lmotsRecords;
+        if (records != null && !seedsOnly) {
+            writeFully(channel, records.duplicate());
+            return;
+        }
+        final ByteBuffer record = ByteBuffer.allocate(getRecordSize(lmotsType));
+        for (int i = 0; i < this.numberOfLeaves; i++) {
+            lmotsKey(i).writeTo(record.clear());
+            writeFully(channel, record.flip());
+        }
+    }
+
+    /**
+     * The format of the key cannot express derived LM-OTS private keys. Derived keys are only stored in the
+     * {@link at.andicover.util.CompactKeyFile} format.
+     */
+    private void checkEncodable() {
+        if (seed != null) {
+            throw new IllegalStateException("Derived LMS private keys can only be stored in the compact format");
+        }
+    }
+
+    @Nonnull
+    private ByteBuffer getHeader() {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(this.getLmsType().getTypecode());
+        header.putInt(this.getLmotsType().getTypecode());
+        header.putInt(this.reservedMark);
+        header.put(this.identifier);
+        return header.flip();
+    }
+
+    private static void writeFully(@Nonnull final WritableByteChannel channel, @Nonnull final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
         }
     }
 
@@ -311,15 +718,28 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
             return false;
         }
         final LMSPrivateKeyImpl that = (LMSPrivateKeyImpl) o;
-        return qIdentifier == that.qIdentifier && Arrays.equals(lmotsPrivateKeys, that.lmotsPrivateKeys)
-                && Arrays.equals(identifier, that.identifier) && lmotsType == that.lmotsType
-                && lmsType == that.lmsType;
+        return qIdentifier.get() == that.qIdentifier.get() && Arrays.equals(identifier, that.identifier)
+                && lmotsType == that.lmotsType && lmsType == that.lmsType && lmotsKeysEqual(that);
+    }
+
+    private boolean lmotsKeysEqual(@Nonnull final LMSPrivateKeyImpl that) {
+        if (numberOfLeaves != that.numberOfLeaves) {
+            return false;
+        }
+        for (int i = 0; i < numberOfLeaves; i++) {
+            if (!Objects.equals(lmotsKey(i), that.lmotsKey(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(qIdentifier, lmotsType, lmsType);
-        result = 31 * result + Arrays.hashCode(lmotsPrivateKeys);
+        int result = Objects.hash(qIdentifier.get(), lmotsType, lmsType);
+        for (int i = 0; i < numberOfLeaves; i++) {
+            result = 31 * result + Objects.hashCode(lmotsKey(i));
+        }
         result = 31 * result + Arrays.hashCode(identifier);
         return result;
     }
@@ -332,7 +752,7 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
                 + "\nLMS type    " + String.format("%08d", lmsType.getTypecode())
                 + "\nLMOTS type  " + String.format("%08d", lmotsType.getTypecode())
                 + "\nI           " + Hex.encodeHexString(identifier)
-                + "\nq           " + String.format("%032d", qIdentifier);
+                + "\nq           " + String.format("%032d", qIdentifier.get());
     }
 
     /**
@@ -341,8 +761,13 @@ final class LMSPrivateKeyImpl implements LMSPrivateKey {
      */
     @Override
     public int calculateSize() {
-        final int lmotsPrivateKeySize = lmotsPrivateKeys[0].calculateSize();
-        return Integer.BYTES + Integer.BYTES + Integer.BYTES + identifier.length
-                + MathUtil.pow(lmsType.getH()) * lmotsPrivateKeySize;
+        return HEADER_SIZE + numberOfLeaves * getRecordSize(lmotsType);
+    }
+
+    /**
+     * @return The size of one LM-OTS private key: 4 byte typecode + 16 byte I + 4 byte q + n byte seed.
+     */
+    private static int getRecordSize(@Nonnull final LMOTSType lmotsType) {
+        return Integer.BYTES + 16 + Integer.BYTES + lmotsType.getN();
     }
 }
\ No newline at end of file
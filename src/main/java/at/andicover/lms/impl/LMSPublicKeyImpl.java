@@ -9,12 +9,13 @@ import org.apache.commons.codec.binary.Hex;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.put;
+import static at.andicover.util.ByteUtil.putInt;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -69,6 +70,18 @@ final class LMSPublicKeyImpl implements LMSPublicKey {
         inputStream.readFully(key, 0, lmsType.getM());
     }
 
+    LMSPublicKeyImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.lmsType = LMSType.lookUp(buffer.getInt());
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt());
+        this.identifier = new byte[16];
+        buffer.get(identifier);
+
+        this.key = new byte[lmsType.getM()];
+        buffer.get(key);
+    }
+
     @Override
     @Nonnull
     public LMSType getLmsType() {
@@ -101,19 +114,32 @@ final class LMSPublicKeyImpl implements LMSPublicKey {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.getLmsType().getTypecode()), 0, result, 0, 4);
-        System.arraycopy(intTo4ByteArray(this.getLmotsType().getTypecode()), 0, result, 4, 4);
-        System.arraycopy(this.getIdentifier(), 0, result, 8, 16);
-        System.arraycopy(this.key, 0, result, 24, lmsType.getM());
+        final byte[] bytes = new byte[calculateSize()];
+        encodeInto(bytes, 0);
+        return bytes;
+    }
 
-        return result;
+    @Override
+    public int encodeInto(@Nonnull final byte[] destination, final int offset) {
+        Objects.checkFromIndexSize(offset, calculateSize(), destination.length);
+        int position = putInt(destination, offset, this.lmsType.getTypecode());
+        position = putInt(destination, position, this.lmotsType.getTypecode());
+        position = put(destination, position, this.identifier);
+        position = put(destination, position, this.key);
+        return position - offset;
+    }
+
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(this.getBytes());
-        outputStream.flush();
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.lmsType.getTypecode());
+        buffer.putInt(this.lmotsType.getTypecode());
+        buffer.put(this.identifier);
+        buffer.put(this.key);
     }
 
     @Override
@@ -0,0 +1,115 @@
+package at.andicover.lms.impl;
+
+import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSType;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * LMS public key that reads its fields in place from the bytes of an encoded key. The bytes must not be changed while
+ * the view is used.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-5.3">RFC 8554 - LMS Public Key</a>
+ */
+final class LMSPublicKeyView implements LMSPublicKey {
+
+    private static final int IDENTIFIER_OFFSET = 2 * Integer.BYTES;
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int KEY_OFFSET = IDENTIFIER_OFFSET + IDENTIFIER_SIZE;
+
+    private final ByteBuffer buffer;
+    private final LMSType lmsType;
+    private final LMOTSType lmotsType;
+
+    /**
+     * Wraps the key at the current position of the buffer and advances the position by the size of the key.
+     */
+    LMSPublicKeyView(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        if (buffer.remaining() < IDENTIFIER_OFFSET) {
+            throw new IllegalArgumentException("Invalid public key length");
+        }
+        this.lmsType = LMSType.lookUp(buffer.getInt(buffer.position()));
+        this.lmotsType = LMOTSType.lookUp(buffer.getInt(buffer.position() + Integer.BYTES));
+        final int size = KEY_OFFSET + lmsType.getM();
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("Invalid public key length");
+        }
+        this.buffer = buffer.slice().limit(size);
+        buffer.position(buffer.position() + size);
+    }
+
+    @Override
+    @Nonnull
+    public LMSType getLmsType() {
+        return lmsType;
+    }
+
+    @Override
+    @Nonnull
+    public LMOTSType getLmotsType() {
+        return lmotsType;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getIdentifier() {
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        buffer.get(IDENTIFIER_OFFSET, identifier);
+        return identifier;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getKey() {
+        final byte[] key = new byte[lmsType.getM()];
+        buffer.get(KEY_OFFSET, key);
+        return key;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    @Override
+    public long encodedSize() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer target) {
+        target.put(buffer.duplicate().rewind());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return buffer.equals(((LMSPublicKeyView) o).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return buffer.hashCode();
+    }
+
+    @Override
+    public int calculateSize() {
+        return buffer.limit();
+    }
+}
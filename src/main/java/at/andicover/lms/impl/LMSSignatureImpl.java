@@ -2,6 +2,7 @@ package at.andicover.lms.impl;
 
 import at.andicover.lmots.api.LMOTSSignature;
 import at.andicover.lmots.impl.LMOTS;
+import at.andicover.lms.api.LMSPublicKey;
 import at.andicover.lms.api.LMSSignature;
 import at.andicover.lms.api.LMSType;
 import org.apache.commons.codec.binary.Hex;
@@ -9,12 +10,14 @@ import org.apache.commons.codec.binary.Hex;
 import javax.annotation.Nonnull;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
 import static at.andicover.util.ByteUtil.byteArrayToInt;
-import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.put;
+import static at.andicover.util.ByteUtil.putInt;
+import static at.andicover.util.KeySizeUtil.getByteArraySize;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -59,10 +62,53 @@ final class LMSSignatureImpl implements LMSSignature {
 
         inputStream.readFully(data, 0, 4);
         this.lmsType = LMSType.lookUp(byteArrayToInt(data, 0, 4));
-        this.path = new byte[lmsType.getH()][lmsType.getM()];
+        this.path = readPath(inputStream, lmsType);
+    }
+
+    /**
+     * Reads a signature that must match the typecodes of the given public key. Each typecode is checked as soon as it
+     * was read, so the LM-OTS signature and the path of a signature of another type are never read.
+     */
+    LMSSignatureImpl(@Nonnull final DataInputStream inputStream, @Nonnull final LMSPublicKey publicKey)
+            throws IOException {
+        requireNonNull(inputStream);
+        requireNonNull(publicKey);
+
+        final byte[] data = new byte[4];
+        inputStream.readFully(data, 0, 4);
+
+        this.qIdentifier = byteArrayToInt(data, 0, 4);
+        this.lmotsSignature = LMOTS.buildSignature(inputStream, publicKey.getLmotsType());
+
+        inputStream.readFully(data, 0, 4);
+        this.lmsType = LMSType.lookUp(byteArrayToInt(data, 0, 4));
+        if (lmsType != publicKey.getLmsType()) {
+            throw new IllegalArgumentException("Incompatible typecodes");
+        }
+        this.path = readPath(inputStream, lmsType);
+    }
+
+    @Nonnull
+    private static byte[][] readPath(@Nonnull final DataInputStream inputStream, @Nonnull final LMSType lmsType)
+            throws IOException {
+        final byte[][] path = new byte[lmsType.getH()][lmsType.getM()];
         for (int i = 0; i < lmsType.getH(); i++) {
             inputStream.readFully(path[i], 0, lmsType.getM());
         }
+        return path;
+    }
+
+    LMSSignatureImpl(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        this.qIdentifier = buffer.getInt();
+        this.lmotsSignature = LMOTS.buildSignature(buffer);
+
+        this.lmsType = LMSType.lookUp(buffer.getInt());
+        this.path = new byte[lmsType.getH()][lmsType.getM()];
+        for (int i = 0; i < lmsType.getH(); i++) {
+            buffer.get(path[i]);
+        }
     }
 
     @Override
@@ -88,6 +134,13 @@ final class LMSSignatureImpl implements LMSSignature {
         return Arrays.copyOf(this.path, this.path.length);
     }
 
+    @Override
+    @Nonnull
+    public byte[] getPathNode(final int index) {
+        // Not copied, the node is read-only, see LMSSignature#getPathNode(int).
+        return this.path[index];
+    }
+
     /**
      * Returns the signature as byte array. Might throw an OutOfMemory exception!
      *
@@ -97,31 +150,36 @@ final class LMSSignatureImpl implements LMSSignature {
     @Override
     @Nonnull
     public byte[] getBytes() {
-        final byte[] result = new byte[calculateSize()];
-        System.arraycopy(intTo4ByteArray(this.qIdentifier), 0, result, 0, 4);
-        final byte[] lmotsSignatureBytes = this.lmotsSignature.getBytes();
-        System.arraycopy(lmotsSignatureBytes, 0, result, 4, lmotsSignatureBytes.length);
-        System.arraycopy(intTo4ByteArray(this.lmsType.getTypecode()), 0, result, 4 + lmotsSignatureBytes.length, 4);
-
-        for (int i = 0; i < this.path.length; i++) {
-            System.arraycopy(this.path[i], 0, result, i * lmsType.getM() + 8 + lmotsSignatureBytes.length,
-                    lmsType.getM());
+        final byte[] bytes = new byte[calculateSize()];
+        encodeInto(bytes, 0);
+        return bytes;
+    }
+
+    @Override
+    public int encodeInto(@Nonnull final byte[] destination, final int offset) {
+        Objects.checkFromIndexSize(offset, calculateSize(), destination.length);
+        int position = putInt(destination, offset, this.qIdentifier);
+        position += this.lmotsSignature.encodeInto(destination, position);
+        position = putInt(destination, position, this.lmsType.getTypecode());
+        for (final byte[] node : this.path) {
+            position = put(destination, position, node);
         }
+        return position - offset;
+    }
 
-        return result;
+    @Override
+    public long encodedSize() {
+        return calculateSize();
     }
 
     @Override
-    public void writeToPipedOutputStream(@Nonnull final PipedOutputStream outputStream) throws IOException {
-        outputStream.write(intTo4ByteArray(this.qIdentifier));
-        outputStream.write(this.lmotsSignature.getBytes());
-        outputStream.write(intTo4ByteArray(this.lmsType.getTypecode()));
-        outputStream.flush();
-
-        for (final byte[] bytes : this.path) {
-            outputStream.write(bytes);
+    public void writeTo(@Nonnull final ByteBuffer buffer) {
+        buffer.putInt(this.qIdentifier);
+        this.lmotsSignature.writeTo(buffer);
+        buffer.putInt(this.lmsType.getTypecode());
+        for (final byte[] node : this.path) {
+            buffer.put(node);
         }
-        outputStream.flush();
     }
 
     @Override
@@ -165,11 +223,11 @@ final class LMSSignatureImpl implements LMSSignature {
     }
 
     /**
-     * @return The calculated key size: 4 byte q + LMOTS Signature size + 4 byte LMS typecode + h * m bytes.
+     * @return The calculated key size: 4 byte q + LMOTS Signature size + 4 byte LMS typecode + h * m bytes path.
      */
     @Override
     public int calculateSize() {
         final int lmotsSignatureSize = this.lmotsSignature.calculateSize();
-        return Integer.BYTES + lmotsSignatureSize + Integer.BYTES + lmsType.getH() * lmsType.getM();
+        return Integer.BYTES + lmotsSignatureSize + Integer.BYTES + getByteArraySize(path);
     }
 }
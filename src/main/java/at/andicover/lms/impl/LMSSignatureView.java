@@ -0,0 +1,129 @@
+package at.andicover.lms.impl;
+
+import at.andicover.lmots.api.LMOTSSignature;
+import at.andicover.lmots.impl.LMOTS;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.api.LMSType;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+import static at.andicover.util.KeySizeUtil.getLmsSignatureSize;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * LMS signature that reads its fields in place from the bytes of an encoded signature. Nothing is decoded when the view
+ * is created, every getter copies only the requested field. The bytes must not be changed while the view is used.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://tools.ietf.org/html/rfc8554#section-5.4">RFC 8554 - LMS Signature</a>
+ */
+final class LMSSignatureView implements LMSSignature {
+
+    private final ByteBuffer buffer;
+    private final LMSType lmsType;
+    private final LMOTSSignature lmotsSignature;
+    private final int pathOffset;
+
+    /**
+     * Wraps the signature at the current position of the buffer and advances the position by the size of the
+     * signature.
+     */
+    LMSSignatureView(@Nonnull final ByteBuffer buffer) {
+        requireNonNull(buffer);
+
+        final ByteBuffer lmotsBuffer = buffer.duplicate();
+        lmotsBuffer.position(buffer.position() + Integer.BYTES);
+        this.lmotsSignature = LMOTS.wrapSignature(lmotsBuffer);
+        if (lmotsBuffer.remaining() < Integer.BYTES) {
+            throw new IllegalArgumentException("Invalid signature length");
+        }
+        this.lmsType = LMSType.lookUp(lmotsBuffer.getInt());
+
+        final int size = (int) getLmsSignatureSize(lmotsSignature.getLmotsType(), lmsType);
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("Invalid signature length");
+        }
+        this.buffer = buffer.slice().limit(size);
+        this.pathOffset = size - lmsType.getH() * lmsType.getM();
+        buffer.position(buffer.position() + size);
+    }
+
+    @Override
+    @Nonnull
+    public LMSType getLmsType() {
+        return lmsType;
+    }
+
+    @Override
+    public int getQIdentifier() {
+        return buffer.getInt(0);
+    }
+
+    @Override
+    @Nonnull
+    public LMOTSSignature getLmotsSignature() {
+        return lmotsSignature;
+    }
+
+    @Override
+    @Nonnull
+    public byte[][] getPath() {
+        final byte[][] path = new byte[lmsType.getH()][];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = getPathNode(i);
+        }
+        return path;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getPathNode(final int index) {
+        if (index < 0 || index >= lmsType.getH()) {
+            throw new IllegalArgumentException("Invalid path index");
+        }
+        final byte[] node = new byte[lmsType.getM()];
+        buffer.get(pathOffset + index * lmsType.getM(), node);
+        return node;
+    }
+
+    @Override
+    @Nonnull
+    public byte[] getBytes() {
+        final byte[] bytes = new byte[buffer.limit()];
+        buffer.get(0, bytes);
+        return bytes;
+    }
+
+    @Override
+    public long encodedSize() {
+        return buffer.limit();
+    }
+
+    @Override
+    public void writeTo(@Nonnull final ByteBuffer target) {
+        target.put(buffer.duplicate().rewind());
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return buffer.equals(((LMSSignatureView) o).buffer);
+    }
+
+    @Override
+    public int hashCode() {
+        return buffer.hashCode();
+    }
+
+    @Override
+    public int calculateSize() {
+        return buffer.limit();
+    }
+}
@@ -0,0 +1,80 @@
+package at.andicover.util;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects the many small writes of a key in one large direct buffer. If a write does not fit into the buffer anymore
+ * the buffer and the new data are written to the underlying channel with one gathering write.
+ *
+ * <p>
+ * Note: Closing this writer only flushes the buffer, the underlying channel stays open.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+final class BufferedChannelWriter implements WritableByteChannel {
+
+    private final GatheringByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean open = true;
+
+    /**
+     * @param channel    the channel to write to.
+     * @param bufferSize the size of the direct buffer in byte.
+     */
+    BufferedChannelWriter(@Nonnull final GatheringByteChannel channel, final int bufferSize) {
+        this.channel = requireNonNull(channel);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public int write(@Nonnull final ByteBuffer source) throws IOException {
+        requireNonNull(source);
+        final int length = source.remaining();
+        if (length <= buffer.remaining()) {
+            buffer.put(source);
+            return length;
+        }
+
+        buffer.flip();
+        final ByteBuffer[] buffers = {buffer, source};
+        while (source.hasRemaining()) {
+            channel.write(buffers);
+        }
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * Writes all buffered bytes to the underlying channel.
+     *
+     * @throws IOException if writing to the channel does not work.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (open) {
+            flush();
+            open = false;
+        }
+    }
+}
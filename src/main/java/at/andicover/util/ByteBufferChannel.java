@@ -0,0 +1,46 @@
+package at.andicover.util;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Channel that writes into a given buffer. Lets objects that write themselves to a channel piece by piece also write
+ * into a direct buffer or a memory mapped file.
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+final class ByteBufferChannel implements WritableByteChannel {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * @param buffer the buffer to write to, starting at its current position.
+     */
+    ByteBufferChannel(@Nonnull final ByteBuffer buffer) {
+        this.buffer = requireNonNull(buffer);
+    }
+
+    /**
+     * @throws java.nio.BufferOverflowException if the buffer does not have enough bytes remaining.
+     */
+    @Override
+    public int write(@Nonnull final ByteBuffer source) {
+        final int length = source.remaining();
+        buffer.put(source);
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close.
+    }
+}
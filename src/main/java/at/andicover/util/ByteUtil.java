@@ -57,6 +57,35 @@ public final class ByteUtil {
                 (byte) value};
     }
 
+    /**
+     * Writes the given integer as 4 bytes into the destination.
+     *
+     * @param destination the byte array to write to.
+     * @param offset      the index of the first byte.
+     * @param value       the integer value.
+     * @return the index behind the written bytes.
+     */
+    public static int putInt(@Nonnull final byte[] destination, final int offset, final int value) {
+        destination[offset] = (byte) (value >>> 24);
+        destination[offset + 1] = (byte) (value >>> 16);
+        destination[offset + 2] = (byte) (value >>> 8);
+        destination[offset + 3] = (byte) value;
+        return offset + 4;
+    }
+
+    /**
+     * Copies the given bytes into the destination.
+     *
+     * @param destination the byte array to write to.
+     * @param offset      the index of the first byte.
+     * @param bytes       the bytes to copy.
+     * @return the index behind the written bytes.
+     */
+    public static int put(@Nonnull final byte[] destination, final int offset, @Nonnull final byte[] bytes) {
+        System.arraycopy(bytes, 0, destination, offset, bytes.length);
+        return offset + bytes.length;
+    }
+
     /**
      * Creates an integer from a given byte array. The given byte array can be much longer because the position of the
      * relevant bytes is defined by the parameters src and dst.
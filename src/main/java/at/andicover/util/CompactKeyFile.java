@@ -0,0 +1,480 @@
+package at.andicover.util;
+
+import at.andicover.common.api.Storable;
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.impl.HSS;
+import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.api.LMSType;
+import at.andicover.lms.impl.LMS;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility class for the compact version 2 file format of an HSS private key.
+ *
+ * <p>
+ * The file starts with a single header: u32str(magic) || u32str(version) || u32str(L) || u32str(number of sections)
+ * followed by the section table and u32str(CRC32C of the header and the table). Every entry of the section table has
+ * the format u32str(section type) || u32str(level) || u64str(offset) || u64str(length) || u32str(CRC32C of the
+ * section). The sections follow the table:
+ * </p>
+ * <ul>
+ *     <li>Private key: u32str(LMS type) || u32str(LMOTS type) || u32str(high-water mark) || I || seed[0] || ... ||
+ *     seed[2^h - 1]. Type, I and q are not repeated for every LM-OTS private key, the seeds have a fixed stride of
+ *     n byte.</li>
+ *     <li>Public key: the LMS public key.</li>
+ *     <li>Signature: the LMS signature of the public key of the level. Missing for the top level.</li>
+ *     <li>Tree: u32str(number of leaf nodes) || u32str(number of top level nodes) || leaf nodes || top level nodes,
+ *     m byte each. Missing if the tree was not built when the key was stored. The top level nodes are calculated
+ *     again with the root, so none are written and the ones of older files are skipped.</li>
+ *     <li>Derived private key: u32str(LMS type) || u32str(LMOTS type) || u32str(high-water mark) || I || SEED. Used
+ *     instead of the private key section for keys whose LM-OTS private keys are derived from one SEED, see
+ *     {@link LMSPrivateKey#getSeed()}.</li>
+ *     <li>Generated private key: u32str(LMS type) || u32str(LMOTS type) || u32str(high-water mark) || I || seed.
+ *     Written by the {@link PreallocatedKeyFile} for the lower levels, whose trees are generated from a seed derived
+ *     from a leaf of the parent tree. The seeds of the LM-OTS private keys are generated again from it, see
+ *     {@link LMS#regeneratePrivateKey(LMSType, LMOTSType, byte[], int)}.</li>
+ * </ul>
+ * <p>
+ * Every section can be found and checked on its own, the private key sections are mapped into memory and their
+ * LM-OTS private keys are only created when they are used. Compared to the first version the private key sections
+ * are 24 byte per leaf smaller.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+public final class CompactKeyFile {
+
+    /**
+     * The magic number at the start of the file: "HSSK".
+     */
+    public static final int MAGIC = 0x4853534B;
+
+    /**
+     * The version of the file format.
+     */
+    public static final int VERSION = 2;
+
+    static final int PRIVATE_KEY = 1;
+    static final int PUBLIC_KEY = 2;
+    static final int SIGNATURE = 3;
+    static final int TREE = 4;
+    static final int DERIVED_PRIVATE_KEY = 5;
+    static final int GENERATED_PRIVATE_KEY = 6;
+
+    static final int HEADER_SIZE = 4 * Integer.BYTES;
+    static final int ENTRY_SIZE = 3 * Integer.BYTES + 2 * Long.BYTES;
+    static final int IDENTIFIER_SIZE = 16;
+    private static final int MAX_LEVELS = 8;
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private CompactKeyFile() {
+    }
+
+    /**
+     * @param filename the file of a private key.
+     * @return if the file starts with the magic number of this format.
+     * @throws IOException if reading the file does not work.
+     */
+    public static boolean isCompact(@Nonnull final String filename) throws IOException {
+        requireNonNull(filename);
+
+        try (FileChannel channel = FileChannel.open(getPath(filename), READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic, magic.position()) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Creates the storable content of the file for the given private key. The state of the key is read once, so the
+     * private key may be used while the content is written.
+     *
+     * @param privateKey the HSS private key.
+     * @return the content of the file.
+     */
+    @Nonnull
+    public static Storable encode(@Nonnull final HSSPrivateKey privateKey) {
+        requireNonNull(privateKey);
+
+        return new Container(privateKey);
+    }
+
+    /**
+     * Loads a private key from a file in this format. The checksums of all sections are checked in parallel. A tree
+     * section with a wrong checksum or a root that does not match the public key is skipped, the tree is built again
+     * when it is used first. The {@link StateJournal} of the key is replayed.
+     *
+     * @param filename the file of the private key.
+     * @return the private key.
+     * @throws IOException              if reading the file does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalArgumentException if the file is incomplete, corrupt or of another version.
+     */
+    @Nonnull
+    public static HSSPrivateKey read(@Nonnull final String filename) throws IOException, NoSuchAlgorithmException {
+        requireNonNull(filename);
+
+        final int levels;
+        final int[][] entries;
+        final ByteBuffer[] sections;
+        try (FileChannel channel = FileChannel.open(getPath(filename), READ)) {
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException("Unsupported key file version");
+            }
+            levels = header.getInt();
+            final int count = header.getInt();
+            if (levels < 1 || levels > MAX_LEVELS || count < 0 || count > 4 * levels) {
+                throw new IllegalArgumentException("Corrupt key file header");
+            }
+
+            final ByteBuffer table = readFully(channel, HEADER_SIZE, count * ENTRY_SIZE + Integer.BYTES);
+            final CRC32C crc32c = new CRC32C();
+            crc32c.update(header.flip());
+            crc32c.update(table.duplicate().limit(count * ENTRY_SIZE));
+            if (table.getInt(count * ENTRY_SIZE) != (int) crc32c.getValue()) {
+                throw new IllegalArgumentException("Corrupt key file header");
+            }
+
+            entries = new int[count][];
+            sections = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final int type = table.getInt();
+                final int level = table.getInt();
+                final long offset = table.getLong();
+                final long length = table.getLong();
+                entries[i] = new int[]{type, level, table.getInt()};
+                if (level < 0 || level >= levels || offset < 0 || length < 0 || length > Integer.MAX_VALUE
+                        || offset + length > channel.size()) {
+                    throw new IllegalArgumentException("Incomplete key file");
+                }
+                sections[i] = channel.map(READ_ONLY, offset, length);
+            }
+        }
+
+        final boolean[] valid = new boolean[sections.length];
+        // The caller waits for the key, so the sections are checked by interactive tasks.
+        TaskScheduler.getInstance().forEachIndex(sections.length,
+                i -> valid[i] = checksum(sections[i].duplicate()) == entries[i][2], TaskScheduler.Priority.INTERACTIVE,
+                TuningConfig.getDefault().getParallelism());
+        for (int i = 0; i < sections.length; i++) {
+            if (!valid[i] && entries[i][0] != TREE) {
+                throw new IllegalArgumentException("Corrupt key file section");
+            }
+            if (!valid[i]) {
+                LOGGER.log(Level.FINE, "Corrupt tree section of level {0} is rebuilt", entries[i][1]);
+                sections[i] = null;
+            }
+        }
+        return build(filename, levels, entries, sections);
+    }
+
+    @Nonnull
+    private static HSSPrivateKey build(@Nonnull final String filename,
+                                       final int levels,
+                                       @Nonnull final int[][] entries,
+                                       @Nonnull final ByteBuffer[] sections)
+            throws IOException, NoSuchAlgorithmException {
+        final LMSPrivateKey[] lmsPrivateKeys = new LMSPrivateKey[levels];
+        final LMSPublicKey[] lmsPublicKeys = new LMSPublicKey[levels];
+        final LMSSignature[] lmsSignatures = new LMSSignature[levels];
+        for (int i = 0; i < sections.length; i++) {
+            final int level = entries[i][1];
+            if (entries[i][0] == PRIVATE_KEY) {
+                lmsPrivateKeys[level] = readPrivateKey(sections[i]);
+            } else if (entries[i][0] == DERIVED_PRIVATE_KEY) {
+                lmsPrivateKeys[level] = readDerivedPrivateKey(sections[i]);
+            } else if (entries[i][0] == GENERATED_PRIVATE_KEY) {
+                lmsPrivateKeys[level] = readGeneratedPrivateKey(sections[i]);
+            } else if (entries[i][0] == PUBLIC_KEY) {
+                lmsPublicKeys[level] = LMS.buildPublicKey(toInputStream(sections[i]));
+            } else if (entries[i][0] == SIGNATURE) {
+                lmsSignatures[level] = LMS.buildSignature(toInputStream(sections[i]));
+            }
+        }
+        for (int i = 0; i < levels; i++) {
+            if (lmsPrivateKeys[i] == null || lmsPublicKeys[i] == null || i > 0 && lmsSignatures[i - 1] == null) {
+                throw new IllegalArgumentException("Missing section of level " + i);
+            }
+        }
+        for (int i = 0; i < sections.length; i++) {
+            if (entries[i][0] == TREE && sections[i] != null) {
+                restoreTree(lmsPrivateKeys[entries[i][1]], lmsPublicKeys[entries[i][1]], sections[i]);
+            }
+        }
+
+        StateJournal.replay(filename, lmsPrivateKeys);
+        return HSS.buildPrivateKey(lmsPrivateKeys, lmsPublicKeys, lmsSignatures, filename);
+    }
+
+    @Nonnull
+    private static LMSPrivateKey readPrivateKey(@Nonnull final ByteBuffer section) {
+        if (section.remaining() < 3 * Integer.BYTES + IDENTIFIER_SIZE) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        final LMSType lmsType = LMSType.lookUp(section.getInt());
+        final LMOTSType lmotsType = LMOTSType.lookUp(section.getInt());
+        final int qIdentifier = section.getInt();
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        section.get(identifier);
+        return LMS.buildPrivateKey(lmsType, lmotsType, identifier, qIdentifier, section.slice());
+    }
+
+    @Nonnull
+    private static LMSPrivateKey readDerivedPrivateKey(@Nonnull final ByteBuffer section) {
+        if (section.remaining() < 3 * Integer.BYTES + IDENTIFIER_SIZE) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        final LMSType lmsType = LMSType.lookUp(section.getInt());
+        final LMOTSType lmotsType = LMOTSType.lookUp(section.getInt());
+        final int qIdentifier = section.getInt();
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        section.get(identifier);
+        if (section.remaining() != lmotsType.getN()) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        final byte[] seed = new byte[section.remaining()];
+        section.get(seed);
+        return LMS.derivePrivateKey(lmsType, lmotsType, identifier, qIdentifier, seed);
+    }
+
+    @Nonnull
+    private static LMSPrivateKey readGeneratedPrivateKey(@Nonnull final ByteBuffer section)
+            throws NoSuchAlgorithmException {
+        if (section.remaining() < 3 * Integer.BYTES + IDENTIFIER_SIZE) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        final LMSType lmsType = LMSType.lookUp(section.getInt());
+        final LMOTSType lmotsType = LMOTSType.lookUp(section.getInt());
+        final int qIdentifier = section.getInt();
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        section.get(identifier);
+        if (section.remaining() != lmotsType.getN()) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        final byte[] seed = new byte[section.remaining()];
+        section.get(seed);
+        final LMSPrivateKey lmsPrivateKey = LMS.regeneratePrivateKey(lmsType, lmotsType, seed, qIdentifier);
+        if (!Arrays.equals(identifier, lmsPrivateKey.getIdentifier())) {
+            throw new IllegalArgumentException("Corrupt private key section");
+        }
+        return lmsPrivateKey;
+    }
+
+    /**
+     * Restores the leaf nodes of a tree section if the root calculated from them is the one of the public key. Top
+     * level nodes of older files are skipped, they are calculated again. Otherwise the tree is built again when it is
+     * used first.
+     */
+    private static void restoreTree(@Nonnull final LMSPrivateKey lmsPrivateKey,
+                                    @Nonnull final LMSPublicKey lmsPublicKey,
+                                    @Nonnull final ByteBuffer section) throws NoSuchAlgorithmException {
+        final int m = lmsPrivateKey.getLmsType().getM();
+        if (section.remaining() < 2 * Integer.BYTES) {
+            LOGGER.log(Level.FINE, "Incomplete tree section is rebuilt");
+            return;
+        }
+        final int leafCount = section.getInt();
+        final int topLevelCount = section.getInt();
+        if (leafCount < 0 || topLevelCount < 0 || ((long) leafCount + topLevelCount) * m != section.remaining()) {
+            LOGGER.log(Level.FINE, "Corrupt tree section is rebuilt");
+            return;
+        }
+        final byte[][] leafNodes = new byte[leafCount][m];
+        for (final byte[] node : leafNodes) {
+            section.get(node);
+        }
+        try {
+            if (!lmsPrivateKey.restoreLeafNodes(leafNodes, lmsPublicKey.getKey())) {
+                LOGGER.log(Level.FINE, "Tree section with a wrong root is rebuilt");
+            }
+        } catch (IllegalArgumentException ex) {
+            LOGGER.log(Level.FINE, "Tree section that does not fit the key is rebuilt", ex);
+        }
+    }
+
+    @Nonnull
+    private static DataInputStream toInputStream(@Nonnull final ByteBuffer section) {
+        final byte[] bytes = new byte[section.remaining()];
+        section.get(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static int checksum(@Nonnull final ByteBuffer section) {
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(section);
+        return (int) crc32c.getValue();
+    }
+
+    @Nonnull
+    private static ByteBuffer readFully(@Nonnull final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalArgumentException("Incomplete key file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    private static Path getPath(@Nonnull final String filename) {
+        return Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
+    }
+
+    /**
+     * The content of the file. Every section is encoded once when the container is created, its length and checksum
+     * for the section table are calculated from the encoded bytes.
+     */
+    private static final class Container implements Storable {
+        private final int levels;
+        private final List<int[]> entries = new ArrayList<>();
+        private final List<byte[]> sections = new ArrayList<>();
+
+        private Container(@Nonnull final HSSPrivateKey privateKey) {
+            this.levels = privateKey.getLevels();
+            for (int i = 0; i < levels; i++) {
+                addPrivateKey(i, privateKey.getLmsPrivateKeys()[i]);
+                add(PUBLIC_KEY, i, privateKey.getLmsPublicKeys()[i].getBytes());
+                final LMSSignature signature = privateKey.getSignatures()[i];
+                if (signature != null) {
+                    add(SIGNATURE, i, signature.getBytes());
+                }
+                addTree(i, privateKey.getLmsPrivateKeys()[i]);
+            }
+        }
+
+        private void addPrivateKey(final int level, @Nonnull final LMSPrivateKey lmsPrivateKey) {
+            final int headerSize = 3 * Integer.BYTES + IDENTIFIER_SIZE;
+            final byte[] seed = lmsPrivateKey.getSeed();
+            final int leaves = MathUtil.pow(lmsPrivateKey.getLmsType().getH());
+            final int n = lmsPrivateKey.getLmotsType().getN();
+            final int contentSize;
+            if (seed != null) {
+                contentSize = seed.length;
+            } else {
+                contentSize = leaves * n;
+            }
+            final ByteBuffer section = ByteBuffer.allocate(headerSize + contentSize);
+            section.putInt(lmsPrivateKey.getLmsType().getTypecode());
+            section.putInt(lmsPrivateKey.getLmotsType().getTypecode());
+            section.putInt(lmsPrivateKey.getReservedMark());
+            section.put(lmsPrivateKey.getIdentifier());
+            if (seed != null) {
+                add(DERIVED_PRIVATE_KEY, level, section.put(seed).array());
+                return;
+            }
+            for (int q = 0; q < leaves; q++) {
+                section.put(lmsPrivateKey.getLmotsKey(q).getSeed());
+            }
+            add(PRIVATE_KEY, level, section.array());
+        }
+
+        private void addTree(final int level, @Nonnull final LMSPrivateKey lmsPrivateKey) {
+            final byte[][] leafNodes = lmsPrivateKey.getLeafNodes();
+            if (leafNodes == null) {
+                return;
+            }
+            final int m = lmsPrivateKey.getLmsType().getM();
+            final ByteBuffer section = ByteBuffer.allocate(2 * Integer.BYTES + leafNodes.length * m);
+            section.putInt(leafNodes.length).putInt(0);
+            for (final byte[] node : leafNodes) {
+                section.put(node);
+            }
+            add(TREE, level, section.array());
+        }
+
+        private void add(final int type, final int level, @Nonnull final byte[] section) {
+            entries.add(new int[]{type, level, checksum(ByteBuffer.wrap(section))});
+            sections.add(section);
+        }
+
+        @Override
+        @Nonnull
+        public byte[] getBytes() {
+            final ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(encodedSize()));
+            writeTo(buffer);
+            return buffer.array();
+        }
+
+        @Override
+        public long encodedSize() {
+            long size = HEADER_SIZE + (long) sections.size() * ENTRY_SIZE + Integer.BYTES;
+            for (final byte[] section : sections) {
+                size += section.length;
+            }
+            return size;
+        }
+
+        @Override
+        public void writeTo(@Nonnull final ByteBuffer buffer) {
+            buffer.put(createHeader());
+            for (final byte[] section : sections) {
+                buffer.put(section);
+            }
+        }
+
+        @Override
+        public void writeTo(@Nonnull final WritableByteChannel channel) throws IOException {
+            writeFully(channel, createHeader());
+            for (final byte[] section : sections) {
+                writeFully(channel, ByteBuffer.wrap(section));
+            }
+        }
+
+        @Nonnull
+        private ByteBuffer createHeader() {
+            final int count = sections.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE + Integer.BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(levels).putInt(count);
+            long offset = header.capacity();
+            for (int i = 0; i < count; i++) {
+                header.putInt(entries.get(i)[0]).putInt(entries.get(i)[1]).putLong(offset)
+                        .putLong(sections.get(i).length).putInt(entries.get(i)[2]);
+                offset += sections.get(i).length;
+            }
+            final CRC32C crc32c = new CRC32C();
+            crc32c.update(header.array(), 0, header.position());
+            return header.putInt((int) crc32c.getValue()).flip();
+        }
+
+        private static void writeFully(@Nonnull final WritableByteChannel channel, @Nonnull final ByteBuffer buffer)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
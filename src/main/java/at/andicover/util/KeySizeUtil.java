@@ -168,4 +168,25 @@ public final class KeySizeUtil {
 
         return 4L + ((level - 1) * lmsPublicKeySize) + (level * lmsSignatureSize);
     }
+
+    /**
+     * Calculates the HSS signature size of keys with another LMS type on the top level, see
+     * {@link at.andicover.hss.impl.HSS#generateKeys(int, LMSType, LMSType, LMOTSType, String)}.
+     *
+     * @param lmotsType          the LM-OTS parameters.
+     * @param lmsTypeFirstLevel  the LMS parameters of the top level.
+     * @param lmsTypeOtherLevels the LMS parameters of all other levels.
+     * @param level              the HSS levels.
+     * @return the signature size.
+     */
+    public static long getHssSignatureSize(@Nonnull final LMOTSType lmotsType,
+                                           @Nonnull final LMSType lmsTypeFirstLevel,
+                                           @Nonnull final LMSType lmsTypeOtherLevels,
+                                           final int level) {
+        requireNonNull(lmsTypeFirstLevel);
+
+        return getHssSignatureSize(lmotsType, lmsTypeOtherLevels, level)
+                - getLmsSignatureSize(lmotsType, lmsTypeOtherLevels)
+                + getLmsSignatureSize(lmotsType, lmsTypeFirstLevel);
+    }
 }
@@ -0,0 +1,340 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSPrivateKey;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility class for the state file of an HSS private key that uses the two-file layout. The key material is stored
+ * once in its own file, the state file only holds the high-water mark of the reserved keys of every level.
+ *
+ * <p>
+ * The file has two slots of 64 byte at fixed offsets. Every slot has the format: u64 sequence number ||
+ * u32str(L | shared flag) || I of the top level tree || u32str(high-water mark) for 8 levels || u32str(CRC32 of the
+ * first 60 byte). An update always overwrites the slot with the older sequence number and forces it to disk. If the
+ * write is torn by a crash the other slot still holds the previous valid state, so updates are crash-atomic.
+ * </p>
+ * <p>
+ * Several processes can share one key, see {@link HSSPrivateKey#isShared()}. They claim ranges of leaves with
+ * {@link #claim(HSSPrivateKey, int)}, which holds an exclusive lock on both slots while the state is advanced. The
+ * first claim sets the shared flag, afterwards {@link #write(HSSPrivateKey)} rejects the state file. Writers of a key
+ * that is not shared would otherwise overwrite the claims of other processes with their own high-water marks.
+ * </p>
+ * <p>
+ * Note: Callers must hold the lock of the private key, see {@link HSSPrivateKey#getLock()}.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+public final class KeyStateFile {
+
+    /**
+     * Size of one slot in byte.
+     */
+    public static final int SLOT_SIZE = 64;
+
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int COUNTER_OFFSET = Long.BYTES + Integer.BYTES + IDENTIFIER_SIZE;
+    private static final int SHARED_FLAG = 1 << 16;
+    // File locks are held on behalf of the whole JVM, threads of one JVM are serialized by this lock.
+    private static final Lock FILE_LOCK = new ReentrantLock();
+
+    private KeyStateFile() {
+    }
+
+    /**
+     * Writes the current high-water marks of all levels of the private key to its state file. The state file is
+     * locked exclusively while it is written.
+     *
+     * @param privateKey the HSS private key with a state file.
+     * @throws IOException           if writing to the state file does not work.
+     * @throws IllegalStateException if the state file belongs to a key that is shared by several processes.
+     */
+    public static void write(@Nonnull final HSSPrivateKey privateKey) throws IOException {
+        requireNonNull(privateKey);
+        requireNonNull(privateKey.getStateFilename());
+
+        FILE_LOCK.lock();
+        try (FileChannel channel = FileChannel.open(getPath(privateKey.getStateFilename()), CREATE, READ, WRITE)) {
+            final FileLock fileLock = channel.lock(0, 2 * SLOT_SIZE, false);
+            try {
+                final ByteBuffer newest = readNewestSlot(channel, privateKey.getLmsPrivateKeys()[0].getIdentifier(),
+                        privateKey.getLevels());
+                if (newest != null && isShared(newest)) {
+                    throw new IllegalStateException("State file is shared by several processes");
+                }
+                writeSlot(channel, createSlot(privateKey), getNewestSequence(channel) + 1);
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            FILE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Claims a range of leaves of the lowest tree for a private key that is shared by several processes. The state
+     * file is locked exclusively while the newest state is read, advanced and forced to disk, afterwards the claimed
+     * leaves belong to the caller alone. If the lowest tree is exhausted the state moves on to the next lowest tree,
+     * like {@link at.andicover.hss.impl.HSS#generateSignature(byte[], HSSPrivateKey)} does for a single process. A
+     * range never spans two trees, so fewer leaves than requested might be claimed. The new state is marked as
+     * shared.
+     *
+     * @param privateKey   the shared HSS private key.
+     * @param numberOfKeys the number of leaves to claim.
+     * @return the high-water marks of all levels after the claim followed by the first claimed leaf of the lowest
+     * tree. The claimed leaves are the first claimed leaf up to the high-water mark of the lowest level.
+     * @throws IOException           if reading or writing the state file does not work.
+     * @throws IllegalStateException if the state file has no valid slot for the given key or all keys are used.
+     */
+    @Nonnull
+    public static int[] claim(@Nonnull final HSSPrivateKey privateKey, final int numberOfKeys) throws IOException {
+        requireNonNull(privateKey);
+        requireNonNull(privateKey.getStateFilename());
+
+        if (numberOfKeys <= 0) {
+            throw new IllegalArgumentException("Incorrect number of keys");
+        }
+
+        final int levels = privateKey.getLevels();
+        final byte[] identifier = privateKey.getLmsPrivateKeys()[0].getIdentifier();
+        FILE_LOCK.lock();
+        try (FileChannel channel = FileChannel.open(getPath(privateKey.getStateFilename()), READ, WRITE)) {
+            final FileLock fileLock = channel.lock(0, 2 * SLOT_SIZE, false);
+            try {
+                final ByteBuffer newest = readNewestSlot(channel, identifier, levels);
+                if (newest == null) {
+                    throw new IllegalStateException("No valid state for the private key");
+                }
+
+                final int[] highWaterMarks = new int[levels + 1];
+                for (int i = 0; i < levels; i++) {
+                    highWaterMarks[i] = newest.getInt(COUNTER_OFFSET + i * Integer.BYTES);
+                }
+                advance(privateKey, highWaterMarks);
+                final int leaves = MathUtil.pow(privateKey.getLmsPrivateKeys()[levels - 1].getLmsType().getH());
+                highWaterMarks[levels] = highWaterMarks[levels - 1];
+                highWaterMarks[levels - 1] = (int) Math.min((long) highWaterMarks[levels] + numberOfKeys, leaves);
+
+                final ByteBuffer slot = createSlot(levels, identifier, highWaterMarks);
+                slot.putInt(Long.BYTES, levels | SHARED_FLAG);
+                writeSlot(channel, slot, newest.getLong(0) + 1);
+                return highWaterMarks;
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            FILE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Moves the high-water marks to the next lowest tree if the current one is exhausted. A parent tree signs its
+     * child trees with consecutive leaves, so the new child is signed by the next leaf of the lowest parent with
+     * unused leaves. Every tree in between is new and only used the leaf that signed its child.
+     */
+    private static void advance(@Nonnull final HSSPrivateKey privateKey, @Nonnull final int[] highWaterMarks) {
+        final int levels = privateKey.getLevels();
+        int d = levels - 1;
+        while (highWaterMarks[d] >= MathUtil.pow(privateKey.getLmsPrivateKeys()[d].getLmsType().getH())) {
+            d--;
+            if (d < 0) {
+                throw new IllegalStateException("Keys exceeded");
+            }
+        }
+        if (d < levels - 1) {
+            highWaterMarks[d]++;
+            for (int i = d + 1; i < levels - 1; i++) {
+                highWaterMarks[i] = 1;
+            }
+            highWaterMarks[levels - 1] = 0;
+        }
+    }
+
+    /**
+     * Reads the newest valid state.
+     *
+     * @param stateFilename the filename of the state file.
+     * @param identifier    the identifier I of the top level tree the state must belong to.
+     * @param levels        the number of levels of the HSS private key.
+     * @return the high-water marks of all levels.
+     * @throws IOException           if reading the state file does not work.
+     * @throws IllegalStateException if the state file has no valid slot for the given key.
+     */
+    @Nonnull
+    public static int[] read(@Nonnull final String stateFilename, @Nonnull final byte[] identifier, final int levels)
+            throws IOException {
+        final ByteBuffer newest = readNewestSlot(stateFilename, identifier, levels);
+        final int[] highWaterMarks = new int[levels];
+        for (int i = 0; i < levels; i++) {
+            highWaterMarks[i] = newest.getInt(COUNTER_OFFSET + i * Integer.BYTES);
+        }
+        return highWaterMarks;
+    }
+
+    /**
+     * @param stateFilename the filename of the state file.
+     * @param identifier    the identifier I of the top level tree the state must belong to.
+     * @param levels        the number of levels of the HSS private key.
+     * @return if the newest valid state was written by a claim of a shared key.
+     * @throws IOException           if reading the state file does not work.
+     * @throws IllegalStateException if the state file has no valid slot for the given key.
+     */
+    public static boolean isShared(@Nonnull final String stateFilename,
+                                   @Nonnull final byte[] identifier,
+                                   final int levels) throws IOException {
+        return isShared(readNewestSlot(stateFilename, identifier, levels));
+    }
+
+    @Nonnull
+    private static ByteBuffer readNewestSlot(@Nonnull final String stateFilename,
+                                             @Nonnull final byte[] identifier,
+                                             final int levels) throws IOException {
+        requireNonNull(stateFilename);
+        requireNonNull(identifier);
+
+        final ByteBuffer newest;
+        try (FileChannel channel = FileChannel.open(getPath(stateFilename), READ)) {
+            newest = readNewestSlot(channel, identifier, levels);
+        }
+        if (newest == null) {
+            throw new IllegalStateException("No valid state for the private key");
+        }
+        return newest;
+    }
+
+    private static boolean isShared(@Nonnull final ByteBuffer slot) {
+        return (slot.getInt(Long.BYTES) & SHARED_FLAG) != 0;
+    }
+
+    @Nonnull
+    private static ByteBuffer createSlot(@Nonnull final HSSPrivateKey privateKey) {
+        final int[] highWaterMarks = new int[privateKey.getLevels()];
+        for (int i = 0; i < highWaterMarks.length; i++) {
+            highWaterMarks[i] = privateKey.getLmsPrivateKeys()[i].getReservedMark();
+        }
+        return createSlot(privateKey.getLevels(), privateKey.getLmsPrivateKeys()[0].getIdentifier(), highWaterMarks);
+    }
+
+    /**
+     * @return the slot without its sequence number and checksum.
+     */
+    @Nonnull
+    private static ByteBuffer createSlot(final int levels,
+                                         @Nonnull final byte[] identifier,
+                                         @Nonnull final int[] highWaterMarks) {
+        final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.position(Long.BYTES);
+        slot.putInt(levels);
+        slot.put(identifier);
+        for (int i = 0; i < levels; i++) {
+            slot.putInt(highWaterMarks[i]);
+        }
+        return slot;
+    }
+
+    /**
+     * Writes the slot to the position of the given sequence number, which overwrites the older slot, and forces it
+     * to disk.
+     */
+    private static void writeSlot(@Nonnull final FileChannel channel,
+                                  @Nonnull final ByteBuffer slot,
+                                  final long sequence) throws IOException {
+        slot.putLong(0, sequence);
+        slot.putInt(SLOT_SIZE - Integer.BYTES, checksum(slot.array()));
+        slot.clear();
+        final long position = (sequence % 2) * SLOT_SIZE;
+        while (slot.hasRemaining()) {
+            channel.write(slot, position + slot.position());
+        }
+        channel.force(false);
+    }
+
+    private static long getNewestSequence(@Nonnull final FileChannel channel) throws IOException {
+        final ByteBuffer slot0 = readSlot(channel, 0);
+        final ByteBuffer slot1 = readSlot(channel, 1);
+        long sequence = 0;
+        if (slot0 != null) {
+            sequence = slot0.getLong(0);
+        }
+        if (slot1 != null && slot1.getLong(0) > sequence) {
+            sequence = slot1.getLong(0);
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the valid slot with the highest sequence number for the given key or null if there is none.
+     */
+    @CheckForNull
+    private static ByteBuffer readNewestSlot(@Nonnull final FileChannel channel,
+                                             @Nonnull final byte[] identifier,
+                                             final int levels) throws IOException {
+        ByteBuffer newest = null;
+        for (int i = 0; i < 2; i++) {
+            final ByteBuffer slot = readSlot(channel, i);
+            if (slot != null && (slot.getInt(Long.BYTES) & ~SHARED_FLAG) == levels && matches(slot, identifier)
+                    && (newest == null || slot.getLong(0) > newest.getLong(0))) {
+                newest = slot;
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @return the slot or null if it is incomplete or its checksum is wrong.
+     */
+    @CheckForNull
+    private static ByteBuffer readSlot(@Nonnull final FileChannel channel, final int index) throws IOException {
+        final long position = (long) index * SLOT_SIZE;
+        if (channel.size() < position + SLOT_SIZE) {
+            return null;
+        }
+
+        final ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        while (slot.hasRemaining()) {
+            if (channel.read(slot, position + slot.position()) < 0) {
+                return null;
+            }
+        }
+        if (slot.getInt(SLOT_SIZE - Integer.BYTES) != checksum(slot.array())) {
+            return null;
+        }
+        return slot;
+    }
+
+    private static boolean matches(@Nonnull final ByteBuffer slot, @Nonnull final byte[] identifier) {
+        final byte[] slotIdentifier = Arrays.copyOfRange(slot.array(), Long.BYTES + Integer.BYTES, COUNTER_OFFSET);
+        return Arrays.equals(slotIdentifier, identifier);
+    }
+
+    private static int checksum(@Nonnull final byte[] slot) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(slot, 0, SLOT_SIZE - Integer.BYTES);
+        return (int) crc32.getValue();
+    }
+
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    private static Path getPath(@Nonnull final String filename) {
+        return Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
+    }
+}
@@ -1,6 +1,7 @@
 package at.andicover.util;
 
 import at.andicover.common.api.Storable;
+import at.andicover.config.TuningConfig;
 import at.andicover.hss.api.HSSPrivateKey;
 import at.andicover.hss.api.HSSPublicKey;
 import at.andicover.hss.api.HSSSignature;
@@ -8,34 +9,44 @@ import at.andicover.hss.impl.HSS;
 import at.andicover.lmots.api.LMOTSPrivateKey;
 import at.andicover.lmots.api.LMOTSPublicKey;
 import at.andicover.lmots.api.LMOTSSignature;
+import at.andicover.lmots.api.LMOTSType;
 import at.andicover.lmots.impl.LMOTS;
 import at.andicover.lms.api.LMSPrivateKey;
 import at.andicover.lms.api.LMSPublicKey;
 import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.api.LMSType;
 import at.andicover.lms.impl.LMS;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.apache.commons.io.FilenameUtils;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-
-import static at.andicover.config.Defaults.DEFAULT_OUTPUT_BUFFER;
-import static at.andicover.util.ThreadUtil.shutdownThreadExecutor;
-import static java.nio.file.StandardOpenOption.APPEND;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -47,21 +58,36 @@ import static java.util.Objects.requireNonNull;
  */
 public final class PersistenceUtil {
 
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final int LMS_PRIVATE_KEY_HEADER_SIZE = 28;
+    private static final int LMOTS_PRIVATE_KEY_HEADER_SIZE = 24;
+
     private PersistenceUtil() {
     }
 
     /**
-     * Stores the given private key in the file defined in the private key.
+     * Stores the given private key in the {@link CompactKeyFile} format in the file defined in the private key. The
+     * file also holds the trees of the key. Clears the {@link StateJournal} of the key afterwards because the stored
+     * key already contains its state. Keys with the two-file layout only write their state file, all lower trees are
+     * derived from the top level tree again when the key is loaded.
      * <p>
-     * Note: Deletes the file before writing to it. Make sure it is not used by another process.
+     * Note: The file is replaced atomically. Make sure it is not used by another process.
      * </p>
      *
      * @param privateKey the HSS private key to store.
-     * @throws IOException if writing to the file does not work or the file cannot be deleted because it is used by
+     * @throws IOException if writing to the file does not work or the file cannot be replaced because it is used by
      *                     another process.
      */
     public static void storeKey(@Nonnull final HSSPrivateKey privateKey) throws IOException {
         requireNonNull(privateKey);
+        if (privateKey.isShared()) {
+            return;
+        }
+        if (privateKey.getStateFilename() != null) {
+            KeyStateFile.write(privateKey);
+            return;
+        }
         if (privateKey.getFilename() == null) {
             return;
         }
@@ -69,19 +95,219 @@ public final class PersistenceUtil {
         final Path outputfile = Path.of(FilenameUtils.getFullPath(privateKey.getFilename())
                 + FilenameUtils.getName(privateKey.getFilename()));
 
-        Files.deleteIfExists(outputfile);
-        writeToFile(privateKey, outputfile);
+        writeToFile(CompactKeyFile.encode(privateKey), outputfile);
+        StateJournal.clear(privateKey.getFilename());
+        TreeCache.clear(privateKey.getFilename());
+    }
+
+    /**
+     * Stores the state of the given private key after the reserved keys of one level changed. Keys with the two-file
+     * layout write their {@link KeyStateFile}, all other keys append a record to their {@link StateJournal}. The
+     * state of shared keys is only written when leaves are claimed, see {@link KeyStateFile#claim(HSSPrivateKey, int)}.
+     *
+     * @param privateKey the HSS private key.
+     * @param level      the level of the LMS tree whose reserved keys changed.
+     * @throws IOException if writing the state does not work.
+     */
+    public static void storeState(@Nonnull final HSSPrivateKey privateKey, final int level) throws IOException {
+        requireNonNull(privateKey);
+
+        if (privateKey.isShared()) {
+            return;
+        }
+        if (privateKey.getStateFilename() != null) {
+            KeyStateFile.write(privateKey);
+        } else {
+            StateJournal.append(privateKey, level);
+        }
+    }
+
+    /**
+     * Stores the given private key in the two-file layout. The key material file is written once and contains
+     * u32str(L) || u32str(LMS type of the lower levels) || top level LMS private key || top level LMS public key. The
+     * lower levels are derived from the top level tree, see
+     * {@link HSS#buildPrivateKey(LMSPrivateKey, LMSPublicKey, at.andicover.lms.api.LMSType, int[], String)}.
+     *
+     * <p>
+     * Note: Use the returned private key from now on. The given private key must not be used anymore.
+     * </p>
+     *
+     * @param privateKey    the HSS private key to store.
+     * @param filename      the destination of the key material. Must not exist yet.
+     * @param stateFilename the destination of the state.
+     * @return the private key that stores its state in the state file.
+     * @throws IOException              if writing to one of the files does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalArgumentException if the lower levels of the key were not derived from the top level tree.
+     */
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    public static HSSPrivateKey storeKeyMaterial(@Nonnull final HSSPrivateKey privateKey,
+                                                 @Nonnull final String filename,
+                                                 @Nonnull final String stateFilename)
+            throws IOException, NoSuchAlgorithmException {
+        requireNonNull(privateKey);
+        requireNonNull(filename);
+        requireNonNull(stateFilename);
+
+        final Path outputfile = Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
+        if (Files.exists(outputfile)) {
+            throw new FileAlreadyExistsException(filename);
+        }
+
+        final HSSPrivateKey splitKey;
+        privateKey.getLock().lock();
+        try {
+            final int levels = privateKey.getLevels();
+            final LMSPrivateKey[] lmsPrivateKeys = privateKey.getLmsPrivateKeys();
+            final int[] qIdentifiers = new int[levels - 1];
+            for (int i = 1; i < levels; i++) {
+                qIdentifiers[i - 1] = lmsPrivateKeys[i].getReservedMark();
+            }
+            splitKey = HSS.buildPrivateKey(lmsPrivateKeys[0], privateKey.getLmsPublicKeys()[0],
+                    lmsPrivateKeys[levels - 1].getLmsType(), qIdentifiers, filename, stateFilename);
+        } finally {
+            privateKey.getLock().unlock();
+        }
+        if (!Arrays.equals(splitKey.getLmsPublicKeys(), privateKey.getLmsPublicKeys())) {
+            throw new IllegalArgumentException("Lower levels are not derived from the top level tree");
+        }
+
+        writeToFile(new KeyMaterial(splitKey), outputfile);
+        TreeCache.write(filename, new LMSPrivateKey[]{splitKey.getLmsPrivateKeys()[0]});
+        KeyStateFile.write(splitKey);
+        return splitKey;
+    }
+
+    /**
+     * Loads a private key that was stored in the two-file layout.
+     *
+     * @param filename      the file with the key material.
+     * @param stateFilename the state file.
+     * @return the private key with the newest state. All lower trees are derived again.
+     * @throws IOException              if reading one of the files does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalStateException    if the key is shared by several processes, see
+     *                                  {@link #loadSharedKey(String, String)}.
+     * @see #storeKeyMaterial(HSSPrivateKey, String, String)
+     */
+    @Nonnull
+    public static HSSPrivateKey loadKeyMaterial(@Nonnull final String filename, @Nonnull final String stateFilename)
+            throws IOException, NoSuchAlgorithmException {
+        requireNonNull(filename);
+        requireNonNull(stateFilename);
+
+        return loadKeyMaterial(filename, stateFilename, false);
+    }
+
+    /**
+     * Loads a private key that was stored in the two-file layout and is shared by several processes on one host. The
+     * key has no reserved keys, it claims a range of leaves from the state file when it is used first. Every process
+     * must load its own instance.
+     *
+     * @param filename      the file with the key material.
+     * @param stateFilename the state file, which is shared by all processes.
+     * @return the shared private key.
+     * @throws IOException              if reading one of the files does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @see HSSPrivateKey#isShared()
+     * @see KeyStateFile#claim(HSSPrivateKey, int)
+     */
+    @Nonnull
+    public static HSSPrivateKey loadSharedKey(@Nonnull final String filename, @Nonnull final String stateFilename)
+            throws IOException, NoSuchAlgorithmException {
+        requireNonNull(filename);
+        requireNonNull(stateFilename);
+
+        return loadKeyMaterial(filename, stateFilename, true);
+    }
+
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    private static HSSPrivateKey loadKeyMaterial(@Nonnull final String filename,
+                                                 @Nonnull final String stateFilename,
+                                                 final boolean shared) throws IOException, NoSuchAlgorithmException {
+
+        final int levels;
+        final LMSType lmsTypeOtherLevels;
+        final LMSPrivateKey topLevelPrivateKey;
+        final LMSPublicKey topLevelPublicKey;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+                Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename))),
+                TuningConfig.getDefault().getIoBufferSize()))) {
+            levels = inputStream.readInt();
+            lmsTypeOtherLevels = LMSType.lookUp(inputStream.readInt());
+            topLevelPrivateKey = LMS.buildPrivateKey(inputStream);
+            topLevelPublicKey = LMS.buildPublicKey(inputStream);
+        }
+
+        TreeCache.restore(filename, new LMSPrivateKey[]{topLevelPrivateKey}, new LMSPublicKey[]{topLevelPublicKey});
+        if (!shared && KeyStateFile.isShared(stateFilename, topLevelPrivateKey.getIdentifier(), levels)) {
+            throw new IllegalStateException("State file is shared by several processes");
+        }
+        final int[] highWaterMarks = KeyStateFile.read(stateFilename, topLevelPrivateKey.getIdentifier(), levels);
+        topLevelPrivateKey.advanceQIdentifier(highWaterMarks[0]);
+        return HSS.buildPrivateKey(topLevelPrivateKey, topLevelPublicKey, lmsTypeOtherLevels,
+                Arrays.copyOfRange(highWaterMarks, 1, levels), filename, stateFilename, shared);
+    }
+
+    /**
+     * The immutable part of a private key in the two-file layout.
+     */
+    private static final class KeyMaterial implements Storable {
+        private final HSSPrivateKey privateKey;
+
+        private KeyMaterial(@Nonnull final HSSPrivateKey privateKey) {
+            this.privateKey = privateKey;
+        }
+
+        @Nonnull
+        private byte[] getHeader() {
+            final LMSPrivateKey lowestKey = privateKey.getLmsPrivateKeys()[privateKey.getLevels() - 1];
+            return ByteUtil.merge(intTo4ByteArray(privateKey.getLevels()),
+                    intTo4ByteArray(lowestKey.getLmsType().getTypecode()));
+        }
+
+        @Override
+        @Nonnull
+        public byte[] getBytes() {
+            return ByteUtil.merge(getHeader(), ByteUtil.merge(privateKey.getLmsPrivateKeys()[0].getBytes(),
+                    privateKey.getLmsPublicKeys()[0].getBytes()));
+        }
+
+        @Override
+        public long encodedSize() {
+            return 2 * Integer.BYTES + privateKey.getLmsPrivateKeys()[0].encodedSize()
+                    + privateKey.getLmsPublicKeys()[0].encodedSize();
+        }
+
+        @Override
+        public void writeTo(@Nonnull final ByteBuffer buffer) {
+            buffer.put(getHeader());
+            privateKey.getLmsPrivateKeys()[0].writeTo(buffer);
+            privateKey.getLmsPublicKeys()[0].writeTo(buffer);
+        }
+
+        @Override
+        public void writeTo(@Nonnull final WritableByteChannel channel) throws IOException {
+            final ByteBuffer header = ByteBuffer.wrap(getHeader());
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            privateKey.getLmsPrivateKeys()[0].writeTo(channel);
+            privateKey.getLmsPublicKeys()[0].writeTo(channel);
+        }
     }
 
     /**
      * Stores a storable object in the given file.
      * <p>
-     * Note: Deletes the file before writing to it. Make sure it is not used by another process.
+     * Note: The file is replaced atomically. Make sure it is not used by another process.
      * </p>
      *
      * @param storable the storable object to store.
      * @param filename the destination filename.
-     * @throws IOException if writing to the file does not work or the file cannot be deleted because it is used by
+     * @throws IOException if writing to the file does not work or the file cannot be replaced because it is used by
      *                     another process.
      */
     public static void storeKey(@Nonnull final Storable storable, @Nonnull final String filename)
@@ -90,15 +316,15 @@ public final class PersistenceUtil {
         requireNonNull(filename);
 
         final Path outputfile = Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
-        Files.deleteIfExists(outputfile);
         writeToFile(storable, outputfile);
     }
 
     /**
-     * Loads a storable object from disk. One thread reads the file chunk by chunk and writes the content into a small
-     * buffer which is concurrently read by a second thread which constructs the object. This approach is used to
+     * Loads a storable object from disk. The calling thread reads the file through a buffer of
+     * {@link TuningConfig#getIoBufferSize()} bytes and constructs the object while reading. This approach is used to
      * decrease the memory used when loading a complete file in the memory. Reading the file once and then creating
-     * objects would require at least twice the memory of the file which can get pretty large (2GB+).
+     * objects would require at least twice the memory of the file which can get pretty large (2GB+). HSS private keys
+     * in the {@link CompactKeyFile} format are mapped into memory instead.
      *
      * @param filename the source filename.
      * @param clazz    The clazz of the stored key we want to return.
@@ -108,72 +334,148 @@ public final class PersistenceUtil {
     @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
     @SuppressWarnings({"PMD.AvoidFileStream", "PMD.CognitiveComplexity"})
     public static Storable loadKey(@Nonnull final String filename, @Nonnull final Class<?> clazz) {
-        try (PipedOutputStream outputStream = new PipedOutputStream();
-             FileInputStream in = new FileInputStream(
-                     FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
-             PipedInputStream pipedInputStream = new PipedInputStream(outputStream, DEFAULT_OUTPUT_BUFFER);
-             DataInputStream inputStream = new DataInputStream(pipedInputStream)) {
-
-            final ExecutorService executor = Executors.newCachedThreadPool();
-            //First thread reads the file to the buffer.
-            executor.execute(() -> {
-                try {
-                    int read;
-                    final byte[] data = new byte[DEFAULT_OUTPUT_BUFFER];
-                    while ((read = in.read(data)) != -1) {
-                        outputStream.write(data, 0, read);
-                    }
-                    outputStream.close();
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
-            });
-
-            //Second thread builds the object from the buffer.
-            final Future<Storable> storableFuture = executor.submit(() -> {
-                if (clazz == LMOTSPrivateKey.class) {
-                    return LMOTS.buildPrivateKey(inputStream);
-                } else if (clazz == LMOTSPublicKey.class) {
-                    return LMOTS.buildPublicKey(inputStream);
-                } else if (clazz == LMOTSSignature.class) {
-                    return LMOTS.buildSignature(inputStream);
-                } else if (clazz == LMSPrivateKey.class) {
-                    return LMS.buildPrivateKey(inputStream);
-                } else if (clazz == LMSPublicKey.class) {
-                    return LMS.buildPublicKey(inputStream);
-                } else if (clazz == LMSSignature.class) {
-                    return LMS.buildSignature(inputStream);
-                } else if (clazz == HSSPrivateKey.class) {
-                    return HSS.buildPrivateKey(inputStream, filename);
-                } else if (clazz == HSSPublicKey.class) {
-                    return HSS.buildPublicKey(inputStream);
-                } else if (clazz == HSSSignature.class) {
-                    return HSS.buildSignature(inputStream);
-                } else {
-                    throw new IllegalArgumentException("Invalid type");
+        if (clazz == HSSPrivateKey.class) {
+            try {
+                if (CompactKeyFile.isCompact(filename)) {
+                    return CompactKeyFile.read(filename);
                 }
-            });
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
 
+        try (FileInputStream in = new FileInputStream(
+                     FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
+             DataInputStream inputStream = new DataInputStream(
+                     new BufferedInputStream(in, TuningConfig.getDefault().getIoBufferSize()))) {
+
+            // No other thread is involved, so a caller that is a task of the scheduler cannot wait for itself.
             try {
-                return storableFuture.get();
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-            } catch (ExecutionException ex) {
+                return buildStorable(inputStream, clazz, filename);
+            } catch (IOException | NoSuchAlgorithmException | RuntimeException ex) {
                 throw new IllegalStateException(ex);
             }
-            shutdownThreadExecutor(executor);
-
         } catch (IOException ex) {
             throw new UncheckedIOException(ex);
         }
-        return null;
+    }
+
+    @Nonnull
+    private static Storable buildStorable(@Nonnull final DataInputStream inputStream,
+                                          @Nonnull final Class<?> clazz,
+                                          @Nonnull final String filename)
+            throws IOException, NoSuchAlgorithmException {
+        if (clazz == LMOTSPrivateKey.class) {
+            return LMOTS.buildPrivateKey(inputStream);
+        } else if (clazz == LMOTSPublicKey.class) {
+            return LMOTS.buildPublicKey(inputStream);
+        } else if (clazz == LMOTSSignature.class) {
+            return LMOTS.buildSignature(inputStream);
+        } else if (clazz == LMSPrivateKey.class) {
+            return LMS.buildPrivateKey(inputStream);
+        } else if (clazz == LMSPublicKey.class) {
+            return LMS.buildPublicKey(inputStream);
+        } else if (clazz == LMSSignature.class) {
+            return LMS.buildSignature(inputStream);
+        } else if (clazz == HSSPrivateKey.class) {
+            return HSS.buildPrivateKey(inputStream, filename);
+        } else if (clazz == HSSPublicKey.class) {
+            return HSS.buildPublicKey(inputStream);
+        } else if (clazz == HSSSignature.class) {
+            return HSS.buildSignature(inputStream);
+        } else {
+            throw new IllegalArgumentException("Invalid type");
+        }
     }
 
     /**
-     * Writes a storable object to the given file. One thread reads the bytes of the object to the buffer and
-     * the second thread writes the content of this buffer to the file. This approach is used to
-     * decrease the memory used when storing an object to a file. Building one big byte array of the object
-     * would result in twice the required memory.
+     * Loads an HSS private key by mapping its file into memory. Only the headers of the LMS private keys are read,
+     * the LM-OTS private keys stay in the mapped file and are decoded by their offset when they are used. Compared to
+     * {@link #loadKey(String, Class)} the key does not hold an object for every leaf, which keeps the heap small for
+     * large keys. The {@link StateJournal} of the key is replayed. Supports both the first version of the file format
+     * and the {@link CompactKeyFile} format.
+     *
+     * <p>
+     * Note: The LMS trees are restored from the {@link TreeCache} of the key. Trees without a valid cache are built
+     * again from all LM-OTS private keys when they are used first. The mapping stays valid when
+     * the key is stored again because {@link #storeKey(HSSPrivateKey)} replaces the file instead of overwriting it.
+     * </p>
+     *
+     * @param filename the file of the HSS private key.
+     * @return the private key.
+     * @throws IOException              if reading the file does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IllegalArgumentException if the file does not hold a valid private key.
+     */
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    public static HSSPrivateKey mapPrivateKey(@Nonnull final String filename)
+            throws IOException, NoSuchAlgorithmException {
+        requireNonNull(filename);
+        if (CompactKeyFile.isCompact(filename)) {
+            return CompactKeyFile.read(filename);
+        }
+
+        final LMSPrivateKey[] lmsPrivateKeys;
+        final byte[] remainder;
+        try (FileChannel channel = FileChannel.open(
+                Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename)), READ)) {
+            final int levels = readFully(channel, 0, Integer.BYTES).getInt();
+            if (levels < 1 || levels > 8) {
+                throw new IllegalArgumentException("Incorrect number of levels");
+            }
+
+            lmsPrivateKeys = new LMSPrivateKey[levels];
+            long position = Integer.BYTES;
+            for (int i = 0; i < levels; i++) {
+                final ByteBuffer header = readFully(channel, position, 2 * Integer.BYTES);
+                final LMSType lmsType = LMSType.lookUp(header.getInt());
+                final LMOTSType lmotsType = LMOTSType.lookUp(header.getInt());
+                final long size = LMS_PRIVATE_KEY_HEADER_SIZE + (long) MathUtil.pow(lmsType.getH())
+                        * (LMOTS_PRIVATE_KEY_HEADER_SIZE + lmotsType.getN());
+                if (position + size > channel.size()) {
+                    throw new IllegalArgumentException("Incomplete private key");
+                }
+                lmsPrivateKeys[i] = LMS.buildPrivateKey(channel.map(READ_ONLY, position, size));
+                position += size;
+            }
+            remainder = new byte[(int) (channel.size() - position)];
+            readFully(channel, position, remainder.length).get(remainder);
+        }
+
+        StateJournal.replay(filename, lmsPrivateKeys);
+        final LMSPublicKey[] lmsPublicKeys = new LMSPublicKey[lmsPrivateKeys.length];
+        final LMSSignature[] lmsSignatures = new LMSSignature[lmsPrivateKeys.length];
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(remainder))) {
+            for (int i = 0; i < lmsPublicKeys.length; i++) {
+                lmsPublicKeys[i] = LMS.buildPublicKey(inputStream);
+            }
+            for (int i = 0; i < lmsSignatures.length && inputStream.available() != 0; i++) {
+                lmsSignatures[i] = LMS.buildSignature(inputStream);
+            }
+        }
+        TreeCache.restore(filename, lmsPrivateKeys, lmsPublicKeys);
+        return HSS.buildPrivateKey(lmsPrivateKeys, lmsPublicKeys, lmsSignatures, filename);
+    }
+
+    @Nonnull
+    private static ByteBuffer readFully(@Nonnull final FileChannel channel, final long position, final int size)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IllegalArgumentException("Incomplete private key");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes a storable object to the given file. The object is written to a temporary file next to the destination
+     * through a large direct buffer, forced to disk and then moved over the destination. The previous file stays in
+     * place until the new one is complete, so there is no moment in which the key is missing from disk.
      *
      * @param storable   the object to store.
      * @param outputfile the destination file.
@@ -184,33 +486,46 @@ public final class PersistenceUtil {
         requireNonNull(storable);
         requireNonNull(outputfile);
 
-        try (PipedOutputStream outputStream = new PipedOutputStream();
-             PipedInputStream inputStream = new PipedInputStream(outputStream, DEFAULT_OUTPUT_BUFFER)) {
+        final Path temporaryFile = Path.of(outputfile + TEMPORARY_EXTENSION);
+        try (FileChannel channel = FileChannel.open(temporaryFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            try (BufferedChannelWriter writer = new BufferedChannelWriter(channel,
+                    TuningConfig.getDefault().getIoBufferSize())) {
+                storable.writeTo(writer);
+            }
+            channel.force(true);
+        }
+        replaceFile(temporaryFile, outputfile);
+    }
 
-            final ExecutorService executor = Executors.newCachedThreadPool();
-            executor.execute(() -> {
-                try {
-                    storable.writeToPipedOutputStream(outputStream);
-                    outputStream.close();
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
-            });
-
-            executor.execute(() -> {
-                int read;
-                final byte[] data = new byte[DEFAULT_OUTPUT_BUFFER];
-                try {
-                    while ((read = inputStream.read(data)) != -1) {
-                        Files.write(outputfile, Arrays.copyOfRange(data, 0, read), CREATE, APPEND);
-                    }
-                    inputStream.close();
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
-                }
-            });
+    /**
+     * Replaces the output file with the completely written temporary file. The file is moved atomically if the file
+     * system supports it. Afterwards the directory is forced to disk, otherwise the rename itself could be lost on a
+     * crash.
+     *
+     * @param temporaryFile the temporary file.
+     * @param outputfile    the destination file.
+     * @throws IOException if the file cannot be moved.
+     */
+    static void replaceFile(@Nonnull final Path temporaryFile, @Nonnull final Path outputfile) throws IOException {
+        try {
+            Files.move(temporaryFile, outputfile, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temporaryFile, outputfile, REPLACE_EXISTING);
+        }
+        forceDirectory(outputfile.toAbsolutePath().getParent());
+    }
 
-            shutdownThreadExecutor(executor);
+    /**
+     * Some platforms like Windows cannot open a directory. There the rename is as durable as the file system makes it.
+     */
+    private static void forceDirectory(@CheckForNull final Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Directory cannot be forced to disk.", ex);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,378 @@
+package at.andicover.util;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSType;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+
+import static at.andicover.util.CompactKeyFile.ENTRY_SIZE;
+import static at.andicover.util.CompactKeyFile.GENERATED_PRIVATE_KEY;
+import static at.andicover.util.CompactKeyFile.HEADER_SIZE;
+import static at.andicover.util.CompactKeyFile.IDENTIFIER_SIZE;
+import static at.andicover.util.CompactKeyFile.MAGIC;
+import static at.andicover.util.CompactKeyFile.PRIVATE_KEY;
+import static at.andicover.util.CompactKeyFile.PUBLIC_KEY;
+import static at.andicover.util.CompactKeyFile.SIGNATURE;
+import static at.andicover.util.CompactKeyFile.TREE;
+import static at.andicover.util.CompactKeyFile.VERSION;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A key file in the {@link CompactKeyFile} format whose large sections are allocated before the key is generated.
+ * The private key section of the top level and the tree sections of all levels are mapped into memory, so the key
+ * generation can write the seeds of the LM-OTS private keys and the leaf nodes straight into the file instead of
+ * holding them on the heap first.
+ *
+ * <p>
+ * The trees of the lower levels are generated from a seed derived from a leaf of their parent tree. For them only
+ * this seed is stored in a generated private key section, the seeds of their LM-OTS private keys are kept on the
+ * heap and generated again when the key is read.
+ * </p>
+ *
+ * <p>
+ * The file is written to a temporary file next to the key file. {@link #complete(HSSPrivateKey)} writes the remaining
+ * small sections and the section table and replaces the key file atomically. If the file is closed without being
+ * completed the temporary file is deleted.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+public final class PreallocatedKeyFile implements Closeable {
+
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final int PRIVATE_KEY_HEADER_SIZE = 3 * Integer.BYTES + IDENTIFIER_SIZE;
+    private static final int TREE_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final String filename;
+    private final Path temporaryFile;
+    private final FileChannel channel;
+    private final int levels;
+    private final LMOTSType lmotsType;
+    // The private key section of the top level followed by the tree sections of all levels.
+    private final long[] offsets;
+    private final MappedByteBuffer[] sections;
+    private final ByteBuffer[] lowerLevelSeeds;
+    private final byte[][] generationSeeds;
+    private final LMSType[] lmsTypes;
+    private long mappedSize;
+    private boolean completed;
+
+    private PreallocatedKeyFile(@Nonnull final String filename,
+                                @Nonnull final Path temporaryFile,
+                                @Nonnull final FileChannel channel,
+                                final int levels,
+                                @Nonnull final LMOTSType lmotsType) {
+        this.filename = filename;
+        this.temporaryFile = temporaryFile;
+        this.channel = channel;
+        this.levels = levels;
+        this.lmotsType = lmotsType;
+        this.offsets = new long[levels + 1];
+        this.sections = new MappedByteBuffer[levels + 1];
+        this.lowerLevelSeeds = new ByteBuffer[levels];
+        this.generationSeeds = new byte[levels][];
+        this.lmsTypes = new LMSType[levels];
+    }
+
+    /**
+     * Creates the temporary file and maps the private key section of the top level and the tree sections of all
+     * levels.
+     *
+     * @param filename           the file of the private key.
+     * @param levels             the number of levels of the HSS private key.
+     * @param lmsTypeFirstLevel  the LMS parameters for the first level.
+     * @param lmsTypeOtherLevels the LMS parameters for all other levels.
+     * @param lmotsType          the LMOTS parameters.
+     * @return the preallocated key file.
+     * @throws IOException              if the file cannot be created or mapped.
+     * @throws IllegalArgumentException if the number of levels is invalid or a section is too large to be mapped.
+     */
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    public static PreallocatedKeyFile create(@Nonnull final String filename,
+                                             final int levels,
+                                             @Nonnull final LMSType lmsTypeFirstLevel,
+                                             @Nonnull final LMSType lmsTypeOtherLevels,
+                                             @Nonnull final LMOTSType lmotsType) throws IOException {
+        requireNonNull(filename);
+        requireNonNull(lmsTypeFirstLevel);
+        requireNonNull(lmsTypeOtherLevels);
+        requireNonNull(lmotsType);
+
+        if (levels <= 0 || levels > 8) {
+            throw new IllegalArgumentException("Incorrect number of levels");
+        }
+
+        final Path temporaryFile =
+                Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename) + TEMPORARY_EXTENSION);
+        final FileChannel channel = FileChannel.open(temporaryFile, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+        final PreallocatedKeyFile keyFile =
+                new PreallocatedKeyFile(filename, temporaryFile, channel, levels, lmotsType);
+        try {
+            long offset = HEADER_SIZE + (long) getSectionCount(levels) * ENTRY_SIZE + Integer.BYTES;
+            for (int i = 0; i < levels; i++) {
+                LMSType lmsType = lmsTypeOtherLevels;
+                if (i == 0) {
+                    lmsType = lmsTypeFirstLevel;
+                }
+                keyFile.lmsTypes[i] = lmsType;
+                final long keys = MathUtil.pow(lmsType.getH());
+                final long privateKeySize = PRIVATE_KEY_HEADER_SIZE + keys * lmotsType.getN();
+                final long treeSize = TREE_HEADER_SIZE + keys * lmsType.getM();
+                if (treeSize > Integer.MAX_VALUE || privateKeySize > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Key is too large to be mapped");
+                }
+
+                if (i == 0) {
+                    keyFile.offsets[0] = offset;
+                    keyFile.sections[0] = channel.map(READ_WRITE, offset, privateKeySize);
+                    offset += privateKeySize;
+                } else {
+                    keyFile.lowerLevelSeeds[i] = ByteBuffer.allocate((int) (keys * lmotsType.getN()));
+                }
+                keyFile.offsets[i + 1] = offset;
+                keyFile.sections[i + 1] = channel.map(READ_WRITE, offset, treeSize);
+                keyFile.sections[i + 1].putInt(0, (int) keys).putInt(Integer.BYTES, 0);
+                offset += treeSize;
+            }
+            keyFile.mappedSize = offset;
+            return keyFile;
+        } catch (IOException | RuntimeException ex) {
+            keyFile.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param level the level of the LMS tree.
+     * @return the region for the seeds of all LM-OTS private keys of the tree, n byte each. It is mapped for the top
+     * level and on the heap for the lower levels.
+     */
+    @Nonnull
+    public ByteBuffer getSeeds(final int level) {
+        if (level == 0) {
+            return sections[0].duplicate().position(PRIVATE_KEY_HEADER_SIZE).slice();
+        }
+        return lowerLevelSeeds[level].duplicate().clear();
+    }
+
+    /**
+     * Sets the seed the tree of a lower level is generated with. Only this seed is stored for the lower levels.
+     *
+     * @param level the level of the LMS tree.
+     * @param seed  the n byte seed of the key generation. It is copied.
+     * @throws IllegalArgumentException if the level is the top level or the seed has an incorrect size.
+     */
+    public void setGenerationSeed(final int level, @Nonnull final byte[] seed) {
+        requireNonNull(seed);
+
+        if (level <= 0 || level >= levels || seed.length != lmotsType.getN()) {
+            throw new IllegalArgumentException("Incorrect level or size of the seed");
+        }
+        generationSeeds[level] = seed.clone();
+    }
+
+    /**
+     * @param level the level of the LMS tree.
+     * @return the mapped region for all leaf nodes of the tree, m byte each.
+     */
+    @Nonnull
+    public ByteBuffer getLeafNodes(final int level) {
+        final int size = MathUtil.pow(lmsTypes[level].getH()) * lmsTypes[level].getM();
+        return sections[level + 1].duplicate().position(TREE_HEADER_SIZE).limit(TREE_HEADER_SIZE + size).slice();
+    }
+
+    /**
+     * Writes the headers, the generated private keys of the lower levels, the public keys and the signatures of the
+     * given private key, which was generated into the mapped regions of this file. The section table is written last,
+     * then the file is forced to disk and replaces the key file atomically.
+     *
+     * @param privateKey the HSS private key generated into this file.
+     * @throws IOException              if writing or moving the file does not work.
+     * @throws IllegalArgumentException if the private key does not fit the allocated sections.
+     * @throws IllegalStateException    if the file was already completed or closed or the generation seed of a lower
+     *                                  level is missing.
+     */
+    public void complete(@Nonnull final HSSPrivateKey privateKey) throws IOException {
+        complete(privateKey, null);
+    }
+
+    /**
+     * Completes the file like {@link #complete(HSSPrivateKey)}. The checksums of the sections are calculated on the
+     * given executor or by bulk tasks of the {@link TaskScheduler} without executor, as the rest of the key generation.
+     *
+     * @param privateKey the HSS private key generated into this file.
+     * @param executor   the executor of the key generation or null.
+     * @throws IOException              if writing or moving the file does not work.
+     * @throws IllegalArgumentException if the private key does not fit the allocated sections.
+     * @throws IllegalStateException    if the file was already completed or closed or the generation seed of a lower
+     *                                  level is missing.
+     */
+    public void complete(@Nonnull final HSSPrivateKey privateKey, @CheckForNull final Executor executor)
+            throws IOException {
+        requireNonNull(privateKey);
+
+        if (completed || !channel.isOpen()) {
+            throw new IllegalStateException("Key file is already completed");
+        }
+        if (privateKey.getLevels() != levels) {
+            throw new IllegalArgumentException("Incorrect number of levels");
+        }
+
+        writePrivateKeyHeader(sections[0], privateKey.getLmsPrivateKeys()[0]);
+        final byte[][] generatedPrivateKeys = new byte[levels][];
+        for (int i = 1; i < levels; i++) {
+            generatedPrivateKeys[i] = encodeGeneratedPrivateKey(i, privateKey.getLmsPrivateKeys()[i]);
+        }
+        final int[] checksums = new int[sections.length];
+        final IntConsumer action = i -> checksums[i] = checksum(sections[i].duplicate().clear());
+        final int parallelism = TuningConfig.getDefault().getParallelism();
+        if (executor == null) {
+            TaskScheduler.getInstance().forEachIndex(checksums.length, action, TaskScheduler.Priority.BULK,
+                    parallelism);
+        } else {
+            ThreadUtil.forEachIndex(checksums.length, action, executor, parallelism);
+        }
+
+        final int count = getSectionCount(levels);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + count * ENTRY_SIZE + Integer.BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(levels).putInt(count);
+        long offset = mappedSize;
+        putEntry(header, PRIVATE_KEY, 0, offsets[0], sections[0].capacity(), checksums[0]);
+        for (int i = 0; i < levels; i++) {
+            if (i > 0) {
+                offset = append(header, GENERATED_PRIVATE_KEY, i, offset, generatedPrivateKeys[i]);
+            }
+            putEntry(header, TREE, i, offsets[i + 1], sections[i + 1].capacity(), checksums[i + 1]);
+            offset = append(header, PUBLIC_KEY, i, offset, privateKey.getLmsPublicKeys()[i].getBytes());
+            if (i < levels - 1) {
+                offset = append(header, SIGNATURE, i, offset, requireNonNull(privateKey.getSignatures()[i]).getBytes());
+            }
+        }
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(header.array(), 0, header.position());
+        header.putInt((int) crc32c.getValue());
+        writeFully(header.flip(), 0);
+
+        for (final MappedByteBuffer section : sections) {
+            section.force();
+        }
+        channel.force(true);
+        channel.close();
+        PersistenceUtil.replaceFile(temporaryFile, getPath(filename));
+        completed = true;
+        StateJournal.clear(filename);
+        TreeCache.clear(filename);
+    }
+
+    /**
+     * Closes the file. If it was not completed the temporary file is deleted and the key file stays untouched.
+     *
+     * @throws IOException if the temporary file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (!completed) {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static void writePrivateKeyHeader(@Nonnull final ByteBuffer section,
+                                              @Nonnull final LMSPrivateKey lmsPrivateKey) {
+        final long keys = MathUtil.pow(lmsPrivateKey.getLmsType().getH());
+        if (section.capacity() != PRIVATE_KEY_HEADER_SIZE + keys * lmsPrivateKey.getLmotsType().getN()) {
+            throw new IllegalArgumentException("Private key does not fit the allocated section");
+        }
+        final ByteBuffer header = section.duplicate().clear();
+        header.putInt(lmsPrivateKey.getLmsType().getTypecode());
+        header.putInt(lmsPrivateKey.getLmotsType().getTypecode());
+        header.putInt(lmsPrivateKey.getReservedMark());
+        header.put(lmsPrivateKey.getIdentifier());
+    }
+
+    @Nonnull
+    private byte[] encodeGeneratedPrivateKey(final int level, @Nonnull final LMSPrivateKey lmsPrivateKey) {
+        final byte[] seed = generationSeeds[level];
+        if (seed == null) {
+            throw new IllegalStateException("Missing generation seed of level " + level);
+        }
+        if (lmsPrivateKey.getLmsType() != lmsTypes[level] || lmsPrivateKey.getLmotsType() != lmotsType) {
+            throw new IllegalArgumentException("Private key does not fit the allocated sections");
+        }
+        final ByteBuffer section = ByteBuffer.allocate(PRIVATE_KEY_HEADER_SIZE + seed.length);
+        section.putInt(lmsPrivateKey.getLmsType().getTypecode());
+        section.putInt(lmsPrivateKey.getLmotsType().getTypecode());
+        section.putInt(lmsPrivateKey.getReservedMark());
+        section.put(lmsPrivateKey.getIdentifier());
+        return section.put(seed).array();
+    }
+
+    private long append(@Nonnull final ByteBuffer header,
+                        final int type,
+                        final int level,
+                        final long offset,
+                        @Nonnull final byte[] bytes) throws IOException {
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes);
+        putEntry(header, type, level, offset, bytes.length, (int) crc32c.getValue());
+        writeFully(ByteBuffer.wrap(bytes), offset);
+        return offset + bytes.length;
+    }
+
+    private void writeFully(@Nonnull final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void putEntry(@Nonnull final ByteBuffer header,
+                                 final int type,
+                                 final int level,
+                                 final long offset,
+                                 final long length,
+                                 final int checksum) {
+        header.putInt(type).putInt(level).putLong(offset).putLong(length).putInt(checksum);
+    }
+
+    private static int checksum(@Nonnull final ByteBuffer section) {
+        final CRC32C crc32c = new CRC32C();
+        crc32c.update(section);
+        return (int) crc32c.getValue();
+    }
+
+    /**
+     * Private key, public key and tree of every level and the signatures of all levels but the top level.
+     */
+    private static int getSectionCount(final int levels) {
+        return 4 * levels - 1;
+    }
+
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    private static Path getPath(@Nonnull final String filename) {
+        return Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename));
+    }
+}
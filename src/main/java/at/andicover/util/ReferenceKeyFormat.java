@@ -0,0 +1,423 @@
+package at.andicover.util;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.digest.api.CustomMessageDigest;
+import at.andicover.digest.impl.MessageDigestCache;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.impl.HSS;
+import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSType;
+import at.andicover.lms.impl.LMS;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static at.andicover.util.ByteUtil.intTo4ByteArray;
+import static at.andicover.util.ByteUtil.merge;
+import static at.andicover.util.SecurityString.getdIntr;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility class to convert private keys from and to the formats of the reference implementation of RFC 8554
+ * (hash-sigs). Only the top level tree has to be equal, it defines the public key. Its LM-OTS private keys are derived
+ * from the SEED of the reference key, see {@link LMSPrivateKey#getSeed()}. Public keys and signatures have the same
+ * format in both implementations.
+ *
+ * <p>
+ * The private key of the reference implementation also holds its state and has 72 byte: u64str(number of used
+ * signatures) || u64str(maximum number of signatures) || one byte (LMS type &lt;&lt; 4 | LMOTS type) per level, 0xff
+ * for unused levels up to 8 || SEED || I of the top level tree. The auxiliary data caches levels of the top level
+ * tree: u32str(0x80000000 | bit i set for every stored level i, the root is level 0) || the nodes of all stored levels
+ * from the top to the bottom, left to right || HMAC-SHA256 of the data before with the key
+ * H(0^20 || u16str(0xfdfd) || SEED).
+ * </p>
+ * <p>
+ * The lower trees are not converted. They are derived differently in both implementations, so the lower levels start
+ * over at the next unused leaf of the top level tree after every conversion. The remaining leaves of the current
+ * lowest tree are skipped, no one-time key is used twice.
+ * </p>
+ * <p>
+ * Note: Imported keys are derived keys. Their format in {@link at.andicover.common.api.Storable#getBytes()} and
+ * {@link at.andicover.common.api.Storable#writeTo(ByteBuffer)} cannot express them, both throw an
+ * {@link IllegalStateException}. They are stored with {@link PersistenceUtil#storeKey(HSSPrivateKey)} in the
+ * {@link CompactKeyFile} format.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ * @see <a href="https://github.com/cisco/hash-sigs">hash-sigs - Reference implementation of RFC 8554</a>
+ */
+public final class ReferenceKeyFormat {
+
+    /**
+     * Size of a private key of the reference implementation in byte.
+     */
+    public static final int PRIVATE_KEY_SIZE = 72;
+
+    private static final int MAX_LEVELS = 8;
+    private static final int SEED_SIZE = 32;
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int PARAMETER_SET_END = 0xff;
+    private static final int AUX_DATA_MARKER = 0x80000000;
+    private static final int AUX_HEADER_SIZE = Integer.BYTES;
+    private static final int AUX_KEY_PREFIX_SIZE = 20;
+    private static final int D_DAUX = 0xfdfd;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private ReferenceKeyFormat() {
+    }
+
+    /**
+     * Imports a private key of the reference implementation. The tree of the top level is restored from the auxiliary
+     * data if it holds the leaf nodes, otherwise it is built when the key is used first. The root calculated from the
+     * lowest level in the auxiliary data must be the one of the public key. The imported key is stored in the given
+     * file.
+     *
+     * @param privateKey the private key of the reference implementation, which also holds its state.
+     * @param publicKey  the public key of the reference implementation.
+     * @param auxData    the auxiliary data of the reference implementation or null.
+     * @param filename   where to store the imported key or null.
+     * @return the imported private key.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     * @throws IOException              if storing the key does not work.
+     * @throws IllegalArgumentException if the keys or the auxiliary data are invalid, do not belong together or use
+     *                                  parameters that are not supported.
+     * @throws IllegalStateException    if all keys of the private key are used.
+     */
+    @Nonnull
+    public static HSSPrivateKey importKey(@Nonnull final byte[] privateKey,
+                                          @Nonnull final byte[] publicKey,
+                                          @CheckForNull final byte[] auxData,
+                                          @CheckForNull final String filename)
+            throws NoSuchAlgorithmException, IOException {
+        requireNonNull(privateKey);
+        requireNonNull(publicKey);
+
+        if (privateKey.length != PRIVATE_KEY_SIZE) {
+            throw new IllegalArgumentException("Incorrect size of the private key");
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(privateKey);
+        final long index = buffer.getLong();
+        final long maximum = buffer.getLong();
+        final byte[] parameterSets = new byte[MAX_LEVELS];
+        buffer.get(parameterSets);
+        final byte[] seed = new byte[SEED_SIZE];
+        buffer.get(seed);
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        buffer.get(identifier);
+
+        int levels = 0;
+        while (levels < MAX_LEVELS && (parameterSets[levels] & 0xff) != PARAMETER_SET_END) {
+            levels++;
+        }
+        if (levels == 0) {
+            throw new IllegalArgumentException("Incorrect number of levels");
+        }
+        final LMSType[] lmsTypes = new LMSType[levels];
+        final LMOTSType[] lmotsTypes = new LMOTSType[levels];
+        for (int i = 0; i < levels; i++) {
+            lmsTypes[i] = LMSType.lookUp((parameterSets[i] >> 4) & 0x0f);
+            lmotsTypes[i] = LMOTSType.lookUp(parameterSets[i] & 0x0f);
+        }
+        checkParameters(lmsTypes, lmotsTypes);
+        if (Long.compareUnsigned(index, maximum) > 0) {
+            throw new IllegalStateException("Keys exceeded");
+        }
+
+        final HSSPublicKey hssPublicKey = HSS.buildPublicKey(ByteBuffer.wrap(publicKey));
+        final LMSPublicKey topLevelPublicKey = hssPublicKey.getPublicKey();
+        if (hssPublicKey.getLevels() != levels || topLevelPublicKey.getLmsType() != lmsTypes[0]
+                || topLevelPublicKey.getLmotsType() != lmotsTypes[0]
+                || !Arrays.equals(topLevelPublicKey.getIdentifier(), identifier)) {
+            throw new IllegalArgumentException("Public key does not belong to the private key");
+        }
+
+        final LMSPrivateKey topLevelPrivateKey = LMS.derivePrivateKey(lmsTypes[0], lmotsTypes[0], identifier,
+                getTopLevelQIdentifier(index, lmsTypes), seed);
+        if (auxData != null) {
+            restoreTree(topLevelPrivateKey, topLevelPublicKey, auxData);
+        }
+
+        // Upper levels of the new chain signed one child each, the lowest level is unused.
+        final int[] qIdentifiers = new int[levels - 1];
+        Arrays.fill(qIdentifiers, 1);
+        if (levels > 1) {
+            qIdentifiers[levels - 2] = 0;
+        }
+        LMSType lmsTypeOtherLevels = lmsTypes[0];
+        if (levels > 1) {
+            lmsTypeOtherLevels = lmsTypes[1];
+        }
+        final HSSPrivateKey hssPrivateKey = HSS.buildPrivateKey(topLevelPrivateKey, topLevelPublicKey,
+                lmsTypeOtherLevels, qIdentifiers, filename);
+        hssPrivateKey.getLmsPrivateKeys()[levels - 1].reserveKeys(TuningConfig.getDefault().getKeyReserveCount());
+        PersistenceUtil.storeKey(hssPrivateKey);
+        return hssPrivateKey;
+    }
+
+    /**
+     * Exports the private key and its state in the format of the reference implementation. The reference
+     * implementation continues with the first unused leaf of the top level tree.
+     *
+     * <p>
+     * Note: The private key must not be used anymore after it was exported.
+     * </p>
+     *
+     * @param privateKey the HSS private key. Its top level tree must be derived, usually because it was imported.
+     * @return the private key of the reference implementation.
+     * @throws IllegalArgumentException if the key is not derived or uses parameters that are not supported.
+     */
+    @Nonnull
+    public static byte[] exportPrivateKey(@Nonnull final HSSPrivateKey privateKey) {
+        requireNonNull(privateKey);
+
+        final int levels = privateKey.getLevels();
+        final LMSType[] lmsTypes = new LMSType[levels];
+        final LMOTSType[] lmotsTypes = new LMOTSType[levels];
+        for (int i = 0; i < levels; i++) {
+            lmsTypes[i] = privateKey.getLmsPrivateKeys()[i].getLmsType();
+            lmotsTypes[i] = privateKey.getLmsPrivateKeys()[i].getLmotsType();
+        }
+        checkParameters(lmsTypes, lmotsTypes);
+        final LMSPrivateKey topLevelPrivateKey = privateKey.getLmsPrivateKeys()[0];
+        final byte[] seed = topLevelPrivateKey.getSeed();
+        if (seed == null) {
+            throw new IllegalArgumentException("Only derived keys can be exported");
+        }
+
+        int lowerHeight = 0;
+        for (int i = 1; i < levels; i++) {
+            lowerHeight += lmsTypes[i].getH();
+        }
+        final int height = lmsTypes[0].getH() + lowerHeight;
+        if (height >= Long.SIZE) {
+            throw new IllegalArgumentException("Too many signatures for the reference implementation");
+        }
+
+        // The reference implementation starts with the first leaf of the top level tree that was not reserved here.
+        final long index = (long) topLevelPrivateKey.getReservedMark() << lowerHeight;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(PRIVATE_KEY_SIZE);
+        buffer.putLong(index);
+        buffer.putLong((1L << height) - 1);
+        for (int i = 0; i < MAX_LEVELS; i++) {
+            if (i < levels) {
+                buffer.put((byte) (lmsTypes[i].getTypecode() << 4 | lmotsTypes[i].getTypecode()));
+            } else {
+                buffer.put((byte) PARAMETER_SET_END);
+            }
+        }
+        buffer.put(seed);
+        buffer.put(topLevelPrivateKey.getIdentifier());
+        return buffer.array();
+    }
+
+    /**
+     * Exports the tree of the top level as auxiliary data of the reference implementation. The lowest levels of the
+     * tree that are known and fit into the given size are stored.
+     *
+     * @param privateKey the HSS private key. Its top level tree must be derived, usually because it was imported.
+     * @param maxLength  the maximum size of the auxiliary data in byte.
+     * @return the auxiliary data. Only holds the marker for missing data if the tree was not built yet.
+     * @throws NoSuchAlgorithmException if the HMAC algorithm does not exist.
+     * @throws IllegalArgumentException if the key is not derived.
+     */
+    @Nonnull
+    public static byte[] exportAuxData(@Nonnull final HSSPrivateKey privateKey, final int maxLength)
+            throws NoSuchAlgorithmException {
+        requireNonNull(privateKey);
+
+        final LMSPrivateKey topLevelPrivateKey = privateKey.getLmsPrivateKeys()[0];
+        final byte[] seed = topLevelPrivateKey.getSeed();
+        if (seed == null) {
+            throw new IllegalArgumentException("Only derived keys can be exported");
+        }
+        final byte[][] leafNodes = topLevelPrivateKey.getLeafNodes();
+        final byte[][] topLevelNodes = topLevelPrivateKey.getTopLevelNodes();
+        final int h = topLevelPrivateKey.getLmsType().getH();
+        final int m = topLevelPrivateKey.getLmsType().getM();
+        if (leafNodes == null || topLevelNodes == null) {
+            return new byte[1];
+        }
+
+        long length = AUX_HEADER_SIZE + SEED_SIZE;
+        int mask = 0;
+        for (int i = h; i >= 1; i--) {
+            final long levelSize = (long) MathUtil.pow(i) * m;
+            // The last node above the leaves is not stored for small trees, it is hashed from the leaves again.
+            final boolean known = i == h || MathUtil.pow(i + 1) - 2 <= topLevelNodes.length;
+            if (known && length + levelSize <= maxLength) {
+                mask |= 1 << i;
+                length += levelSize;
+            }
+        }
+        if (mask == 0) {
+            return new byte[1];
+        }
+
+        final CustomMessageDigest messageDigest =
+                MessageDigestCache.getInstance().getMessageDigest(topLevelPrivateKey.getLmsType().getHashAlgorithm());
+        final byte[] identifier = topLevelPrivateKey.getIdentifier();
+        final int leafCount = MathUtil.pow(h);
+        final ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.putInt(AUX_DATA_MARKER | mask);
+        for (int i = 1; i <= h; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            for (int r = MathUtil.pow(i); r < MathUtil.pow(i + 1); r++) {
+                if (i == h) {
+                    buffer.put(leafNodes[r - leafCount]);
+                } else if (r <= topLevelNodes.length) {
+                    buffer.put(topLevelNodes[r - 1]);
+                } else {
+                    buffer.put(messageDigest.digest(merge(identifier, intTo4ByteArray(r), getdIntr(),
+                            leafNodes[2 * r - leafCount], leafNodes[2 * r + 1 - leafCount])));
+                }
+            }
+        }
+        buffer.put(hmac(seed, buffer.array(), buffer.position()));
+        return buffer.array();
+    }
+
+    /**
+     * Auxiliary data that is invalid is ignored, as in the reference implementation. The root is calculated from the
+     * lowest stored level and compared with the public key. Only the leaf nodes are restored, the tree is built when
+     * the key is used first if they are not stored.
+     */
+    private static void restoreTree(@Nonnull final LMSPrivateKey lmsPrivateKey,
+                                    @Nonnull final LMSPublicKey lmsPublicKey,
+                                    @Nonnull final byte[] auxData) throws NoSuchAlgorithmException {
+        if (auxData.length < AUX_HEADER_SIZE + SEED_SIZE) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(auxData);
+        final int mask = buffer.getInt() & ~AUX_DATA_MARKER;
+        final int h = lmsPrivateKey.getLmsType().getH();
+        final int m = lmsPrivateKey.getLmsType().getM();
+        if ((auxData[0] & 0x80) == 0 || mask == 0 || mask >>> (h + 1) != 0) {
+            return;
+        }
+
+        long length = AUX_HEADER_SIZE + SEED_SIZE;
+        int lowestLevel = 0;
+        for (int i = 0; i <= h; i++) {
+            if ((mask & (1 << i)) != 0) {
+                length += (long) MathUtil.pow(i) * m;
+                lowestLevel = i;
+            }
+        }
+        final int dataLength = auxData.length - SEED_SIZE;
+        if (length != auxData.length || !MessageDigest.isEqual(
+                hmac(requireNonNull(lmsPrivateKey.getSeed()), auxData, dataLength),
+                Arrays.copyOfRange(auxData, dataLength, auxData.length))) {
+            return;
+        }
+
+        // The lowest stored level is the last one in the data.
+        final byte[][] nodes = new byte[MathUtil.pow(lowestLevel)][m];
+        buffer.position(dataLength - nodes.length * m);
+        for (final byte[] node : nodes) {
+            buffer.get(node);
+        }
+        final boolean belongsToKey;
+        if (lowestLevel == h) {
+            belongsToKey = lmsPrivateKey.restoreLeafNodes(nodes, lmsPublicKey.getKey());
+        } else {
+            belongsToKey = Arrays.equals(calculateRoot(lmsPrivateKey, nodes), lmsPublicKey.getKey());
+        }
+        if (!belongsToKey) {
+            throw new IllegalArgumentException("Auxiliary data does not belong to the private key");
+        }
+    }
+
+    /**
+     * @param nodes all nodes of one level of the tree, the nodes of level i are nodes 2^i to 2^(i+1) - 1.
+     * @return the root hashed from the given level.
+     */
+    @Nonnull
+    private static byte[] calculateRoot(@Nonnull final LMSPrivateKey lmsPrivateKey, @Nonnull final byte[][] nodes)
+            throws NoSuchAlgorithmException {
+        final byte[] identifier = lmsPrivateKey.getIdentifier();
+        final CustomMessageDigest messageDigest =
+                MessageDigestCache.getInstance().getMessageDigest(lmsPrivateKey.getLmsType().getHashAlgorithm());
+
+        byte[][] level = nodes;
+        int first = nodes.length;
+        while (first > 1) {
+            first /= 2;
+            final byte[][] parents = new byte[first][];
+            for (int j = 0; j < first; j++) {
+                parents[j] = messageDigest.digest(merge(identifier, intTo4ByteArray(first + j), getdIntr(),
+                        level[2 * j], level[2 * j + 1]));
+            }
+            level = parents;
+        }
+        return level[0];
+    }
+
+    /**
+     * The lower levels are started over at the next leaf of the top level tree. The leaf that is used by the current
+     * lowest tree of the reference implementation might already have signed its child tree.
+     */
+    private static int getTopLevelQIdentifier(final long index, @Nonnull final LMSType[] lmsTypes) {
+        if (lmsTypes.length == 1) {
+            if (Long.compareUnsigned(index, MathUtil.pow(lmsTypes[0].getH())) > 0) {
+                throw new IllegalStateException("Keys exceeded");
+            }
+            return (int) index;
+        }
+
+        int lowerHeight = 0;
+        for (int i = 1; i < lmsTypes.length; i++) {
+            lowerHeight += lmsTypes[i].getH();
+        }
+        final long topLevelIndex = index >>> lowerHeight;
+        if (topLevelIndex + 2 > MathUtil.pow(lmsTypes[0].getH())) {
+            throw new IllegalStateException("Keys exceeded");
+        }
+        return (int) topLevelIndex + 2;
+    }
+
+    /**
+     * This library uses one LMOTS type for all levels and one LMS type for all lower levels. The reference
+     * implementation only supports SHA-256 with n = 32 and typecodes that fit into four bit.
+     */
+    private static void checkParameters(@Nonnull final LMSType[] lmsTypes, @Nonnull final LMOTSType[] lmotsTypes) {
+        for (int i = 0; i < lmsTypes.length; i++) {
+            if (lmsTypes[i].getM() != SEED_SIZE || lmotsTypes[i].getN() != SEED_SIZE
+                    || lmsTypes[i].getTypecode() > 0x0e || lmotsTypes[i].getTypecode() > 0x0e
+                    || lmotsTypes[i] != lmotsTypes[0] || i > 1 && lmsTypes[i] != lmsTypes[1]) {
+                throw new IllegalArgumentException("Parameter set is not supported");
+            }
+        }
+    }
+
+    @Nonnull
+    private static byte[] hmac(@Nonnull final byte[] seed, @Nonnull final byte[] data, final int length)
+            throws NoSuchAlgorithmException {
+        final byte[] prefix = new byte[AUX_KEY_PREFIX_SIZE + 2];
+        prefix[AUX_KEY_PREFIX_SIZE] = (byte) (D_DAUX >> 8);
+        prefix[AUX_KEY_PREFIX_SIZE + 1] = (byte) D_DAUX;
+        final byte[] key = MessageDigest.getInstance("SHA-256").digest(merge(prefix, seed));
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            mac.update(data, 0, length);
+            return mac.doFinal();
+        } catch (InvalidKeyException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -18,6 +18,8 @@ public final class SecurityString {
     private static final byte[] D_MESG = intTo2ByteArray(Integer.decode("0x8181"));
     private static final byte[] D_LEAF = intTo2ByteArray(Integer.decode("0x8282"));
     private static final byte[] D_INTR = intTo2ByteArray(Integer.decode("0x8383"));
+    private static final byte[] D_CHILD_SEED = intTo2ByteArray(Integer.decode("0xfffe"));
+    private static final byte[] D_CHILD_RAND = intTo2ByteArray(Integer.decode("0xfffd"));
 
     private SecurityString() {
     }
@@ -53,4 +55,28 @@ public final class SecurityString {
     public static byte[] getdIntr() {
         return Arrays.copyOf(D_INTR, D_INTR.length);
     }
+
+    /**
+     * Used in place of the chain index i of the pseudorandom key generation to derive the seed of a child tree. It is
+     * larger than any valid chain index.
+     *
+     * @return D_CHILD_SEED as byte array.
+     * @see <a href="https://tools.ietf.org/html/rfc8554#appendix-A">RFC 8554 - Pseudorandom Key Generation</a>
+     */
+    @Nonnull
+    public static byte[] getdChildSeed() {
+        return Arrays.copyOf(D_CHILD_SEED, D_CHILD_SEED.length);
+    }
+
+    /**
+     * Used in place of the chain index i of the pseudorandom key generation to derive the randomizer C of the
+     * signature of a child tree. It is larger than any valid chain index.
+     *
+     * @return D_CHILD_RAND as byte array.
+     * @see <a href="https://tools.ietf.org/html/rfc8554#appendix-A">RFC 8554 - Pseudorandom Key Generation</a>
+     */
+    @Nonnull
+    public static byte[] getdChildRand() {
+        return Arrays.copyOf(D_CHILD_RAND, D_CHILD_RAND.length);
+    }
 }
@@ -0,0 +1,187 @@
+package at.andicover.util;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.lms.api.LMSPrivateKey;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility class for the append-only state journal of an HSS private key. Reserving keys only moves the high-water
+ * mark of one LMS tree, so instead of storing the whole private key again a small record is appended to the journal
+ * file next to the private key file. The journal is replayed when the private key is loaded and cleared whenever the
+ * whole private key is stored.
+ *
+ * <p>
+ * Every record has 28 byte: I || u32str(level) || u32str(high-water mark) || u32str(CRC32 of the first 24 byte).
+ * Records of trees that were replaced in the meantime do not match the identifier I of the loaded tree and are
+ * ignored, so are incomplete records of a write that was interrupted by a crash. The high-water marks only ever grow.
+ * </p>
+ * <p>
+ * Note: Callers must hold the lock of the private key, see {@link HSSPrivateKey#getLock()}.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+public final class StateJournal {
+
+    /**
+     * Size of one journal record in byte.
+     */
+    public static final int RECORD_SIZE = 28;
+
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final int IDENTIFIER_SIZE = 16;
+
+    private StateJournal() {
+    }
+
+    /**
+     * Appends the current high-water mark of the given level to the journal of the private key and forces it to
+     * disk. Compacts the journal if it has more than {@link TuningConfig#getJournalRecords()} records.
+     *
+     * @param privateKey the HSS private key.
+     * @param level      the level of the LMS tree whose reserved keys changed.
+     * @throws IOException if writing to the journal does not work.
+     */
+    public static void append(@Nonnull final HSSPrivateKey privateKey, final int level) throws IOException {
+        requireNonNull(privateKey);
+        if (privateKey.getFilename() == null) {
+            return;
+        }
+
+        final Path journal = getJournalPath(privateKey.getFilename());
+        try (FileChannel channel = FileChannel.open(journal, CREATE, WRITE)) {
+            final long size = channel.size() - channel.size() % RECORD_SIZE;
+            if (size < (long) TuningConfig.getDefault().getJournalRecords() * RECORD_SIZE) {
+                writeFully(channel, createRecord(privateKey.getLmsPrivateKeys()[level], level), size);
+                channel.force(false);
+                return;
+            }
+        }
+        compact(privateKey);
+    }
+
+    /**
+     * Rewrites the journal with one record per level of the given private key. The new journal is written to a
+     * temporary file first and then moved over the old one.
+     *
+     * @param privateKey the HSS private key.
+     * @throws IOException if writing to the journal does not work.
+     */
+    public static void compact(@Nonnull final HSSPrivateKey privateKey) throws IOException {
+        requireNonNull(privateKey);
+        if (privateKey.getFilename() == null) {
+            return;
+        }
+
+        final Path journal = getJournalPath(privateKey.getFilename());
+        final Path temporaryJournal = Path.of(journal + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryJournal, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            for (int i = 0; i < privateKey.getLevels(); i++) {
+                writeFully(channel, createRecord(privateKey.getLmsPrivateKeys()[i], i), (long) i * RECORD_SIZE);
+            }
+            channel.force(false);
+        }
+        PersistenceUtil.replaceFile(temporaryJournal, journal);
+    }
+
+    /**
+     * Deletes the journal of the private key. Must only be called after the whole private key was stored.
+     *
+     * @param filename the filename of the private key.
+     * @throws IOException if the journal cannot be deleted.
+     */
+    public static void clear(@Nonnull final String filename) throws IOException {
+        requireNonNull(filename);
+
+        Files.deleteIfExists(getJournalPath(filename));
+    }
+
+    /**
+     * Applies all valid records of the journal to the given LMS private keys.
+     *
+     * @param filename       the filename of the private key.
+     * @param lmsPrivateKeys the LMS private keys of all levels as loaded from the private key file.
+     * @throws IOException if reading the journal does not work.
+     */
+    public static void replay(@Nonnull final String filename, @Nonnull final LMSPrivateKey[] lmsPrivateKeys)
+            throws IOException {
+        requireNonNull(filename);
+        requireNonNull(lmsPrivateKeys);
+
+        final Path journal = getJournalPath(filename);
+        if (!Files.exists(journal)) {
+            return;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        final byte[] identifier = new byte[IDENTIFIER_SIZE];
+        try (FileChannel channel = FileChannel.open(journal, READ)) {
+            long position = 0;
+            while (position + RECORD_SIZE <= channel.size()) {
+                record.clear();
+                while (record.hasRemaining()) {
+                    channel.read(record, position + record.position());
+                }
+                position += RECORD_SIZE;
+
+                record.flip();
+                record.get(identifier);
+                final int level = record.getInt();
+                final int highWaterMark = record.getInt();
+                if (record.getInt() == checksum(record.array()) && level >= 0 && level < lmsPrivateKeys.length
+                        && Arrays.equals(identifier, lmsPrivateKeys[level].getIdentifier())) {
+                    lmsPrivateKeys[level].advanceQIdentifier(highWaterMark);
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    private static ByteBuffer createRecord(@Nonnull final LMSPrivateKey lmsPrivateKey, final int level) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(lmsPrivateKey.getIdentifier());
+        record.putInt(level);
+        record.putInt(lmsPrivateKey.getReservedMark());
+        record.putInt(checksum(record.array()));
+        record.flip();
+        return record;
+    }
+
+    private static int checksum(@Nonnull final byte[] record) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(record, 0, RECORD_SIZE - Integer.BYTES);
+        return (int) crc32.getValue();
+    }
+
+    private static void writeFully(@Nonnull final FileChannel channel,
+                                   @Nonnull final ByteBuffer buffer,
+                                   final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Nonnull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    private static Path getJournalPath(@Nonnull final String filename) {
+        return Path.of(FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename) + JOURNAL_EXTENSION);
+    }
+}
@@ -0,0 +1,356 @@
+package at.andicover.util;
+
+import at.andicover.config.TuningConfig;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Library-wide scheduler with one set of worker threads and a queue per priority class. Key generation, tree
+ * rollovers and tree rebuilds use it unless the caller passes an own executor.
+ *
+ * <p>
+ * A free worker always takes the oldest task of the highest priority class that is below its concurrency cap. Tree
+ * work is split into subtree tasks, see {@link ThreadUtil#forEachIndex(int, java.util.function.IntConsumer, Executor,
+ * int)}, and every subtree task queues the next one at the end of its class. So a worker that generates a tree is
+ * preempted at the next subtree boundary as soon as an interactive task is waiting. Background classes are capped
+ * below the number of workers, so one worker is left for interactive tasks if there is more than one.
+ * </p>
+ *
+ * <p>
+ * Threads outside of the scheduler take part with {@link #enter(Priority)}. Signing and verification count as
+ * interactive load this way, and a thread that generates a tree with workers of the scheduler counts towards the cap
+ * of its class. Background and bulk tasks together never use more workers than the background cap, and not more than
+ * the workers the interactive load leaves free. One of them may always run, so the work of a thread that holds the
+ * lock of a private key is never stalled by signers waiting for the same lock.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+@ThreadSafe
+public final class TaskScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /**
+     * Priority classes, from the highest to the lowest.
+     */
+    public enum Priority {
+        /**
+         * Signing and verification requests somebody waits for.
+         */
+        INTERACTIVE,
+        /**
+         * Work that prepares future requests, for example child trees of a rollover or the rebuild of a loaded tree.
+         */
+        BACKGROUND,
+        /**
+         * Generation of new keys.
+         */
+        BULK
+    }
+
+    private final int parallelism;
+    private final Map<Priority, Integer> caps = new EnumMap<>(Priority.class);
+    private final Map<Priority, Queue<Runnable>> queues = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> running = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> callers = new EnumMap<>(Priority.class);
+    private final ThreadLocal<Priority> currentPriority = new ThreadLocal<>();
+    private final Map<Priority, Executor> executors = new EnumMap<>(Priority.class);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition slotAvailable = lock.newCondition();
+    private boolean shutdown;
+
+    private static final class Holder {
+        private static final TaskScheduler INSTANCE =
+                new TaskScheduler(TuningConfig.getDefault().getParallelism());
+    }
+
+    /**
+     * Creates a new scheduler with the given number of daemon worker threads. Interactive tasks may use all workers,
+     * background tasks all but one and bulk key generation half of them.
+     *
+     * @param parallelism The number of worker threads.
+     */
+    public TaskScheduler(final int parallelism) {
+        this(parallelism, parallelism, Math.max(1, parallelism - 1), Math.max(1, parallelism / 2));
+    }
+
+    /**
+     * Creates a new scheduler with the given number of daemon worker threads and concurrency caps.
+     *
+     * @param parallelism    The number of worker threads.
+     * @param interactiveCap How many interactive tasks may run at the same time.
+     * @param backgroundCap  How many background tasks may run at the same time.
+     * @param bulkCap        How many bulk tasks may run at the same time.
+     */
+    public TaskScheduler(final int parallelism, final int interactiveCap, final int backgroundCap, final int bulkCap) {
+        if (parallelism <= 0 || interactiveCap <= 0 || backgroundCap <= 0 || bulkCap <= 0) {
+            throw new IllegalArgumentException("Parallelism and caps must be positive");
+        }
+
+        this.parallelism = parallelism;
+        caps.put(Priority.INTERACTIVE, Math.min(interactiveCap, parallelism));
+        caps.put(Priority.BACKGROUND, Math.min(backgroundCap, parallelism));
+        caps.put(Priority.BULK, Math.min(bulkCap, parallelism));
+        for (final Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            running.put(priority, 0);
+            callers.put(priority, 0);
+            executors.put(priority, command -> execute(command, priority));
+        }
+        for (int i = 0; i < parallelism; i++) {
+            final Thread worker = new Thread(this::work, "lms-hss-scheduler-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * @return the scheduler shared by the whole library with {@link TuningConfig#getParallelism()} workers.
+     */
+    @Nonnull
+    public static TaskScheduler getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param priority The priority class.
+     * @return how many tasks of the given class may run at the same time.
+     */
+    public int getCap(@Nonnull final Priority priority) {
+        return caps.get(requireNonNull(priority));
+    }
+
+    /**
+     * @param priority The priority class.
+     * @return an executor that queues its tasks with the given priority.
+     */
+    @Nonnull
+    public Executor executor(@Nonnull final Priority priority) {
+        return executors.get(requireNonNull(priority));
+    }
+
+    /**
+     * Queues the given task with the given priority.
+     *
+     * @param command  The task.
+     * @param priority The priority class.
+     * @throws RejectedExecutionException if the scheduler was shut down.
+     */
+    public void execute(@Nonnull final Runnable command, @Nonnull final Priority priority) {
+        requireNonNull(command);
+        requireNonNull(priority);
+
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Scheduler was shut down");
+            }
+            queues.get(priority).add(command);
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the given action for every index from 0 to count - 1 with tasks of the given class, see
+     * {@link ThreadUtil#forEachIndex(int, IntConsumer, Executor, int)}. The calling thread takes part in the work and
+     * counts towards the cap of the class, see {@link #enter(Priority)}.
+     *
+     * @param count       The number of indices.
+     * @param action      The action to run for each index.
+     * @param priority    The priority class of the work.
+     * @param parallelism The maximum number of workers including the calling thread, capped by the class.
+     */
+    public void forEachIndex(final int count,
+                             @Nonnull final IntConsumer action,
+                             @Nonnull final Priority priority,
+                             final int parallelism) {
+        final Slot slot = enter(priority);
+        try {
+            ThreadUtil.forEachIndex(count, action, executor(priority), Math.min(getCap(priority), parallelism));
+        } finally {
+            slot.leave();
+        }
+    }
+
+    /**
+     * Counts the calling thread as a running task of the given class until it leaves the returned slot. An interactive
+     * caller is never blocked, it only limits the workers left for background and bulk tasks. A background or bulk
+     * caller waits until its class may run another task. A thread that already is a worker or holds a slot is counted
+     * once, for it the call returns at once.
+     *
+     * <pre>
+     * final TaskScheduler.Slot slot = scheduler.enter(TaskScheduler.Priority.INTERACTIVE);
+     * try {
+     *     // sign or verify
+     * } finally {
+     *     slot.leave();
+     * }
+     * </pre>
+     *
+     * @param priority The priority class of the work of the calling thread.
+     * @return the slot the calling thread must leave when its work is done.
+     */
+    @Nonnull
+    public Slot enter(@Nonnull final Priority priority) {
+        requireNonNull(priority);
+
+        if (currentPriority.get() != null) {
+            return new Slot(null);
+        }
+        lock.lock();
+        try {
+            while (priority != Priority.INTERACTIVE && !mayStart(priority)) {
+                slotAvailable.awaitUninterruptibly();
+            }
+            callers.merge(priority, 1, Integer::sum);
+        } finally {
+            lock.unlock();
+        }
+        currentPriority.set(priority);
+        return new Slot(priority);
+    }
+
+    /**
+     * A thread outside of the scheduler counted as running task, see {@link #enter(Priority)}.
+     */
+    public final class Slot {
+        @CheckForNull
+        private Priority priority;
+
+        private Slot(@CheckForNull final Priority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Stops counting the calling thread. Leaving a slot twice has no effect.
+         */
+        public void leave() {
+            if (priority == null) {
+                return;
+            }
+            currentPriority.remove();
+            lock.lock();
+            try {
+                callers.merge(priority, -1, Integer::sum);
+                signalSlotsFreed();
+            } finally {
+                lock.unlock();
+            }
+            priority = null;
+        }
+    }
+
+    /**
+     * Stops the workers after the queued tasks were done. New tasks are rejected. The shared instance should not be
+     * shut down.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Priority priority = null;
+            Runnable task = null;
+            lock.lock();
+            try {
+                while (task == null) {
+                    for (final Priority candidate : Priority.values()) {
+                        if (!queues.get(candidate).isEmpty() && mayStart(candidate)) {
+                            priority = candidate;
+                            task = queues.get(candidate).poll();
+                            break;
+                        }
+                    }
+                    if (task == null) {
+                        if (shutdown && queues.values().stream().allMatch(Queue::isEmpty)) {
+                            return;
+                        }
+                        workAvailable.awaitUninterruptibly();
+                    }
+                }
+                running.merge(priority, 1, Integer::sum);
+            } finally {
+                lock.unlock();
+            }
+
+            currentPriority.set(priority);
+            try {
+                task.run();
+            } catch (Throwable ex) {
+                // A failing task must not stop the worker, otherwise the scheduler loses a thread for good.
+                LOGGER.log(Level.WARNING, "Scheduled task failed.", ex);
+            } finally {
+                currentPriority.remove();
+                lock.lock();
+                try {
+                    running.merge(priority, -1, Integer::sum);
+                    signalSlotsFreed();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the cap of the given class. Interactive callers do not count towards the interactive cap, they would
+     * block queued interactive tasks. Callers must hold the lock.
+     */
+    private boolean mayStart(@Nonnull final Priority priority) {
+        if (priority == Priority.INTERACTIVE) {
+            return running.get(Priority.INTERACTIVE) < caps.get(Priority.INTERACTIVE);
+        }
+        if (busy(priority) >= caps.get(priority)) {
+            return false;
+        }
+        final int interactiveLoad = busy(Priority.INTERACTIVE) + queues.get(Priority.INTERACTIVE).size();
+        final int lowerLimit = Math.max(1, Math.min(caps.get(Priority.BACKGROUND), parallelism - interactiveLoad));
+        return busy(Priority.BACKGROUND) + busy(Priority.BULK) < lowerLimit;
+    }
+
+    private int busy(@Nonnull final Priority priority) {
+        return running.get(priority) + callers.get(priority);
+    }
+
+    /**
+     * A capped class might be allowed to run again. Callers must hold the lock.
+     */
+    private void signalSlotsFreed() {
+        workAvailable.signalAll();
+        slotAvailable.signalAll();
+    }
+}
@@ -1,14 +1,25 @@
 package at.andicover.util;
 
+import at.andicover.config.TuningConfig;
+
 import javax.annotation.Nonnull;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static at.andicover.config.Defaults.THREAD_COUNT;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -26,13 +37,260 @@ public final class ThreadUtil {
     }
 
     /**
-     * Create a new thread pool with 16 threads.
+     * Create a new thread pool with {@link TuningConfig#getParallelism()} threads.
      *
      * @return the newly created thread pool.
+     * @deprecated The library schedules its work on the {@link TaskScheduler}, use an executor of it instead.
      */
+    @Deprecated
     @Nonnull
     public static ExecutorService createNewThreadExecutor() {
-        return new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+        final int threads = TuningConfig.getDefault().getParallelism();
+        return new ThreadPoolExecutor(threads, threads, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Runs the given action for every index from 0 to count - 1 and returns when all indices were processed. The
+     * indices are split into chunks that are processed by up to {@code parallelism} workers on the given executor.
+     * The calling thread is one of the workers, so the call completes even if the executor is saturated, rejects tasks
+     * or is the executor the calling thread belongs to.
+     *
+     * <p>
+     * The chunk size is a power of two, so for the leaves of a tree every chunk is a subtree. A worker of the executor
+     * processes one chunk and then queues itself again. A {@link TaskScheduler} can therefore run tasks of a higher
+     * priority class between two subtrees.
+     * </p>
+     *
+     * @param count       The number of indices.
+     * @param action      The action to run for each index.
+     * @param executor    The executor that runs the additional workers.
+     * @param parallelism The maximum number of workers including the calling thread.
+     * @throws RuntimeException the first exception thrown by the action. Remaining chunks are skipped.
+     */
+    public static void forEachIndex(final int count,
+                                    @Nonnull final IntConsumer action,
+                                    @Nonnull final Executor executor,
+                                    final int parallelism) {
+        requireNonNull(action);
+        requireNonNull(executor);
+
+        if (count <= 0) {
+            return;
+        }
+        // Several chunks per worker balance the load if some workers start late.
+        final int chunkSize = Integer.highestOneBit(Math.max(1, count / (4 * Math.max(1, parallelism))));
+        final IndexLoop loop = new IndexLoop(count, chunkSize, action, executor);
+        try {
+            for (int i = 1; i < Math.min(loop.chunks, parallelism); i++) {
+                executor.execute(loop);
+            }
+        } catch (RejectedExecutionException ex) {
+            LOGGER.log(Level.FINE, "Executor rejected a worker, the calling thread does its work.", ex);
+        }
+        // The calling thread does not queue itself, it processes chunks until none are left.
+        boolean claimed;
+        do {
+            claimed = loop.runChunk();
+        } while (claimed);
+
+        try {
+            loop.done.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw (RuntimeException) ex.getCause();
+        }
+    }
+
+    /**
+     * Chunks of {@link #forEachIndex(int, IntConsumer, Executor, int)} that are claimed by the workers.
+     */
+    private static final class IndexLoop implements Runnable {
+        private final int count;
+        private final int chunkSize;
+        private final int chunks;
+        private final IntConsumer action;
+        private final Executor executor;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger pendingChunks;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private IndexLoop(final int count,
+                          final int chunkSize,
+                          @Nonnull final IntConsumer action,
+                          @Nonnull final Executor executor) {
+            this.count = count;
+            this.chunkSize = chunkSize;
+            this.chunks = (count + chunkSize - 1) / chunkSize;
+            this.action = action;
+            this.executor = executor;
+            this.pendingChunks = new AtomicInteger(chunks);
+        }
+
+        /**
+         * Processes the next chunk.
+         *
+         * @return false if no chunk was left.
+         */
+        private boolean runChunk() {
+            final int chunk = nextChunk.getAndIncrement();
+            if (chunk >= chunks || done.isDone()) {
+                return false;
+            }
+            try {
+                final int end = Math.min(count, (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++) {
+                    action.accept(i);
+                }
+            } catch (RuntimeException | Error ex) {
+                done.completeExceptionally(ex);
+            }
+            if (pendingChunks.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (runChunk() && nextChunk.get() < chunks && !done.isDone()) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    LOGGER.log(Level.FINE, "Executor rejected a worker, the other workers do its work.", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new thread of the given factory for every task. With a factory for virtual
+     * threads, for example {@code Thread.ofVirtual().factory()} on runtimes that support them, blocking calls like
+     * file I/O do not hold a platform thread and no pool has to be sized.
+     *
+     * @param threadFactory The factory for the threads of the tasks.
+     * @return the executor.
+     */
+    @Nonnull
+    public static Executor newThreadPerTaskExecutor(@Nonnull final ThreadFactory threadFactory) {
+        requireNonNull(threadFactory);
+
+        return command -> {
+            final Thread thread = threadFactory.newThread(requireNonNull(command));
+            if (thread == null) {
+                throw new RejectedExecutionException("Thread factory did not create a thread");
+            }
+            thread.start();
+        };
+    }
+
+    /**
+     * Creates an executor that starts threads of the given factory for its tasks, but never runs more than
+     * {@code maxThreads} of them at the same time. Further tasks are queued and run by the next thread that finishes
+     * its task. Use it with a factory for platform threads, where a thread for every task would exhaust the memory or
+     * the thread limit of the process under load.
+     *
+     * @param threadFactory The factory for the threads of the tasks.
+     * @param maxThreads    The maximum number of threads that run at the same time.
+     * @return the executor.
+     * @throws IllegalArgumentException if maxThreads is less than 1.
+     */
+    @Nonnull
+    public static Executor newThreadPerTaskExecutor(@Nonnull final ThreadFactory threadFactory, final int maxThreads) {
+        requireNonNull(threadFactory);
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+
+        return new BoundedThreadExecutor(threadFactory, maxThreads);
+    }
+
+    /**
+     * Executor of {@link #newThreadPerTaskExecutor(ThreadFactory, int)}. A started thread runs queued tasks until
+     * the queue is empty, so there is never a queued task without a running thread.
+     */
+    private static final class BoundedThreadExecutor implements Executor {
+        private final ThreadFactory threadFactory;
+        private final int maxThreads;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger threads = new AtomicInteger();
+
+        private BoundedThreadExecutor(@Nonnull final ThreadFactory threadFactory, final int maxThreads) {
+            this.threadFactory = threadFactory;
+            this.maxThreads = maxThreads;
+        }
+
+        @Override
+        public void execute(@Nonnull final Runnable command) {
+            tasks.offer(requireNonNull(command));
+            if (!tryAcquireThread()) {
+                return;
+            }
+            final Thread thread = threadFactory.newThread(this::runTasks);
+            if (thread == null) {
+                threads.decrementAndGet();
+                if (tasks.remove(command)) {
+                    throw new RejectedExecutionException("Thread factory did not create a thread");
+                }
+                return;
+            }
+            thread.start();
+        }
+
+        private boolean tryAcquireThread() {
+            int running;
+            do {
+                running = threads.get();
+                if (running >= maxThreads) {
+                    return false;
+                }
+            } while (!threads.compareAndSet(running, running + 1));
+            return true;
+        }
+
+        private void runTasks() {
+            do {
+                Runnable task = tasks.poll();
+                while (task != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable ex) {
+                        // The thread must reach the decrement below, otherwise the executor loses it for good.
+                        LOGGER.log(Level.WARNING, "Task failed.", ex);
+                    }
+                    task = tasks.poll();
+                }
+                threads.decrementAndGet();
+                // A task queued after the last poll may have seen all threads busy, so this thread takes it.
+            } while (!tasks.isEmpty() && tryAcquireThread());
+        }
+    }
+
+    /**
+     * Runs the given task on the given executor. Checked exceptions of the task complete the future exceptionally with
+     * the original exception as cause.
+     *
+     * @param task     The task to run.
+     * @param executor The executor that runs the task.
+     * @param <T>      The type of the result.
+     * @return the future of the result.
+     */
+    @Nonnull
+    public static <T> CompletableFuture<T> supplyAsync(@Nonnull final Callable<T> task,
+                                                       @Nonnull final Executor executor) {
+        requireNonNull(task);
+        requireNonNull(executor);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, executor);
     }
 
     /**
@@ -0,0 +1,276 @@
+package at.andicover.util;
+
+import at.andicover.common.api.Storable;
+import at.andicover.config.TuningConfig;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.api.LMSType;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.apache.commons.io.FilenameUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Utility class for the tree cache of a private key. Building the tree of an LMS private key requires all of its
+ * LM-OTS public keys, which takes as long as generating the key. The cache file next to the private key file holds the
+ * leaf nodes of every tree, so a loaded key does not have to build its trees again.
+ *
+ * <p>
+ * The file has one section per tree: I || u32str(LMS type) || u32str(number of leaf nodes) || u32str(number of top
+ * level nodes) || leaf nodes || top level nodes || u32str(CRC32 of the section). Sections are matched to the trees by
+ * I. A section is only used if its checksum is correct and the root calculated from its leaf nodes matches the LMS
+ * public key. Trees without a valid section are built again from their LM-OTS private keys when they are used first.
+ * </p>
+ * <p>
+ * Note: The root is calculated from the leaf nodes anyway, the top level nodes are a by-product of it. So no top level
+ * nodes are written anymore, the top level nodes of older files are skipped.
+ * </p>
+ *
+ * @author andreas.schoengruber
+ * @version %I%
+ */
+public final class TreeCache {
+
+    private static final String TREE_EXTENSION = ".tree";
+    private static final int IDENTIFIER_SIZE = 16;
+    private static final int SECTION_HEADER_SIZE = IDENTIFIER_SIZE + 3 * Integer.BYTES;
+
+    private TreeCache() {
+    }
+
+    /**
+     * Writes the trees of all given LMS private keys to the cache file of the private key. Trees that were not built
+     * yet are left out. The previous cache file is replaced atomically.
+     *
+     * @param filename       the filename of the private key.
+     * @param lmsPrivateKeys the LMS private keys.
+     * @throws IOException if writing the cache file does not work.
+     */
+    public static void write(@Nonnull final String filename, @Nonnull final LMSPrivateKey[] lmsPrivateKeys)
+            throws IOException {
+        requireNonNull(filename);
+        requireNonNull(lmsPrivateKeys);
+
+        PersistenceUtil.storeKey(new Sections(lmsPrivateKeys), getTreeFilename(filename));
+    }
+
+    /**
+     * Deletes the cache file of the private key.
+     *
+     * @param filename the filename of the private key.
+     * @throws IOException if the cache file cannot be deleted.
+     */
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    public static void clear(@Nonnull final String filename) throws IOException {
+        requireNonNull(filename);
+
+        Files.deleteIfExists(Path.of(getTreeFilename(filename)));
+    }
+
+    /**
+     * Restores the trees of the given LMS private keys from the cache file of the private key. A missing or corrupt
+     * cache file is ignored.
+     *
+     * @param filename       the filename of the private key.
+     * @param lmsPrivateKeys the LMS private keys.
+     * @param lmsPublicKeys  the LMS public keys that belong to the private keys.
+     * @throws IOException              if reading the cache file does not work.
+     * @throws NoSuchAlgorithmException if the hashing algorithm does not exist.
+     */
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Consumer should know what he is doing.")
+    public static void restore(@Nonnull final String filename,
+                               @Nonnull final LMSPrivateKey[] lmsPrivateKeys,
+                               @Nonnull final LMSPublicKey[] lmsPublicKeys)
+            throws IOException, NoSuchAlgorithmException {
+        requireNonNull(filename);
+        requireNonNull(lmsPrivateKeys);
+        requireNonNull(lmsPublicKeys);
+
+        final Path treeFile = Path.of(getTreeFilename(filename));
+        if (!Files.exists(treeFile)) {
+            return;
+        }
+
+        final int bufferSize = TuningConfig.getDefault().getIoBufferSize();
+        try (DataInputStream inputStream = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(treeFile), bufferSize))) {
+            boolean valid = true;
+            while (valid && inputStream.available() > 0) {
+                valid = restoreSection(inputStream, lmsPrivateKeys, lmsPublicKeys);
+            }
+        } catch (EOFException ex) {
+            // Incomplete sections are ignored, the tree is built again.
+        }
+    }
+
+    /**
+     * @return false if the section is invalid. The following sections cannot be found anymore in this case.
+     */
+    private static boolean restoreSection(@Nonnull final DataInputStream inputStream,
+                                          @Nonnull final LMSPrivateKey[] lmsPrivateKeys,
+                                          @Nonnull final LMSPublicKey[] lmsPublicKeys)
+            throws IOException, NoSuchAlgorithmException {
+        final byte[] header = new byte[SECTION_HEADER_SIZE];
+        inputStream.readFully(header);
+        final ByteBuffer headerBuffer = ByteBuffer.wrap(header, IDENTIFIER_SIZE, 3 * Integer.BYTES);
+        final LMSType lmsType = lookUp(headerBuffer.getInt());
+        final int leafCount = headerBuffer.getInt();
+        final int topLevelCount = headerBuffer.getInt();
+        if (lmsType == null || leafCount != MathUtil.pow(lmsType.getH()) || topLevelCount < 0
+                || topLevelCount > leafCount) {
+            return false;
+        }
+
+        final CRC32 crc32 = new CRC32();
+        crc32.update(header);
+        final byte[][] leafNodes = readNodes(inputStream, crc32, leafCount, lmsType.getM());
+        readNodes(inputStream, crc32, topLevelCount, lmsType.getM());
+        if (inputStream.readInt() != (int) crc32.getValue()) {
+            return false;
+        }
+
+        // The root is always calculated again from the leaf nodes, a tree that does not match the public key is built
+        // again.
+        final byte[] identifier = Arrays.copyOf(header, IDENTIFIER_SIZE);
+        for (int i = 0; i < lmsPrivateKeys.length; i++) {
+            final LMSPrivateKey lmsPrivateKey = lmsPrivateKeys[i];
+            if (lmsPrivateKey.getLeafNodes() == null && lmsPrivateKey.getLmsType() == lmsType
+                    && Arrays.equals(identifier, lmsPrivateKey.getIdentifier())) {
+                try {
+                    lmsPrivateKey.restoreLeafNodes(leafNodes, lmsPublicKeys[i].getKey());
+                } catch (IllegalArgumentException ex) {
+                    // The section does not fit the parameters of the key, the tree is built again.
+                }
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static byte[][] readNodes(@Nonnull final DataInputStream inputStream,
+                                      @Nonnull final CRC32 crc32,
+                                      final int count,
+                                      final int size) throws IOException {
+        final byte[][] nodes = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            nodes[i] = new byte[size];
+            inputStream.readFully(nodes[i]);
+            crc32.update(nodes[i]);
+        }
+        return nodes;
+    }
+
+    @CheckForNull
+    private static LMSType lookUp(final int typecode) {
+        for (final LMSType lmsType : LMSType.values()) {
+            if (lmsType.getTypecode() == typecode) {
+                return lmsType;
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    private static String getTreeFilename(@Nonnull final String filename) {
+        return FilenameUtils.getFullPath(filename) + FilenameUtils.getName(filename) + TREE_EXTENSION;
+    }
+
+    /**
+     * The sections of all trees that were built.
+     */
+    private static final class Sections implements Storable {
+        private final LMSPrivateKey[] lmsPrivateKeys;
+
+        private Sections(@Nonnull final LMSPrivateKey[] lmsPrivateKeys) {
+            this.lmsPrivateKeys = Arrays.copyOf(lmsPrivateKeys, lmsPrivateKeys.length);
+        }
+
+        @Override
+        @Nonnull
+        public byte[] getBytes() {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try {
+                writeTo(Channels.newChannel(outputStream));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return outputStream.toByteArray();
+        }
+
+        @Override
+        public long encodedSize() {
+            long size = 0;
+            for (final LMSPrivateKey lmsPrivateKey : lmsPrivateKeys) {
+                final byte[][] leafNodes = lmsPrivateKey.getLeafNodes();
+                if (leafNodes != null) {
+                    size += SECTION_HEADER_SIZE + (long) leafNodes.length * lmsPrivateKey.getLmsType().getM()
+                            + Integer.BYTES;
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public void writeTo(@Nonnull final ByteBuffer buffer) {
+            try {
+                writeTo(new ByteBufferChannel(buffer));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void writeTo(@Nonnull final WritableByteChannel channel) throws IOException {
+            for (final LMSPrivateKey lmsPrivateKey : lmsPrivateKeys) {
+                final byte[][] leafNodes = lmsPrivateKey.getLeafNodes();
+                if (leafNodes == null) {
+                    continue;
+                }
+
+                final ByteBuffer header = ByteBuffer.allocate(SECTION_HEADER_SIZE);
+                header.put(lmsPrivateKey.getIdentifier());
+                header.putInt(lmsPrivateKey.getLmsType().getTypecode());
+                header.putInt(leafNodes.length);
+                header.putInt(0);
+                final CRC32 crc32 = new CRC32();
+                crc32.update(header.array());
+                writeFully(channel, header.flip());
+                writeNodes(channel, crc32, leafNodes);
+                writeFully(channel, ByteBuffer.allocate(Integer.BYTES).putInt((int) crc32.getValue()).flip());
+            }
+        }
+
+        private static void writeNodes(@Nonnull final WritableByteChannel channel,
+                                       @Nonnull final CRC32 crc32,
+                                       @Nonnull final byte[][] nodes) throws IOException {
+            for (final byte[] node : nodes) {
+                crc32.update(node);
+                writeFully(channel, ByteBuffer.wrap(node));
+            }
+        }
+
+        private static void writeFully(@Nonnull final WritableByteChannel channel, @Nonnull final ByteBuffer buffer)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package at.andicover.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+final class TuningConfigTest {
+
+    @Test
+    void testAutoSized() {
+        final TuningConfig edge = TuningConfig.autoSized(4, 256L << 20);
+        assertEquals(4, edge.getParallelism());
+        assertEquals(16_382, edge.getStoredTopLevelNodes());
+        assertEquals(16_384, edge.getIoBufferSize());
+        assertEquals(200, edge.getDigestCacheEntries());
+        assertEquals(20, edge.getKeyReserveCount());
+        assertNull(edge.getDigestProvider());
+
+        final TuningConfig signer = TuningConfig.autoSized(96, 64L << 30);
+        assertEquals(96, signer.getParallelism());
+        assertEquals((1 << 20) - 2, signer.getStoredTopLevelNodes());
+        assertEquals(65_536, signer.getIoBufferSize());
+        assertEquals(1_536, signer.getDigestCacheEntries());
+
+        assertEquals((1 << 10) - 2, TuningConfig.autoSized(1, 1L << 20).getStoredTopLevelNodes());
+        assertThrows(IllegalArgumentException.class, () -> TuningConfig.autoSized(0, 1L << 30));
+    }
+
+    @Test
+    void testFromProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "parallelism", "3");
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "storedTopLevelNodes", "62");
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "digestProvider", "SUN");
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "keyReserveCount", "50");
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "ioBufferSize", "4096");
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "journalRecords", "16");
+
+        final TuningConfig config = TuningConfig.fromProperties(properties);
+        assertEquals(3, config.getParallelism());
+        assertEquals(62, config.getStoredTopLevelNodes());
+        assertEquals("SUN", config.getDigestProvider());
+        assertEquals(50, config.getKeyReserveCount());
+        assertEquals(4096, config.getIoBufferSize());
+        assertEquals(16, config.getJournalRecords());
+        assertEquals(TuningConfig.autoSized().getDigestCacheTimeout(), config.getDigestCacheTimeout());
+        assertEquals(TuningConfig.autoSized(), TuningConfig.fromProperties(new Properties()));
+
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "parallelism", "many");
+        assertThrows(IllegalArgumentException.class, () -> TuningConfig.fromProperties(properties));
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "parallelism", "0");
+        assertThrows(IllegalArgumentException.class, () -> TuningConfig.fromProperties(properties));
+    }
+
+    @Test
+    void testInvalidDefault() {
+        final Properties properties = new Properties();
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "keyReserveCount", "7");
+        assertEquals(7, TuningConfig.defaultConfig(properties).getKeyReserveCount());
+
+        properties.setProperty(TuningConfig.PROPERTY_PREFIX + "parallelism", "many");
+        assertEquals(TuningConfig.autoSized(), TuningConfig.defaultConfig(properties));
+    }
+
+    @Test
+    void testCheckCallParameters() {
+        TuningConfig.getDefault().withParallelism(1).withKeyReserveCount(3).checkCallParameters();
+
+        final TuningConfig config = TuningConfig.getDefault();
+        assertThrows(IllegalArgumentException.class,
+                () -> config.withStoredTopLevelNodes(config.getStoredTopLevelNodes() + 1).checkCallParameters());
+        assertThrows(IllegalArgumentException.class, () -> config.withDigestProvider("none").checkCallParameters());
+        assertThrows(IllegalArgumentException.class,
+                () -> config.withIoBufferSize(config.getIoBufferSize() + 1).checkCallParameters());
+    }
+
+    @Test
+    void testWith() {
+        final TuningConfig config = TuningConfig.autoSized(8, 1L << 30);
+        final TuningConfig modified = config.withKeyReserveCount(5).withParallelism(2).withDigestProvider("SUN");
+
+        assertEquals(20, config.getKeyReserveCount());
+        assertEquals(5, modified.getKeyReserveCount());
+        assertEquals(2, modified.getParallelism());
+        assertEquals("SUN", modified.getDigestProvider());
+        assertEquals(config.getStoredTopLevelNodes(), modified.getStoredTopLevelNodes());
+        assertNotEquals(config, modified);
+        assertEquals(modified, modified.withIoBufferSize(modified.getIoBufferSize()));
+        assertEquals(modified.hashCode(), modified.withDigestCacheEntries(modified.getDigestCacheEntries()).hashCode());
+        assertEquals(0, config.withStoredTopLevelNodes(0).getStoredTopLevelNodes());
+        assertNotEquals(config, config.withJournalRecords(config.getJournalRecords() + 1));
+
+        assertThrows(IllegalArgumentException.class, () -> config.withStoredTopLevelNodes(-1));
+        assertThrows(IllegalArgumentException.class, () -> config.withIoBufferSize(0));
+        assertThrows(IllegalArgumentException.class, () -> config.withDigestCacheTimeout(0));
+        assertThrows(IllegalArgumentException.class, () -> config.withJournalRecords(0));
+    }
+}
@@ -1,9 +1,16 @@
 package at.andicover.digest.impl;
 
+import at.andicover.digest.api.CustomMessageDigest;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -17,6 +24,23 @@ final class CustomMessageDigestFactoryTest {
         assertNotNull(CustomMessageDigestFactory.getDigest("SHAKE256/192"));
     }
 
+    @Test
+    void testIncrementalDigest() throws NoSuchAlgorithmException {
+        final byte[] message = "incremental message".getBytes(UTF_8);
+        for (final String algorithm : List.of("SHA-256", "SHA-256/192", "SHAKE256", "SHAKE256/192")) {
+            final CustomMessageDigest messageDigest = CustomMessageDigestFactory.getDigest(algorithm);
+            final byte[] expected = messageDigest.digest(message);
+            assertEquals(expected.length, messageDigest.getDigestLength());
+
+            messageDigest.update(message, 0, 5);
+            messageDigest.update(ByteBuffer.allocateDirect(message.length).put(message).flip().position(5));
+            final byte[] output = new byte[expected.length + 2];
+            messageDigest.digest(output, 1);
+            assertArrayEquals(expected, Arrays.copyOfRange(output, 1, expected.length + 1));
+            assertArrayEquals(expected, messageDigest.digest(message));
+        }
+    }
+
     @Test
     void testInvalidAlgorithm() {
         assertThrows(NoSuchAlgorithmException.class, () -> CustomMessageDigestFactory.getDigest("dsaaddfas"));
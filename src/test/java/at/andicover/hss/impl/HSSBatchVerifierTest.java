@@ -0,0 +1,129 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.lms.impl.LMS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSBatchVerifierTest {
+
+    @Test
+    void testVerifySignatures() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testVerifySignatures1.privkey");
+        final HSSKeyPair keyPair2 =
+                HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testVerifySignatures2.privkey");
+        final List<HSSSignedMessage> signedMessages = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final byte[] message = ("batch message " + i).getBytes(UTF_8);
+            signedMessages.add(new HSSSignedMessage(message, HSS.generateSignature(message, keyPair.getPrivateKey()),
+                    keyPair.getPublicKey()));
+        }
+        for (int i = 0; i < 20; i++) {
+            final byte[] message = ("other batch message " + i).getBytes(UTF_8);
+            signedMessages.add(new HSSSignedMessage(message, HSS.generateSignature(message, keyPair2.getPrivateKey()),
+                    keyPair2.getPublicKey()));
+        }
+
+        final boolean[] results = HSS.verifySignatures(signedMessages);
+        assertEquals(signedMessages.size(), results.length);
+        for (final boolean result : results) {
+            assertTrue(result);
+        }
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(3);
+        final boolean[] results2 = HSS.verifySignatures(signedMessages, executorService);
+        executorService.shutdown();
+        assertArrayEquals(results, results2);
+    }
+
+    @Test
+    void testSharedLinksAreVerifiedOnce() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testSharedLinksAreVerifiedOnce.privkey");
+        final List<HSSSignedMessage> signedMessages = new ArrayList<>();
+        final Set<ByteBuffer> childKeys = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            final byte[] message = ("batch message " + i).getBytes(UTF_8);
+            final HSSSignature signature = HSS.generateSignature(message, keyPair.getPrivateKey());
+            for (int j = 0; j < signature.getNumberOfSignedPublicKeys(); j++) {
+                childKeys.add(ByteBuffer.wrap(signature.getLmsPublicKeys()[j].getKey()));
+            }
+            signedMessages.add(new HSSSignedMessage(message, signature, keyPair.getPublicKey()));
+        }
+
+        final Map<ByteBuffer, AtomicInteger> verifications = new ConcurrentHashMap<>();
+        final ExecutorService executorService = Executors.newFixedThreadPool(3);
+        final boolean[] results = HSSBatchVerifier.verifySignatures(signedMessages, executorService,
+                (message, signature, publicKey) -> {
+                    verifications.computeIfAbsent(ByteBuffer.wrap(message), m -> new AtomicInteger())
+                            .incrementAndGet();
+                    try {
+                        return LMS.verifySignature(message, signature, publicKey);
+                    } catch (NoSuchAlgorithmException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                });
+        executorService.shutdown();
+        for (final boolean result : results) {
+            assertTrue(result);
+        }
+
+        // 100 signatures of trees with 32 leaves share one link to the second level and four to the third level.
+        assertEquals(5, childKeys.size());
+        assertEquals(childKeys.size() + signedMessages.size(), verifications.size());
+        for (final ByteBuffer childKey : childKeys) {
+            assertEquals(1, verifications.get(childKey).get());
+        }
+    }
+
+    @Test
+    void testVerifySignaturesInvalid() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testVerifySignaturesInvalid1.privkey");
+        final HSSKeyPair keyPair2 =
+                HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testVerifySignaturesInvalid2.privkey");
+        final byte[] message = "batch message".getBytes(UTF_8);
+        final HSSSignature signature = HSS.generateSignature(message, keyPair.getPrivateKey());
+        final LMSSignature[] signatures = Arrays.copyOf(signature.getSignatures(), 3);
+        signatures[0] = signatures[1];
+        final HSSSignature invalidChain = new HSSSignatureImpl(2, signatures, signature.getLmsPublicKeys());
+
+        final List<HSSSignedMessage> signedMessages = new ArrayList<>();
+        signedMessages.add(new HSSSignedMessage(message, signature, keyPair.getPublicKey()));
+        signedMessages.add(new HSSSignedMessage("other message".getBytes(UTF_8), signature, keyPair.getPublicKey()));
+        signedMessages.add(new HSSSignedMessage(message, invalidChain, keyPair.getPublicKey()));
+        signedMessages.add(new HSSSignedMessage(message, signature, keyPair2.getPublicKey()));
+        signedMessages.add(new HSSSignedMessage(message, signature, keyPair.getPublicKey()));
+
+        final boolean[] results = HSS.verifySignatures(signedMessages);
+        assertTrue(results[0]);
+        assertFalse(results[1]);
+        assertFalse(results[2]);
+        assertFalse(results[3]);
+        assertTrue(results[4]);
+    }
+}
@@ -0,0 +1,108 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.lms.api.LMSSignature;
+import at.andicover.util.PersistenceUtil;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.lang.Runtime.getRuntime;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSConcurrentSignerTest {
+
+    @Test
+    void testConcurrentSignaturesWithRollovers() throws NoSuchAlgorithmException, IOException, InterruptedException,
+            ExecutionException {
+        final String message = "concurrent message ";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4,
+                "testConcurrentSignaturesWithRollovers.privkey");
+        final HSSConcurrentSigner signer = new HSSConcurrentSigner(keyPair.getPrivateKey());
+        final ExecutorService executorService = Executors.newFixedThreadPool(getRuntime().availableProcessors());
+        final Set<String> usedLeaves = ConcurrentHashMap.newKeySet();
+        final List<Future<Boolean>> results = new ArrayList<>();
+
+        for (int i = 0; i < 1024; i++) {
+            final int finalI = i;
+            results.add(executorService.submit(() -> {
+                final HSSSignature signature = signer.generateSignature(message + finalI);
+                final LMSSignature[] signatures = signature.getSignatures();
+                assertTrue(usedLeaves.add(signatures[0].getQIdentifier() + "/" + signatures[1].getQIdentifier()));
+                return HSS.verifySignature(message + finalI, signature, keyPair.getPublicKey());
+            }));
+        }
+        for (final Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executorService.shutdown();
+
+        assertEquals(1024, usedLeaves.size());
+        assertThrows(IllegalStateException.class, () -> signer.generateSignature(message));
+    }
+
+    @Test
+    void testMixedWithDefaultSigning() throws NoSuchAlgorithmException, IOException {
+        final String message = "mixed message";
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, "testMixedWithDefaultSigning.privkey");
+        final HSSConcurrentSigner signer = new HSSConcurrentSigner(keyPair.getPrivateKey());
+
+        for (int i = 0; i < 100; i++) {
+            final HSSSignature signature;
+            if (i % 3 == 0) {
+                signature = HSS.generateSignature(message, keyPair.getPrivateKey());
+            } else {
+                signature = signer.generateSignature(message);
+            }
+            assertTrue(HSS.verifySignature(message, signature, keyPair.getPublicKey()));
+        }
+    }
+
+    @Test
+    void testFailedStoreDoesNotPublishLeaves() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testFailedStoreDoesNotPublishLeaves.privkey";
+        final Path journal = Path.of(filename + ".journal");
+        Files.deleteIfExists(journal);
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        final HSSConcurrentSigner signer = new HSSConcurrentSigner(privateKey);
+        for (int i = 0; i < 20; i++) {
+            signer.generateSignature("message");
+        }
+
+        // A directory in place of the journal makes the next reservation fail to store.
+        Files.createDirectory(journal);
+        try {
+            assertThrows(IOException.class, () -> signer.generateSignature("message"));
+            assertNull(privateKey.getLmsPrivateKeys()[0].pollNextLmotsKey());
+            assertEquals(20, privateKey.getLmsPrivateKeys()[0].getQIdentifier());
+        } finally {
+            Files.delete(journal);
+        }
+
+        assertTrue(HSS.verifySignature("message", signer.generateSignature("message"), keyPair.getPublicKey()));
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertTrue(loadedKey.getLmsPrivateKeys()[0].getQIdentifier() > 20);
+    }
+}
@@ -0,0 +1,91 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSSignature;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSRequestExecutorTest {
+
+    @Test
+    void testManyRequests() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSRequestExecutor requestExecutor =
+                new HSSRequestExecutor(keyPair, Executors.defaultThreadFactory());
+
+        final List<CompletableFuture<HSSSignature>> signatures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            signatures.add(requestExecutor.generateSignature(("message " + i).getBytes(UTF_8)));
+        }
+        final Set<String> usedLeaves = new HashSet<>();
+        final List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < signatures.size(); i++) {
+            final HSSSignature signature = signatures.get(i).join();
+            assertTrue(usedLeaves.add(signature.getSignatures()[0].getQIdentifier() + "/"
+                    + signature.getSignatures()[1].getQIdentifier()));
+            results.add(requestExecutor.verifySignature(("message " + i).getBytes(UTF_8), signature));
+            results.add(requestExecutor.verifySignature("other message".getBytes(UTF_8), signature));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i % 2 == 0, results.get(i).join());
+        }
+    }
+
+    @Test
+    void testThreadLimit() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ThreadFactory threadFactory = task -> new Thread(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                task.run();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+        final HSSRequestExecutor requestExecutor = new HSSRequestExecutor(keyPair, threadFactory, 2);
+
+        final List<CompletableFuture<HSSSignature>> signatures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            signatures.add(requestExecutor.generateSignature(("message " + i).getBytes(UTF_8)));
+        }
+        for (int i = 0; i < signatures.size(); i++) {
+            assertTrue(requestExecutor.verifySignature(("message " + i).getBytes(UTF_8), signatures.get(i).join())
+                    .join());
+        }
+        assertTrue(maxRunning.get() <= 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> new HSSRequestExecutor(keyPair, Executors.defaultThreadFactory(), 0));
+    }
+
+    @Test
+    void testVerifyOnly() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSRequestExecutor requestExecutor =
+                new HSSRequestExecutor(keyPair.getPublicKey(), Executors.defaultThreadFactory());
+
+        final HSSSignature signature = HSS.generateSignature("message", keyPair.getPrivateKey());
+        assertTrue(requestExecutor.verifySignature("message".getBytes(UTF_8), signature).join());
+        assertFalse(requestExecutor.verifySignature("other".getBytes(UTF_8), signature).join());
+        assertThrows(IllegalStateException.class, () -> requestExecutor.generateSignature(new byte[0]));
+    }
+}
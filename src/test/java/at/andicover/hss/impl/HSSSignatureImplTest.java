@@ -9,8 +9,12 @@ import at.andicover.lms.api.LMSType;
 import at.andicover.lms.impl.LMS;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 
+import static at.andicover.util.ByteUtil.merge;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
@@ -50,4 +54,23 @@ final class HSSSignatureImplTest {
         assertNotEquals(signature1, signature5);
         System.out.println(signature1);
     }
+
+    @Test
+    void testReadFromStream() throws NoSuchAlgorithmException, IOException {
+        final LMSKeyPair lmsKeyPair = LMS.generateKeys(LMSType.LMS_SHA256_M32_H5, LMOTSType.LMOTS_SHA256_N32_W1);
+        lmsKeyPair.getPrivateKey().reserveKeys(1);
+        final LMSKeyPair lmsKeyPair2 = LMS.generateKeys(LMSType.LMS_SHA256_M32_H5, LMOTSType.LMOTS_SHA256_N32_W1);
+        lmsKeyPair2.getPrivateKey().reserveKeys(1);
+        final HSSSignature signature = new HSSSignatureImpl(1,
+                new LMSSignature[]{LMS.generateSignature("pub", lmsKeyPair.getPrivateKey()),
+                        LMS.generateSignature("msg", lmsKeyPair2.getPrivateKey())},
+                new LMSPublicKey[]{lmsKeyPair2.getPublicKey(), null});
+
+        // The stream continues after the signature and must stay positioned right behind it.
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(
+                merge(signature.getBytes(), new byte[]{0x7f, 1, 2, 3})))) {
+            assertEquals(signature, new HSSSignatureImpl(inputStream));
+            assertEquals(0x7f010203, inputStream.readInt());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.util.PersistenceUtil;
+import at.andicover.util.StateJournal;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.lang.Runtime.getRuntime;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSSignerPoolTest {
+
+    @Test
+    void testSignUntilAllKeysExhausted() throws NoSuchAlgorithmException, IOException, InterruptedException,
+            ExecutionException {
+        final String message = "pool message ";
+        final List<HSSKeyPair> keyPairs = new ArrayList<>();
+        final List<HSSPrivateKey> privateKeys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4,
+                    "testSignUntilAllKeysExhausted" + i + ".privkey");
+            keyPairs.add(keyPair);
+            privateKeys.add(keyPair.getPrivateKey());
+        }
+        final HSSSignerPool signerPool = new HSSSignerPool(privateKeys);
+        assertEquals(3, signerPool.getSize());
+        assertEquals(32, signerPool.getRemainingSignatures(0));
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(getRuntime().availableProcessors());
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 96; i++) {
+            final int finalI = i;
+            results.add(executorService.submit(() -> {
+                final HSSSignature signature = signerPool.generateSignature(message + finalI);
+                int validKeys = 0;
+                for (final HSSKeyPair keyPair : keyPairs) {
+                    if (HSS.verifySignature(message + finalI, signature, keyPair.getPublicKey())) {
+                        validKeys++;
+                    }
+                }
+                return validKeys == 1;
+            }));
+        }
+        for (final Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+        executorService.shutdown();
+
+        assertThrows(IllegalStateException.class, () -> signerPool.generateSignature(message));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(signerPool.isExhausted(i));
+            assertEquals(0, signerPool.getRemainingSignatures(i));
+        }
+    }
+
+    @Test
+    void testRemainingSignaturesMultipleLevels() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4,
+                "testRemainingSignaturesMultipleLevels.privkey");
+        final HSSSignerPool signerPool = new HSSSignerPool(List.of(keyPair.getPrivateKey()));
+        assertEquals(1024, signerPool.getRemainingSignatures(0));
+
+        for (int i = 0; i < 40; i++) {
+            assertTrue(HSS.verifySignature("message", signerPool.generateSignature("message"),
+                    keyPair.getPublicKey()));
+        }
+        assertEquals(1024 - 40, signerPool.getRemainingSignatures(0));
+        assertFalse(signerPool.isExhausted(0));
+    }
+
+    @Test
+    void testFailingKeyIsNotRetired() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testFailingKeyIsNotRetired.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKey(keyPair.getPrivateKey(), filename);
+        StateJournal.clear(filename);
+        // Breaks q of the LM-OTS private key record of leaf 20, the first leaf that was not reserved yet.
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek(4 + 28 + 20 * (24 + 32) + 20);
+            file.writeInt(999);
+        }
+
+        final HSSSignerPool signerPool = new HSSSignerPool(List.of(PersistenceUtil.mapPrivateKey(filename)));
+        final IllegalStateException exception =
+                assertThrows(IllegalStateException.class, () -> signerPool.generateSignature("message"));
+        assertEquals("Invalid LMOTS private key record", exception.getMessage());
+        assertFalse(signerPool.isExhausted(0));
+        assertEquals(11, signerPool.getRemainingSignatures(0));
+    }
+
+    @Test
+    void testNoKeys() {
+        assertThrows(IllegalArgumentException.class, () -> new HSSSignerPool(new ArrayList<>()));
+    }
+}
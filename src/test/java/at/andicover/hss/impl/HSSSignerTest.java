@@ -0,0 +1,57 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSSignature;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHAKE_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static at.andicover.lms.api.LMSType.LMS_SHAKE_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSSignerTest {
+
+    @Test
+    void testSignaturesWithRollovers() throws NoSuchAlgorithmException, IOException {
+        final String message = "signer message ";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSSigner signer = new HSSSigner(keyPair.getPrivateKey());
+        final Set<String> usedLeaves = new HashSet<>();
+
+        for (int i = 0; i < 1024; i++) {
+            final HSSSignature signature = signer.generateSignature(message + i);
+            assertTrue(usedLeaves.add(signature.getSignatures()[0].getQIdentifier() + "/"
+                    + signature.getSignatures()[1].getQIdentifier()));
+            assertTrue(HSS.verifySignature(message + i, signature, keyPair.getPublicKey()));
+        }
+
+        assertEquals(1024, usedLeaves.size());
+        assertThrows(IllegalStateException.class, () -> signer.generateSignature(message));
+    }
+
+    @Test
+    void testMixedWithDefaultSigning() throws NoSuchAlgorithmException, IOException {
+        final String message = "mixed message";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHAKE_M32_H5, LMOTS_SHAKE_N32_W4);
+        final HSSSigner signer = new HSSSigner(keyPair.getPrivateKey());
+
+        final HSSSignature first = signer.generateSignature(message);
+        final HSSSignature second = HSS.generateSignature(message, keyPair.getPrivateKey());
+        final HSSSignature third = signer.generateSignature(message);
+        assertEquals(0, first.getSignatures()[1].getQIdentifier());
+        assertEquals(1, second.getSignatures()[1].getQIdentifier());
+        assertEquals(2, third.getSignatures()[1].getQIdentifier());
+        assertTrue(HSS.verifySignature(message, first, keyPair.getPublicKey()));
+        assertTrue(HSS.verifySignature(message, third, keyPair.getPublicKey()));
+        assertFalse(HSS.verifySignature("other message", third, keyPair.getPublicKey()));
+    }
+}
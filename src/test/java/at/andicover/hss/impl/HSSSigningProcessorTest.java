@@ -0,0 +1,141 @@
+package at.andicover.hss.impl;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSSignature;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSSigningProcessorTest {
+
+    /**
+     * Collects the signatures and requests them in small batches.
+     */
+    private static final class CollectingSubscriber implements Flow.Subscriber<HSSSignature> {
+        private final List<HSSSignature> signatures = new CopyOnWriteArrayList<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final long batch;
+        private Flow.Subscription subscription;
+        private long received;
+
+        private CollectingSubscriber(final long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(final HSSSignature item) {
+            signatures.add(item);
+            received++;
+            if (received % batch == 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    @Test
+    void testSignaturesInOrderWithRollovers() throws NoSuchAlgorithmException, IOException, InterruptedException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final HSSSigningProcessor processor = new HSSSigningProcessor(keyPair.getPrivateKey(), executorService, 8);
+            final CollectingSubscriber subscriber = new CollectingSubscriber(10);
+            processor.subscribe(subscriber);
+            try (SubmissionPublisher<byte[]> publisher = new SubmissionPublisher<>(executorService, 4)) {
+                publisher.subscribe(processor);
+                for (int i = 0; i < 100; i++) {
+                    publisher.submit(("message " + i).getBytes(UTF_8));
+                }
+            }
+            subscriber.done.join();
+
+            assertEquals(100, subscriber.signatures.size());
+            for (int i = 0; i < 100; i++) {
+                final HSSSignature signature = subscriber.signatures.get(i);
+                assertEquals(i / 32, signature.getSignatures()[0].getQIdentifier());
+                assertEquals(i % 32, signature.getSignatures()[1].getQIdentifier());
+                assertTrue(HSS.verifySignature("message " + i, signature, keyPair.getPublicKey()));
+            }
+            // Keys are reserved ahead in batches, the window never grows beyond one batch above the watermark.
+            assertTrue(keyPair.getPrivateKey().getReservedKeys() <= 12);
+        } finally {
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    void testKeysExceeded() throws NoSuchAlgorithmException, IOException, InterruptedException {
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final HSSSigningProcessor processor = new HSSSigningProcessor(keyPair.getPrivateKey(), executorService);
+            final CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+            processor.subscribe(subscriber);
+            final SubmissionPublisher<byte[]> publisher = new SubmissionPublisher<>(executorService, 64);
+            publisher.subscribe(processor);
+            for (int i = 0; i < 40; i++) {
+                publisher.submit(("message " + i).getBytes(UTF_8));
+            }
+            publisher.close();
+
+            final Throwable cause = subscriber.done.handle((result, throwable) -> throwable).join();
+            assertTrue(cause instanceof IllegalStateException);
+            assertEquals(32, subscriber.signatures.size());
+        } finally {
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    @Test
+    void testInvalidRequest() throws NoSuchAlgorithmException, IOException, InterruptedException {
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final HSSSigningProcessor processor = new HSSSigningProcessor(keyPair.getPrivateKey(), executorService);
+            final CollectingSubscriber subscriber = new CollectingSubscriber(0);
+            processor.subscribe(subscriber);
+
+            final Throwable cause = subscriber.done.handle((result, throwable) -> throwable).join();
+            assertTrue(cause instanceof IllegalArgumentException);
+
+            final CollectingSubscriber second = new CollectingSubscriber(1);
+            processor.subscribe(second);
+            assertTrue(second.done.handle((result, throwable) -> throwable).join() instanceof IllegalStateException);
+        } finally {
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package at.andicover.hss.impl;
 
+import at.andicover.common.api.MessageSource;
+import at.andicover.config.TuningConfig;
 import at.andicover.hss.api.HSSKeyPair;
 import at.andicover.hss.api.HSSPrivateKey;
 import at.andicover.hss.api.HSSPublicKey;
 import at.andicover.hss.api.HSSSignature;
 import at.andicover.lmots.api.LMOTSType;
+import at.andicover.lms.api.LMSPrivateKey;
 import at.andicover.lms.api.LMSSignature;
 import at.andicover.lms.api.LMSType;
+import at.andicover.util.KeySizeUtil;
 import at.andicover.util.PersistenceUtil;
 import at.andicover.util.TestUtil;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -26,11 +38,15 @@ import java.util.concurrent.TimeUnit;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W1;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W2;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W8;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHAKE_N32_W8;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H15;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static at.andicover.lms.api.LMSType.LMS_SHAKE_M32_H5;
+import static at.andicover.util.ByteUtil.merge;
 import static at.andicover.util.TestUtil.getLmotsTypes;
 import static java.lang.Runtime.getRuntime;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -233,6 +249,33 @@ final class HSSTest {
         assertFalse(HSS.verifySignature(message, signature, publicKey));
     }
 
+    @Test
+    void testVerifySignatureParallel() throws NoSuchAlgorithmException, IOException {
+        final String message = "parallel verification message";
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(4, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, "testVerifySignatureParallel.privkey");
+        final HSSPublicKey publicKey = keyPair.getPublicKey();
+        final HSSSignature signature = HSS.generateSignature(message, keyPair.getPrivateKey());
+
+        assertTrue(HSS.verifySignatureParallel(message.getBytes(UTF_8), signature, publicKey));
+        assertFalse(HSS.verifySignatureParallel((message + message).getBytes(UTF_8), signature, publicKey));
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        assertTrue(HSS.verifySignatureParallel(message.getBytes(UTF_8), signature, publicKey, executorService));
+        executorService.shutdown();
+
+        final LMSSignature[] signatures = Arrays.copyOf(signature.getSignatures(), 4);
+        signatures[1] = signatures[2];
+        final HSSSignature invalidChain = new HSSSignatureImpl(3, signatures, signature.getLmsPublicKeys());
+        assertFalse(HSS.verifySignatureParallel(message.getBytes(UTF_8), invalidChain, publicKey));
+
+        final HSSPublicKey otherLevels =
+                HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, "testVerifySignatureParallel2.privkey")
+                        .getPublicKey();
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.verifySignatureParallel(message.getBytes(UTF_8), signature, otherLevels));
+    }
+
     @Test
     void testPrivateKeyStoreAndLoad() throws NoSuchAlgorithmException, IOException {
         final String filename = this.getClass().getName() + "_testPrivateKeyStoreAndLoad.privkey";
@@ -320,6 +363,197 @@ final class HSSTest {
         }
     }
 
+    @Test
+    void testByteBufferWriteAndDecode() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
+        final HSSSignature signature = HSS.generateSignature("message", keyPair.getPrivateKey());
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect((int) (keyPair.getPublicKey().encodedSize()
+                + signature.encodedSize()));
+        keyPair.getPublicKey().writeTo(buffer);
+        signature.writeTo(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        final HSSPublicKey publicKey = HSS.buildPublicKey(buffer);
+        assertEquals(keyPair.getPublicKey(), publicKey);
+        final HSSSignature decodedSignature = HSS.buildSignature(buffer);
+        assertEquals(signature, decodedSignature);
+        assertTrue(HSS.verifySignature("message", decodedSignature, publicKey));
+
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        final ByteBuffer privateKeyBuffer = ByteBuffer.allocate((int) privateKey.encodedSize());
+        privateKey.writeTo(privateKeyBuffer);
+        assertEquals(privateKey.calculateSize(), privateKeyBuffer.position());
+        assertArrayEquals(privateKey.getBytes(), privateKeyBuffer.array());
+        final HSSPrivateKey decodedPrivateKey = HSS.buildPrivateKey(privateKeyBuffer.flip(), null);
+        assertArrayEquals(privateKey.getBytes(), decodedPrivateKey.getBytes());
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", decodedPrivateKey),
+                keyPair.getPublicKey()));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.buildSignature(ByteBuffer.allocate(4).putInt(9).flip()));
+    }
+
+    @Test
+    void testEncodeInto() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(3, LMS_SHA256_M32_H10, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, null);
+        final HSSSignature signature = HSS.generateSignature("message", keyPair.getPrivateKey());
+        final int size = (int) KeySizeUtil.getHssSignatureSize(LMOTS_SHA256_N32_W8, LMS_SHA256_M32_H10,
+                LMS_SHA256_M32_H5, 3);
+        assertEquals(signature.calculateSize(), size);
+
+        final byte[] destination = new byte[size + 10];
+        assertEquals(size, signature.encodeInto(destination, 10));
+        assertArrayEquals(signature.getBytes(), Arrays.copyOfRange(destination, 10, size + 10));
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size + 10);
+        assertEquals(size, signature.encodeInto(buffer, 10));
+        assertEquals(0, buffer.position());
+        assertEquals(signature, HSS.buildSignature(buffer.position(10)));
+        assertTrue(HSS.verifySignature("message", HSS.buildSignature(ByteBuffer.wrap(destination, 10, size)),
+                keyPair.getPublicKey()));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> signature.encodeInto(destination, 11));
+        assertThrows(IndexOutOfBoundsException.class, () -> signature.encodeInto(buffer, -1));
+    }
+
+    @Test
+    void testWrapSignature() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
+        final HSSSignature signature = HSS.generateSignature("message", keyPair.getPrivateKey());
+        final byte[] bytes = signature.getBytes();
+
+        for (final ByteBuffer buffer : List.of(ByteBuffer.wrap(bytes), ByteBuffer.allocateDirect(bytes.length + 8))) {
+            if (buffer.isDirect()) {
+                buffer.putInt(42).put(bytes).putInt(42).flip().position(4);
+            }
+            final int start = buffer.position();
+            final HSSSignature view = HSS.wrapSignature(buffer);
+            assertEquals(bytes.length, buffer.position() - start);
+            assertEquals(2, view.getNumberOfSignedPublicKeys());
+            assertArrayEquals(bytes, view.getBytes());
+            assertEquals(signature.calculateSize(), view.calculateSize());
+            for (int i = 0; i < 3; i++) {
+                final LMSSignature lmsSignature = signature.getSignatures()[i];
+                final LMSSignature lmsView = view.getSignatures()[i];
+                assertEquals(lmsSignature.getQIdentifier(), lmsView.getQIdentifier());
+                assertArrayEquals(lmsSignature.getPath(), lmsView.getPath());
+                assertArrayEquals(lmsSignature.getLmotsSignature().getKeys(), lmsView.getLmotsSignature().getKeys());
+                assertArrayEquals(lmsSignature.getLmotsSignature().getC(), lmsView.getLmotsSignature().getC());
+            }
+            assertArrayEquals(signature.getLmsPublicKeys()[1].getBytes(), view.getLmsPublicKeys()[1].getBytes());
+            assertTrue(HSS.verifySignature("message", view, keyPair.getPublicKey()));
+            assertFalse(HSS.verifySignature("other message", view, keyPair.getPublicKey()));
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.wrapSignature(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.wrapSignature(ByteBuffer.allocate(4).putInt(9).flip()));
+    }
+
+    @Test
+    void testStreamingMessage() throws NoSuchAlgorithmException, IOException {
+        final Path file = Path.of("testStreamingMessage.bin");
+        final byte[] message = new byte[3 * 1_048_576 + 17];
+        SECURE_RANDOM.nextBytes(message);
+        Files.write(file, message);
+        final ByteBuffer directMessage = ByteBuffer.allocateDirect(message.length).put(message).flip();
+
+        try {
+            for (final HSSKeyPair keyPair : List.of(HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8),
+                    HSS.generateKeys(2, LMS_SHAKE_M32_H5, LMOTS_SHAKE_N32_W8))) {
+                final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+                final HSSPublicKey publicKey = keyPair.getPublicKey();
+                final List<HSSSignature> signatures = List.of(HSS.generateSignature(message, privateKey),
+                        HSS.generateSignature(new ByteArrayInputStream(message), privateKey),
+                        HSS.generateSignature(Channels.newChannel(new ByteArrayInputStream(message)), privateKey),
+                        HSS.generateSignature(directMessage, privateKey),
+                        HSS.generateSignature(file, privateKey));
+                assertEquals(message.length, directMessage.remaining());
+
+                for (final HSSSignature signature : signatures) {
+                    assertTrue(HSS.verifySignature(message, signature, publicKey));
+                    assertTrue(HSS.verifySignature(new ByteArrayInputStream(message), signature, publicKey));
+                    assertTrue(HSS.verifySignature(Channels.newChannel(new ByteArrayInputStream(message)), signature,
+                            publicKey));
+                    assertTrue(HSS.verifySignature(directMessage, signature, publicKey));
+                    assertTrue(HSS.verifySignature(file, signature, publicKey));
+                    assertFalse(HSS.verifySignature(ByteBuffer.wrap(message, 0, message.length - 1), signature,
+                            publicKey));
+                    try (FileChannel channel = FileChannel.open(file)) {
+                        assertTrue(HSS.verifySignature(channel, signature, publicKey));
+                    }
+                }
+
+                // A seekable channel is read from its position with a buffer of the remaining size.
+                try (FileChannel channel = FileChannel.open(file)) {
+                    channel.position(message.length - 17);
+                    final HSSSignature tail = HSS.generateSignature(channel, privateKey);
+                    assertTrue(HSS.verifySignature(Arrays.copyOfRange(message, message.length - 17, message.length),
+                            tail, publicKey));
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testVerifySignatureStream() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
+        final HSSPublicKey publicKey = keyPair.getPublicKey();
+        final byte[] message = "message".getBytes(UTF_8);
+        final byte[] signature = HSS.generateSignature(message, keyPair.getPrivateKey()).getBytes();
+
+        assertTrue(HSS.verifySignatureStream(message, new ByteArrayInputStream(signature), publicKey));
+        assertFalse(HSS.verifySignatureStream("other message".getBytes(UTF_8), new ByteArrayInputStream(signature),
+                publicKey));
+
+        // The message follows the signature in the same stream.
+        final ByteArrayInputStream signedMessage = new ByteArrayInputStream(merge(signature, message));
+        assertTrue(HSS.verifySignatureStream(MessageSource.of(signedMessage), Channels.newChannel(signedMessage),
+                publicKey));
+        assertEquals(0, signedMessage.available());
+
+        // A broken link of the chain is rejected before the rest of the signature is read.
+        final int lastLinkOffset = signature.length - (int) KeySizeUtil.getLmsSignatureSize(LMOTS_SHA256_N32_W8,
+                LMS_SHA256_M32_H5);
+        final byte[] brokenLink = signature.clone();
+        brokenLink[4 + 4 + 4 + 10] ^= 1;
+        final ByteArrayInputStream brokenStream = new ByteArrayInputStream(brokenLink);
+        assertFalse(HSS.verifySignatureStream(message, brokenStream, publicKey));
+        assertTrue(brokenStream.available() > signature.length - lastLinkOffset);
+
+        final byte[] wrongLevels = signature.clone();
+        wrongLevels[3] = 1;
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.verifySignatureStream(message, new ByteArrayInputStream(wrongLevels), publicKey));
+        assertThrows(IOException.class, () -> HSS.verifySignatureStream(message,
+                new ByteArrayInputStream(Arrays.copyOf(signature, signature.length - 1)), publicKey));
+
+        // A typecode that does not match the public key is rejected before the rest of the signature is read.
+        final byte[] wrongLmotsType = signature.clone();
+        ByteBuffer.wrap(wrongLmotsType).putInt(4 + 4, LMOTS_SHA256_N32_W2.getTypecode());
+        final ByteArrayInputStream wrongLmotsStream = new ByteArrayInputStream(wrongLmotsType);
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.verifySignatureStream(message, wrongLmotsStream, publicKey));
+        assertEquals(signature.length - 12, wrongLmotsStream.available());
+
+        final int lmsTypeOffset = 4 + 4 + (int) KeySizeUtil.getOtsSignatureSize(LMOTS_SHA256_N32_W8);
+        final byte[] wrongLmsType = signature.clone();
+        ByteBuffer.wrap(wrongLmsType).putInt(lmsTypeOffset, LMS_SHA256_M32_H10.getTypecode());
+        final ByteArrayInputStream wrongLmsStream = new ByteArrayInputStream(wrongLmsType);
+        assertThrows(IllegalArgumentException.class,
+                () -> HSS.verifySignatureStream(message, wrongLmsStream, publicKey));
+        assertEquals(signature.length - lmsTypeOffset - 4, wrongLmsStream.available());
+
+        // A leaf index outside of the tree is an invalid signature.
+        final byte[] wrongLeaf = signature.clone();
+        ByteBuffer.wrap(wrongLeaf).putInt(4, 32);
+        assertFalse(HSS.verifySignatureStream(message, new ByteArrayInputStream(wrongLeaf), publicKey));
+    }
+
     @Test
     @SuppressFBWarnings
     void testSeed() throws NoSuchAlgorithmException, IOException {
@@ -333,6 +567,48 @@ final class HSSTest {
                 keyPair2.getPrivateKey().getLmsPrivateKeys()[0].getNextLmotsKey().getKeys());
     }
 
+    @Test
+    void testSeedDerivesAllLevels() throws NoSuchAlgorithmException, IOException {
+        final byte[] seed = SECURE_RANDOM.generateSeed(32);
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8,
+                Arrays.copyOf(seed, seed.length), null);
+        final HSSKeyPair keyPair2 = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8,
+                Arrays.copyOf(seed, seed.length), null);
+
+        assertArrayEquals(keyPair.getPrivateKey().getLmsPublicKeys(), keyPair2.getPrivateKey().getLmsPublicKeys());
+        assertArrayEquals(keyPair.getPrivateKey().getSignatures(), keyPair2.getPrivateKey().getSignatures());
+    }
+
+    @Test
+    void testRebuildFromTopLevelKeyAndCounters() throws NoSuchAlgorithmException, IOException {
+        final String message = "rebuild message";
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8,
+                "testRebuildFromTopLevelKeyAndCounters.privkey");
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        for (int i = 0; i < 70; i++) {
+            HSS.generateSignature(message, privateKey);
+        }
+
+        final int[] qIdentifiers = new int[2];
+        for (int i = 1; i < 3; i++) {
+            final LMSPrivateKey lmsPrivateKey = privateKey.getLmsPrivateKeys()[i];
+            qIdentifiers[i - 1] = lmsPrivateKey.getQIdentifier() + lmsPrivateKey.getReservedKeys();
+        }
+        final HSSPrivateKey rebuilt = HSS.buildPrivateKey(privateKey.getLmsPrivateKeys()[0],
+                privateKey.getLmsPublicKeys()[0], LMS_SHA256_M32_H5, qIdentifiers, null);
+
+        assertArrayEquals(privateKey.getLmsPublicKeys(), rebuilt.getLmsPublicKeys());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(privateKey.getSignatures()[i], rebuilt.getSignatures()[i]);
+        }
+        assertFalse(rebuilt.getLmsPrivateKeys()[2].hasReservedKey());
+
+        for (int i = 0; i < 40; i++) {
+            final HSSSignature signature = HSS.generateSignature(message, rebuilt);
+            assertTrue(HSS.verifySignature(message, signature, keyPair.getPublicKey()));
+        }
+    }
+
     @Test
     @Disabled //Takes too long
     void testH20() throws NoSuchAlgorithmException, IOException {
@@ -347,6 +623,59 @@ final class HSSTest {
         assertTrue(HSS.verifySignature(message, hssSignature, hssKeyPair.getPublicKey()));
     }
 
+    @Test
+    void testTuningConfig() throws NoSuchAlgorithmException, IOException {
+        final TuningConfig config = TuningConfig.getDefault().withKeyReserveCount(7).withParallelism(1);
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(2, LMS_SHA256_M32_H5, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W2, null, null, config);
+        assertEquals(7, keyPair.getPrivateKey().getReservedKeys());
+
+        // Reserves 7 keys whenever the window runs dry, also after the rollover to the next tree.
+        for (int i = 0; i < 40; i++) {
+            final HSSSignature signature = HSS.generateSignature(MessageSource.of(("message" + i).getBytes(UTF_8)),
+                    keyPair.getPrivateKey(), config);
+            assertTrue(HSS.verifySignature("message" + i, signature, keyPair.getPublicKey()));
+        }
+        // 8 keys of the second tree are used, one of its second batch.
+        assertEquals(8, keyPair.getPrivateKey().getLmsPrivateKeys()[1].getQIdentifier());
+        assertEquals(6, keyPair.getPrivateKey().getReservedKeys());
+
+        // The I/O buffer size is process wide and would be ignored by a single call.
+        assertThrows(IllegalArgumentException.class, () -> HSS.generateSignature(MessageSource.of(new byte[1]),
+                keyPair.getPrivateKey(), config.withIoBufferSize(config.getIoBufferSize() * 2)));
+    }
+
+    @Test
+    void testAsync() throws NoSuchAlgorithmException {
+        final ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            final HSSKeyPair keyPair =
+                    HSS.generateKeysAsync(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, executorService).join();
+            final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+            final HSSPublicKey publicKey = keyPair.getPublicKey();
+
+            // More signatures than leaves of the lowest tree, so child trees are generated on the executor.
+            final List<CompletableFuture<HSSSignature>> signatures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                signatures.add(HSS.generateSignatureAsync(("message" + i).getBytes(UTF_8), privateKey,
+                        executorService));
+            }
+            for (int i = 0; i < signatures.size(); i++) {
+                final HSSSignature signature = signatures.get(i).join();
+                assertTrue(HSS.verifySignatureAsync(("message" + i).getBytes(UTF_8), signature, publicKey,
+                        executorService).join());
+                assertFalse(HSS.verifySignature("other message", signature, publicKey));
+            }
+
+            final CompletableFuture<HSSKeyPair> invalid =
+                    HSS.generateKeysAsync(9, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, executorService);
+            final CompletionException exception = assertThrows(CompletionException.class, invalid::join);
+            assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
     @Test
     @Disabled //Takes too long
     void testH25() throws NoSuchAlgorithmException, IOException {
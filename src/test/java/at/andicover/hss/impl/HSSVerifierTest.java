@@ -0,0 +1,69 @@
+package at.andicover.hss.impl;
+
+import at.andicover.common.api.MessageSource;
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSSignature;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N24_W4;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W2;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W8;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M24_H5;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class HSSVerifierTest {
+
+    @Test
+    void testVerifySignatures() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H10, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W2,
+                null);
+        final HSSVerifier verifier = new HSSVerifier(keyPair.getPublicKey());
+
+        for (int i = 0; i < 40; i++) {
+            final String message = "verifier message " + i;
+            final HSSSignature signature = HSS.generateSignature(message, keyPair.getPrivateKey());
+            assertTrue(verifier.verifySignature(message, signature));
+            assertTrue(verifier.verifySignature(MessageSource.of(ByteBuffer.wrap(message.getBytes(UTF_8))),
+                    signature));
+            assertFalse(verifier.verifySignature(message + "x", signature));
+            assertEquals(HSS.verifySignature(message + "x", signature, keyPair.getPublicKey()),
+                    verifier.verifySignature(message + "x", signature));
+        }
+    }
+
+    @Test
+    void testTruncatedHash() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M24_H5, LMOTS_SHA256_N24_W4);
+        final HSSVerifier verifier = new HSSVerifier(keyPair.getPublicKey());
+        final HSSSigner signer = new HSSSigner(keyPair.getPrivateKey());
+
+        final HSSSignature signature = signer.generateSignature("message");
+        assertTrue(verifier.verifySignature("message", signature));
+        assertTrue(HSS.verifySignature("message", signature, keyPair.getPublicKey()));
+        assertFalse(verifier.verifySignature("other message", signature));
+    }
+
+    @Test
+    void testInvalidSignatures() throws NoSuchAlgorithmException, IOException {
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
+        final HSSKeyPair otherKeyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
+        final HSSVerifier verifier = new HSSVerifier(keyPair.getPublicKey());
+
+        assertFalse(verifier.verifySignature("message",
+                HSS.generateSignature("message", otherKeyPair.getPrivateKey())));
+        assertThrows(IllegalArgumentException.class, () -> verifier.verifySignature("message",
+                HSS.generateSignature("message", HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8)
+                        .getPrivateKey())));
+        assertTrue(verifier.verifySignature("message", HSS.generateSignature("message", keyPair.getPrivateKey())));
+    }
+}
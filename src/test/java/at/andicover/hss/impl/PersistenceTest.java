@@ -1,5 +1,6 @@
 package at.andicover.hss.impl;
 
+import at.andicover.config.TuningConfig;
 import at.andicover.hss.api.HSSKeyPair;
 import at.andicover.hss.api.HSSPrivateKey;
 import at.andicover.util.PersistenceUtil;
@@ -9,15 +10,17 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
-import static at.andicover.config.Defaults.DEFAULT_KEY_RESERVE_COUNT;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W1;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 final class PersistenceTest {
 
@@ -36,7 +39,39 @@ final class PersistenceTest {
         assertNotEquals(keyPair.getPrivateKey(), privateKey);
         assertNotNull(privateKey);
         assertFalse(privateKey.getLmsPrivateKeys()[0].hasReservedKey());
-        assertEquals(DEFAULT_KEY_RESERVE_COUNT, privateKey.getLmsPrivateKeys()[0].getQIdentifier());
+        assertEquals(TuningConfig.getDefault().getKeyReserveCount(),
+                privateKey.getLmsPrivateKeys()[0].getQIdentifier());
         assertThrows(IllegalStateException.class, () -> privateKey.getLmsPrivateKeys()[0].getNextLmotsKey());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testMapPrivateKey() throws IOException, NoSuchAlgorithmException {
+        final String filename = "testMapPrivateKey.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W1, filename);
+        for (int i = 0; i < 25; i++) {
+            HSS.generateSignature("message", keyPair.getPrivateKey());
+        }
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        final HSSPrivateKey mappedKey = PersistenceUtil.mapPrivateKey(filename);
+        assertEquals(loadedKey, mappedKey);
+        assertArrayEquals(loadedKey.getBytes(), mappedKey.getBytes());
+
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", mappedKey),
+                keyPair.getPublicKey()));
+        final HSSPrivateKey mappedKey2 = PersistenceUtil.mapPrivateKey(filename);
+        assertEquals(mappedKey.getLmsPrivateKeys()[1].getQIdentifier()
+                        + mappedKey.getLmsPrivateKeys()[1].getReservedKeys(),
+                mappedKey2.getLmsPrivateKeys()[1].getQIdentifier());
+    }
+
+    @Test
+    void testMapIncompletePrivateKey() throws IOException, NoSuchAlgorithmException {
+        final String filename = "testMapIncompletePrivateKey.privkey";
+        HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W1, filename);
+        final byte[] bytes = Files.readAllBytes(Path.of(filename));
+        Files.write(Path.of(filename), Arrays.copyOf(bytes, 1_000));
+
+        assertThrows(IllegalArgumentException.class, () -> PersistenceUtil.mapPrivateKey(filename));
+    }
+}
@@ -9,6 +9,8 @@ import at.andicover.util.PersistenceUtil;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
@@ -257,4 +259,28 @@ final class LMOTSTest {
             assertEquals(PersistenceUtil.loadKey(filename, LMOTSSignature.class), signature);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testByteBufferWriteAndDecode() throws NoSuchAlgorithmException {
+        for (final LMOTSType lmotsType : getLmotsTypes()) {
+            final LMOTSPrivateKey privateKey = LMOTS.generatePrivateKey(lmotsType);
+            final LMOTSPublicKey publicKey = LMOTS.generatePublicKey(privateKey);
+            final LMOTSSignature signature = LMOTS.generateSignature("message", privateKey);
+
+            final ByteBuffer buffer = ByteBuffer.allocateDirect((int) (privateKey.encodedSize()
+                    + publicKey.encodedSize() + signature.encodedSize()));
+            privateKey.writeTo(buffer);
+            publicKey.writeTo(buffer);
+            signature.writeTo(buffer);
+            assertFalse(buffer.hasRemaining());
+
+            buffer.flip();
+            assertEquals(privateKey, LMOTS.buildPrivateKey(buffer));
+            assertEquals(publicKey, LMOTS.buildPublicKey(buffer));
+            assertEquals(signature, LMOTS.buildSignature(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+        assertThrows(BufferUnderflowException.class, () -> LMOTS.buildSignature(ByteBuffer.allocate(4)
+                .putInt(LMOTS_SHA256_N32_W8.getTypecode()).flip()));
+    }
+}
@@ -4,12 +4,18 @@ import at.andicover.lmots.api.LMOTSPrivateKey;
 import at.andicover.lms.api.LMSPrivateKey;
 import org.junit.jupiter.api.Test;
 
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W1;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W2;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @SuppressWarnings("PMD.SystemPrintln")
 final class LMSPrivateKeyImplTest {
@@ -41,4 +47,63 @@ final class LMSPrivateKeyImplTest {
         assertNotEquals(lmsPrivateKey, lmsPrivateKey6);
         System.out.println(lmsPrivateKey);
     }
+
+    @Test
+    void testReservedMark() throws NoSuchAlgorithmException {
+        final LMSPrivateKey privateKey = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W1).getPrivateKey();
+        assertEquals(0, privateKey.getReservedMark());
+        privateKey.reserveKeys(20);
+        for (int i = 0; i < 7; i++) {
+            privateKey.getNextLmotsKey();
+        }
+        assertEquals(20, privateKey.getReservedMark());
+        assertEquals(13, privateKey.getReservedKeys());
+
+        privateKey.reserveKeys(20);
+        assertEquals(32, privateKey.getReservedMark());
+        privateKey.advanceQIdentifier(32);
+        assertEquals(32, privateKey.getReservedMark());
+    }
+
+    @Test
+    void testRestoreTreeWithOtherNodeBudget() throws NoSuchAlgorithmException {
+        final LMSPrivateKeyImpl privateKey =
+                (LMSPrivateKeyImpl) LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W1).getPrivateKey();
+        final byte[][] leafNodes = requireNonNull(privateKey.getLeafNodes());
+        final byte[][] topLevelNodes = requireNonNull(privateKey.getTopLevelNodes());
+        final byte[][][] paths = new byte[32][][];
+        for (int q = 0; q < 32; q++) {
+            paths[q] = privateKey.getPath(q + 32);
+        }
+
+        // Trees with the nodes of another node cache budget.
+        for (final int count : new int[]{0, 6, 14}) {
+            privateKey.restoreTree(leafNodes, Arrays.copyOf(topLevelNodes, count));
+            for (int q = 0; q < 32; q++) {
+                assertArrayEquals(paths[q], privateKey.getPath(q + 32));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> privateKey.restoreTree(leafNodes, new byte[31][LMS_SHA256_M32_H5.getM()]));
+    }
+
+    @Test
+    void testPathThroughLastStoredNode() throws NoSuchAlgorithmException {
+        final LMSPrivateKeyImpl privateKey =
+                (LMSPrivateKeyImpl) LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W1).getPrivateKey();
+        final byte[][] leafNodes = requireNonNull(privateKey.getLeafNodes());
+        final byte[][] topLevelNodes = requireNonNull(privateKey.getTopLevelNodes());
+        final byte[][][] paths = new byte[32][][];
+        for (int q = 0; q < 32; q++) {
+            paths[q] = privateKey.getPath(q + 32);
+        }
+
+        // An odd number of stored nodes ends in the middle of a level, like the former default of 65535.
+        for (final int count : new int[]{1, 5, 7, 15, 29}) {
+            privateKey.restoreTree(leafNodes, Arrays.copyOf(topLevelNodes, count));
+            for (int q = 0; q < 32; q++) {
+                assertArrayEquals(paths[q], privateKey.getPath(q + 32));
+            }
+        }
+    }
 }
\ No newline at end of file
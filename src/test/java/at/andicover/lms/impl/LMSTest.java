@@ -15,9 +15,15 @@ import at.andicover.util.PersistenceUtil;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W2;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
 import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W8;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
 import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
@@ -115,6 +121,33 @@ final class LMSTest {
         assertFalse(LMS.verifySignature(message, newSignature, publicKey));
     }
 
+    @Test
+    void invalidLeafIndexTest() throws NoSuchAlgorithmException {
+        final LMSType lmsType = LMS_SHA256_M32_H5;
+        final LMSKeyPair keyPair = LMS.generateKeys(lmsType, LMOTS_SHA256_N32_W8);
+        final LMSPrivateKey privateKey = keyPair.getPrivateKey();
+        final LMSPublicKey publicKey = keyPair.getPublicKey();
+        privateKey.reserveKeys(1);
+
+        final String message = "test message";
+        final LMSSignature signature = LMS.generateSignature(message, privateKey);
+        final byte[][] path = new byte[lmsType.getH()][];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = signature.getPathNode(i);
+        }
+        for (final int qIdentifier : new int[]{-1, 32, Integer.MAX_VALUE}) {
+            final LMSSignature invalidSignature =
+                    new LMSSignatureImpl(lmsType, signature.getLmotsSignature(), qIdentifier, path);
+            assertFalse(LMS.verifySignature(message, invalidSignature, publicKey));
+            assertFalse(new LMSContext(lmsType, LMOTS_SHA256_N32_W8)
+                    .verifySignature(message.getBytes(), invalidSignature, publicKey));
+            final LMOTSPublicKey lmotsPublicKey = LMOTS.generatePublicKey(message,
+                    signature.getLmotsSignature(), qIdentifier, publicKey.getIdentifier());
+            assertThrows(IllegalArgumentException.class,
+                    () -> LMS.generatePublicKey(invalidSignature, publicKey.getIdentifier(), lmotsPublicKey));
+        }
+    }
+
     @Test
     void allKeysUsedTest() throws NoSuchAlgorithmException {
         final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
@@ -221,4 +254,107 @@ final class LMSTest {
         final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8);
         assertThrows(IllegalStateException.class, keyPair.getPrivateKey()::getNextLmotsKey);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testByteBufferWriteAndDecode() throws NoSuchAlgorithmException {
+        for (final LMOTSType lmotsType : getLmotsTypes()) {
+            final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, lmotsType);
+            final LMSPrivateKey privateKey = keyPair.getPrivateKey();
+            final ByteBuffer privateKeyBuffer = ByteBuffer.allocateDirect((int) privateKey.encodedSize());
+            privateKey.writeTo(privateKeyBuffer);
+            assertFalse(privateKeyBuffer.hasRemaining());
+            assertEquals(privateKey, LMS.buildPrivateKey(privateKeyBuffer.flip()));
+
+            privateKey.reserveKeys(1);
+            final LMSSignature signature = LMS.generateSignature("message", privateKey);
+            final ByteBuffer buffer = ByteBuffer.allocate((int) (keyPair.getPublicKey().encodedSize()
+                    + signature.encodedSize()));
+            keyPair.getPublicKey().writeTo(buffer);
+            signature.writeTo(buffer);
+            assertFalse(buffer.hasRemaining());
+            assertArrayEquals(signature.getBytes(), Arrays.copyOfRange(buffer.array(),
+                    (int) keyPair.getPublicKey().encodedSize(), buffer.capacity()));
+
+            buffer.flip();
+            assertEquals(keyPair.getPublicKey(), LMS.buildPublicKey(buffer));
+            assertEquals(signature, LMS.buildSignature(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void testGenerateKeysIntoBuffers() throws NoSuchAlgorithmException {
+        final byte[] seed = new byte[32];
+        Arrays.fill(seed, (byte) 7);
+        final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, seed.clone());
+
+        final ByteBuffer seeds = ByteBuffer.allocateDirect(32 * 32);
+        final ByteBuffer leafNodes = ByteBuffer.allocateDirect(32 * 32);
+        final LMSKeyPair bufferedKeyPair =
+                LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, seed.clone(), seeds, leafNodes);
+        assertEquals(keyPair.getPublicKey(), bufferedKeyPair.getPublicKey());
+        assertArrayEquals(keyPair.getPrivateKey().getLeafNodes(), bufferedKeyPair.getPrivateKey().getLeafNodes());
+        assertArrayEquals(keyPair.getPrivateKey().getTopLevelNodes(),
+                bufferedKeyPair.getPrivateKey().getTopLevelNodes());
+        for (int q = 0; q < 32; q++) {
+            assertEquals(keyPair.getPrivateKey().getLmotsKey(q), bufferedKeyPair.getPrivateKey().getLmotsKey(q));
+        }
+
+        bufferedKeyPair.getPrivateKey().reserveKeys(1);
+        final LMSSignature signature = LMS.generateSignature("message", bufferedKeyPair.getPrivateKey());
+        assertTrue(LMS.verifySignature("message", signature, keyPair.getPublicKey()));
+
+        assertThrows(IllegalArgumentException.class, () -> LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8,
+                null, ByteBuffer.allocate(32), ByteBuffer.allocate(32 * 32)));
+
+        // A failure of a worker is thrown by the call instead of leaving the buffers incomplete.
+        assertThrows(ReadOnlyBufferException.class, () -> LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8,
+                null, ByteBuffer.allocate(32 * 32).asReadOnlyBuffer(), ByteBuffer.allocate(32 * 32)));
+    }
+
+    @Test
+    void testGenerateKeysOnExecutor() throws NoSuchAlgorithmException {
+        final byte[] seed = new byte[32];
+        Arrays.fill(seed, (byte) 7);
+        final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, seed.clone());
+
+        // A single thread executor must not deadlock, the calling thread does the work of busy workers.
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            final LMSKeyPair asyncKeyPair =
+                    LMS.generateKeysAsync(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W8, seed.clone(), executorService)
+                            .join();
+            assertEquals(keyPair.getPublicKey(), asyncKeyPair.getPublicKey());
+            assertArrayEquals(keyPair.getPrivateKey().getLeafNodes(), asyncKeyPair.getPrivateKey().getLeafNodes());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Top level tree of test case 2 of RFC 8554, Appendix F.
+     */
+    @Test
+    void testDerivePrivateKey() throws NoSuchAlgorithmException {
+        final byte[] seed = fromHex("558b8966c48ae9cb898b423c83443aae014a72f1b1ab5cc85cf1d892903b5439");
+        final byte[] identifier = fromHex("d08fabd4a2091ff0a8cb4ed834e74534");
+        final LMSPrivateKey privateKey =
+                LMS.derivePrivateKey(LMS_SHA256_M32_H10, LMOTS_SHA256_N32_W4, identifier, 0, seed);
+        LMS.generatePublicKey(privateKey);
+        assertArrayEquals(fromHex("32a58885cd9ba0431235466bff9651c6c92124404d45fa53cf161c28f1ad5a8e"),
+                privateKey.getTopLevelNodes()[0]);
+        assertArrayEquals(seed, privateKey.getSeed());
+        assertTrue(privateKey.getLmotsKey(3).isDerived());
+        assertThrows(IllegalStateException.class, privateKey::getBytes);
+        assertThrows(IllegalArgumentException.class,
+                () -> LMS.derivePrivateKey(LMS_SHA256_M32_H10, LMOTS_SHA256_N32_W4, identifier, 0, new byte[16]));
+    }
+
+    private static byte[] fromHex(final String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,40 @@
+package at.andicover.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+final class BufferedChannelWriterTest {
+
+    @Test
+    void testSmallAndLargeWrites() throws IOException {
+        final Path file = Path.of("testSmallAndLargeWrites.bin");
+        final byte[] expected = new byte[1_000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = (byte) i;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            final BufferedChannelWriter writer = new BufferedChannelWriter(channel, 64);
+            int offset = 0;
+            for (final int length : new int[]{10, 50, 200, 1, 63, 64, 612}) {
+                assertEquals(length, writer.write(ByteBuffer.wrap(expected, offset, length)));
+                offset += length;
+            }
+            writer.close();
+            assertFalse(writer.isOpen());
+        }
+        assertArrayEquals(expected, Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,207 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.impl.HSS;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.impl.LMS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.zip.CRC32C;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.util.Objects.requireNonNull;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class CompactKeyFileTest {
+
+    @Test
+    void testStoreAndLoad() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactStoreAndLoad.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        assertTrue(CompactKeyFile.isCompact(filename));
+
+        final HSSPrivateKey loadedKey = CompactKeyFile.read(filename);
+        assertEquals(3, loadedKey.getLevels());
+        assertArrayEquals(privateKey.getLmsPublicKeys(), loadedKey.getLmsPublicKeys());
+        assertArrayEquals(privateKey.getSignatures(), loadedKey.getSignatures());
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(loadedKey.getLmsPrivateKeys()[i].getLeafNodes());
+            assertEquals(privateKey.getLmsPrivateKeys()[i].getLmotsKey(7),
+                    loadedKey.getLmsPrivateKeys()[i].getLmotsKey(7));
+        }
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+
+        // The first version of the file format can still be loaded.
+        final String filenameV1 = "testCompactStoreAndLoad.v1.privkey";
+        PersistenceUtil.storeKey(privateKey, filenameV1);
+        assertFalse(CompactKeyFile.isCompact(filenameV1));
+        TreeCache.write(filenameV1, privateKey.getLmsPrivateKeys());
+        assertTrue(Files.size(Path.of(filename))
+                < Files.size(Path.of(filenameV1)) + Files.size(Path.of(filenameV1 + ".tree")));
+        final HSSPrivateKey loadedKeyV1 = (HSSPrivateKey) PersistenceUtil.loadKey(filenameV1, HSSPrivateKey.class);
+        assertNotNull(loadedKeyV1);
+        assertArrayEquals(privateKey.getSignatures(), loadedKeyV1.getSignatures());
+    }
+
+    @Test
+    void testCorruptSection() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactCorruptSection.privkey";
+        HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek(findSection(file, CompactKeyFile.PRIVATE_KEY, 0) + 100);
+            file.writeInt(12_345);
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompactKeyFile.read(filename));
+
+        HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek(findSection(file, CompactKeyFile.GENERATED_PRIVATE_KEY, 1) + 40);
+            file.writeInt(12_345);
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompactKeyFile.read(filename));
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek(20);
+            file.writeInt(12_345);
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompactKeyFile.read(filename));
+    }
+
+    @Test
+    void testCorruptTreeIsRebuilt() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactCorruptTreeIsRebuilt.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.seek(findSection(file, CompactKeyFile.TREE, 1) + 100);
+            file.writeInt(12_345);
+        }
+
+        final HSSPrivateKey loadedKey = CompactKeyFile.read(filename);
+        assertNotNull(loadedKey.getLmsPrivateKeys()[0].getLeafNodes());
+        assertNull(loadedKey.getLmsPrivateKeys()[1].getLeafNodes());
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+        assertArrayEquals(privateKey.getLmsPrivateKeys()[1].getLeafNodes(),
+                loadedKey.getLmsPrivateKeys()[1].getLeafNodes());
+    }
+
+    @Test
+    void testWrongTreeWithValidChecksumIsRebuilt() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactWrongTreeWithValidChecksumIsRebuilt.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            final long entry = findEntry(file, CompactKeyFile.TREE, 0);
+            file.seek(entry + 2 * Integer.BYTES);
+            final long offset = file.readLong();
+            final byte[] section = new byte[(int) file.readLong()];
+
+            // Leaf 3 is changed and the checksum of the section is updated.
+            file.seek(offset);
+            file.readFully(section);
+            section[2 * Integer.BYTES + 3 * 32] ^= 1;
+            file.seek(offset);
+            file.write(section);
+            final CRC32C crc32c = new CRC32C();
+            crc32c.update(section);
+            file.seek(entry + 2 * Integer.BYTES + 2 * Long.BYTES);
+            file.writeInt((int) crc32c.getValue());
+
+            // The checksum of the header and the section table is updated as well.
+            file.seek(3 * Integer.BYTES);
+            final byte[] table = new byte[CompactKeyFile.HEADER_SIZE + file.readInt() * CompactKeyFile.ENTRY_SIZE];
+            file.seek(0);
+            file.readFully(table);
+            final CRC32C tableCrc32c = new CRC32C();
+            tableCrc32c.update(table);
+            file.writeInt((int) tableCrc32c.getValue());
+        }
+
+        final HSSPrivateKey loadedKey = CompactKeyFile.read(filename);
+        assertNull(loadedKey.getLmsPrivateKeys()[0].getLeafNodes());
+        assertNotNull(loadedKey.getLmsPrivateKeys()[1].getLeafNodes());
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+    }
+
+    @Test
+    void testDerivedSeedOfWrongSize() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactDerivedSeedOfWrongSize.privkey";
+        Files.deleteIfExists(Path.of(filename));
+        final SecureRandom random = new SecureRandom();
+        final byte[] seed = new byte[32];
+        final byte[] identifier = new byte[16];
+        random.nextBytes(seed);
+        random.nextBytes(identifier);
+        final LMSPrivateKey lmsPrivateKey =
+                LMS.derivePrivateKey(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, identifier, 0, seed);
+        lmsPrivateKey.getPath(32);
+        final byte[] root = requireNonNull(lmsPrivateKey.getTopLevelNodes())[0];
+        final byte[] publicKey = ByteBuffer.allocate(4 + 4 + 4 + 16 + 32).putInt(2)
+                .putInt(LMS_SHA256_M32_H5.getTypecode()).putInt(LMOTS_SHA256_N32_W4.getTypecode()).put(identifier)
+                .put(root).array();
+        final byte[] privateKey = ByteBuffer.allocate(ReferenceKeyFormat.PRIVATE_KEY_SIZE).putLong(0)
+                .putLong(1023).put(new byte[]{0x53, 0x53, -1, -1, -1, -1, -1, -1}).put(seed).put(identifier).array();
+        ReferenceKeyFormat.importKey(privateKey, publicKey, null, filename);
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            // The derived section loses the last byte of its SEED, the checksums are updated.
+            final long entry = findEntry(file, CompactKeyFile.DERIVED_PRIVATE_KEY, 0);
+            file.seek(entry + 2 * Integer.BYTES);
+            final long offset = file.readLong();
+            final byte[] section = new byte[(int) file.readLong() - 1];
+            file.seek(offset);
+            file.readFully(section);
+            final CRC32C crc32c = new CRC32C();
+            crc32c.update(section);
+            file.seek(entry + 2 * Integer.BYTES + Long.BYTES);
+            file.writeLong(section.length);
+            file.writeInt((int) crc32c.getValue());
+
+            file.seek(3 * Integer.BYTES);
+            final byte[] table = new byte[CompactKeyFile.HEADER_SIZE + file.readInt() * CompactKeyFile.ENTRY_SIZE];
+            file.seek(0);
+            file.readFully(table);
+            final CRC32C tableCrc32c = new CRC32C();
+            tableCrc32c.update(table);
+            file.writeInt((int) tableCrc32c.getValue());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> CompactKeyFile.read(filename));
+    }
+
+    private static long findSection(final RandomAccessFile file, final int type, final int level) throws IOException {
+        file.seek(findEntry(file, type, level) + 2 * Integer.BYTES);
+        return file.readLong();
+    }
+
+    private static long findEntry(final RandomAccessFile file, final int type, final int level) throws IOException {
+        file.seek(3 * Integer.BYTES);
+        final int count = file.readInt();
+        for (int i = 0; i < count; i++) {
+            final long entry = CompactKeyFile.HEADER_SIZE + (long) i * CompactKeyFile.ENTRY_SIZE;
+            file.seek(entry);
+            if (file.readInt() == type && file.readInt() == level) {
+                return entry;
+            }
+        }
+        throw new IllegalArgumentException("Missing section");
+    }
+}
@@ -0,0 +1,214 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.hss.impl.HSS;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class KeyStateFileTest {
+
+    @Test
+    void testStoreAndLoadKeyMaterial() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testStoreAndLoadKeyMaterial.material";
+        final String stateFilename = "testStoreAndLoadKeyMaterial.state";
+        Files.deleteIfExists(Path.of(filename));
+        Files.deleteIfExists(Path.of(stateFilename));
+        final HSSKeyPair keyPair = HSS.generateKeys(3, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSPrivateKey privateKey =
+                PersistenceUtil.storeKeyMaterial(keyPair.getPrivateKey(), filename, stateFilename);
+        final byte[] material = Files.readAllBytes(Path.of(filename));
+        assertEquals(2 * KeyStateFile.SLOT_SIZE, Files.size(Path.of(stateFilename)));
+
+        for (int i = 0; i < 70; i++) {
+            assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", privateKey),
+                    keyPair.getPublicKey()));
+        }
+        assertArrayEquals(material, Files.readAllBytes(Path.of(filename)));
+
+        final HSSPrivateKey loadedKey = PersistenceUtil.loadKeyMaterial(filename, stateFilename);
+        assertEquals(stateFilename, loadedKey.getStateFilename());
+        assertArrayEquals(privateKey.getLmsPublicKeys(), loadedKey.getLmsPublicKeys());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(privateKey.getLmsPrivateKeys()[i].getReservedMark(),
+                    loadedKey.getLmsPrivateKeys()[i].getQIdentifier());
+        }
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+
+        assertThrows(FileAlreadyExistsException.class,
+                () -> PersistenceUtil.storeKeyMaterial(loadedKey, filename, stateFilename));
+    }
+
+    @Test
+    void testTornWriteKeepsPreviousState() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testTornWriteKeepsPreviousState.material";
+        final String stateFilename = "testTornWriteKeepsPreviousState.state";
+        Files.deleteIfExists(Path.of(filename));
+        Files.deleteIfExists(Path.of(stateFilename));
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSPrivateKey privateKey =
+                PersistenceUtil.storeKeyMaterial(keyPair.getPrivateKey(), filename, stateFilename);
+        final byte[] identifier = privateKey.getLmsPrivateKeys()[0].getIdentifier();
+        assertEquals(20, KeyStateFile.read(stateFilename, identifier, 2)[1]);
+
+        privateKey.reserveKeys(5);
+        assertEquals(25, KeyStateFile.read(stateFilename, identifier, 2)[1]);
+
+        // The second write went to slot 0. Destroy it as if the write was interrupted.
+        try (RandomAccessFile file = new RandomAccessFile(stateFilename, "rw")) {
+            file.seek(40);
+            file.writeInt(12_345);
+        }
+        assertEquals(20, KeyStateFile.read(stateFilename, identifier, 2)[1]);
+        assertThrows(IllegalStateException.class, () -> KeyStateFile.read(stateFilename, new byte[16], 2));
+    }
+
+    @Test
+    void testSharedKeyClaimsDisjointLeaves() throws NoSuchAlgorithmException, IOException, InterruptedException {
+        final String filename = "testSharedKeyClaimsDisjointLeaves.material";
+        final String stateFilename = "testSharedKeyClaimsDisjointLeaves.state";
+        Files.deleteIfExists(Path.of(filename));
+        Files.deleteIfExists(Path.of(stateFilename));
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKeyMaterial(keyPair.getPrivateKey(), filename, stateFilename);
+
+        // Every instance stands for another process.
+        final HSSPrivateKey[] sharedKeys = new HSSPrivateKey[3];
+        for (int i = 0; i < sharedKeys.length; i++) {
+            sharedKeys[i] = PersistenceUtil.loadSharedKey(filename, stateFilename);
+            assertTrue(sharedKeys[i].isShared());
+            assertEquals(0, sharedKeys[i].getReservedKeys());
+        }
+
+        final Set<String> usedLeaves = ConcurrentHashMap.newKeySet();
+        final Thread[] threads = new Thread[sharedKeys.length];
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < threads.length; i++) {
+            final HSSPrivateKey sharedKey = sharedKeys[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 30; j++) {
+                        final HSSSignature signature = HSS.generateSignature("message", sharedKey);
+                        assertTrue(HSS.verifySignature("message", signature, keyPair.getPublicKey()));
+                        assertTrue(usedLeaves.add(signature.getSignatures()[0].getQIdentifier() + "/"
+                                + signature.getSignatures()[1].getQIdentifier()));
+                    }
+                } catch (Exception | AssertionError ex) {
+                    failure.compareAndSet(null, new IllegalStateException(ex));
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertEquals(90, usedLeaves.size());
+
+        // 90 leaves do not fit into the lowest tree and the two trees after it.
+        final byte[] identifier = sharedKeys[0].getLmsPrivateKeys()[0].getIdentifier();
+        final int[] highWaterMarks = KeyStateFile.read(stateFilename, identifier, 2);
+        assertTrue(highWaterMarks[0] >= 4);
+
+        final HSSPrivateKey loadedKey = PersistenceUtil.loadSharedKey(filename, stateFilename);
+        final HSSSignature signature = HSS.generateSignature("message", loadedKey);
+        assertFalse(usedLeaves.contains(signature.getSignatures()[0].getQIdentifier() + "/"
+                + signature.getSignatures()[1].getQIdentifier()));
+
+        // Once the key is shared, the state file is rejected for keys that are not shared.
+        assertTrue(KeyStateFile.isShared(stateFilename, identifier, 2));
+        assertThrows(IllegalStateException.class, () -> PersistenceUtil.loadKeyMaterial(filename, stateFilename));
+    }
+
+    @Test
+    void testNotSharedWriterIsRejected() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testNotSharedWriterIsRejected.material";
+        final String stateFilename = "testNotSharedWriterIsRejected.state";
+        Files.deleteIfExists(Path.of(filename));
+        Files.deleteIfExists(Path.of(stateFilename));
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final HSSPrivateKey privateKey =
+                PersistenceUtil.storeKeyMaterial(keyPair.getPrivateKey(), filename, stateFilename);
+        assertFalse(privateKey.isShared());
+        privateKey.reserveKeys(5);
+
+        final HSSPrivateKey sharedKey = PersistenceUtil.loadSharedKey(filename, stateFilename);
+        final HSSSignature signature = HSS.generateSignature("message", sharedKey);
+        assertEquals(25, signature.getSignatures()[1].getQIdentifier());
+
+        // The key that is not shared would overwrite the claim with its own high-water marks.
+        final byte[] identifier = privateKey.getLmsPrivateKeys()[0].getIdentifier();
+        final int[] claimed = KeyStateFile.read(stateFilename, identifier, 2);
+        assertThrows(IllegalStateException.class, () -> privateKey.reserveKeys(5));
+        assertArrayEquals(claimed, KeyStateFile.read(stateFilename, identifier, 2));
+    }
+
+    @Test
+    void testSharedKeyAcrossProcesses() throws NoSuchAlgorithmException, IOException, InterruptedException {
+        final String filename = "testSharedKeyAcrossProcesses.material";
+        final String stateFilename = "testSharedKeyAcrossProcesses.state";
+        Files.deleteIfExists(Path.of(filename));
+        Files.deleteIfExists(Path.of(stateFilename));
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKeyMaterial(keyPair.getPrivateKey(), filename, stateFilename);
+
+        final Process[] processes = new Process[2];
+        for (int i = 0; i < processes.length; i++) {
+            processes[i] = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-cp", System.getProperty("java.class.path"), SharedKeyProcess.class.getName(),
+                    filename, stateFilename, "30")
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+        }
+
+        final Set<String> usedLeaves = ConcurrentHashMap.newKeySet();
+        final HSSPrivateKey sharedKey = PersistenceUtil.loadSharedKey(filename, stateFilename);
+        for (int i = 0; i < 30; i++) {
+            final HSSSignature signature = HSS.generateSignature("message", sharedKey);
+            assertTrue(HSS.verifySignature("message", signature, keyPair.getPublicKey()));
+            assertTrue(usedLeaves.add(signature.getSignatures()[0].getQIdentifier() + "/"
+                    + signature.getSignatures()[1].getQIdentifier()));
+        }
+        for (final Process process : processes) {
+            final List<String> leaves;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                leaves = reader.lines().collect(Collectors.toList());
+            }
+            assertTrue(process.waitFor(5, TimeUnit.MINUTES));
+            assertEquals(0, process.exitValue());
+            assertEquals(30, leaves.size());
+            for (final String leaf : leaves) {
+                assertTrue(usedLeaves.add(leaf));
+            }
+        }
+        assertEquals(90, usedLeaves.size());
+    }
+}
+
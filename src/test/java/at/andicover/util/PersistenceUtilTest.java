@@ -1,11 +1,32 @@
 package at.andicover.util;
 
+import at.andicover.common.api.Storable;
+import at.andicover.hss.api.HSSKeyPair;
 import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.impl.HSS;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 final class PersistenceUtilTest {
 
@@ -25,4 +46,46 @@ final class PersistenceUtilTest {
         assertThrows(RuntimeException.class,
                 () -> PersistenceUtil.loadKey("../../../src/test/resources/emptyKeyFile.privKey", HSSPrivateKey.class));
     }
+
+    @Test
+    void testStoreKeyReplacesFile() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testStoreKeyReplacesFile.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        assertTrue(CompactKeyFile.isCompact(filename));
+
+        privateKey.reserveKeys(30);
+        PersistenceUtil.storeKey(privateKey);
+        assertArrayEquals(CompactKeyFile.encode(privateKey).getBytes(), Files.readAllBytes(Path.of(filename)));
+        assertFalse(Files.exists(Path.of(filename + ".tmp")));
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertArrayEquals(privateKey.getLmsPublicKeys(), loadedKey.getLmsPublicKeys());
+        assertEquals(privateKey.getLmsPrivateKeys()[1].getQIdentifier()
+                        + privateKey.getLmsPrivateKeys()[1].getReservedKeys(),
+                loadedKey.getLmsPrivateKeys()[1].getQIdentifier());
+    }
+
+    @Test
+    void testLoadKeyFromSchedulerTasks() throws NoSuchAlgorithmException, IOException, InterruptedException,
+            ExecutionException, TimeoutException {
+        final String filename = "testLoadKeyFromSchedulerTasks.pub";
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKey(keyPair.getPublicKey(), filename);
+        try {
+            // Every interactive worker loads a key at the same time, loading must not wait for another task.
+            final TaskScheduler scheduler = TaskScheduler.getInstance();
+            final List<CompletableFuture<Storable>> loads = new ArrayList<>();
+            for (int i = 0; i < scheduler.getCap(TaskScheduler.Priority.INTERACTIVE) + 1; i++) {
+                loads.add(CompletableFuture.supplyAsync(() -> PersistenceUtil.loadKey(filename, HSSPublicKey.class),
+                        scheduler.executor(TaskScheduler.Priority.INTERACTIVE)));
+            }
+            for (final CompletableFuture<Storable> load : loads) {
+                assertEquals(keyPair.getPublicKey(), load.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            Files.deleteIfExists(Path.of(filename));
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.impl.HSS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class PreallocatedKeyFileTest {
+
+    @Test
+    void testGenerateIntoFile() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testGenerateIntoFile.privkey";
+        final HSSKeyPair keyPair =
+                HSS.generateKeys(3, LMS_SHA256_M32_H10, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        assertTrue(CompactKeyFile.isCompact(filename));
+        assertFalse(Files.exists(Path.of(filename + ".tmp")));
+        // The lower levels only store the seed they are generated from instead of the seeds of all leaves.
+        assertEquals(CompactKeyFile.encode(keyPair.getPrivateKey()).encodedSize() - 2 * (32 * 32 - 32),
+                Files.size(Path.of(filename)));
+
+        final HSSPrivateKey loadedKey = CompactKeyFile.read(filename);
+        assertArrayEquals(keyPair.getPrivateKey().getLmsPublicKeys(), loadedKey.getLmsPublicKeys());
+        assertArrayEquals(keyPair.getPrivateKey().getSignatures(), loadedKey.getSignatures());
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(keyPair.getPrivateKey().getLmsPrivateKeys()[i].getLeafNodes(),
+                    loadedKey.getLmsPrivateKeys()[i].getLeafNodes());
+            assertEquals(keyPair.getPrivateKey().getLmsPrivateKeys()[i].getLmotsKey(9),
+                    loadedKey.getLmsPrivateKeys()[i].getLmotsKey(9));
+        }
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", keyPair.getPrivateKey()),
+                keyPair.getPublicKey()));
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+    }
+
+    @Test
+    void testCloseWithoutComplete() throws IOException {
+        final String filename = "testCloseWithoutComplete.privkey";
+        Files.deleteIfExists(Path.of(filename));
+        try (PreallocatedKeyFile keyFile = PreallocatedKeyFile.create(filename, 2, LMS_SHA256_M32_H5,
+                LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4)) {
+            assertEquals(32 * 32, keyFile.getSeeds(1).remaining());
+            assertEquals(32 * 32, keyFile.getLeafNodes(1).remaining());
+            assertTrue(Files.exists(Path.of(filename + ".tmp")));
+        }
+        assertFalse(Files.exists(Path.of(filename + ".tmp")));
+        assertFalse(Files.exists(Path.of(filename)));
+        assertThrows(IllegalArgumentException.class,
+                () -> PreallocatedKeyFile.create(filename, 9, LMS_SHA256_M32_H5, LMS_SHA256_M32_H5,
+                        LMOTS_SHA256_N32_W4));
+    }
+}
@@ -0,0 +1,148 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSPublicKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.hss.impl.HSS;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.impl.LMS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W8;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static java.util.Objects.requireNonNull;
+
+final class ReferenceKeyFormatTest {
+
+    @Test
+    void testImportAndExport() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testReferenceKeyImportAndExport.key";
+        Files.deleteIfExists(Path.of(filename));
+        final SecureRandom random = new SecureRandom();
+        final byte[] seed = new byte[32];
+        final byte[] identifier = new byte[16];
+        random.nextBytes(seed);
+        random.nextBytes(identifier);
+
+        final LMSPrivateKey lmsPrivateKey =
+                LMS.derivePrivateKey(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, identifier, 0, seed);
+        lmsPrivateKey.getPath(32);
+        final byte[] publicKey = ByteBuffer.allocate(4 + 4 + 4 + 16 + 32).putInt(2)
+                .putInt(LMS_SHA256_M32_H5.getTypecode()).putInt(LMOTS_SHA256_N32_W4.getTypecode()).put(identifier)
+                .put(requireNonNull(lmsPrivateKey.getTopLevelNodes())[0]).array();
+
+        // 40 signatures were generated with the reference implementation, the second lowest tree is in use.
+        final byte[] privateKey = ByteBuffer.allocate(ReferenceKeyFormat.PRIVATE_KEY_SIZE).putLong(40)
+                .putLong(1023).put(new byte[]{0x53, 0x53, -1, -1, -1, -1, -1, -1}).put(seed).put(identifier).array();
+        final HSSPrivateKey hssPrivateKey = ReferenceKeyFormat.importKey(privateKey, publicKey, null, filename);
+        assertEquals(3, hssPrivateKey.getLmsPrivateKeys()[0].getQIdentifier());
+        assertTrue(Files.exists(Path.of(filename)));
+
+        final HSSPublicKey hssPublicKey = HSS.buildPublicKey(ByteBuffer.wrap(publicKey));
+        final HSSSignature signature = HSS.generateSignature("message", hssPrivateKey);
+        assertEquals(2, signature.getSignatures()[0].getQIdentifier());
+        assertTrue(HSS.verifySignature("message", signature, hssPublicKey));
+
+        final byte[] exportedKey = ReferenceKeyFormat.exportPrivateKey(hssPrivateKey);
+        assertEquals(3 * 32, ByteBuffer.wrap(exportedKey).getLong());
+        assertEquals(ByteBuffer.wrap(privateKey, 8, 64), ByteBuffer.wrap(exportedKey, 8, 64));
+
+        final byte[] auxData = ReferenceKeyFormat.exportAuxData(hssPrivateKey, 10_000);
+        assertEquals(4 + 62 * 32 + 32, auxData.length);
+        final HSSPrivateKey restoredKey = ReferenceKeyFormat.importKey(exportedKey, publicKey, auxData, null);
+        assertEquals(5, restoredKey.getLmsPrivateKeys()[0].getQIdentifier());
+        assertArrayEquals(hssPrivateKey.getLmsPrivateKeys()[0].getLeafNodes(),
+                restoredKey.getLmsPrivateKeys()[0].getLeafNodes());
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", restoredKey), hssPublicKey));
+
+        // Without the leaf nodes the root is checked with the upper levels, the tree is built instead.
+        final byte[] smallAuxData = ReferenceKeyFormat.exportAuxData(hssPrivateKey, 1_000);
+        assertEquals(4 + 30 * 32 + 32, smallAuxData.length);
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message",
+                ReferenceKeyFormat.importKey(exportedKey, publicKey, smallAuxData, null)), hssPublicKey));
+
+        // Auxiliary data with a wrong HMAC is ignored, the tree is built instead.
+        auxData[10] ^= 1;
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message",
+                ReferenceKeyFormat.importKey(exportedKey, publicKey, auxData, null)), hssPublicKey));
+        auxData[10] ^= 1;
+
+        // The HMAC key only depends on SEED, a tree with another I has a valid HMAC but another root.
+        final byte[] otherIdentifier = identifier.clone();
+        otherIdentifier[0] ^= 1;
+        final LMSPrivateKey otherLmsPrivateKey =
+                LMS.derivePrivateKey(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, otherIdentifier, 0, seed);
+        otherLmsPrivateKey.getPath(32);
+        final byte[] otherPublicKey = ByteBuffer.allocate(publicKey.length).put(publicKey, 0, 12).put(otherIdentifier)
+                .put(requireNonNull(otherLmsPrivateKey.getTopLevelNodes())[0]).array();
+        final byte[] otherPrivateKey = exportedKey.clone();
+        System.arraycopy(otherIdentifier, 0, otherPrivateKey, 56, 16);
+        final HSSPrivateKey otherKey = ReferenceKeyFormat.importKey(otherPrivateKey, otherPublicKey, null, null);
+        otherKey.getLmsPrivateKeys()[0].getPath(32);
+        for (final int maxLength : new int[]{10_000, 1_000}) {
+            final byte[] otherAuxData = ReferenceKeyFormat.exportAuxData(otherKey, maxLength);
+            assertThrows(IllegalArgumentException.class,
+                    () -> ReferenceKeyFormat.importKey(exportedKey, publicKey, otherAuxData, null));
+        }
+    }
+
+    @Test
+    void testImportReferenceKeyFile() throws NoSuchAlgorithmException, IOException {
+        // Key of the reference implementation after 5 signatures. SEED and I are the ones of the lower tree of
+        // RFC 8554, Appendix F, Test Case 2. Its public key is the LMS public key of that test case.
+        final byte[] privateKey = Files.readAllBytes(Path.of(TestUtil.getResourcePath("referenceKey.prv")));
+        final byte[] publicKey = Files.readAllBytes(Path.of(TestUtil.getResourcePath("referenceKey.pub")));
+
+        final HSSPrivateKey hssPrivateKey = ReferenceKeyFormat.importKey(privateKey, publicKey, null, null);
+        assertEquals(1, hssPrivateKey.getLevels());
+        assertEquals(LMS_SHA256_M32_H5, hssPrivateKey.getLmsPrivateKeys()[0].getLmsType());
+        assertEquals(LMOTS_SHA256_N32_W8, hssPrivateKey.getLmsPrivateKeys()[0].getLmotsType());
+        assertEquals(5, hssPrivateKey.getLmsPrivateKeys()[0].getQIdentifier());
+
+        final HSSPublicKey hssPublicKey = HSS.buildPublicKey(ByteBuffer.wrap(publicKey));
+        final HSSSignature signature = HSS.generateSignature("message", hssPrivateKey);
+        assertEquals(5, signature.getSignatures()[0].getQIdentifier());
+        assertTrue(HSS.verifySignature("message", signature, hssPublicKey));
+
+        // Derived keys are only stored in the compact format.
+        assertThrows(IllegalStateException.class, hssPrivateKey::getBytes);
+
+        final byte[] exportedKey = ReferenceKeyFormat.exportPrivateKey(hssPrivateKey);
+        assertEquals(hssPrivateKey.getLmsPrivateKeys()[0].getReservedMark(), ByteBuffer.wrap(exportedKey).getLong());
+        assertEquals(ByteBuffer.wrap(privateKey, 8, 64), ByteBuffer.wrap(exportedKey, 8, 64));
+    }
+
+    @Test
+    void testInvalidKeys() throws NoSuchAlgorithmException, IOException {
+        final byte[] privateKey = ByteBuffer.allocate(ReferenceKeyFormat.PRIVATE_KEY_SIZE).putLong(1024)
+                .putLong(1023).put(new byte[]{0x53, 0x53, -1, -1, -1, -1, -1, -1}).array();
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        final byte[] publicKey = keyPair.getPublicKey().getBytes();
+
+        assertThrows(IllegalStateException.class,
+                () -> ReferenceKeyFormat.importKey(privateKey, publicKey, null, null));
+        ByteBuffer.wrap(privateKey).putLong(0);
+        assertThrows(IllegalArgumentException.class,
+                () -> ReferenceKeyFormat.importKey(privateKey, publicKey, null, null));
+        privateKey[17] = 0x54;
+        assertThrows(IllegalArgumentException.class,
+                () -> ReferenceKeyFormat.importKey(privateKey, publicKey, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ReferenceKeyFormat.importKey(new byte[71], publicKey, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> ReferenceKeyFormat.exportPrivateKey(keyPair.getPrivateKey()));
+    }
+}
@@ -0,0 +1,31 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.api.HSSSignature;
+import at.andicover.hss.impl.HSS;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Signs with a shared key in a process of its own for {@link KeyStateFileTest}. Prints the leaves of the two levels
+ * that signed every message.
+ */
+final class SharedKeyProcess {
+
+    private SharedKeyProcess() {
+    }
+
+    /**
+     * @param args the file with the key material, the state file and the number of signatures.
+     */
+    public static void main(final String[] args) throws NoSuchAlgorithmException, IOException {
+        final HSSPrivateKey sharedKey = PersistenceUtil.loadSharedKey(args[0], args[1]);
+        final int signatures = Integer.parseInt(args[2]);
+        for (int i = 0; i < signatures; i++) {
+            final HSSSignature signature = HSS.generateSignature("message", sharedKey);
+            System.out.println(signature.getSignatures()[0].getQIdentifier() + "/"
+                    + signature.getSignatures()[1].getQIdentifier());
+        }
+    }
+}
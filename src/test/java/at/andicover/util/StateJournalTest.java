@@ -0,0 +1,81 @@
+package at.andicover.util;
+
+import at.andicover.config.TuningConfig;
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.impl.HSS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H10;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class StateJournalTest {
+
+    @Test
+    void testReservationsAreReplayed() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testReservationsAreReplayed.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(1, LMS_SHA256_M32_H10, LMOTS_SHA256_N32_W4, filename);
+        final byte[] storedKey = Files.readAllBytes(Path.of(filename));
+        for (int i = 0; i < 50; i++) {
+            HSS.generateSignature("journal message", keyPair.getPrivateKey());
+        }
+        keyPair.getPrivateKey().reserveKeys(5);
+
+        // Only the journal was written, the key file itself is unchanged.
+        assertTrue(Files.exists(Path.of(filename + ".journal")));
+        assertEquals(storedKey.length, Files.size(Path.of(filename)));
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertEquals(65, loadedKey.getLmsPrivateKeys()[0].getQIdentifier());
+        assertFalse(loadedKey.getLmsPrivateKeys()[0].hasReservedKey());
+    }
+
+    @Test
+    void testIncompleteRecordIsIgnored() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testIncompleteRecordIsIgnored.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4, filename);
+        keyPair.getPrivateKey().reserveKeys(3);
+        Files.write(Path.of(filename + ".journal"), new byte[]{1, 2, 3, 4, 5}, APPEND);
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertEquals(23, loadedKey.getLmsPrivateKeys()[1].getQIdentifier());
+        assertEquals(1, loadedKey.getLmsPrivateKeys()[0].getQIdentifier());
+
+        keyPair.getPrivateKey().reserveKeys(1);
+        final HSSPrivateKey loadedKey2 = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey2);
+        assertEquals(24, loadedKey2.getLmsPrivateKeys()[1].getQIdentifier());
+    }
+
+    @Test
+    void testCompactionAndClear() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCompactionAndClear.privkey";
+        final Path journal = Path.of(filename + ".journal");
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H10, LMOTS_SHA256_N32_W4, filename);
+        final HSSPrivateKey privateKey = keyPair.getPrivateKey();
+        for (int i = 0; i < TuningConfig.getDefault().getJournalRecords() + 10; i++) {
+            StateJournal.append(privateKey, 1);
+        }
+        assertTrue(Files.size(journal) < 20L * StateJournal.RECORD_SIZE);
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertEquals(20, loadedKey.getLmsPrivateKeys()[1].getQIdentifier());
+
+        PersistenceUtil.storeKey(privateKey);
+        assertFalse(Files.exists(journal));
+    }
+}
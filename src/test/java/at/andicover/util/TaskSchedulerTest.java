@@ -0,0 +1,219 @@
+package at.andicover.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class TaskSchedulerTest {
+
+    @Test
+    void testPriorityOrder() throws InterruptedException {
+        final TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            scheduler.execute(() -> {
+                blocked.countDown();
+                await(release);
+            }, TaskScheduler.Priority.BULK);
+            assertTrue(blocked.await(1, TimeUnit.MINUTES));
+
+            final List<String> order = new CopyOnWriteArrayList<>();
+            final CountDownLatch done = new CountDownLatch(3);
+            scheduler.execute(() -> {
+                order.add("bulk");
+                done.countDown();
+            }, TaskScheduler.Priority.BULK);
+            scheduler.execute(() -> {
+                order.add("background");
+                done.countDown();
+            }, TaskScheduler.Priority.BACKGROUND);
+            scheduler.executor(TaskScheduler.Priority.INTERACTIVE).execute(() -> {
+                order.add("interactive");
+                done.countDown();
+            });
+            release.countDown();
+
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+            assertEquals(List.of("interactive", "background", "bulk"), order);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testCaps() throws InterruptedException {
+        final TaskScheduler scheduler = new TaskScheduler(4, 4, 3, 2);
+        try {
+            assertEquals(4, scheduler.getParallelism());
+            assertEquals(2, scheduler.getCap(TaskScheduler.Priority.BULK));
+
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(20);
+            for (int i = 0; i < 20; i++) {
+                scheduler.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep();
+                    running.decrementAndGet();
+                    done.countDown();
+                }, TaskScheduler.Priority.BULK);
+            }
+
+            // Interactive tasks still find free workers while the bulk tasks are capped.
+            final CountDownLatch interactive = new CountDownLatch(1);
+            scheduler.execute(interactive::countDown, TaskScheduler.Priority.INTERACTIVE);
+            assertTrue(interactive.await(1, TimeUnit.MINUTES));
+
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+            assertEquals(2, maxRunning.get());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testInteractiveLoadLimitsBackground() throws InterruptedException {
+        final TaskScheduler scheduler = new TaskScheduler(4);
+        try {
+            // Two signers outside of the scheduler leave two workers for background and bulk tasks.
+            final CountDownLatch entered = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Thread signer = new Thread(() -> {
+                final TaskScheduler.Slot slot = scheduler.enter(TaskScheduler.Priority.INTERACTIVE);
+                try {
+                    entered.countDown();
+                    await(release);
+                } finally {
+                    slot.leave();
+                }
+            });
+            signer.start();
+            assertTrue(entered.await(1, TimeUnit.MINUTES));
+            final TaskScheduler.Slot slot = scheduler.enter(TaskScheduler.Priority.INTERACTIVE);
+            try {
+                assertEquals(2, runCapped(scheduler, TaskScheduler.Priority.BACKGROUND, TaskScheduler.Priority.BULK));
+            } finally {
+                slot.leave();
+            }
+            release.countDown();
+            signer.join();
+
+            // Without interactive load background and bulk tasks share the background cap.
+            assertEquals(3, runCapped(scheduler, TaskScheduler.Priority.BACKGROUND, TaskScheduler.Priority.BULK));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testCallerCountsTowardsCap() throws InterruptedException {
+        final TaskScheduler scheduler = new TaskScheduler(4);
+        try {
+            final TaskScheduler.Slot slot = scheduler.enter(TaskScheduler.Priority.BACKGROUND);
+            try {
+                // A thread is counted once, entering again does not wait for a free slot.
+                final TaskScheduler.Slot nested = scheduler.enter(TaskScheduler.Priority.BACKGROUND);
+                try {
+                    assertEquals(2, runCapped(scheduler, TaskScheduler.Priority.BACKGROUND));
+                } finally {
+                    nested.leave();
+                }
+            } finally {
+                slot.leave();
+            }
+            assertEquals(3, runCapped(scheduler, TaskScheduler.Priority.BACKGROUND));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testFailingTask() throws InterruptedException {
+        final TaskScheduler scheduler = new TaskScheduler(1);
+        try {
+            scheduler.execute(() -> {
+                throw new AssertionError("failing task");
+            }, TaskScheduler.Priority.INTERACTIVE);
+            final CountDownLatch done = new CountDownLatch(1);
+            scheduler.execute(done::countDown, TaskScheduler.Priority.INTERACTIVE);
+            assertTrue(done.await(1, TimeUnit.MINUTES));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testForEachIndex() {
+        final TaskScheduler scheduler = new TaskScheduler(2);
+        try {
+            final AtomicInteger[] counts = new AtomicInteger[1_000];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new AtomicInteger();
+            }
+            ThreadUtil.forEachIndex(counts.length, index -> counts[index].incrementAndGet(),
+                    scheduler.executor(TaskScheduler.Priority.BULK), scheduler.getCap(TaskScheduler.Priority.BULK));
+            for (final AtomicInteger count : counts) {
+                assertEquals(1, count.get());
+            }
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    void testShutdown() {
+        final TaskScheduler scheduler = new TaskScheduler(1);
+        scheduler.shutdown();
+        assertThrows(RejectedExecutionException.class,
+                () -> scheduler.execute(() -> { }, TaskScheduler.Priority.INTERACTIVE));
+        assertThrows(IllegalArgumentException.class, () -> new TaskScheduler(0));
+    }
+
+    /**
+     * Runs 40 sleeping tasks, alternating over the given classes.
+     *
+     * @return the maximum number of tasks that ran at the same time.
+     */
+    private static int runCapped(final TaskScheduler scheduler, final TaskScheduler.Priority... priorities)
+            throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            scheduler.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep();
+                running.decrementAndGet();
+                done.countDown();
+            }, priorities[i % priorities.length]);
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        return maxRunning.get();
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package at.andicover.util;
+
+import at.andicover.hss.api.HSSKeyPair;
+import at.andicover.hss.api.HSSPrivateKey;
+import at.andicover.hss.impl.HSS;
+import at.andicover.lms.api.LMSKeyPair;
+import at.andicover.lms.api.LMSPrivateKey;
+import at.andicover.lms.api.LMSPublicKey;
+import at.andicover.lms.impl.LMS;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import static at.andicover.lmots.api.LMOTSType.LMOTS_SHA256_N32_W4;
+import static at.andicover.lms.api.LMSType.LMS_SHA256_M32_H5;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+final class TreeCacheTest {
+
+    @Test
+    void testTreesAreRestored() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testTreesAreRestored.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKey(keyPair.getPrivateKey(), filename);
+        TreeCache.write(filename, keyPair.getPrivateKey().getLmsPrivateKeys());
+        assertTrue(Files.exists(Path.of(filename + ".tree")));
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(keyPair.getPrivateKey().getLmsPrivateKeys()[i].getLeafNodes(),
+                    loadedKey.getLmsPrivateKeys()[i].getLeafNodes());
+            assertArrayEquals(keyPair.getPrivateKey().getLmsPrivateKeys()[i].getTopLevelNodes(),
+                    loadedKey.getLmsPrivateKeys()[i].getTopLevelNodes());
+        }
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+
+        final HSSPrivateKey mappedKey = PersistenceUtil.mapPrivateKey(filename);
+        assertNotNull(mappedKey.getLmsPrivateKeys()[0].getLeafNodes());
+
+        TreeCache.clear(filename);
+        assertFalse(Files.exists(Path.of(filename + ".tree")));
+    }
+
+    @Test
+    void testCorruptCacheIsRebuilt() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testCorruptCacheIsRebuilt.privkey";
+        final HSSKeyPair keyPair = HSS.generateKeys(2, LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKey(keyPair.getPrivateKey(), filename);
+        TreeCache.write(filename, keyPair.getPrivateKey().getLmsPrivateKeys());
+        try (RandomAccessFile file = new RandomAccessFile(filename + ".tree", "rw")) {
+            file.seek(100);
+            file.writeInt(12_345);
+        }
+
+        final HSSPrivateKey loadedKey = (HSSPrivateKey) PersistenceUtil.loadKey(filename, HSSPrivateKey.class);
+        assertNotNull(loadedKey);
+        assertNull(loadedKey.getLmsPrivateKeys()[1].getLeafNodes());
+        assertTrue(HSS.verifySignature("message", HSS.generateSignature("message", loadedKey),
+                keyPair.getPublicKey()));
+        assertArrayEquals(keyPair.getPrivateKey().getLmsPrivateKeys()[1].getLeafNodes(),
+                loadedKey.getLmsPrivateKeys()[1].getLeafNodes());
+    }
+
+    @Test
+    void testWrongLeafWithValidChecksumIsRebuilt() throws NoSuchAlgorithmException, IOException {
+        final String filename = "testWrongLeafWithValidChecksumIsRebuilt.privkey";
+        final LMSKeyPair keyPair = LMS.generateKeys(LMS_SHA256_M32_H5, LMOTS_SHA256_N32_W4);
+        PersistenceUtil.storeKey(keyPair.getPrivateKey(), filename);
+        TreeCache.write(filename, new LMSPrivateKey[]{keyPair.getPrivateKey()});
+
+        // Leaf 3 is changed but the checksum still fits. The stored root is still the one of the public key.
+        final Path treeFile = Path.of(filename + ".tree");
+        final byte[] cache = Files.readAllBytes(treeFile);
+        cache[16 + 3 * Integer.BYTES + 3 * 32] ^= 1;
+        final CRC32 crc32 = new CRC32();
+        crc32.update(cache, 0, cache.length - Integer.BYTES);
+        ByteBuffer.wrap(cache).putInt(cache.length - Integer.BYTES, (int) crc32.getValue());
+        Files.write(treeFile, cache);
+
+        final LMSPrivateKey loadedKey = (LMSPrivateKey) PersistenceUtil.loadKey(filename, LMSPrivateKey.class);
+        assertNotNull(loadedKey);
+        TreeCache.restore(filename, new LMSPrivateKey[]{loadedKey}, new LMSPublicKey[]{keyPair.getPublicKey()});
+        assertNull(loadedKey.getLeafNodes());
+        assertArrayEquals(keyPair.getPrivateKey().getPath(35), loadedKey.getPath(35));
+    }
+}